@@ -0,0 +1,97 @@
+package org.hypergraphdb.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.hypergraphdb.HGHandle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Single atom operations: <code>HyperGraph.add</code>, <code>get</code>, <code>replace</code>
+ * and <code>remove</code>, each in its own implicit transaction.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AtomBenchmarks extends GraphState
+{
+	static final int REMOVALS = 1000;
+
+	/**
+	 * Atoms added at the start of each iteration of {@link AtomBenchmarks#remove}.
+	 */
+	@State(Scope.Thread)
+	public static class Removals
+	{
+		ArrayDeque<HGHandle> handles = new ArrayDeque<HGHandle>();
+
+		@Setup(Level.Iteration)
+		public void fill(AtomBenchmarks bench)
+		{
+			handles.clear();
+			for (int i = 0; i < REMOVALS; i++)
+				handles.add(bench.graph.add("removed-" + i));
+		}
+	}
+
+	private int added = 0;
+
+	@Benchmark
+	public HGHandle add()
+	{
+		return graph.add("added-" + added++);
+	}
+
+	/**
+	 * Mostly cache hits once warmed up, same as most applications.
+	 */
+	@Benchmark
+	public Object get(Cursor cursor)
+	{
+		return graph.get(data.node(cursor.nextInt(data.size())));
+	}
+
+	/**
+	 * Read the value of an atom from the store, bypassing the cache.
+	 */
+	@Benchmark
+	public byte [] getStored(Cursor cursor)
+	{
+		HGHandle node = data.node(cursor.nextInt(data.size()));
+		return graph.getStore().getData(graph.getStore().getLink(graph.getPersistentHandle(node))[1]);
+	}
+
+	/**
+	 * Replace a node with a value of the same type, which updates the value index of the type.
+	 */
+	@Benchmark
+	public boolean replace(Cursor cursor)
+	{
+		int value = cursor.nextInt(data.size());
+		return graph.replace(data.node(value), value);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 3, batchSize = REMOVALS)
+	@Measurement(iterations = 5, batchSize = REMOVALS)
+	public boolean remove(Removals removals)
+	{
+		return graph.remove(removals.handles.poll());
+	}
+}
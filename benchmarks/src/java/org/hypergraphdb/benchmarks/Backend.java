@@ -0,0 +1,35 @@
+package org.hypergraphdb.benchmarks;
+
+import org.hypergraphdb.pithos.PithosStore;
+import org.hypergraphdb.storage.HGStoreImplementation;
+import org.hypergraphdb.storage.bje.BJEStorageImplementation;
+import org.hypergraphdb.storage.lmdb.StorageImplementationLMDB;
+import org.hypergraphdb.storage.rocksdb.StorageImplementationRocksDB;
+
+/**
+ * <p>
+ * The storage implementations benchmarked. The name of a constant is the value of the
+ * <code>backend</code> JMH parameter, e.g. <code>-p backend=LMDB,ROCKSDB</code>.
+ * </p>
+ */
+public enum Backend
+{
+	BJE
+	{
+		public HGStoreImplementation create() { return new BJEStorageImplementation(); }
+	},
+	LMDB
+	{
+		public HGStoreImplementation create() { return new StorageImplementationLMDB<byte[]>(); }
+	},
+	ROCKSDB
+	{
+		public HGStoreImplementation create() { return new StorageImplementationRocksDB(); }
+	},
+	PITHOS
+	{
+		public HGStoreImplementation create() { return new PithosStore(); }
+	};
+
+	public abstract HGStoreImplementation create();
+}
@@ -0,0 +1,42 @@
+package org.hypergraphdb.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Main class of <code>benchmarks.jar</code>. It accepts the standard JMH command line,
+ * e.g. <code>java -jar benchmarks.jar AtomBenchmarks -p backend=LMDB</code>, the only
+ * difference being that results are always written in a machine readable format: JSON
+ * by default, to <code>jmh-result-&lt;version&gt;.json</code>, so the results of two
+ * releases can be compared with any JMH visualizer or a plain diff. Use <code>-rf</code>
+ * and <code>-rff</code> to change the format or the file.
+ * </p>
+ */
+public class BenchmarkRunner
+{
+	public static void main(String [] argv) throws Exception
+	{
+		CommandLineOptions cmd = new CommandLineOptions(argv);
+		if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams() ||
+			cmd.shouldListProfilers() || cmd.shouldListResultFormats())
+		{
+			org.openjdk.jmh.Main.main(argv);
+			return;
+		}
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+		if (!cmd.getResultFormat().hasValue())
+			options.resultFormat(ResultFormatType.JSON);
+		if (!cmd.getResult().hasValue())
+		{
+			String version = BenchmarkRunner.class.getPackage().getImplementationVersion();
+			ResultFormatType format = cmd.getResultFormat().orElse(ResultFormatType.JSON);
+			options.result("jmh-result-" + (version == null ? "dev" : version) + "." +
+						   format.name().toLowerCase());
+		}
+		new Runner(options.build()).run();
+	}
+}
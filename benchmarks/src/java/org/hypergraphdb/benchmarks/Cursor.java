@@ -0,0 +1,32 @@
+package org.hypergraphdb.benchmarks;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * <p>
+ * The random choices of a benchmark thread. Seeded from the <code>seed</code> parameter
+ * and the thread index, so that every run makes the same choices.
+ * </p>
+ */
+@State(Scope.Thread)
+public class Cursor
+{
+	public Random random;
+
+	@Setup
+	public void seed(BenchmarkParams params, ThreadParams thread)
+	{
+		random = new Random(Long.parseLong(params.getParam("seed")) * 31 + thread.getThreadIndex());
+	}
+
+	public int nextInt(int bound)
+	{
+		return random.nextInt(bound);
+	}
+}
@@ -0,0 +1,145 @@
+package org.hypergraphdb.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.HGSortIndex;
+import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.storage.BAtoHandle;
+import org.hypergraphdb.storage.BAtoString;
+
+/**
+ * <p>
+ * The graph every benchmark starts from, generated from a seed so that all backends, and
+ * all runs, see exactly the same atoms added in the same order:
+ * </p>
+ *
+ * <ul>
+ * <li><code>size</code> nodes, the <code>Integer</code>s from 0 to <code>size - 1</code>
+ * added in a random order.</li>
+ * <li><code>LINKS_PER_NODE * size</code> binary links between random nodes.</li>
+ * <li>Two hubs, each linked to a random half of the nodes by ternary links, a quarter of
+ * which contain both hubs. Intersecting the incidence sets of the hubs is a zig-zag join.</li>
+ * <li>The {@link #INDEX} storage index, mapping {@link #key(int)} to the handle of node
+ * <code>i</code>.</li>
+ * </ul>
+ */
+public class DataSet
+{
+	public static final String INDEX = "bench.keys";
+	public static final int LINKS_PER_NODE = 2;
+	private static final int BATCH = 1000;
+
+	private final long seed;
+	private final int size;
+	private HGHandle [] nodes;
+	private HGHandle hubA, hubB;
+
+	public DataSet(long seed, int size)
+	{
+		this.seed = seed;
+		this.size = size;
+	}
+
+	public static String key(int i)
+	{
+		return String.format("key-%08d", i);
+	}
+
+	public static HGSortIndex<String, HGPersistentHandle> index(HyperGraph graph)
+	{
+		return (HGSortIndex<String, HGPersistentHandle>)graph.getStore().<String, HGPersistentHandle>getIndex(
+			INDEX,
+			BAtoString.getInstance(),
+			BAtoHandle.getInstance(graph.getHandleFactory()),
+			null,
+			null,
+			true);
+	}
+
+	/**
+	 * Populate an empty graph, in transactions of a thousand atoms.
+	 */
+	public DataSet load(final HyperGraph graph)
+	{
+		final Random random = new Random(seed);
+		List<Integer> values = new ArrayList<Integer>(size);
+		for (int i = 0; i < size; i++)
+			values.add(i);
+		Collections.shuffle(values, random);
+		nodes = new HGHandle[size];
+		final HGSortIndex<String, HGPersistentHandle> index = index(graph);
+		for (int start = 0; start < size; start += BATCH)
+		{
+			final int from = start, to = Math.min(size, start + BATCH);
+			graph.getTransactionManager().transact(() -> {
+				for (int i = from; i < to; i++)
+				{
+					int value = values.get(i);
+					nodes[value] = graph.add(value);
+					index.addEntry(key(value), graph.getPersistentHandle(nodes[value]));
+				}
+				return null;
+			});
+		}
+		for (int start = 0; start < size * LINKS_PER_NODE; start += BATCH)
+		{
+			final int count = Math.min(size * LINKS_PER_NODE - start, BATCH);
+			graph.getTransactionManager().transact(() -> {
+				for (int i = 0; i < count; i++)
+					graph.add(new HGPlainLink(randomNode(random), randomNode(random)));
+				return null;
+			});
+		}
+		hubA = graph.add("hubA");
+		hubB = graph.add("hubB");
+		for (int start = 0; start < size; start += BATCH)
+		{
+			final int from = start, to = Math.min(size, start + BATCH);
+			graph.getTransactionManager().transact(() -> {
+				for (int i = from; i < to; i++)
+				{
+					int r = random.nextInt(4);
+					if (r == 0)
+						graph.add(new HGPlainLink(hubA, hubB, nodes[i]));
+					else if (r == 1)
+						graph.add(new HGPlainLink(hubA, nodes[i]));
+					else if (r == 2)
+						graph.add(new HGPlainLink(hubB, nodes[i]));
+				}
+				return null;
+			});
+		}
+		return this;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public HGHandle node(int value)
+	{
+		return nodes[value];
+	}
+
+	public HGHandle randomNode(Random random)
+	{
+		return nodes[random.nextInt(size)];
+	}
+
+	public HGHandle hubA()
+	{
+		return hubA;
+	}
+
+	public HGHandle hubB()
+	{
+		return hubB;
+	}
+}
@@ -0,0 +1,52 @@
+package org.hypergraphdb.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.hypergraphdb.HGConfiguration;
+import org.hypergraphdb.HGEnvironment;
+import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.util.HGUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * <p>
+ * Base class of the benchmarks: a fresh database, in a temporary directory, loaded with
+ * the {@link DataSet} for each trial (i.e. each backend and parameter combination).
+ * </p>
+ */
+public abstract class GraphState
+{
+	@Param({"BJE", "LMDB", "ROCKSDB", "PITHOS"})
+	public Backend backend;
+
+	@Param({"10000"})
+	public int atoms;
+
+	@Param({"20240101"})
+	public long seed;
+
+	protected String location;
+	protected HyperGraph graph;
+	protected DataSet data;
+
+	@Setup(Level.Trial)
+	public void openGraph() throws IOException
+	{
+		location = Files.createTempDirectory("hgbench-" + backend.name().toLowerCase()).toString();
+		HGConfiguration config = new HGConfiguration();
+		config.setStoreImplementation(backend.create());
+		graph = HGEnvironment.get(location, config);
+		data = new DataSet(seed, atoms).load(graph);
+	}
+
+	@TearDown(Level.Trial)
+	public void closeGraph()
+	{
+		graph.close();
+		HGUtils.dropHyperGraphInstance(location);
+	}
+}
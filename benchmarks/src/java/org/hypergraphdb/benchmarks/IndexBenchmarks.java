@@ -0,0 +1,109 @@
+package org.hypergraphdb.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGQuery.hg;
+import org.hypergraphdb.HGSearchResult;
+import org.hypergraphdb.HGSortIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ * Lookups and range scans of the {@link DataSet#INDEX} storage index, and of the value
+ * index of the <code>Integer</code> type through queries.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmarks extends GraphState
+{
+	/**
+	 * The number of entries read by a range scan.
+	 */
+	@Param({"100"})
+	public int range;
+
+	private HGSortIndex<String, HGPersistentHandle> index;
+
+	@Setup(Level.Trial)
+	public void openIndex()
+	{
+		index = DataSet.index(graph);
+	}
+
+	@Benchmark
+	public HGPersistentHandle findFirst(Cursor cursor)
+	{
+		return index.findFirst(DataSet.key(cursor.nextInt(data.size())));
+	}
+
+	@Benchmark
+	public void find(Cursor cursor, Blackhole bh)
+	{
+		HGSearchResult<HGPersistentHandle> rs = index.find(DataSet.key(cursor.nextInt(data.size())));
+		try
+		{
+			while (rs.hasNext())
+				bh.consume(rs.next());
+		}
+		finally
+		{
+			rs.close();
+		}
+	}
+
+	@Benchmark
+	public void rangeScan(Cursor cursor, Blackhole bh)
+	{
+		HGSearchResult<HGPersistentHandle> rs = index.findGTE(DataSet.key(cursor.nextInt(data.size())));
+		try
+		{
+			for (int i = 0; i < range && rs.hasNext(); i++)
+				bh.consume(rs.next());
+		}
+		finally
+		{
+			rs.close();
+		}
+	}
+
+	@Benchmark
+	public HGHandle findValue(Cursor cursor)
+	{
+		return hg.findOne(graph, hg.and(hg.type(Integer.class), hg.eq(cursor.nextInt(data.size()))));
+	}
+
+	@Benchmark
+	public void valueRangeScan(Cursor cursor, Blackhole bh)
+	{
+		int from = cursor.nextInt(data.size());
+		HGSearchResult<HGHandle> rs = graph.find(hg.and(hg.type(Integer.class), hg.gte(from), hg.lt(from + range)));
+		try
+		{
+			while (rs.hasNext())
+				bh.consume(rs.next());
+		}
+		finally
+		{
+			rs.close();
+		}
+	}
+}
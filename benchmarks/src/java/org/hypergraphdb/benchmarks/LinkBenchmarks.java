@@ -0,0 +1,99 @@
+package org.hypergraphdb.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.HGRandomAccessResult;
+import org.hypergraphdb.HGSearchResult;
+import org.hypergraphdb.IncidenceSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ * Link creation, which updates the incidence set of every target, and incidence set
+ * reads through the cache (<code>HyperGraph.getIncidenceSet</code>) and directly from
+ * the store.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkBenchmarks extends GraphState
+{
+	@Benchmark
+	public HGHandle addBinaryLink(Cursor cursor)
+	{
+		return graph.add(new HGPlainLink(data.randomNode(cursor.random), data.randomNode(cursor.random)));
+	}
+
+	@Benchmark
+	public HGHandle addHubLink(Cursor cursor)
+	{
+		return graph.add(new HGPlainLink(data.hubA(), data.randomNode(cursor.random)));
+	}
+
+	@Benchmark
+	public void iterateIncidenceSet(Cursor cursor, Blackhole bh)
+	{
+		IncidenceSet set = graph.getIncidenceSet(data.randomNode(cursor.random));
+		HGSearchResult<HGHandle> rs = set.getSearchResult();
+		try
+		{
+			while (rs.hasNext())
+				bh.consume(rs.next());
+		}
+		finally
+		{
+			rs.close();
+		}
+	}
+
+	@Benchmark
+	public void iterateStoredIncidenceSet(Cursor cursor, Blackhole bh)
+	{
+		HGPersistentHandle node = graph.getPersistentHandle(data.randomNode(cursor.random));
+		HGRandomAccessResult<HGPersistentHandle> rs = graph.getStore().getIncidenceResultSet(node);
+		try
+		{
+			while (rs.hasNext())
+				bh.consume(rs.next());
+		}
+		finally
+		{
+			rs.close();
+		}
+	}
+
+	/**
+	 * Iterate the incidence set of a hub, a quarter or more of all links.
+	 */
+	@Benchmark
+	public void iterateHubIncidenceSet(Blackhole bh)
+	{
+		HGPersistentHandle hub = graph.getPersistentHandle(data.hubA());
+		HGRandomAccessResult<HGPersistentHandle> rs = graph.getStore().getIncidenceResultSet(hub);
+		try
+		{
+			while (rs.hasNext())
+				bh.consume(rs.next());
+		}
+		finally
+		{
+			rs.close();
+		}
+	}
+}
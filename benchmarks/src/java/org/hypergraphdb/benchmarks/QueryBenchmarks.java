@@ -0,0 +1,98 @@
+package org.hypergraphdb.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.HGQuery;
+import org.hypergraphdb.HGQuery.hg;
+import org.hypergraphdb.HGSearchResult;
+import org.hypergraphdb.query.HGQueryCondition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ * Query compilation (<code>HGQuery.make</code>) and execution: the zig-zag intersection
+ * of the incidence sets of the two hubs of the {@link DataSet}, with and without a type
+ * condition, and a full scan of a type.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmarks extends GraphState
+{
+	private HGQuery<HGHandle> intersection;
+	private HGQuery<HGHandle> typedIntersection;
+	private HGQuery<HGHandle> typeScan;
+
+	private HGQueryCondition intersectionCondition()
+	{
+		return hg.and(hg.incident(data.hubA()), hg.incident(data.hubB()));
+	}
+
+	private HGQueryCondition typedIntersectionCondition()
+	{
+		return hg.and(hg.type(HGPlainLink.class), hg.incident(data.hubA()), hg.incident(data.hubB()), hg.arity(3));
+	}
+
+	@Setup(Level.Trial)
+	public void compileQueries()
+	{
+		intersection = HGQuery.make(graph, intersectionCondition());
+		typedIntersection = HGQuery.make(graph, typedIntersectionCondition());
+		typeScan = HGQuery.make(graph, hg.type(Integer.class));
+	}
+
+	private void iterate(HGQuery<HGHandle> query, Blackhole bh)
+	{
+		HGSearchResult<HGHandle> rs = query.execute();
+		try
+		{
+			while (rs.hasNext())
+				bh.consume(rs.next());
+		}
+		finally
+		{
+			rs.close();
+		}
+	}
+
+	@Benchmark
+	public HGQuery<HGHandle> compile()
+	{
+		return HGQuery.make(graph, typedIntersectionCondition());
+	}
+
+	@Benchmark
+	public void zigZagIntersection(Blackhole bh)
+	{
+		iterate(intersection, bh);
+	}
+
+	@Benchmark
+	public void typedZigZagIntersection(Blackhole bh)
+	{
+		iterate(typedIntersection, bh);
+	}
+
+	@Benchmark
+	public void typeScan(Blackhole bh)
+	{
+		iterate(typeScan, bh);
+	}
+}
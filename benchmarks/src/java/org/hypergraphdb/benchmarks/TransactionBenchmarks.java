@@ -0,0 +1,79 @@
+package org.hypergraphdb.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Throughput of concurrent transactions, with the thread count set by <code>-t</code>
+ * (4 by default): read-mostly transactions, transactions adding a link between random
+ * nodes, transactions adding a single new atom, which measure the commit path itself,
+ * and transactions all updating the same atom, which conflict and are retried.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class TransactionBenchmarks extends GraphState
+{
+	private HGHandle counter;
+
+	@Setup(Level.Trial)
+	public void addCounter()
+	{
+		counter = graph.add(new int[] { 0 });
+	}
+
+	@Benchmark
+	public int readMostly(Cursor cursor)
+	{
+		return graph.getTransactionManager().transact(() -> {
+			int sum = 0;
+			for (int i = 0; i < 10; i++)
+				sum += (Integer)graph.get(data.randomNode(cursor.random));
+			if (cursor.nextInt(10) == 0)
+				graph.add(new HGPlainLink(data.randomNode(cursor.random), data.randomNode(cursor.random)));
+			return sum;
+		});
+	}
+
+	@Benchmark
+	public HGHandle addLink(Cursor cursor)
+	{
+		return graph.getTransactionManager().transact(() ->
+			graph.add(new HGPlainLink(data.randomNode(cursor.random), data.randomNode(cursor.random))));
+	}
+
+	@Benchmark
+	public HGHandle addAtom(Cursor cursor)
+	{
+		return graph.getTransactionManager().transact(() -> graph.add("commit-" + cursor.random.nextLong()));
+	}
+
+	@Benchmark
+	public boolean contendedUpdate()
+	{
+		return graph.getTransactionManager().transact(() -> {
+			int [] value = graph.get(counter);
+			return graph.replace(counter, new int[] { value[0] + 1 });
+		});
+	}
+}
@@ -0,0 +1,60 @@
+package org.hypergraphdb.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hypergraphdb.algorithms.HGBreadthFirstTraversal;
+import org.hypergraphdb.algorithms.HGDepthFirstTraversal;
+import org.hypergraphdb.algorithms.HGTraversal;
+import org.hypergraphdb.algorithms.SimpleALGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ * Breadth first and depth first traversals over the random binary links of the
+ * {@link DataSet}, from a random node, stopping after <code>visits</code> atoms.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraversalBenchmarks extends GraphState
+{
+	@Param({"1000"})
+	public int visits;
+
+	private int walk(HGTraversal traversal, Blackhole bh)
+	{
+		int count = 0;
+		while (count < visits && traversal.hasNext())
+		{
+			bh.consume(traversal.next());
+			count++;
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int breadthFirst(Cursor cursor, Blackhole bh)
+	{
+		return walk(new HGBreadthFirstTraversal(data.randomNode(cursor.random), new SimpleALGenerator(graph)), bh);
+	}
+
+	@Benchmark
+	public int depthFirst(Cursor cursor, Blackhole bh)
+	{
+		return walk(new HGDepthFirstTraversal(data.randomNode(cursor.random), new SimpleALGenerator(graph)), bh);
+	}
+}
@@ -0,0 +1,869 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+import org.hypergraphdb.indexing.HGIndexer;
+import org.hypergraphdb.indexing.HGKeyIndexer;
+import org.hypergraphdb.indexing.HGValueIndexer;
+import org.hypergraphdb.storage.BAtoHandle;
+import org.hypergraphdb.storage.ByteArrayConverter;
+import org.hypergraphdb.type.HGAtomType;
+import org.hypergraphdb.type.TypeUtils;
+
+/**
+ * <p>
+ * Loads large numbers of atoms into a {@link HyperGraph} much faster than adding them
+ * one by one with <code>HyperGraph.add</code>. Atoms given to the loader are buffered and
+ * their records, values and atom attributes are written in batches of
+ * {@link #getBatchSize()} atoms, each batch in a single transaction. The entries they
+ * produce in the by-type and by-value indices, in the incidence sets of link targets and
+ * in the custom indices of their types are not written right away. They are accumulated
+ * in an off-heap buffer which, when full, is sorted and spilled to a temporary file. At
+ * each {@link #checkpoint()} the sorted runs are merged and the entries written to
+ * storage in key order, which is a lot cheaper for B-tree based storage than random
+ * insertions.
+ * </p>
+ *
+ * <p>
+ * Until the next checkpoint, atoms added through the loader can be retrieved by handle
+ * once their batch is written, but they won't be found by queries and won't show up in
+ * incidence sets. Closing the loader makes a final checkpoint. When a checkpoint fails,
+ * the entries it was merging are kept and the next checkpoint, or <code>close</code>,
+ * merges them again.
+ * </p>
+ *
+ * <p>
+ * After a crash, the atoms of the batches written since the last checkpoint are in the
+ * database but have no entries in indices and incidence sets, and a crash during a
+ * checkpoint leaves them partially indexed. To be able to repair that, give the loader a
+ * journal file with {@link #setJournal(File)}: the handles of the atoms of each batch are
+ * appended to it, and forced to disk, before the batch is written and it is deleted once
+ * a checkpoint completes. A new loader given the same journal then rebuilds the missing
+ * entries from the stored atoms with {@link #recover()}. Without a journal, these atoms
+ * can only be retrieved by handle and have to be removed or added again.
+ * </p>
+ *
+ * <p>
+ * The loader skips what makes <code>HyperGraph.add</code> expensive per atom: atoms are
+ * not put into the atom cache and no {@link org.hypergraphdb.event.HGAtomProposeEvent}s or
+ * {@link org.hypergraphdb.event.HGAtomAddedEvent}s are dispatched. Custom indices whose
+ * indexer is neither a {@link HGKeyIndexer} nor a {@link HGValueIndexer} are updated
+ * directly when the atom's batch is written. A loader is meant to be used by a single
+ * thread and atom instances must not be modified after being added until the batch they
+ * are in is written.
+ * </p>
+ */
+public class HGBulkLoader implements AutoCloseable
+{
+	private static final int TYPE_INDEX = 0;
+	private static final int VALUE_INDEX = 1;
+	private static final int INCIDENCE = 2;
+
+	private final HyperGraph graph;
+	private final ByteArrayConverter<HGPersistentHandle> handleConverter;
+	private final int handleSize;
+	private int batchSize = 10000;
+	private int bufferSize = 64 * 1024 * 1024;
+	private File tempDirectory = new File(System.getProperty("java.io.tmpdir"));
+	private File journal = null;
+	private Consumer<HGBulkLoader> progressListener = null;
+
+	private final List<PendingAtom> batch = new ArrayList<PendingAtom>();
+	private final List<HGIndexer<?, ?>> indexers = new ArrayList<HGIndexer<?, ?>>();
+	private final Map<HGIndexer<?, ?>, Integer> indexerIds = new HashMap<HGIndexer<?, ?>, Integer>();
+
+	// The entries waiting to be merged: the sorted runs spilled so far and the current,
+	// unsorted buffer with the offsets of its entries.
+	private final List<File> runs = new ArrayList<File>();
+	private ByteBuffer buffer = null;
+	private int [] offsets = new int[1024];
+	private int entryCount = 0;
+
+	private long atomCount = 0, linkCount = 0, pendingEntryCount = 0, mergedEntryCount = 0;
+	private int checkpointCount = 0;
+	private boolean closed = false;
+
+	private static class PendingAtom
+	{
+		HGPersistentHandle handle;
+		HGHandle typeHandle;
+		Object payload;
+		HGLink outgoingSet;
+		byte flags;
+	}
+
+	private static class Entry
+	{
+		int destination;
+		byte [] key;
+		byte [] value;
+
+		Entry(int destination, byte [] key, byte [] value)
+		{
+			this.destination = destination;
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	private static int compare(byte [] a, byte [] b)
+	{
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++)
+		{
+			int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (c != 0)
+				return c;
+		}
+		return a.length - b.length;
+	}
+
+	private static int compare(Entry a, Entry b)
+	{
+		if (a.destination != b.destination)
+			return a.destination < b.destination ? -1 : 1;
+		int c = compare(a.key, b.key);
+		return c != 0 ? c : compare(a.value, b.value);
+	}
+
+	public HGBulkLoader(HyperGraph graph)
+	{
+		this.graph = graph;
+		this.handleConverter = BAtoHandle.getInstance(graph.getHandleFactory());
+		this.handleSize = graph.getHandleFactory().nullHandle().toByteArray().length;
+	}
+
+	public HyperGraph getGraph()
+	{
+		return graph;
+	}
+
+	/**
+	 * <p>Return the number of atoms whose records are written in one transaction. This
+	 * is also the number of index entries written per transaction at checkpoints.
+	 * The default is 10000.</p>
+	 */
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize)
+	{
+		if (batchSize < 1)
+			throw new IllegalArgumentException("The batch size must be positive.");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * <p>Return the size in bytes of the off-heap buffer in which index and incidence
+	 * entries are accumulated before being sorted and spilled to a temporary file.
+	 * The default is 64MB.</p>
+	 */
+	public int getBufferSize()
+	{
+		return bufferSize;
+	}
+
+	public void setBufferSize(int bufferSize)
+	{
+		if (buffer != null)
+			throw new IllegalStateException("The buffer size can't be changed once atoms have been added.");
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * <p>Return the directory where sorted runs are spilled. The default is
+	 * <code>java.io.tmpdir</code>.</p>
+	 */
+	public File getTempDirectory()
+	{
+		return tempDirectory;
+	}
+
+	public void setTempDirectory(File tempDirectory)
+	{
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * <p>Return the file where the handles of the atoms written since the last checkpoint
+	 * are recorded, or <code>null</code> if there is none (the default).</p>
+	 */
+	public File getJournal()
+	{
+		return journal;
+	}
+
+	/**
+	 * <p>Set the file where the handles of the atoms written since the last checkpoint are
+	 * recorded, so that their index and incidence entries can be rebuilt by
+	 * {@link #recover()} after a crash.</p>
+	 */
+	public void setJournal(File journal)
+	{
+		this.journal = journal;
+	}
+
+	/**
+	 * <p>Set a listener invoked with this loader after each batch is written, each run
+	 * is spilled and each checkpoint is completed.</p>
+	 */
+	public void setProgressListener(Consumer<HGBulkLoader> progressListener)
+	{
+		this.progressListener = progressListener;
+	}
+
+	public Consumer<HGBulkLoader> getProgressListener()
+	{
+		return progressListener;
+	}
+
+	/**
+	 * <p>Return the number of atoms, links included, added to this loader so far.</p>
+	 */
+	public long getAtomCount()
+	{
+		return atomCount;
+	}
+
+	/**
+	 * <p>Return the number of links added to this loader so far.</p>
+	 */
+	public long getLinkCount()
+	{
+		return linkCount;
+	}
+
+	/**
+	 * <p>Return the number of atoms added but whose records are not written yet.</p>
+	 */
+	public int getPendingAtomCount()
+	{
+		return batch.size();
+	}
+
+	/**
+	 * <p>Return the number of index and incidence entries waiting for the next checkpoint.</p>
+	 */
+	public long getPendingEntryCount()
+	{
+		return pendingEntryCount;
+	}
+
+	/**
+	 * <p>Return the number of index and incidence entries written to storage so far.</p>
+	 */
+	public long getMergedEntryCount()
+	{
+		return mergedEntryCount;
+	}
+
+	public int getCheckpointCount()
+	{
+		return checkpointCount;
+	}
+
+	/**
+	 * <p>Return the number of sorted runs spilled to disk since the last checkpoint.</p>
+	 */
+	public int getRunCount()
+	{
+		return runs.size();
+	}
+
+	/**
+	 * <p>Add an atom with the type inferred as in {@link HyperGraph#add(Object)}.</p>
+	 *
+	 * @return The persistent handle of the new atom.
+	 */
+	public HGPersistentHandle add(Object atom)
+	{
+		return add(atom, 0);
+	}
+
+	/**
+	 * <p>Add an atom with the type inferred as in {@link HyperGraph#add(Object, int)}.</p>
+	 *
+	 * @return The persistent handle of the new atom.
+	 */
+	public HGPersistentHandle add(Object atom, int flags)
+	{
+		Object value = atom;
+		if (atom instanceof HGValueLink)
+			value = ((HGValueLink)atom).getValue();
+		HGHandle type = graph.getTypeSystem().getTypeHandle(value);
+		if (type == null)
+			throw new HGException("Unable to create HyperGraph type for class " + value.getClass().getName());
+		return add(atom, type, flags);
+	}
+
+	/**
+	 * <p>Add an atom with a given type and system flags.</p>
+	 *
+	 * @return The persistent handle of the new atom.
+	 */
+	public HGPersistentHandle add(Object atom, HGHandle type, int flags)
+	{
+		if (closed)
+			throw new IllegalStateException("This bulk loader is closed.");
+		PendingAtom p = new PendingAtom();
+		p.handle = graph.getHandleFactory().makeHandle();
+		p.typeHandle = type;
+		p.payload = atom;
+		p.flags = (byte)flags;
+		if (atom instanceof HGLink)
+		{
+			p.outgoingSet = (HGLink)atom;
+			if (atom instanceof HGValueLink)
+				p.payload = ((HGValueLink)atom).getValue();
+			linkCount++;
+		}
+		batch.add(p);
+		atomCount++;
+		if (batch.size() >= batchSize)
+			flush();
+		return p.handle;
+	}
+
+	/**
+	 * <p>Add all atoms of a stream, in order.</p>
+	 *
+	 * @return The number of atoms added.
+	 */
+	public long addAll(Iterator<?> atoms)
+	{
+		long count = 0;
+		while (atoms.hasNext())
+		{
+			add(atoms.next());
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * <p>Write the records of all pending atoms in a single transaction.</p>
+	 */
+	public void flush()
+	{
+		if (batch.isEmpty())
+			return;
+		List<HGPersistentHandle> handles = new ArrayList<HGPersistentHandle>(batch.size());
+		for (PendingAtom p : batch)
+			handles.add(p.handle);
+		appendJournal(handles);
+		final List<Entry> entries = new ArrayList<Entry>();
+		graph.getTransactionManager().transact(new Callable<Object>()
+		{ public Object call() {
+			// The transaction may be retried, so only collect the entries it produced
+			// and buffer them after it committed.
+			entries.clear();
+			for (PendingAtom p : batch)
+				writeAtom(p, entries);
+			return null;
+		}});
+		for (Entry e : entries)
+			bufferEntry(e.destination, e.key, e.value);
+		batch.clear();
+		fireProgress();
+	}
+
+	/**
+	 * <p>Write all pending atoms and merge all accumulated index and incidence entries
+	 * into storage. When this method returns, all atoms added so far are fully part of
+	 * the graph.</p>
+	 */
+	public void checkpoint()
+	{
+		flush();
+		try
+		{
+			if (runs.isEmpty())
+				mergeBuffer();
+			else
+			{
+				spill();
+				mergeRuns();
+			}
+		}
+		catch (IOException ex)
+		{
+			throw new HGException(ex);
+		}
+		// Only now that all entries are merged: when the merge fails, the runs, or the
+		// buffer, are merged again by the next checkpoint. Entries already written are
+		// simply found there again.
+		for (File f : runs)
+			f.delete();
+		runs.clear();
+		if (journal != null && journal.exists() && !journal.delete())
+			throw new HGException("Unable to delete bulk loader journal " + journal);
+		pendingEntryCount = 0;
+		checkpointCount++;
+		fireProgress();
+	}
+
+	/**
+	 * <p>Make a final checkpoint and release the loader's buffer. If the checkpoint fails,
+	 * the loader stays open and <code>close</code> can be tried again.</p>
+	 */
+	public void close()
+	{
+		if (closed)
+			return;
+		checkpoint();
+		closed = true;
+		buffer = null;
+	}
+
+	/**
+	 * <p>Rebuild the index and incidence entries of the atoms recorded in the journal
+	 * by a loader that did not complete its last checkpoint, typically because of a crash,
+	 * and make a checkpoint. Atoms whose batch was never committed are skipped. This
+	 * should be called before adding atoms, and does nothing if there is no journal.</p>
+	 *
+	 * @return The number of atoms recovered.
+	 */
+	public long recover()
+	{
+		if (journal == null || !journal.exists())
+			return 0;
+		List<HGPersistentHandle> handles = readJournal();
+		long count = 0;
+		final List<Entry> entries = new ArrayList<Entry>();
+		for (int from = 0; from < handles.size(); from += batchSize)
+		{
+			final List<HGPersistentHandle> chunk = handles.subList(from, Math.min(handles.size(), from + batchSize));
+			count += graph.getTransactionManager().transact(new Callable<Integer>()
+			{ public Integer call() {
+				entries.clear();
+				int found = 0;
+				for (HGPersistentHandle h : chunk)
+					if (reindexAtom(h, entries))
+						found++;
+				return found;
+			}});
+			for (Entry e : entries)
+				bufferEntry(e.destination, e.key, e.value);
+		}
+		checkpoint();
+		return count;
+	}
+
+	private void fireProgress()
+	{
+		if (progressListener != null)
+			progressListener.accept(this);
+	}
+
+	private byte [] handleBytes(HGHandle h)
+	{
+		return graph.getPersistentHandle(h).toByteArray();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void writeAtom(PendingAtom p, List<Entry> entries)
+	{
+		HGAtomType type = graph.getTypeSystem().getType(p.typeHandle);
+		HGPersistentHandle pTypeHandle = graph.getPersistentHandle(p.typeHandle);
+		HGPersistentHandle valueHandle = TypeUtils.storeValue(graph, p.payload, type);
+		HGPersistentHandle [] layout = new HGPersistentHandle[2 + (p.outgoingSet == null ? 0 : p.outgoingSet.getArity())];
+		layout[0] = pTypeHandle;
+		layout[1] = valueHandle;
+		for (int i = 2; i < layout.length; i++)
+			layout[i] = graph.getPersistentHandle(p.outgoingSet.getTargetAt(i - 2));
+		graph.getStore().store(p.handle, layout);
+		if (graph.getConfig().isUseSystemAtomAttributes())
+		{
+			HGAtomAttrib attribs = new HGAtomAttrib();
+			attribs.flags = p.flags;
+			attribs.lastAccessTime = System.currentTimeMillis();
+			graph.setAtomAttributes(p.handle, attribs);
+		}
+		Object instance = p.outgoingSet == null ? p.payload : p.outgoingSet;
+		if (instance instanceof HGGraphHolder)
+			((HGGraphHolder)instance).setHyperGraph(graph);
+		if (instance instanceof HGHandleHolder)
+			((HGHandleHolder)instance).setAtomHandle(p.handle);
+		if (p.payload instanceof HGTypeHolder)
+			((HGTypeHolder<HGAtomType>)p.payload).setAtomType(type);
+		collectEntries(p.handle, layout, p.payload, entries);
+	}
+
+	// Rebuild the entries of an atom from its stored record, for recover().
+	private boolean reindexAtom(HGPersistentHandle handle, List<Entry> entries)
+	{
+		HGPersistentHandle [] layout = graph.getStore().getLink(handle);
+		if (layout == null)
+			return false;
+		Object instance = graph.get(handle);
+		Object payload = instance instanceof HGValueLink ? ((HGValueLink)instance).getValue() : instance;
+		collectEntries(handle, layout, payload, entries);
+		return true;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void collectEntries(HGPersistentHandle handle, HGPersistentHandle [] layout, Object payload, List<Entry> entries)
+	{
+		byte [] atomBytes = handle.toByteArray();
+		entries.add(new Entry(TYPE_INDEX, layout[0].toByteArray(), atomBytes));
+		if (payload instanceof HGAtomType || graph.getIndexManager().isValueIndexed(layout[0]))
+			entries.add(new Entry(VALUE_INDEX, layout[1].toByteArray(), atomBytes));
+		for (int i = 2; i < layout.length; i++)
+			entries.add(new Entry(INCIDENCE, layout[i].toByteArray(), atomBytes));
+
+		List<HGIndexer<?, ?>> L = graph.getIndexManager().getIndexersForType(layout[0]);
+		if (L == null)
+			return;
+		for (HGIndexer indexer : L)
+		{
+			Object key = null, value = null;
+			if (indexer instanceof HGKeyIndexer)
+			{
+				key = ((HGKeyIndexer)indexer).getKey(graph, payload);
+				value = handle;
+			}
+			else if (indexer instanceof HGValueIndexer)
+			{
+				key = ((HGValueIndexer)indexer).getKey(graph, payload);
+				value = ((HGValueIndexer)indexer).getValue(graph, payload);
+			}
+			if (key == null || value == null)
+			{
+				HGIndex idx = graph.getIndexManager().getIndex(indexer);
+				indexer.index(graph, handle, payload, idx);
+				continue;
+			}
+			ByteArrayConverter keyConverter = indexer.getConverter(graph);
+			entries.add(new Entry(indexerId(indexer),
+								  keyConverter == null ? (byte[])key : keyConverter.toByteArray(key),
+								  valueConverter(indexer).toByteArray(value)));
+		}
+	}
+
+	private int indexerId(HGIndexer<?, ?> indexer)
+	{
+		Integer id = indexerIds.get(indexer);
+		if (id == null)
+		{
+			id = INCIDENCE + 1 + indexers.size();
+			indexers.add(indexer);
+			indexerIds.put(indexer, id);
+		}
+		return id;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private ByteArrayConverter<Object> valueConverter(HGIndexer<?, ?> indexer)
+	{
+		if (indexer instanceof HGValueIndexer)
+			return ((HGValueIndexer)indexer).getValueConverter(graph);
+		else
+			return (ByteArrayConverter)handleConverter;
+	}
+
+	// ------------------------------------------------------------------------
+	// Journal
+	// ------------------------------------------------------------------------
+
+	private void appendJournal(List<HGPersistentHandle> handles)
+	{
+		if (journal == null)
+			return;
+		byte [] bytes = new byte[handles.size() * handleSize];
+		for (int i = 0; i < handles.size(); i++)
+			handles.get(i).toByteArray(bytes, i * handleSize);
+		try (FileOutputStream out = new FileOutputStream(journal, true))
+		{
+			out.write(bytes);
+			out.getFD().sync();
+		}
+		catch (IOException ex)
+		{
+			throw new HGException(ex);
+		}
+	}
+
+	private List<HGPersistentHandle> readJournal()
+	{
+		byte [] bytes;
+		try
+		{
+			bytes = Files.readAllBytes(journal.toPath());
+		}
+		catch (IOException ex)
+		{
+			throw new HGException(ex);
+		}
+		// A partial handle at the end was being written when the loader crashed,
+		// before its batch was.
+		List<HGPersistentHandle> handles = new ArrayList<HGPersistentHandle>();
+		for (int offset = 0; offset + handleSize <= bytes.length; offset += handleSize)
+			handles.add(handleConverter.fromByteArray(bytes, offset, handleSize));
+		return handles;
+	}
+
+	// ------------------------------------------------------------------------
+	// Accumulating and sorting entries
+	// ------------------------------------------------------------------------
+
+	private void bufferEntry(int destination, byte [] key, byte [] value)
+	{
+		int size = 12 + key.length + value.length;
+		if (buffer == null)
+			buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, size));
+		else if (buffer.remaining() < size)
+		{
+			try { spill(); }
+			catch (IOException ex) { throw new HGException(ex); }
+			if (buffer.capacity() < size)
+				buffer = ByteBuffer.allocateDirect(size);
+		}
+		if (entryCount == offsets.length)
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		offsets[entryCount++] = buffer.position();
+		buffer.putInt(destination);
+		buffer.putInt(key.length);
+		buffer.put(key);
+		buffer.putInt(value.length);
+		buffer.put(value);
+		pendingEntryCount++;
+	}
+
+	private int compareBuffered(int a, int b)
+	{
+		int da = buffer.getInt(a), db = buffer.getInt(b);
+		if (da != db)
+			return da < db ? -1 : 1;
+		a += 4;
+		b += 4;
+		for (int part = 0; part < 2; part++)
+		{
+			int la = buffer.getInt(a), lb = buffer.getInt(b);
+			a += 4;
+			b += 4;
+			int n = Math.min(la, lb);
+			for (int i = 0; i < n; i++)
+			{
+				int c = (buffer.get(a + i) & 0xFF) - (buffer.get(b + i) & 0xFF);
+				if (c != 0)
+					return c;
+			}
+			if (la != lb)
+				return la - lb;
+			a += la;
+			b += lb;
+		}
+		return 0;
+	}
+
+	private void sortBuffer()
+	{
+		int [] tmp = new int[entryCount];
+		mergeSort(offsets, tmp, 0, entryCount);
+	}
+
+	private void mergeSort(int [] a, int [] tmp, int from, int to)
+	{
+		if (to - from < 2)
+			return;
+		int mid = (from + to) >>> 1;
+		mergeSort(a, tmp, from, mid);
+		mergeSort(a, tmp, mid, to);
+		if (compareBuffered(a[mid - 1], a[mid]) <= 0)
+			return;
+		System.arraycopy(a, from, tmp, from, to - from);
+		int i = from, j = mid, k = from;
+		while (i < mid && j < to)
+			a[k++] = compareBuffered(tmp[j], tmp[i]) < 0 ? tmp[j++] : tmp[i++];
+		while (i < mid)
+			a[k++] = tmp[i++];
+		while (j < to)
+			a[k++] = tmp[j++];
+	}
+
+	private Entry bufferedEntry(int offset)
+	{
+		ByteBuffer b = buffer.duplicate();
+		b.position(offset);
+		int destination = b.getInt();
+		byte [] key = new byte[b.getInt()];
+		b.get(key);
+		byte [] value = new byte[b.getInt()];
+		b.get(value);
+		return new Entry(destination, key, value);
+	}
+
+	private void spill() throws IOException
+	{
+		if (entryCount == 0)
+			return;
+		sortBuffer();
+		File f = File.createTempFile("hgbulk", ".run", tempDirectory);
+		runs.add(f);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+		try
+		{
+			for (int i = 0; i < entryCount; i++)
+			{
+				Entry e = bufferedEntry(offsets[i]);
+				out.writeInt(e.destination);
+				out.writeInt(e.key.length);
+				out.write(e.key);
+				out.writeInt(e.value.length);
+				out.write(e.value);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		buffer.clear();
+		entryCount = 0;
+		fireProgress();
+	}
+
+	// ------------------------------------------------------------------------
+	// Merging entries into storage
+	// ------------------------------------------------------------------------
+
+	private static class Run
+	{
+		DataInputStream in;
+		Entry current;
+
+		Run(File f) throws IOException
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+		}
+
+		boolean advance() throws IOException
+		{
+			int destination;
+			try { destination = in.readInt(); }
+			catch (EOFException ex) { current = null; return false; }
+			byte [] key = new byte[in.readInt()];
+			in.readFully(key);
+			byte [] value = new byte[in.readInt()];
+			in.readFully(value);
+			current = new Entry(destination, key, value);
+			return true;
+		}
+	}
+
+	private void mergeBuffer()
+	{
+		if (entryCount == 0)
+			return;
+		sortBuffer();
+		List<Entry> chunk = new ArrayList<Entry>();
+		for (int i = 0; i < entryCount; i++)
+		{
+			chunk.add(bufferedEntry(offsets[i]));
+			if (chunk.size() == batchSize)
+				apply(chunk);
+		}
+		apply(chunk);
+		buffer.clear();
+		entryCount = 0;
+	}
+
+	private void mergeRuns() throws IOException
+	{
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(Math.max(1, runs.size()), (x, y) -> compare(x.current, y.current));
+		List<Run> open = new ArrayList<Run>();
+		try
+		{
+			for (File f : runs)
+			{
+				Run r = new Run(f);
+				open.add(r);
+				if (r.advance())
+					queue.add(r);
+			}
+			List<Entry> chunk = new ArrayList<Entry>();
+			while (!queue.isEmpty())
+			{
+				Run r = queue.poll();
+				chunk.add(r.current);
+				if (r.advance())
+					queue.add(r);
+				if (chunk.size() == batchSize)
+					apply(chunk);
+			}
+			apply(chunk);
+		}
+		finally
+		{
+			for (Run r : open)
+				r.in.close();
+		}
+	}
+
+	private void apply(final List<Entry> chunk)
+	{
+		if (chunk.isEmpty())
+			return;
+		graph.getTransactionManager().transact(new Callable<Object>()
+		{ public Object call() {
+			for (Entry e : chunk)
+				applyEntry(e);
+			return null;
+		}});
+		mergedEntryCount += chunk.size();
+		chunk.clear();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void applyEntry(Entry e)
+	{
+		switch (e.destination)
+		{
+			case TYPE_INDEX:
+				graph.indexByType.addEntry(handleConverter.fromByteArray(e.key, 0, handleSize),
+										   handleConverter.fromByteArray(e.value, 0, handleSize));
+				break;
+			case VALUE_INDEX:
+				graph.indexByValue.addEntry(handleConverter.fromByteArray(e.key, 0, handleSize),
+											handleConverter.fromByteArray(e.value, 0, handleSize));
+				break;
+			case INCIDENCE:
+				graph.updateTargetIncidenceSet(handleConverter.fromByteArray(e.key, 0, handleSize),
+											   handleConverter.fromByteArray(e.value, 0, handleSize));
+				break;
+			default:
+				HGIndexer indexer = indexers.get(e.destination - INCIDENCE - 1);
+				HGIndex idx = graph.getIndexManager().getIndex(indexer);
+				ByteArrayConverter keyConverter = indexer.getConverter(graph);
+				Object key = keyConverter == null ? e.key : keyConverter.fromByteArray(e.key, 0, e.key.length);
+				idx.addEntry(key, valueConverter(indexer).fromByteArray(e.value, 0, e.value.length));
+		}
+	}
+}
@@ -7,6 +7,10 @@
  */
 package org.hypergraphdb;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hypergraphdb.cache.HGCache;
 import org.hypergraphdb.cache.WeakRefAtomCache;
 import org.hypergraphdb.event.HGDefaultEventManager;
 
@@ -38,12 +42,17 @@ public class HGConfiguration
 	private boolean skipOpenedEvent;
 	private boolean preventDanglingAtomReferences = true; 
 	private int maxCachedIncidenceSetSize; 
+	private int indexingParallelism = 1;
+	private boolean maintainValueIndex = true;
+	private Set<HGPersistentHandle> typesWithoutValueIndex = ConcurrentHashMap.newKeySet();
+	private int typeIndexPartitions = 1;
 	private boolean useSystemAtomAttributes;
 	private boolean keepIncidentLinksOnRemoval = false;
 	private boolean shortLivedCache = false;
 	private HGTypeConfiguration typeConfiguration = new HGTypeConfiguration();
 	private HGQueryConfiguration queryConfiguration = new HGQueryConfiguration();
 	private HGAtomCache cacheImplementation = new WeakRefAtomCache();
+	private HGCache<HGPersistentHandle, IncidenceSet> incidenceCacheImplementation = null;
 	private HGEventManager eventManager = new HGDefaultEventManager();
 	private ClassLoader classLoader;
 	
@@ -243,6 +252,87 @@ public class HGConfiguration
         this.maxCachedIncidenceSetSize = maxCachedIncidenceSetSize;
     }
 
+    /**
+     * <p>Return the number of threads used to populate a newly registered index with the
+     * atoms already in the database. The default is 1 - that is, atoms are indexed one by one
+     * in the maintenance thread. With more threads, atoms are loaded and their index entries 
+     * computed in parallel, then written to the index sorted by key.</p>
+     */
+    public int getIndexingParallelism()
+    {
+        return indexingParallelism;
+    }
+
+    /**
+     * <p>Set the number of threads used to populate a newly registered index with the
+     * atoms already in the database. See {@link #getIndexingParallelism()}.</p>
+     */
+    public void setIndexingParallelism(int indexingParallelism)
+    {
+        this.indexingParallelism = indexingParallelism;
+    }
+
+    /**
+     * <p>Return <code>true</code> if atoms are recorded in the by-value index, from value handles
+     * to atoms, and <code>false</code> otherwise. The default is <code>true</code>. Without the
+     * value index, adding an atom costs one index write less, but queries by value on types that
+     * are not {@link org.hypergraphdb.type.HGSearchable} by the value's handle become a scan of
+     * all atoms of the type. Atoms that are themselves types are always recorded.</p>
+     * 
+     * <p>Switching the value index back on doesn't record atoms added while it was off, so
+     * this is best decided once for the lifetime of a database.</p>
+     */
+    public boolean isMaintainValueIndex()
+    {
+        return maintainValueIndex;
+    }
+
+    /**
+     * <p>Specify whether atoms are recorded in the by-value index. See {@link #isMaintainValueIndex()}.</p>
+     */
+    public void setMaintainValueIndex(boolean maintainValueIndex)
+    {
+        this.maintainValueIndex = maintainValueIndex;
+    }
+
+    /**
+     * <p>Return the (modifiable) set of handles of the types whose atoms are not recorded in the
+     * by-value index even when {@link #isMaintainValueIndex()} is <code>true</code>. Type handles
+     * can be added at any time, for example right after the type is defined, with the same 
+     * caveat as turning off the value index globally.</p>
+     */
+    public Set<HGPersistentHandle> getTypesWithoutValueIndex()
+    {
+        return typesWithoutValueIndex;
+    }
+
+    /**
+     * <p>Return the number of partitions of the by-type index in a newly created database. The
+     * default is 1: all atoms of a type are values of a single key, the type handle. With more 
+     * partitions, the atoms of a type are spread among that many keys according to the leading
+     * bits of their handle. Concurrent additions of atoms of the same type then mostly write to
+     * different keys, which matters for storage layers that detect write conflicts per key. 
+     * Scanning a type visits the partitions in order and still yields atoms sorted by handle.</p>
+     * 
+     * <p>The layout is fixed when a database is created and this setting is ignored when an
+     * existing database is opened.</p>
+     */
+    public int getTypeIndexPartitions()
+    {
+        return typeIndexPartitions;
+    }
+
+    /**
+     * <p>Set the number of partitions of the by-type index in a newly created database. It must
+     * be a power of 2 between 1 and 256. See {@link #getTypeIndexPartitions()}.</p>
+     */
+    public void setTypeIndexPartitions(int typeIndexPartitions)
+    {
+        if (typeIndexPartitions < 1 || typeIndexPartitions > 256 || Integer.bitCount(typeIndexPartitions) != 1)
+            throw new IllegalArgumentException("The number of type index partitions must be a power of 2 between 1 and 256.");
+        this.typeIndexPartitions = typeIndexPartitions;
+    }
+    
 //    /**
 //     * <p>Return <code>true</code> if full (catastrophic) recovery will be run on the storage
 //     * layer upon opening the database, and <code>false</code> otherwise.</p>
@@ -405,6 +495,9 @@ public class HGConfiguration
     /**
      * <p>
      * Configure a cache implementation to be used for this {@link HyperGraph} instance.
+     * The default is the {@link WeakRefAtomCache}. Applications with many concurrent reader
+     * threads may prefer the {@link org.hypergraphdb.cache.StripedAtomCache}, which has no
+     * global lock.
      * </p>
      * @param cacheImplementation
      */
@@ -413,6 +506,34 @@ public class HGConfiguration
         this.cacheImplementation = cacheImplementation;
     }
 
+    /**
+     * <p>Return the cache of incidence sets configured for this {@link HyperGraph} instance
+     * or <code>null</code> if the default is used.</p>
+     */
+    public HGCache<HGPersistentHandle, IncidenceSet> getIncidenceCacheImplementation()
+    {
+        return incidenceCacheImplementation;
+    }
+
+    /**
+     * <p>
+     * Configure the cache of incidence sets to be used for this {@link HyperGraph} instance.
+     * The default, when this is <code>null</code>, is an {@link org.hypergraphdb.cache.LRUCache}
+     * that evicts elements when the JVM is low on memory. Workloads mixing scans or 
+     * traversals of large parts of the graph with frequent access to a set of hot atoms may
+     * prefer a {@link org.hypergraphdb.cache.TinyLFUCache}, bounded by the estimated size
+     * in bytes of the incidence sets it holds:
+     * </p>
+     * 
+     * <pre>config.setIncidenceCacheImplementation(TinyLFUCache.forIncidenceSets(256*1024*1024));</pre>
+     * 
+     * <p>The cache is given its <code>RefResolver</code> when the database is opened.</p>
+     */
+    public void setIncidenceCacheImplementation(HGCache<HGPersistentHandle, IncidenceSet> incidenceCacheImplementation)
+    {
+        this.incidenceCacheImplementation = incidenceCacheImplementation;
+    }
+
     /**
      * @see {@link #setShortLivedCache(boolean)}
      */
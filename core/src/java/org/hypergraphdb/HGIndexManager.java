@@ -390,6 +390,19 @@ public class HGIndexManager
 		return graph.indexByValue;
 	}
 	
+	/**
+	 * <p>Return <code>true</code> if atoms of the given type are recorded in the 
+	 * {@link #getIndexByValue()} index and <code>false</code> if the configuration leaves
+	 * them out (see {@link HGConfiguration#isMaintainValueIndex()}). Atoms that are themselves
+	 * types are recorded regardless.</p>
+	 */
+	public boolean isValueIndexed(HGHandle typeHandle)
+	{
+		HGConfiguration config = graph.getConfig();
+		return config.isMaintainValueIndex() && 
+			   !config.getTypesWithoutValueIndex().contains(graph.getPersistentHandle(typeHandle));
+	}
+	
 	/**
 	 * <p>
 	 * Called when an atom is being added to hypergraph to check and possibly
@@ -39,4 +39,15 @@ public interface HGPersistentHandle extends HGHandle, Serializable, Comparable<H
      * or 16 for UUID based handles.
      */
     byte [] toByteArray();
+    
+    /**
+     * <p>Write the <code>byte[]</code> representation of the handle into <code>dest</code>,
+     * starting at <code>offset</code>. Implementations holding their identifier in primitive
+     * fields override this to avoid creating an intermediate array.</p>
+     */
+    default void toByteArray(byte [] dest, int offset)
+    {
+        byte [] B = toByteArray();
+        System.arraycopy(B, 0, dest, offset, B.length);
+    }
 }
\ No newline at end of file
@@ -43,6 +43,8 @@ import org.hypergraphdb.query.Not;
 import org.hypergraphdb.query.Or;
 import org.hypergraphdb.query.OrderedLinkCondition;
 import org.hypergraphdb.query.PositionedIncidentCondition;
+import org.hypergraphdb.query.QueryCompile;
+import org.hypergraphdb.query.QueryPlan;
 import org.hypergraphdb.query.SubgraphContainsCondition;
 import org.hypergraphdb.query.SubgraphMemberCondition;
 import org.hypergraphdb.query.SubsumedCondition;
@@ -228,6 +230,20 @@ public abstract class HGQuery<SearchResult> implements HGGraphHolder
 	 */
 	public abstract HGSearchResult<SearchResult> execute();
     
+	/**
+	 * <p>
+	 * Return the tree of operators (index lookups, intersections, predicate filters etc.)
+	 * this query is made of. Use {@link QueryCompile#explain(HyperGraph, HGQueryCondition)}
+	 * to also get the estimated sizes of their result sets, or 
+	 * {@link QueryCompile#profile(HyperGraph, HGQueryCondition)} to find out how they 
+	 * perform.
+	 * </p>
+	 */
+	public QueryPlan explain()
+	{
+		return QueryPlan.of(this);
+	}
+	
 	/**
 	 * <p>
 	 * Execute the query and return the first result, if any. Otherwise return <code>null</code>.
@@ -1582,6 +1598,18 @@ public abstract class HGQuery<SearchResult> implements HGGraphHolder
         	return ref instanceof Var;
         }
         
+        /**
+         * <p>
+         * Return the plan of the query compiled from a condition, with the estimated 
+         * size of the result set of each of its operators. A shorthand for 
+         * {@link QueryCompile#explain(HyperGraph, HGQueryCondition)}.
+         * </p>
+         */
+        public static QueryPlan explain(HyperGraph graph, HGQueryCondition cond)
+        {
+            return QueryCompile.explain(graph, cond);
+        }
+        
         /**
          * <p>
          * Count the number of atoms that match the query condition parameter. Retrieving
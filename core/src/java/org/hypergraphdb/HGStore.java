@@ -196,7 +196,29 @@ public class HGStore
         }         
         return impl.getLink(handle);
     }
-  
+
+    /**
+     * <p>Retrieve several links by their handles with a single call to the storage layer.</p>
+     *
+     * @param handles The persistent handles of the links. None of them can be <code>null</code>.
+     * @return An array with the link of each handle at the same position, or <code>null</code>
+     * at positions whose handle has no link in the database.
+     */
+    public HGPersistentHandle [][] getLinks(HGPersistentHandle [] handles)
+    {
+        for (HGPersistentHandle h : handles)
+            if (h == null)
+                throw new NullPointerException("HGStore.getLinks called with a null handle.");
+        StorageGraph overlay = overlayGraph.get();
+        if (overlay == null)
+            return impl.getLinks(handles);
+        HGPersistentHandle [][] result = new HGPersistentHandle[handles.length][];
+        for (int i = 0; i < handles.length; i++)
+            if ((result[i] = overlay.getLink(handles[i])) == null)
+                result[i] = impl.getLink(handles[i]);
+        return result;
+    }
+
     /**
      * <p>
      * Return <code>true</code> if there is a storage link bound to the passed in
@@ -249,7 +271,29 @@ public class HGStore
         }
         return impl.getData(handle);
     }
-    
+
+    /**
+     * <p>Retrieve several raw data buffers with a single call to the storage layer.</p>
+     *
+     * @param handles The handles of the data. None of them can be <code>null</code>.
+     * @return An array with the data of each handle at the same position, or <code>null</code>
+     * at positions whose handle could not be found.
+     */
+    public byte [][] getDataMulti(HGPersistentHandle [] handles)
+    {
+        for (HGPersistentHandle h : handles)
+            if (h == null)
+                throw new NullPointerException("HGStore.getDataMulti called with a null handle.");
+        StorageGraph overlay = overlayGraph.get();
+        if (overlay == null)
+            return impl.getDataMulti(handles);
+        byte [][] result = new byte[handles.length][];
+        for (int i = 0; i < handles.length; i++)
+            if ((result[i] = overlay.getData(handles[i])) == null)
+                result[i] = impl.getData(handles[i]);
+        return result;
+    }
+
     /**
      * <p>Return a <code>HGSearchResult</code> of atom handles in a given atom's incidence
      * set.</p>
@@ -262,7 +306,20 @@ public class HGStore
     {
         return impl.getIncidenceResultSet(handle);
     }
-    
+
+    /**
+     * <p>Read the incidence sets of several atoms with a single call to the storage layer.</p>
+     *
+     * @param handles The <code>HGPersistentHandle</code>s of the atoms whose incidence sets
+     * are desired.
+     * @return An array with the members of each incidence set at the same position as its
+     * atom. Atoms without links pointing to them get an empty array.
+     */
+    public HGPersistentHandle [][] getIncidenceSets(HGPersistentHandle [] handles)
+    {
+        return impl.getIncidenceSets(handles);
+    }
+
     /**
      * <p>Return the number of atoms in the incidence set of a given atom. That is,
      * return the number of links pointing to the atom.</p>
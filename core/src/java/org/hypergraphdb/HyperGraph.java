@@ -8,8 +8,12 @@
 package org.hypergraphdb;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -18,6 +22,7 @@ import org.hypergraphdb.cache.HGCache;
 import org.hypergraphdb.cache.LRUCache;
 import org.hypergraphdb.handle.HGLiveHandle;
 import org.hypergraphdb.handle.HGManagedLiveHandle;
+import org.hypergraphdb.storage.BAtoBA;
 import org.hypergraphdb.storage.BAtoHandle;
 import org.hypergraphdb.type.*;
 import org.hypergraphdb.HGQuery.hg;
@@ -112,6 +117,15 @@ public /*final*/ class HyperGraph implements HyperNode
      * The name of the main by-value atom index.
      */
     public static final String VALUES_INDEX_NAME = "HGATOMVALUE";
+    /**
+     * The name of the by-type atom index in a database with more than one type index
+     * partition.
+     */
+    public static final String PARTITIONED_TYPES_INDEX_NAME = "HGATOMTYPEP";
+    /**
+     * The version file entry recording the number of type index partitions.
+     */
+    private static final String TYPE_INDEX_PARTITIONS = "typeIndexPartitions";
     /**
      * The name of the atom attributes DB.
      */
@@ -297,6 +311,22 @@ public /*final*/ class HyperGraph implements HyperNode
 			}
 	}
 	
+    /**
+     * The number of partitions of the by-type index is decided when the database is created
+     * and recorded in its version file, see {@link HGConfiguration#getTypeIndexPartitions()}.
+     * Databases created before partitioning existed have a single partition.
+     */
+    private int typeIndexPartitions()
+    {
+        HGDatabaseVersionFile versionFile = HGEnvironment.getVersions(location);
+        String recorded = versionFile.getVersion(TYPE_INDEX_PARTITIONS);
+        if (recorded != null)
+        	return Integer.parseInt(recorded);
+        int partitions = versionFile.getVersion("hgdb") == null ? config.getTypeIndexPartitions() : 1;
+        versionFile.setVersion(TYPE_INDEX_PARTITIONS, Integer.toString(partitions));
+        return partitions;
+    }
+    
 	/**
      * <p>Open the database if it's not already open.</p>
      */
@@ -313,12 +343,15 @@ public /*final*/ class HyperGraph implements HyperNode
             store.getTransactionManager().addTransactionEventListener(txEvent -> eventManager.dispatch(this, txEvent));
 	        cache = config.getCacheImplementation();
 	        cache.setHyperGraph(this);
-	        HGCache<HGPersistentHandle, IncidenceSet> incidenceCache = 
-	        	new LRUCache<HGPersistentHandle, IncidenceSet>(0.9f, 0.3f);
-	        ((LRUCache<HGPersistentHandle, IncidenceSet>)incidenceCache).setLockImplementation(
-                    new ReentrantReadWriteLock()	                                                                                           
-	        		/* new HGLock(this, INCIDENCE_CACHE_ID) */);
-	        	// new SimpleCache<HGPersistentHandle, IncidenceSet>();
+	        HGCache<HGPersistentHandle, IncidenceSet> incidenceCache = config.getIncidenceCacheImplementation();
+	        if (incidenceCache == null)
+	        {
+		        incidenceCache = new LRUCache<HGPersistentHandle, IncidenceSet>(0.9f, 0.3f);
+		        ((LRUCache<HGPersistentHandle, IncidenceSet>)incidenceCache).setLockImplementation(
+	                    new ReentrantReadWriteLock()	                                                                                           
+		        		/* new HGLock(this, INCIDENCE_CACHE_ID) */);
+		        	// new SimpleCache<HGPersistentHandle, IncidenceSet>();
+	        }
 	        incidenceCache.setResolver(new ISRefResolver(this));
 	        cache.setIncidenceCache(incidenceCache);
 	        
@@ -327,12 +360,23 @@ public /*final*/ class HyperGraph implements HyperNode
 	        //
 	        // Make sure system indices are created.
 	        //
-	        indexByType = store.getIndex(TYPES_INDEX_NAME, 
-	                                     BAtoHandle.getInstance(this.getHandleFactory()), 
-	                                     BAtoHandle.getInstance(this.getHandleFactory()), 
-	                                     null,
-	                                     null,
-	                                     true);	        						     	        
+	        int typePartitions = typeIndexPartitions();
+	        if (typePartitions == 1)
+		        indexByType = store.getIndex(TYPES_INDEX_NAME, 
+		                                     BAtoHandle.getInstance(this.getHandleFactory()), 
+		                                     BAtoHandle.getInstance(this.getHandleFactory()), 
+		                                     null,
+		                                     null,
+		                                     true);
+	        else
+	        	indexByType = new PartitionedTypeIndex(store.getIndex(PARTITIONED_TYPES_INDEX_NAME,
+	        														  BAtoBA.getInstance(),
+	        														  BAtoHandle.getInstance(this.getHandleFactory()),
+	        														  null,
+	        														  null,
+	        														  true),
+	        										   getHandleFactory(),
+	        										   typePartitions);
 	        indexByValue = store.getIndex(VALUES_INDEX_NAME, 
 	                                      BAtoHandle.getInstance(this.getHandleFactory()), 
 	                                      BAtoHandle.getInstance(this.getHandleFactory()), 
@@ -844,6 +888,72 @@ public /*final*/ class HyperGraph implements HyperNode
         return (T)loaded.getSecond();        
     }
 
+    /**
+     * <p>Retrieve several atoms at once. Atoms already in the cache are returned right
+     * away and the storage links of all others are read with a single call to the
+     * storage layer, within a single transaction.</p>
+     * 
+     * @param handles The handles of the atoms.
+     * @return A list holding the atom of each handle at the same position, or <code>null</code>
+     * at positions whose handle doesn't refer to an existing atom.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getAll(final Collection<? extends HGHandle> handles)
+    {
+    	final Object [] result = new Object[handles.size()];
+    	final HGPersistentHandle [] persistent = new HGPersistentHandle[result.length];
+    	final HGLiveHandle [] live = new HGLiveHandle[result.length];
+    	final int [] missPositions = new int[result.length];
+    	int missCount = 0, i = 0;
+    	for (HGHandle handle : handles)
+    	{
+    		stats.atomAccessed();
+    		HGLiveHandle liveHandle = handle instanceof HGLiveHandle ? (HGLiveHandle)handle 
+    																 : cache.get((HGPersistentHandle)handle);
+    		if (liveHandle != null && liveHandle.getRef() == null)
+    		{
+    			// Evicted, see the same case in get(HGHandle). 
+    			HGLiveHandle existing = cache.get(liveHandle.getPersistent());
+    			if (existing != null && existing.getRef() != null)
+    				liveHandle = existing;
+    		}
+    		Object atom = liveHandle == null ? null : liveHandle.getRef();
+    		if (atom != null)
+    		{
+    			result[i] = atom;
+    			eventManager.dispatch(HyperGraph.this, new HGAtomAccessedEvent(liveHandle, atom));
+    		}
+    		else
+    		{
+    			persistent[missCount] = getPersistentHandle(handle);
+    			live[missCount] = liveHandle;
+    			missPositions[missCount++] = i;
+    		}
+    		i++;
+    	}
+    	if (missCount > 0)
+    	{
+    		final HGPersistentHandle [] misses = Arrays.copyOf(persistent, missCount);
+    		List<Pair<HGLiveHandle, Object>> loaded = getTransactionManager().ensureTransaction(() -> {
+    			HGPersistentHandle [][] links = store.getLinks(misses);
+    			ArrayList<Pair<HGLiveHandle, Object>> L = new ArrayList<Pair<HGLiveHandle, Object>>(links.length);
+    			for (int j = 0; j < links.length; j++)
+    				L.add(links[j] == null ? null : loadAtom(misses[j], live[j], links[j]));
+    			return L;
+    		}, HGTransactionConfig.READONLY);
+    		for (int j = 0; j < missCount; j++)
+    		{
+    			Pair<HGLiveHandle, Object> p = loaded.get(j);
+    			if (p != null)
+    			{
+    				result[missPositions[j]] = p.getSecond();
+    				eventManager.dispatch(HyperGraph.this, new HGAtomAccessedEvent(p.getFirst(), p.getSecond()));
+    			}
+    		}
+    	}
+    	return (List<T>)Arrays.asList(result);
+    }
+    
     /**
      * <p>Return the handle of the specified atom.</p>
      * 
@@ -1285,7 +1395,7 @@ public /*final*/ class HyperGraph implements HyperNode
 	    			layout[i + 2] = getPersistentHandle(outgoingSet.getTargetAt(i));
 	    	store.store(atomHandle.getPersistent(), layout);
 	    	indexByType.addEntry(layout[0], atomHandle.getPersistent());
-	    	indexByValue.addEntry(layout[1], atomHandle.getPersistent());
+	    	indexValue(layout[0], layout[1], atomHandle.getPersistent(), instance);
             HyperGraph.this.atomAdded(atomHandle.getPersistent(), instance, flags);	    		    	
 	    	ReadyRef<HGHandle[]> linkRef = null;
 	    	if (outgoingSet != null)
@@ -1387,6 +1497,50 @@ public /*final*/ class HyperGraph implements HyperNode
     	return cache.getIncidenceCache().get(getPersistentHandle(handle));
     }
     
+    /**
+     * <p>Return the <code>IncidenceSet</code>s of several atoms. Sets already in the incidence
+     * cache are returned right away and all others are read with a single call to the 
+     * storage layer.</p>
+     * 
+     * @param handles The handles of the atoms whose incidence sets are desired.
+     * @return A list holding the incidence set of each atom at the same position. 
+     */
+    public List<IncidenceSet> getIncidenceSets(final Collection<? extends HGHandle> handles)
+    {
+    	final HGCache<HGPersistentHandle, IncidenceSet> incidenceCache = cache.getIncidenceCache();
+    	final IncidenceSet [] result = new IncidenceSet[handles.size()];
+    	final HGPersistentHandle [] keys = new HGPersistentHandle[result.length];
+    	final ArrayList<HGPersistentHandle> misses = new ArrayList<HGPersistentHandle>();
+    	int i = 0;
+    	for (HGHandle h : handles)
+    	{
+    		keys[i] = getPersistentHandle(h);
+    		if ((result[i] = incidenceCache.getIfLoaded(keys[i])) == null)
+    			misses.add(keys[i]);
+    		i++;
+    	}
+    	if (misses.isEmpty())
+    		return Arrays.asList(result);
+    	getTransactionManager().ensureTransaction(() -> {
+    		HGPersistentHandle [] missArray = misses.toArray(new HGPersistentHandle[misses.size()]);
+    		HGPersistentHandle [][] members = store.getIncidenceSets(missArray);
+    		Map<HGPersistentHandle, HGPersistentHandle[]> prefetched = new HashMap<HGPersistentHandle, HGPersistentHandle[]>();
+    		for (int j = 0; j < missArray.length; j++)
+    			prefetched.put(missArray[j], members[j]);
+    		Runnable resolveMisses = () -> {
+    			for (int j = 0; j < result.length; j++)
+    				if (result[j] == null)
+    					result[j] = incidenceCache.get(keys[j]);
+    		};
+    		if (incidenceCache.getResolver() instanceof ISRefResolver)
+    			((ISRefResolver)incidenceCache.getResolver()).withPrefetched(prefetched, resolveMisses);
+    		else
+    			resolveMisses.run();
+    		return null;
+    	}, HGTransactionConfig.READONLY);
+    	return Arrays.asList(result);
+    }
+    
     public int getSystemFlags(HGHandle handle)
     {
         if (!config.isUseSystemAtomAttributes())
@@ -1545,7 +1699,7 @@ public /*final*/ class HyperGraph implements HyperNode
 	        if (payload instanceof HGTypeHolder)
 	        	((HGTypeHolder<HGAtomType>)payload).setAtomType(type);    	        	        	        
 	        indexByType.addEntry(pTypeHandle, lHandle.getPersistent());
-	        indexByValue.addEntry(valueHandle, lHandle.getPersistent());
+	        indexValue(pTypeHandle, valueHandle, lHandle.getPersistent(), payload);
 	        idx_manager.maybeIndex(pTypeHandle, type, lHandle.getPersistent(), payload);	        
 	        return lHandle;    
     	} });    	
@@ -1584,7 +1738,7 @@ public /*final*/ class HyperGraph implements HyperNode
 	        if (payload instanceof HGTypeHolder)
 	        	((HGTypeHolder<HGAtomType>)payload).setAtomType(type);    	        	        	        
 	        indexByType.addEntry(pTypeHandle, pHandle);
-	        indexByValue.addEntry(valueHandle, pHandle);
+	        indexValue(pTypeHandle, valueHandle, pHandle, payload);
 	        idx_manager.maybeIndex(pTypeHandle, type, pHandle, payload);	
 	        //
 	        // Update the incidence sets of all its targets.
@@ -1633,11 +1787,22 @@ public /*final*/ class HyperGraph implements HyperNode
      * @return
      */
     private Pair<HGLiveHandle, Object> loadAtom(final HGPersistentHandle persistentHandle,  final HGLiveHandle liveHandle)    
+    {
+    	return loadAtom(persistentHandle, liveHandle, null);
+    }
+    
+    /**
+     * Same as {@link #loadAtom(HGPersistentHandle, HGLiveHandle)}, but with the atom's storage
+     * link already read when <code>prefetchedLink</code> is not <code>null</code>.
+     */
+    private Pair<HGLiveHandle, Object> loadAtom(final HGPersistentHandle persistentHandle,  
+    											final HGLiveHandle liveHandle,
+    											final HGPersistentHandle [] prefetchedLink)    
     {
     	return getTransactionManager().ensureTransaction(new Callable<Pair<HGLiveHandle, Object>>() 
  	    { public Pair<HGLiveHandle, Object> call() {
 	        Object instance;        
-	        HGPersistentHandle [] link = store.getLink(persistentHandle);
+	        HGPersistentHandle [] link = prefetchedLink != null ? prefetchedLink : store.getLink(persistentHandle);
 	        
 	        if (link == null)
 	        {
@@ -2057,7 +2222,7 @@ public /*final*/ class HyperGraph implements HyperNode
 	    		layout[1] = TypeUtils.storeValue(this, newValue, type);
 	    	layout[0] = getPersistentHandle(typeHandle);
 	    	indexByValue.removeEntry(oldValueHandle, pHandle);
-	    	indexByValue.addEntry(layout[1], pHandle);
+	    	indexValue(layout[0], layout[1], pHandle, newValue);
 	    	
 	    	HGPersistentHandle [] newLayout;
 	        
@@ -2122,7 +2287,7 @@ public /*final*/ class HyperGraph implements HyperNode
     	//2012.08.07 hilpold already called in previous method: oldType.release(layout[1]);
     	indexByValue.removeEntry(layout[1], instanceHandle);
     	layout[1] = TypeUtils.storeValue(this, oldInstance, newType);
-    	indexByValue.addEntry(layout[1], instanceHandle);
+    	indexValue(layout[0], layout[1], instanceHandle, oldInstance);
     	store.store(instanceHandle, layout);
     	
     	Object newInstance = rawMake(layout, newType, instanceHandle);
@@ -2244,12 +2409,25 @@ public /*final*/ class HyperGraph implements HyperNode
     	}    	
     }
     
+    /**
+     * Record an atom in the by-value index, unless the configuration leaves its type out.
+     * Type atoms are always recorded because some type constructors look them up by value.
+     */
+    private void indexValue(HGPersistentHandle typeHandle, 
+    						HGPersistentHandle valueHandle, 
+    						HGPersistentHandle atomHandle, 
+    						Object instance)
+    {
+    	if (instance instanceof HGAtomType || idx_manager.isValueIndexed(typeHandle))
+    		indexByValue.addEntry(valueHandle, atomHandle);
+    }
+    
     private HGAtomAttrib getAtomAttributes(HGPersistentHandle handle)
     {
     	return systemAttributesDB.findFirst(handle);    	
     }
     
-    private void setAtomAttributes(HGPersistentHandle handle, HGAtomAttrib attribs)
+    void setAtomAttributes(HGPersistentHandle handle, HGAtomAttrib attribs)
     {
     	systemAttributesDB.removeAllEntries(handle);
     	systemAttributesDB.addEntry(handle, attribs);
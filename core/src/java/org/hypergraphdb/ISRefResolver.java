@@ -7,9 +7,10 @@
  */
 package org.hypergraphdb;
 
-import java.util.ArrayList;
+import java.util.Map;
 
 import org.hypergraphdb.handle.HGLiveHandle;
+import org.hypergraphdb.handle.UUIDPersistentHandle;
 
 import org.hypergraphdb.storage.StorageBasedIncidenceSet;
 import org.hypergraphdb.transaction.TxCacheSet;
@@ -19,6 +20,7 @@ import org.hypergraphdb.util.CountMe;
 import org.hypergraphdb.util.DummyReadWriteLock;
 import org.hypergraphdb.util.HGSortedSet;
 import org.hypergraphdb.util.HGUtils;
+import org.hypergraphdb.util.PackedUUIDHandleSet;
 import org.hypergraphdb.util.RefCountedMap;
 import org.hypergraphdb.util.RefResolver;
 
@@ -36,7 +38,10 @@ class ISRefResolver implements RefResolver<HGPersistentHandle, IncidenceSet>
 {
 	HyperGraph graph;
 	int keepInMemoryThreshold;
+	boolean packed;
 	RefCountedMap<HGPersistentHandle, SetTxBox<HGHandle>> writeMap;
+	ThreadLocal<Map<HGPersistentHandle, HGPersistentHandle[]>> prefetched =
+		new ThreadLocal<Map<HGPersistentHandle, HGPersistentHandle[]>>();
 
 	RefResolver<HGPersistentHandle, HGSortedSet<HGHandle>> loader =
 		new RefResolver<HGPersistentHandle, HGSortedSet<HGHandle>>()
@@ -47,11 +52,9 @@ class ISRefResolver implements RefResolver<HGPersistentHandle, IncidenceSet>
 				try
 				{
 					int size = rs == HGSearchResult.EMPTY ? 0 : ((CountMe)rs).count();
-					HGPersistentHandle [] A = new HGPersistentHandle[size];
-					for (int i = 0; i < A.length; i++)
-						A[i] = rs.next();
-					ArrayBasedSet<HGHandle> impl = new ArrayBasedSet<HGHandle>(A);
-					impl.setLock(new DummyReadWriteLock());
+					HGSortedSet<HGHandle> impl = newSet(size);
+					while (rs.hasNext())
+						impl.add(rs.next());
 					return impl;
 				}
 				finally
@@ -66,48 +69,95 @@ class ISRefResolver implements RefResolver<HGPersistentHandle, IncidenceSet>
 		this.graph = graph;
 		this.keepInMemoryThreshold = graph.getConfig().getMaxCachedIncidenceSetSize();
 		this.writeMap = new RefCountedMap<HGPersistentHandle, SetTxBox<HGHandle>>(null);
+		this.packed = graph.getHandleFactory().nullHandle() instanceof UUIDPersistentHandle;
+	}
+
+	/**
+	 * <p>Create an empty in-memory incidence set with room for <code>capacity</code> elements. UUID
+	 * handles are kept packed in a primitive array, any other kind in an {@link ArrayBasedSet}.
+	 * Access is synchronized by the enclosing <code>TxCacheSet</code> so the set doesn't
+	 * need its own lock.</p>
+	 */
+	HGSortedSet<HGHandle> newSet(int capacity)
+	{
+		if (packed)
+		{
+			PackedUUIDHandleSet S = new PackedUUIDHandleSet(capacity);
+			S.setLock(new DummyReadWriteLock());
+			return S;
+		}
+		else
+		{
+			ArrayBasedSet<HGHandle> S = new ArrayBasedSet<HGHandle>(HGUtils.EMPTY_HANDLE_ARRAY, capacity);
+			S.setLock(new DummyReadWriteLock());
+			return S;
+		}
+	}
+
+	/**
+	 * <p>Run <code>action</code> with the incidence sets in <code>members</code> already read
+	 * from storage. While the action runs, resolving any of those keys on the current thread
+	 * builds the set from the given members instead of reading it again.</p>
+	 */
+	void withPrefetched(Map<HGPersistentHandle, HGPersistentHandle[]> members, Runnable action)
+	{
+		Map<HGPersistentHandle, HGPersistentHandle[]> previous = prefetched.get();
+		prefetched.set(members);
+		try
+		{
+			action.run();
+		}
+		finally
+		{
+			prefetched.set(previous);
+		}
 	}
 
 	public IncidenceSet resolve(HGPersistentHandle key)
 	{
+		Map<HGPersistentHandle, HGPersistentHandle[]> members = prefetched.get();
+		if (members != null && members.containsKey(key))
+			return resolve(key, members.get(key));
 		HGSearchResult<HGPersistentHandle> rs = graph.getStore().getIncidenceResultSet(key);
 		try
 		{
-//			int size = keepInMemoryThreshold;
-//			if (keepInMemoryThreshold < Integer.MAX_VALUE)
-//				size = rs == HGSearchResult.EMPTY ? 0 : ((CountMe)rs).count();
-//			if (size <= keepInMemoryThreshold)
-//			{
-//		    
-		    
-				ArrayList<HGPersistentHandle> A = new ArrayList<HGPersistentHandle>();
-				while (rs.hasNext())
-				{
-					A.add(rs.next());
-					if (A.size() > keepInMemoryThreshold)
-						return new IncidenceSet(key, new StorageBasedIncidenceSet(key, graph));					
-				}
-				ArrayBasedSet<HGHandle> impl = new ArrayBasedSet<HGHandle>(A.toArray(HGUtils.EMPTY_HANDLE_ARRAY));
-				impl.setLock(new DummyReadWriteLock());
-				IncidenceSet result = new IncidenceSet(key,
-														new TxCacheSet<HGPersistentHandle, HGHandle>(
-																graph.getTransactionManager(),
-																impl,
-																key,
-																loader,
-																writeMap));
-				HGLiveHandle lHandle = graph.cache.get(key);
-				if (lHandle != null)
-					graph.updateLinksInIncidenceSet(result, lHandle);
-				return result;
-				
-//			}
-//			else
-//				return new IncidenceSet(key, new StorageBasedIncidenceSet(key, graph));
+			HGSortedSet<HGHandle> impl = newSet(4);
+			while (rs.hasNext())
+			{
+				impl.add(rs.next());
+				if (impl.size() > keepInMemoryThreshold)
+					return new IncidenceSet(key, new StorageBasedIncidenceSet(key, graph));
+			}
+			return cached(key, impl);
 		}
 		finally
 		{
 			rs.close();
 		}
 	}
+
+	private IncidenceSet resolve(HGPersistentHandle key, HGPersistentHandle [] members)
+	{
+		if (members.length > keepInMemoryThreshold)
+			return new IncidenceSet(key, new StorageBasedIncidenceSet(key, graph));
+		HGSortedSet<HGHandle> impl = newSet(members.length);
+		for (HGPersistentHandle h : members)
+			impl.add(h);
+		return cached(key, impl);
+	}
+
+	private IncidenceSet cached(HGPersistentHandle key, HGSortedSet<HGHandle> impl)
+	{
+		IncidenceSet result = new IncidenceSet(key,
+											   new TxCacheSet<HGPersistentHandle, HGHandle>(
+													   graph.getTransactionManager(),
+													   impl,
+													   key,
+													   loader,
+													   writeMap));
+		HGLiveHandle lHandle = graph.cache.get(key);
+		if (lHandle != null)
+			graph.updateLinksInIncidenceSet(result, lHandle);
+		return result;
+	}
 }
\ No newline at end of file
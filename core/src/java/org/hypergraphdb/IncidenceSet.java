@@ -8,6 +8,7 @@
 package org.hypergraphdb;
 
 import org.hypergraphdb.atom.HGAtomSet;
+import org.hypergraphdb.storage.StorageBasedIncidenceSet;
 import org.hypergraphdb.util.HGSortedSet;
 
 /**
@@ -37,4 +38,16 @@ public final class IncidenceSet extends HGAtomSet
 	{
 		return atom;
 	}
+	
+	/**
+	 * <p>Return an estimate of the memory used by this incidence set, in bytes. Large
+	 * incidence sets are read from storage on demand and hold no elements.</p>
+	 */
+	public long estimateMemoryUsage()
+	{
+		if (impl instanceof StorageBasedIncidenceSet)
+			return 64;
+		else
+			return 64 + 48L * impl.size(); // handle object and reference to it
+	}
 }
\ No newline at end of file
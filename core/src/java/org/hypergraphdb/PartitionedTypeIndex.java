@@ -0,0 +1,436 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.hypergraphdb.handle.UUIDPersistentHandle;
+import org.hypergraphdb.storage.HGIndexStats;
+import org.hypergraphdb.util.ArrayBasedSet;
+import org.hypergraphdb.util.HGUtils;
+
+/**
+ * <p>
+ * The by-type index of a database created with more than one type index partition
+ * (see {@link HGConfiguration#getTypeIndexPartitions()}). The atoms of a type are spread
+ * among the keys <code>(type handle, partition)</code> of an underlying index, where the
+ * partition is given by a hash of the low-order bits of the atom handle. Those are the
+ * bits that vary between consecutive handles of sequential and time ordered handle
+ * factories, so atoms added together are spread evenly. This class presents the
+ * partitions as one ordinary index keyed by type handle, merging the partitions of a type
+ * to yield its atoms sorted by handle, just like a single key would.
+ * </p>
+ */
+class PartitionedTypeIndex implements HGIndex<HGPersistentHandle, HGPersistentHandle>
+{
+	private final HGIndex<byte[], HGPersistentHandle> impl;
+	private final HGHandleFactory handleFactory;
+	private final int partitions;
+	private final int handleSize;
+
+	PartitionedTypeIndex(HGIndex<byte[], HGPersistentHandle> impl, HGHandleFactory handleFactory, int partitions)
+	{
+		this.impl = impl;
+		this.handleFactory = handleFactory;
+		this.partitions = partitions;
+		this.handleSize = handleFactory.nullHandle().toByteArray().length;
+	}
+
+	int partitionOf(HGPersistentHandle atom)
+	{
+		long bits;
+		if (atom instanceof UUIDPersistentHandle)
+			bits = ((UUIDPersistentHandle)atom).getLeastSignificantBits();
+		else
+		{
+			bits = 0;
+			for (byte b : atom.toByteArray())
+				bits = (bits << 8) | (b & 0xFF);
+		}
+		// The finalizer of MurmurHash3, so that every bit of the handle counts.
+		bits ^= bits >>> 33;
+		bits *= 0xff51afd7ed558ccdL;
+		bits ^= bits >>> 33;
+		bits *= 0xc4ceb9fe1a85ec53L;
+		bits ^= bits >>> 33;
+		return (int)bits & (partitions - 1);
+	}
+
+	byte [] key(HGPersistentHandle type, int partition)
+	{
+		byte [] key = new byte[handleSize + 1];
+		type.toByteArray(key, 0);
+		key[handleSize] = (byte)partition;
+		return key;
+	}
+
+	public String getName()
+	{
+		return impl.getName();
+	}
+
+	public void addEntry(HGPersistentHandle type, HGPersistentHandle atom)
+	{
+		impl.addEntry(key(type, partitionOf(atom)), atom);
+	}
+
+	public void removeEntry(HGPersistentHandle type, HGPersistentHandle atom)
+	{
+		impl.removeEntry(key(type, partitionOf(atom)), atom);
+	}
+
+	public void removeAllEntries(HGPersistentHandle type)
+	{
+		for (int p = 0; p < partitions; p++)
+			impl.removeAllEntries(key(type, p));
+	}
+
+	public HGPersistentHandle findFirst(HGPersistentHandle type)
+	{
+		HGPersistentHandle first = null;
+		for (int p = 0; p < partitions; p++)
+		{
+			HGPersistentHandle atom = impl.findFirst(key(type, p));
+			if (atom != null && (first == null || atom.compareTo(first) < 0))
+				first = atom;
+		}
+		return first;
+	}
+
+	public HGRandomAccessResult<HGPersistentHandle> find(HGPersistentHandle type)
+	{
+		return new PartitionsResult(type);
+	}
+
+	public void open()
+	{
+		impl.open();
+	}
+
+	public void close()
+	{
+		impl.close();
+	}
+
+	public boolean isOpen()
+	{
+		return impl.isOpen();
+	}
+
+	/**
+	 * The distinct type handles, read from the underlying keys. There are only as many
+	 * as there are types with instances, so they are simply collected in memory.
+	 */
+	public HGRandomAccessResult<HGPersistentHandle> scanKeys()
+	{
+		ArrayList<HGPersistentHandle> types = new ArrayList<HGPersistentHandle>();
+		HGRandomAccessResult<byte[]> rs = impl.scanKeys();
+		try
+		{
+			byte [] last = null;
+			while (rs.hasNext())
+			{
+				byte [] key = rs.next();
+				if (last != null && HGUtils.eq(Arrays.copyOf(key, handleSize), last))
+					continue;
+				last = Arrays.copyOf(key, handleSize);
+				types.add(handleFactory.makeHandle(last));
+			}
+		}
+		finally
+		{
+			rs.close();
+		}
+		return new ArrayBasedSet<HGPersistentHandle>(types.toArray(HGUtils.EMPTY_HANDLE_ARRAY)).getSearchResult();
+	}
+
+	public HGRandomAccessResult<HGPersistentHandle> scanValues()
+	{
+		return impl.scanValues();
+	}
+
+	@Deprecated
+	public long count()
+	{
+		return stats().keys(Long.MAX_VALUE, false).value();
+	}
+
+	@Deprecated
+	public long count(HGPersistentHandle type)
+	{
+		return stats().valuesOfKey(type, Long.MAX_VALUE, false).value();
+	}
+
+	public HGIndexStats<HGPersistentHandle, HGPersistentHandle> stats()
+	{
+		final HGIndexStats<byte[], HGPersistentHandle> stats = impl.stats();
+		return new HGIndexStats<HGPersistentHandle, HGPersistentHandle>()
+		{
+			public Count entries(long cost, boolean isEstimateOk)
+			{
+				return stats.entries(cost, isEstimateOk);
+			}
+
+			public Count keys(long cost, boolean isEstimateOk)
+			{
+				if (cost < Long.MAX_VALUE)
+					return null;
+				HGRandomAccessResult<HGPersistentHandle> rs = scanKeys();
+				long n = 0;
+				try
+				{
+					while (rs.hasNext()) { rs.next(); n++; }
+				}
+				finally
+				{
+					rs.close();
+				}
+				final long result = n;
+				return new Count(() -> result, false);
+			}
+
+			public Count valuesOfKey(HGPersistentHandle type, long cost, boolean isEstimateOk)
+			{
+				long n = 0;
+				boolean isEstimate = false;
+				for (int p = 0; p < partitions; p++)
+				{
+					Count c = stats.valuesOfKey(key(type, p), cost, isEstimateOk);
+					if (c == null)
+						return null;
+					n += c.value();
+					isEstimate |= c.isEstimate();
+				}
+				final long result = n;
+				return new Count(() -> result, isEstimate);
+			}
+
+			public Count values(long cost, boolean isEstimateOk)
+			{
+				return stats.values(cost, isEstimateOk);
+			}
+
+			public Count keysWithValue(HGPersistentHandle atom, long cost, boolean isEstimateOk)
+			{
+				return stats.keysWithValue(atom, cost, isEstimateOk);
+			}
+		};
+	}
+
+	/**
+	 * The atoms of one type, merged from the results of its partitions. Going forward,
+	 * each partition result stays positioned on its smallest element not returned yet,
+	 * its head. Going backward or jumping repositions every partition, and the heads are
+	 * then found again from the current element when going forward resumes. Partition
+	 * results are opened again, rather than rewound, before being repositioned because not
+	 * every storage positions a single key result at the start of its own key on
+	 * <code>goBeforeFirst</code>.
+	 */
+	private class PartitionsResult implements HGRandomAccessResult<HGPersistentHandle>
+	{
+		HGPersistentHandle type;
+		List<HGRandomAccessResult<HGPersistentHandle>> parts = 
+			new ArrayList<HGRandomAccessResult<HGPersistentHandle>>(Collections.nCopies(partitions, null));
+		boolean [] moved = new boolean[partitions];
+		HGPersistentHandle [] heads = null;
+		HGPersistentHandle current = null;
+		boolean afterLast = false;
+
+		PartitionsResult(HGPersistentHandle type)
+		{
+			this.type = type;
+		}
+
+		// The result of partition p positioned before its first element.
+		HGRandomAccessResult<HGPersistentHandle> fresh(int p)
+		{
+			if (parts.get(p) != null && moved[p])
+			{
+				parts.get(p).close();
+				parts.set(p, null);
+			}
+			if (parts.get(p) == null)
+			{
+				parts.set(p, impl.find(key(type, p)));
+				moved[p] = false;
+			}
+			return parts.get(p);
+		}
+
+		HGRandomAccessResult<HGPersistentHandle> moving(int p)
+		{
+			moved[p] = true;
+			return parts.get(p);
+		}
+
+		// The smallest element of partition p not smaller than value, the partition
+		// result being left on it.
+		HGPersistentHandle firstAtLeast(int p, HGPersistentHandle value)
+		{
+			HGRandomAccessResult<HGPersistentHandle> rs = fresh(p);
+			if (value == null)
+				return rs.hasNext() ? moving(p).next() : null;
+			GotoResult r = moving(p).goTo(value, false);
+			return r == GotoResult.nothing ? null : rs.current();
+		}
+
+		// The greatest element of partition p smaller than value, or the greatest of all
+		// when value is null.
+		HGPersistentHandle lastBefore(int p, HGPersistentHandle value)
+		{
+			HGRandomAccessResult<HGPersistentHandle> rs = fresh(p);
+			if (value != null && moving(p).goTo(value, false) != GotoResult.nothing)
+				return rs.hasPrev() ? rs.prev() : null;
+			// Every element of the partition is smaller, walk to the last one.
+			rs = fresh(p);
+			HGPersistentHandle last = null;
+			while (rs.hasNext())
+				last = moving(p).next();
+			return last;
+		}
+
+		HGPersistentHandle [] heads()
+		{
+			if (heads == null)
+			{
+				heads = new HGPersistentHandle[partitions];
+				for (int p = 0; p < partitions; p++)
+				{
+					HGPersistentHandle head = firstAtLeast(p, current);
+					if (head != null && head.equals(current))
+						head = parts.get(p).hasNext() ? parts.get(p).next() : null;
+					heads[p] = head;
+				}
+			}
+			return heads;
+		}
+
+		int smallestHead()
+		{
+			HGPersistentHandle [] H = heads();
+			int smallest = -1;
+			for (int p = 0; p < partitions; p++)
+				if (H[p] != null && (smallest < 0 || H[p].compareTo(H[smallest]) < 0))
+					smallest = p;
+			return smallest;
+		}
+
+		HGPersistentHandle previous()
+		{
+			heads = null;
+			HGPersistentHandle previous = null;
+			for (int p = 0; p < partitions; p++)
+			{
+				HGPersistentHandle last = lastBefore(p, afterLast ? null : current);
+				if (last != null && (previous == null || last.compareTo(previous) > 0))
+					previous = last;
+			}
+			return previous;
+		}
+
+		public HGPersistentHandle current()
+		{
+			if (current == null || afterLast)
+				throw new NoSuchElementException();
+			return current;
+		}
+
+		public boolean isOrdered()
+		{
+			return true;
+		}
+
+		public boolean hasNext()
+		{
+			return !afterLast && smallestHead() >= 0;
+		}
+
+		public HGPersistentHandle next()
+		{
+			int p = afterLast ? -1 : smallestHead();
+			if (p < 0)
+				throw new NoSuchElementException();
+			current = heads[p];
+			heads[p] = parts.get(p).hasNext() ? parts.get(p).next() : null;
+			return current;
+		}
+
+		public boolean hasPrev()
+		{
+			return (afterLast || current != null) && previous() != null;
+		}
+
+		public HGPersistentHandle prev()
+		{
+			HGPersistentHandle previous = afterLast || current != null ? previous() : null;
+			if (previous == null)
+				throw new NoSuchElementException();
+			current = previous;
+			afterLast = false;
+			heads = null;
+			return current;
+		}
+
+		public GotoResult goTo(HGPersistentHandle value, boolean exactMatch)
+		{
+			if (exactMatch)
+			{
+				int p = partitionOf(value);
+				fresh(p);
+				heads = null;
+				if (moving(p).goTo(value, true) != GotoResult.found)
+					return GotoResult.nothing;
+				current = value;
+				afterLast = false;
+				return GotoResult.found;
+			}
+			HGPersistentHandle closest = null;
+			for (int p = 0; p < partitions; p++)
+			{
+				HGPersistentHandle first = firstAtLeast(p, value);
+				if (first != null && (closest == null || first.compareTo(closest) < 0))
+					closest = first;
+			}
+			heads = null;
+			if (closest == null)
+				return GotoResult.nothing;
+			current = closest;
+			afterLast = false;
+			return closest.equals(value) ? GotoResult.found : GotoResult.close;
+		}
+
+		public void goAfterLast()
+		{
+			afterLast = true;
+			heads = null;
+		}
+
+		public void goBeforeFirst()
+		{
+			current = null;
+			afterLast = false;
+			heads = null;
+		}
+
+		public void close()
+		{
+			for (HGRandomAccessResult<HGPersistentHandle> rs : parts)
+				if (rs != null)
+					rs.close();
+		}
+
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -37,7 +37,7 @@ import org.hypergraphdb.type.HGAtomType;
 // This is a temporary implementation, to research a bit what's involved in
 // estimating result set sizes...
 @SuppressWarnings("unchecked")
-class ResultSizeEstimation
+public class ResultSizeEstimation
 {
 	// count() should return the size of of the result set if the condition
 	// is evaluated in cost() should simply estimate how costly it would
@@ -90,6 +90,33 @@ class ResultSizeEstimation
 	
 	static Counter fullScanCounter = new FullScanCounter();
 	
+	/**
+	 * <p>
+	 * Return the number of atoms satisfying a condition if it can be obtained at a
+	 * counting cost no greater than <code>maxCost</code>, or -1 otherwise. This is
+	 * used by the query compiler to order the conjuncts of an <code>And</code>, so
+	 * conditions that would need a compilation of their own (<code>And</code>,
+	 * <code>Or</code>) or that could define a new type are never counted. 
+	 * </p>
+	 */
+	public static long estimate(HyperGraph graph, HGQueryCondition cond, long maxCost)
+	{
+		if (cond instanceof And || cond instanceof Or || cond.getClass() == AtomValueCondition.class)
+			return -1;
+		Counter counter = countersMap.get(cond.getClass());
+		if (counter == null)
+			return -1;
+		try
+		{
+			return counter.cost(graph, cond) <= maxCost ? counter.count(graph, cond) : -1;
+		}
+		catch (RuntimeException ex)
+		{
+			// e.g. a variable that's not bound yet
+			return -1;
+		}
+	}
+	
 	static {
 		
 	countersMap.put(AnyAtomCondition.class, new Counter()
@@ -168,7 +195,8 @@ class ResultSizeEstimation
             if (typeHandle == null)
             	return 0;
             HGAtomType type = graph.getTypeSystem().getType(typeHandle);
-            if (type instanceof HGSearchable && cond.getOperator() == ComparisonOperator.EQ)
+            if (type instanceof HGSearchable && cond.getOperator() == ComparisonOperator.EQ &&
+            	graph.getIndexManager().isValueIndexed(typeHandle))
             {
             	@SuppressWarnings("rawtypes")
 				HGSearchResult<HGPersistentHandle> rs = ((HGSearchable)type).find(cond.getValue());
@@ -195,11 +223,12 @@ class ResultSizeEstimation
 			TypedValueCondition cond = (TypedValueCondition)x;
             HGHandle typeHandle = cond.getTypeHandle();
             if (typeHandle == null)
-            	typeHandle = graph.getTypeSystem().getTypeHandle(cond.getJavaClass());
+            	typeHandle = graph.getTypeSystem().getTypeHandleIfDefined(cond.getJavaClass());
             if (typeHandle == null)
             	return 0;
             HGAtomType type = graph.getTypeSystem().getType(typeHandle);
-            if (type instanceof HGSearchable && cond.getOperator() == ComparisonOperator.EQ)
+            if (type instanceof HGSearchable && cond.getOperator() == ComparisonOperator.EQ &&
+            	graph.getIndexManager().isValueIndexed(typeHandle))
             	return 2;
             else
             	return Integer.MAX_VALUE;
@@ -0,0 +1,79 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.algorithms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hypergraphdb.HGHandle;
+
+/**
+ * <p>
+ * The result of an all-pairs shortest path computation such as
+ * {@link GraphClassics#floyd_warshall(java.util.Collection, HGALGenerator, org.hypergraphdb.util.Mapping)}
+ * or {@link GraphClassics#johnson(java.util.Collection, HGALGenerator, org.hypergraphdb.util.Mapping)}.
+ * Distances and the predecessor of each atom on the shortest path from every other
+ * atom are held in flat primitive arrays, indexed by the dense ids of the atoms.
+ * </p>
+ */
+public class AllPairsShortestPaths
+{
+	private final HandleIdMap ids;
+	private final double [] distance;
+	private final int [] predecessor;
+
+	AllPairsShortestPaths(HandleIdMap ids, double [] distance, int [] predecessor)
+	{
+		this.ids = ids;
+		this.distance = distance;
+		this.predecessor = predecessor;
+	}
+
+	/**
+	 * <p>Return the atoms between which distances were computed.</p>
+	 */
+	public List<HGHandle> getAtoms()
+	{
+		List<HGHandle> L = new ArrayList<HGHandle>(ids.size());
+		for (int i = 0; i < ids.size(); i++)
+			L.add(ids.handle(i));
+		return L;
+	}
+
+	/**
+	 * <p>Return the length of the shortest path from <code>from</code> to <code>to</code>
+	 * or <code>null</code> if there's no such path or one of the atoms was not part of
+	 * the computation.</p>
+	 */
+	public Double getDistance(HGHandle from, HGHandle to)
+	{
+		int i = ids.get(from), j = ids.get(to);
+		if (i < 0 || j < 0)
+			return null;
+		double d = distance[i * ids.size() + j];
+		return d == Double.POSITIVE_INFINITY ? null : d;
+	}
+
+	/**
+	 * <p>Return the atoms on the shortest path from <code>from</code> to <code>to</code>,
+	 * both included, or <code>null</code> if there's no such path.</p>
+	 */
+	public List<HGHandle> getPath(HGHandle from, HGHandle to)
+	{
+		int i = ids.get(from), j = ids.get(to);
+		if (i < 0 || j < 0 || distance[i * ids.size() + j] == Double.POSITIVE_INFINITY)
+			return null;
+		List<HGHandle> path = new ArrayList<HGHandle>();
+		for (int k = j; k != i; k = predecessor[i * ids.size() + k])
+			path.add(ids.handle(k));
+		path.add(ids.handle(i));
+		Collections.reverse(path);
+		return path;
+	}
+}
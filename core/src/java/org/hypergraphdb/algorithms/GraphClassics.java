@@ -12,7 +12,6 @@ import java.util.stream.StreamSupport;
 
 import org.hypergraphdb.*;
 import org.hypergraphdb.atom.HGAtomSet;
-import org.hypergraphdb.handle.HGLiveHandle;
 import org.hypergraphdb.util.Mapping;
 import org.hypergraphdb.util.Pair;
 import org.hypergraphdb.util.SimpleStack;
@@ -149,12 +148,11 @@ public class GraphClassics
 	 * </p>
 	 * 
 	 * <p>
-	 * The method allows you to optionally pass your own main data structures 
-	 * for use in the algorithm's implementation. If you pass <code>null</code> as the
-	 * value of a data structure, the method will create and use its own. Thus,
-	 * if you care about the actual paths computed and/or all distances between
+	 * The search itself works on primitive arrays indexed by dense atom ids (see 
+	 * {@link #a_star(HGHandle, HGHandle, HGALGenerator, Mapping, Mapping, Map, Map)}).
+	 * If you care about the actual paths computed and/or all distances between
 	 * nodes on those paths, you should provide your own <code>distanceMatrix</code>
-	 * and <code>predecessorMatrix</code>.     
+	 * and <code>predecessorMatrix</code>, they are filled at the end of the search.
 	 * </p>
 	 * 
 	 * <p>
@@ -173,11 +171,10 @@ public class GraphClassics
 	 * function 1 will be used.
 	 * @param distanceMatrix The data structure holding the computed distances between
 	 * the <code>start</code> atom and all other atoms encountered during the search. Only
-	 * <code>put</code> and <code>get</code> are used so you can provide an implementation
-	 * that only implements those two methods. If <code>null</code> is passed, a new
-	 * temporary <code>HashMap</code> will be instantiated and used throughout the search.
+	 * <code>put</code> is used so you can provide an implementation that only implements 
+	 * that method. If <code>null</code>, the distances will not be stored anywhere.
 	 * @param predecessorMatrix A map storing the predecessor atoms computed during
-	 * the search. Again, only <code>put</code> and <code>get</code> are used here. If
+	 * the search. Again, only <code>put</code> is used here. If
 	 * <code>null</code>, the predecessor will not be stored anywhere. 
 	 * @return The distance between <code>start</code> and <code>goal</code> or
 	 * <code>null</code> if <code>start</code> is unreachable from <code>goal</code>.
@@ -189,115 +186,561 @@ public class GraphClassics
 				 			       Map<HGHandle, Double> distanceMatrix,
 				 			       Map<HGHandle, HGHandle> predecessorMatrix)
 	{
-		final Map<HGHandle, Double> dm = 
-			distanceMatrix == null ? new HashMap<HGHandle, Double>() : distanceMatrix;
-		dm.put(start, 0.0);
-		Comparator<HGHandle> comp = new Comparator<HGHandle>()
+		return a_star(start, goal, adjacencyGenerator, weight, null, distanceMatrix, predecessorMatrix);
+	}
+
+	/**
+	 * <p>
+	 * Simplified interface to the A* algorithm, without output distance and predecessor
+	 * matrices.
+	 * </p>
+	 */
+	public static Double a_star(final HGHandle start,
+								final HGHandle goal,
+								final HGALGenerator adjacencyGenerator,
+								Mapping<HGHandle, Double> weight,
+								Mapping<HGHandle, Double> heuristic)
+	{
+		return a_star(start, goal, adjacencyGenerator, weight, heuristic, null, null);
+	}
+
+	/**
+	 * <p>
+	 * Implements the A* algorithm for finding the shortest path between two atoms. This is
+	 * Dijkstra's algorithm where atoms are explored in the order of their distance from
+	 * <code>start</code> plus the estimate, given by the <code>heuristic</code>, of their
+	 * distance to <code>goal</code>. The heuristic must not overestimate the remaining
+	 * distance for the result to be a shortest path. When it is consistent (the estimate
+	 * never decreases by more than the weight of a link when moving along that link),
+	 * each atom is explored at most once. Inconsistent heuristics are supported at the cost of
+	 * exploring some atoms again.
+	 * </p>
+	 * 
+	 * <p>
+	 * Atoms get dense integer ids as they are encountered and the distances, predecessors
+	 * and the priority queue are kept in primitive arrays indexed by those ids. The optional
+	 * <code>distanceMatrix</code> and <code>predecessorMatrix</code> are only filled at the
+	 * end of the search.
+	 * </p>
+	 * 
+	 * @param start
+	 * @param goal The target atom. If <code>null</code>, all atoms reachable from <code>start</code>
+	 * are explored and <code>null</code> is returned.
+	 * @param adjacencyGenerator
+	 * @param weight The function that computes that weight of a link. If <code>null</code>, the
+	 * constant function 1 will be used. Weights must not be negative.
+	 * @param heuristic The estimate of the distance from an atom to <code>goal</code>. If
+	 * <code>null</code>, the estimate is 0 and the search is the same as Dijkstra's algorithm.
+	 * @param distanceMatrix If not <code>null</code>, receives the distance from <code>start</code>
+	 * of all atoms encountered during the search.
+	 * @param predecessorMatrix If not <code>null</code>, receives the predecessor of all atoms
+	 * encountered during the search on the shortest path from <code>start</code> found so far.
+	 * @return The distance between <code>start</code> and <code>goal</code> or
+	 * <code>null</code> if <code>goal</code> is unreachable from <code>start</code>.
+	 */
+	public static Double a_star(final HGHandle start,
+								final HGHandle goal,
+								final HGALGenerator adjacencyGenerator,
+								Mapping<HGHandle, Double> weight,
+								Mapping<HGHandle, Double> heuristic,
+								Map<HGHandle, Double> distanceMatrix,
+								Map<HGHandle, HGHandle> predecessorMatrix)
+	{
+		HGPersistentHandle goalHandle = goal == null ? null : goal.getPersistent();
+		HandleIdMap ids = new HandleIdMap();
+		IndexedDoubleHeap open = new IndexedDoubleHeap();
+		double [] distance = new double[16];
+		double [] estimate = new double[16];
+		int [] predecessor = new int[16];
+		BitSet closed = new BitSet();
+		ids.add(start);
+		distance[0] = 0.0;
+		predecessor[0] = -1;
+		estimate[0] = heuristic == null ? 0.0 : heuristic.eval(start);
+		open.offer(0, estimate[0]);
+		Double result = null;
+		while (!open.isEmpty())
 		{
-			private int compareHandles(HGHandle left, HGHandle right)
+			int a = open.poll();
+			if (goalHandle != null && ids.handle(a).getPersistent().equals(goalHandle))
 			{				
-				HGPersistentHandle x = left instanceof HGPersistentHandle ?
-						(HGPersistentHandle)left : ((HGLiveHandle)left).getPersistent();
-				HGPersistentHandle y = right instanceof HGPersistentHandle ?
-						(HGPersistentHandle)right : ((HGLiveHandle)right).getPersistent();
-				return x.compareTo(y);				
+				result = distance[a];
+				break;
 			}
-			
-			public int compare(HGHandle left, HGHandle right)
+			closed.set(a);
+			HGSearchResult<Pair<HGHandle, HGHandle>> neighbors = adjacencyGenerator.generate(ids.handle(a));
+			try
 			{
-				Double l = dm.get(left);
-				Double r = dm.get(right);
-				if (l == null)
-					if (r == null)
-						return compareHandles(left, right);
-					else
-						return 1;
-				else if (r == null)
-					return -1;
-				else
+				while (neighbors.hasNext())
 				{
-					int c = l.compareTo(r);
-					if (c == 0)
-						c = compareHandles(left, right);
-					return c;
+					Pair<HGHandle, HGHandle> n = neighbors.next();
+					int size = ids.size();
+					int b = ids.add(n.getSecond());
+					if (b == size)
+					{
+						if (b == distance.length)
+						{
+							distance = Arrays.copyOf(distance, b * 2);
+							estimate = Arrays.copyOf(estimate, b * 2);
+							predecessor = Arrays.copyOf(predecessor, b * 2);
+						}
+						distance[b] = Double.POSITIVE_INFINITY;
+						predecessor[b] = -1;
+						estimate[b] = heuristic == null ? 0.0 : heuristic.eval(n.getSecond());
+					}
+					else if (heuristic == null && closed.get(b))
+						continue;
+					double d = distance[a] + (weight == null ? 1.0 : weight.eval(n.getFirst()));
+					if (d < distance[b])
+					{
+						distance[b] = d;
+						predecessor[b] = a;
+						closed.clear(b);
+						open.offer(b, d + estimate[b]);
+					}
 				}
 			}
-		};
-		if (weight == null)
-			weight = new Mapping<HGHandle, Double>() { public Double eval(HGHandle link) { return 1.0; } };
+			finally
+			{
+				neighbors.close();
+			}
+		}
+		for (int i = 0; i < ids.size(); i++)
+		{
+			if (distanceMatrix != null && distance[i] != Double.POSITIVE_INFINITY)
+				distanceMatrix.put(ids.handle(i), distance[i]);
+			if (predecessorMatrix != null && predecessor[i] >= 0)
+				predecessorMatrix.put(ids.handle(i), ids.handle(predecessor[i]));
+		}
+		return result;
+	}
 			
-		HGAtomSet settled = new HGAtomSet(); 
-		TreeSet<HGHandle> unsettled = new TreeSet<HGHandle>(comp);
-		unsettled.add(start);
-		while (!unsettled.isEmpty())		
+	/**
+	 * <p>
+	 * The links of a sub-graph as parallel primitive arrays of source ids, target ids and
+	 * weights, as needed by the algorithms that relax all links repeatedly or that run
+	 * several searches over the same sub-graph.
+	 * </p>
+	 */
+	private static final class LinkList
+	{
+		int [] from = new int[16];
+		int [] to = new int[16];
+		double [] weight = new double[16];
+		int size = 0;
+
+		void add(int a, int b, double w)
 		{
-			HGHandle a = unsettled.first();
-			unsettled.remove(a);
-			if (a.equals(goal))
-				return dm.get(goal);
-			settled.add(a);
-			HGSearchResult<Pair<HGHandle, HGHandle>> neighbors = adjacencyGenerator.generate(a);
-			double weightCurrent = dm.get(a).doubleValue();
-			while (neighbors.hasNext())
+			if (size == from.length)
 			{
-				Pair<HGHandle, HGHandle> n = neighbors.next();
-				if (settled.contains(n.getSecond()))
-					continue;
-				Double weightN = dm.get(n.getSecond());
-				Double weightAN = weight.eval(n.getFirst());
-				if (weightN == null)
-				{
-					dm.put(n.getSecond(), weightCurrent + weightAN);
-					unsettled.add(n.getSecond());
-					if (predecessorMatrix != null)
-						predecessorMatrix.put(n.getSecond(), a);					
-				}
-				else if (weightN > weightCurrent + weightAN)
+				from = Arrays.copyOf(from, size * 2);
+				to = Arrays.copyOf(to, size * 2);
+				weight = Arrays.copyOf(weight, size * 2);
+			}
+			from[size] = a;
+			to[size] = b;
+			weight[size++] = w;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Collect the links between the atoms of <code>ids</code>, in the order of their ids. If
+	 * <code>extend</code> is true, adjacent atoms not yet in <code>ids</code> are added, so
+	 * that all atoms reachable from the initial ones are covered, otherwise they are ignored.
+	 * </p>
+	 */
+	private static LinkList collectLinks(HandleIdMap ids,
+										 boolean extend,
+										 HGALGenerator adjacencyGenerator,
+										 Mapping<HGHandle, Double> weight)
+	{
+		LinkList links = new LinkList();
+		for (int a = 0; a < ids.size(); a++)
+		{
+			HGSearchResult<Pair<HGHandle, HGHandle>> neighbors = adjacencyGenerator.generate(ids.handle(a));
+			try
+			{
+				while (neighbors.hasNext())
 				{
-					// new distance found for n, re-insert at appropriate position
-					unsettled.remove(n.getSecond());
-					dm.put(n.getSecond(), weightCurrent + weightAN);
-					unsettled.add(n.getSecond());
-					if (predecessorMatrix != null)
-						predecessorMatrix.put(n.getSecond(), a);
+					Pair<HGHandle, HGHandle> n = neighbors.next();
+					int b = extend ? ids.add(n.getSecond()) : ids.get(n.getSecond());
+					if (b >= 0)
+						links.add(a, b, weight == null ? 1.0 : weight.eval(n.getFirst()));
 				}
 			}
-			neighbors.close();
+			finally
+			{
+				neighbors.close();
+			}
 		}
-		return null;
+		return links;
 	}
 
-	public void bellman_ford()
+	/**
+	 * <p>
+	 * Relax all links until no distance changes, at most <code>n - 1</code> times for
+	 * <code>n</code> atoms, and return <code>false</code> if a distance still changes after
+	 * that, which means there's a negative cycle.
+	 * </p>
+	 */
+	private static boolean relaxAll(LinkList links, int n, double [] distance, int [] predecessor)
 	{
-		
+		for (int round = 0; round < n; round++)
+		{
+			boolean changed = false;
+			for (int i = 0; i < links.size; i++)
+			{
+				double d = distance[links.from[i]] + links.weight[i];
+				if (d < distance[links.to[i]])
+				{
+					distance[links.to[i]] = d;
+					if (predecessor != null)
+						predecessor[links.to[i]] = links.from[i];
+					changed = true;
+				}
+			}
+			if (!changed)
+				return true;
+		}
+		return false;
 	}
 	
-	public void a_star()
+	/**
+	 * <p>
+	 * Implements the Bellman-Ford algorithm for finding the shortest paths from an atom to all
+	 * atoms reachable from it. Unlike Dijkstra's algorithm, links may have negative weights. The
+	 * links of the reachable sub-graph are read once, into primitive arrays, and then relaxed
+	 * until the distances don't change anymore.
+	 * </p>
+	 * 
+	 * @param start
+	 * @param adjacencyGenerator
+	 * @param weight The function that computes that weight of a link. If <code>null</code>, the
+	 * constant function 1 will be used.
+	 * @param distanceMatrix If not <code>null</code>, receives the distance from <code>start</code>
+	 * of all reachable atoms.
+	 * @param predecessorMatrix If not <code>null</code>, receives the predecessor of all reachable
+	 * atoms on their shortest path from <code>start</code>.
+	 * @return <code>false</code> if a cycle with negative weight is reachable from
+	 * <code>start</code>, in which case shortest paths are not defined and the matrices are left
+	 * untouched, and <code>true</code> otherwise.
+	 */
+	public static boolean bellman_ford(final HGHandle start,
+									   final HGALGenerator adjacencyGenerator,
+									   Mapping<HGHandle, Double> weight,
+									   Map<HGHandle, Double> distanceMatrix,
+									   Map<HGHandle, HGHandle> predecessorMatrix)
 	{
+		HandleIdMap ids = new HandleIdMap();
+		ids.add(start);
+		LinkList links = collectLinks(ids, true, adjacencyGenerator, weight);
+		int n = ids.size();
+		double [] distance = new double[n];
+		int [] predecessor = new int[n];
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		Arrays.fill(predecessor, -1);
+		distance[0] = 0.0;
+		if (!relaxAll(links, n, distance, predecessor))
+			return false;
+		for (int i = 0; i < n; i++)
+		{
+			if (distanceMatrix != null)
+				distanceMatrix.put(ids.handle(i), distance[i]);
+			if (predecessorMatrix != null && predecessor[i] >= 0)
+				predecessorMatrix.put(ids.handle(i), ids.handle(predecessor[i]));
+		}
+		return true;
 	}
 	
-	public void johnson()
+	/**
+	 * <p>
+	 * Implements Johnson's algorithm for finding the shortest paths between all pairs of atoms
+	 * of a sub-graph. Links may have negative weights: they are first reweighted, using the
+	 * distances computed by the Bellman-Ford algorithm from a virtual atom linked to all others,
+	 * and then Dijkstra's algorithm is run from every atom. This is faster than
+	 * {@link #floyd_warshall(Collection, HGALGenerator, Mapping)} when the sub-graph is sparse.
+	 * </p>
+	 * 
+	 * @param atoms The atoms of the sub-graph. Links leading to other atoms are ignored.
+	 * @param adjacencyGenerator
+	 * @param weight The function that computes that weight of a link. If <code>null</code>, the
+	 * constant function 1 will be used.
+	 * @return The distances and shortest paths between all pairs of atoms or <code>null</code> if
+	 * the sub-graph has a cycle with negative weight.
+	 */
+	public static AllPairsShortestPaths johnson(Collection<HGHandle> atoms,
+												final HGALGenerator adjacencyGenerator,
+												Mapping<HGHandle, Double> weight)
 	{
-		
+		HandleIdMap ids = new HandleIdMap(atoms.size());
+		for (HGHandle h : atoms)
+			ids.add(h);
+		LinkList links = collectLinks(ids, false, adjacencyGenerator, weight);
+		int n = ids.size();
+		// distances from a virtual atom linked to all atoms with weight 0
+		double [] potential = new double[n];
+		if (!relaxAll(links, n + 1, potential, null))
+			return null;
+		// adjacency of each atom as a range of a single array of link indices, sorted by source
+		int [] offset = new int[n + 1];
+		for (int i = 0; i < links.size; i++)
+			offset[links.from[i] + 1]++;
+		for (int i = 0; i < n; i++)
+			offset[i + 1] += offset[i];
+		int [] outgoing = new int[links.size];
+		int [] fill = Arrays.copyOf(offset, n);
+		for (int i = 0; i < links.size; i++)
+			outgoing[fill[links.from[i]]++] = i;
+		double [] distance = new double[n * n];
+		int [] predecessor = new int[n * n];
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		Arrays.fill(predecessor, -1);
+		IndexedDoubleHeap open = new IndexedDoubleHeap(n);
+		double [] reweighted = new double[n];
+		BitSet closed = new BitSet(n);
+		for (int s = 0; s < n; s++)
+		{
+			Arrays.fill(reweighted, Double.POSITIVE_INFINITY);
+			closed.clear();
+			int row = s * n;
+			reweighted[s] = 0.0;
+			open.offer(s, 0.0);
+			while (!open.isEmpty())
+			{
+				int a = open.poll();
+				closed.set(a);
+				distance[row + a] = reweighted[a] - potential[s] + potential[a];
+				for (int k = offset[a]; k < offset[a + 1]; k++)
+				{
+					int i = outgoing[k], b = links.to[i];
+					if (closed.get(b))
+						continue;
+					// never negative after reweighting, except for rounding
+					double d = reweighted[a] + Math.max(0.0, links.weight[i] + potential[a] - potential[b]);
+					if (d < reweighted[b])
+					{
+						reweighted[b] = d;
+						predecessor[row + b] = a;
+						open.offer(b, d);
+					}
+				}
+			}
+		}
+		return new AllPairsShortestPaths(ids, distance, predecessor);
 	}
 	
-	public void floyd_warshall()
+	/**
+	 * <p>
+	 * Implements the Floyd-Warshall algorithm for finding the shortest paths between all pairs
+	 * of atoms of a sub-graph. Links may have negative weights. The algorithm takes time cubic
+	 * in the number of atoms, regardless of the number of links, so prefer
+	 * {@link #johnson(Collection, HGALGenerator, Mapping)} for sparse sub-graphs.
+	 * </p>
+	 * 
+	 * @param atoms The atoms of the sub-graph. Links leading to other atoms are ignored.
+	 * @param adjacencyGenerator
+	 * @param weight The function that computes that weight of a link. If <code>null</code>, the
+	 * constant function 1 will be used.
+	 * @return The distances and shortest paths between all pairs of atoms or <code>null</code> if
+	 * the sub-graph has a cycle with negative weight.
+	 */
+	public static AllPairsShortestPaths floyd_warshall(Collection<HGHandle> atoms,
+													   final HGALGenerator adjacencyGenerator,
+													   Mapping<HGHandle, Double> weight)
 	{
-		
+		HandleIdMap ids = new HandleIdMap(atoms.size());
+		for (HGHandle h : atoms)
+			ids.add(h);
+		LinkList links = collectLinks(ids, false, adjacencyGenerator, weight);
+		int n = ids.size();
+		double [] distance = new double[n * n];
+		int [] predecessor = new int[n * n];
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		Arrays.fill(predecessor, -1);
+		for (int i = 0; i < n; i++)
+			distance[i * n + i] = 0.0;
+		for (int i = 0; i < links.size; i++)
+		{
+			int at = links.from[i] * n + links.to[i];
+			if (links.weight[i] < distance[at])
+			{
+				distance[at] = links.weight[i];
+				predecessor[at] = links.from[i];
+			}
+		}
+		for (int k = 0; k < n; k++)
+		{
+			int rowK = k * n;
+			for (int i = 0; i < n; i++)
+			{
+				double ik = distance[i * n + k];
+				if (ik == Double.POSITIVE_INFINITY)
+					continue;
+				int rowI = i * n;
+				for (int j = 0; j < n; j++)
+				{
+					double d = ik + distance[rowK + j];
+					if (d < distance[rowI + j])
+					{
+						distance[rowI + j] = d;
+						predecessor[rowI + j] = predecessor[rowK + j];
+					}
+				}
+			}
+		}
+		for (int i = 0; i < n; i++)
+			if (distance[i * n + i] < 0)
+				return null;
+		return new AllPairsShortestPaths(ids, distance, predecessor);
 	}
 	
-	public void prim(HGHandle start, 
-					 final HGALGenerator adjencyGenerator, 
-					 Mapping<HGHandle, Double> weight,
-					 Map<HGHandle, HGHandle> parentMatrix)
+	/**
+	 * <p>
+	 * Implements Prim's algorithm for finding a minimum spanning tree of the sub-graph connected
+	 * to <code>start</code>. The adjacency generator is expected to treat links as undirected,
+	 * otherwise the result is a tree of the atoms reachable from <code>start</code> that is not
+	 * necessarily minimal.
+	 * </p>
+	 * 
+	 * @param start The root of the tree.
+	 * @param adjacencyGenerator
+	 * @param weight The function that computes that weight of a link. If <code>null</code>, the
+	 * constant function 1 will be used.
+	 * @param parentMatrix If not <code>null</code>, receives the parent in the tree of every atom
+	 * except <code>start</code>.
+	 * @return The total weight of the spanning tree.
+	 */
+	public static double prim(HGHandle start, 
+							  final HGALGenerator adjacencyGenerator, 
+							  Mapping<HGHandle, Double> weight,
+							  Map<HGHandle, HGHandle> parentMatrix)
 	{
-		
+		HandleIdMap ids = new HandleIdMap();
+		IndexedDoubleHeap open = new IndexedDoubleHeap();
+		int [] parent = new int[16];
+		BitSet inTree = new BitSet();
+		ids.add(start);
+		parent[0] = -1;
+		open.offer(0, 0.0);
+		double total = 0.0;
+		while (!open.isEmpty())
+		{
+			int a = open.poll();
+			inTree.set(a);
+			total += open.priority(a);
+			if (parentMatrix != null && parent[a] >= 0)
+				parentMatrix.put(ids.handle(a), ids.handle(parent[a]));
+			HGSearchResult<Pair<HGHandle, HGHandle>> neighbors = adjacencyGenerator.generate(ids.handle(a));
+			try
+			{
+				while (neighbors.hasNext())
+				{
+					Pair<HGHandle, HGHandle> n = neighbors.next();
+					int size = ids.size();
+					int b = ids.add(n.getSecond());
+					if (b == size && b == parent.length)
+						parent = Arrays.copyOf(parent, b * 2);
+					if (inTree.get(b))
+						continue;
+					double w = weight == null ? 1.0 : weight.eval(n.getFirst());
+					if (b == size || (open.contains(b) && w < open.priority(b)))
+					{
+						parent[b] = a;
+						open.offer(b, w);
+					}
+				}
+			}
+			finally
+			{
+				neighbors.close();
+			}
+		}
+		return total;
 	}
 	
-	public void kruskall(Iterator<HGHandle> links,
-						 Mapping<HGHandle, Double> weight,
-						 Map<HGHandle, HGHandle> parentMatrix)
+	private static int find(int [] parent, int x)
 	{
+		while (parent[x] != x)
+		{
+			parent[x] = parent[parent[x]];
+			x = parent[x];
+		}
+		return x;
+	}
 		
+	/**
+	 * <p>
+	 * Implements Kruskal's algorithm for finding a minimum spanning forest of the graph made
+	 * of the given links. Links are considered in increasing order of weight and a link is part
+	 * of the forest if it connects atoms not already connected by the links before it. A link
+	 * with more than two targets connects all of them: it is part of the forest as soon as it
+	 * connects at least two atoms that were not connected before.
+	 * </p>
+	 * 
+	 * @param graph The graph the links belong to.
+	 * @param links The links of the graph.
+	 * @param weight The function that computes that weight of a link. If <code>null</code>, the
+	 * constant function 1 will be used.
+	 * @param forest If not <code>null</code>, receives the links that are part of the spanning
+	 * forest, in increasing order of weight.
+	 * @return The total weight of the spanning forest.
+	 */
+	public static double kruskall(HyperGraph graph,
+								  Iterator<HGHandle> links,
+								  Mapping<HGHandle, Double> weight,
+								  Collection<HGHandle> forest)
+	{
+		HandleIdMap ids = new HandleIdMap();
+		HandleIdMap linkIds = new HandleIdMap();
+		IndexedDoubleHeap byWeight = new IndexedDoubleHeap();
+		// targets of link i are in targets[offset[i]..offset[i + 1]]
+		int [] offset = new int[17];
+		int [] targets = new int[32];
+		while (links.hasNext())
+		{
+			HGHandle linkHandle = links.next();
+			int size = linkIds.size();
+			int l = linkIds.add(linkHandle);
+			if (l < size)
+				continue;
+			HGLink link = (HGLink)graph.get(linkHandle);
+			if (l + 1 == offset.length)
+				offset = Arrays.copyOf(offset, offset.length * 2);
+			int at = offset[l];
+			for (int i = 0; i < link.getArity(); i++)
+			{
+				if (at == targets.length)
+					targets = Arrays.copyOf(targets, at * 2);
+				targets[at++] = ids.add(link.getTargetAt(i));
+			}
+			offset[l + 1] = at;
+			byWeight.offer(l, weight == null ? 1.0 : weight.eval(linkHandle));
+		}
+		int [] component = new int[ids.size()];
+		for (int i = 0; i < component.length; i++)
+			component[i] = i;
+		double total = 0.0;
+		while (!byWeight.isEmpty())
+		{
+			int l = byWeight.poll();
+			boolean connects = false;
+			for (int i = offset[l] + 1; i < offset[l + 1]; i++)
+			{
+				int x = find(component, targets[offset[l]]), y = find(component, targets[i]);
+				if (x != y)
+				{
+					component[y] = x;
+					connects = true;
+				}
+			}
+			if (connects)
+			{
+				total += byWeight.priority(l);
+				if (forest != null)
+					forest.add(linkIds.handle(l));
+			}
+		}
+		return total;
 	}
 }
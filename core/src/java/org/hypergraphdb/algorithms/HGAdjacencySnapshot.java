@@ -0,0 +1,645 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.algorithms;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+import org.hypergraphdb.HGException;
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGHandleFactory;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGQuery.hg;
+import org.hypergraphdb.HGSearchResult;
+import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.HyperNode;
+import org.hypergraphdb.atom.HGSubgraph;
+import org.hypergraphdb.event.HGAtomAddedEvent;
+import org.hypergraphdb.event.HGAtomDefinedEvent;
+import org.hypergraphdb.event.HGAtomEvent;
+import org.hypergraphdb.event.HGAtomRemovedEvent;
+import org.hypergraphdb.event.HGAtomReplacedEvent;
+import org.hypergraphdb.event.HGEvent;
+import org.hypergraphdb.event.HGEventManager;
+import org.hypergraphdb.event.HGListener;
+import org.hypergraphdb.query.HGAtomPredicate;
+import org.hypergraphdb.query.HGQueryCondition;
+import org.hypergraphdb.util.Pair;
+
+/**
+ * <p>
+ * An immutable projection of the adjacency lists of a graph, or of a part of it, in
+ * compressed sparse row form. Atoms are given dense <code>int</code> ids and, for every
+ * atom, the ids of its adjacent atoms and of the links leading to them are stored
+ * contiguously, in off-heap memory or in a memory-mapped file. Iterative analytics can
+ * then walk the graph as many times as needed without going back to storage.
+ * </p>
+ *
+ * <p>
+ * The adjacency of an atom is the one produced by the <code>HGALGenerator</code> given
+ * at construction, restricted to the atoms of the snapshot. The snapshot can be walked either
+ * through the primitive API ({@link #edgesBegin(int)}, {@link #edgesEnd(int)},
+ * {@link #target(int)}, {@link #link(int)}), or through {@link #asGenerator()} by code
+ * written against <code>HGALGenerator</code>.
+ * </p>
+ *
+ * <p>
+ * A snapshot doesn't change when the graph does, but a {@link Tracker} obtained from
+ * {@link #track()} records the atoms added, removed or replaced by committed transactions and
+ * produces an up-to-date snapshot by only regenerating the adjacency lists these changes affect.
+ * </p>
+ */
+public final class HGAdjacencySnapshot
+{
+	private static final int MAGIC = 0x48474153;
+	private static final int VERSION = 1;
+
+	private final HyperGraph graph;
+	private final HandleIdMap atoms;
+	private final HandleIdMap links;
+	private final IntBuffer offsets;
+	private final IntBuffer targets;
+	private final IntBuffer linkIds;
+
+	// Needed to refresh the snapshot, null for snapshots loaded from a file
+	private final HGALGenerator generator;
+	private final HyperNode node;
+	private final HGQueryCondition condition;
+
+	/**
+	 * <p>A growable <code>int</code> array in off-heap memory.</p>
+	 */
+	private static final class IntSink
+	{
+		IntBuffer buffer;
+
+		IntSink(int capacity)
+		{
+			buffer = allocate(Math.max(16, capacity));
+		}
+
+		static IntBuffer allocate(int capacity)
+		{
+			return ByteBuffer.allocateDirect(capacity * 4).asIntBuffer();
+		}
+
+		void add(int x)
+		{
+			if (!buffer.hasRemaining())
+			{
+				IntBuffer larger = allocate(buffer.capacity() * 2);
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
+			}
+			buffer.put(x);
+		}
+
+		IntBuffer result()
+		{
+			IntBuffer B = buffer.duplicate();
+			B.flip();
+			return B.slice().asReadOnlyBuffer();
+		}
+	}
+
+	private HGAdjacencySnapshot(HyperGraph graph,
+								HandleIdMap atoms,
+								HandleIdMap links,
+								IntBuffer offsets,
+								IntBuffer targets,
+								IntBuffer linkIds,
+								HGALGenerator generator,
+								HyperNode node,
+								HGQueryCondition condition)
+	{
+		this.graph = graph;
+		this.atoms = atoms;
+		this.links = links;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.linkIds = linkIds;
+		this.generator = generator;
+		this.node = node;
+		this.condition = condition;
+	}
+
+	private static HyperGraph graphOf(HyperNode node)
+	{
+		if (node instanceof HyperGraph)
+			return (HyperGraph)node;
+		else if (node instanceof HGSubgraph)
+			return ((HGSubgraph)node).getHyperGraph();
+		else
+			throw new HGException("Can't find the graph of " + node);
+	}
+
+	/**
+	 * <p>Append to the sinks the adjacency list of an atom, as given by the generator and
+	 * restricted to the atoms of the snapshot.</p>
+	 */
+	private static void generate(HGALGenerator generator,
+								 HGHandle atom,
+								 HandleIdMap atoms,
+								 HandleIdMap links,
+								 IntSink targets,
+								 IntSink linkIds)
+	{
+		HGSearchResult<Pair<HGHandle, HGHandle>> rs = generator.generate(atom);
+		try
+		{
+			while (rs.hasNext())
+			{
+				Pair<HGHandle, HGHandle> p = rs.next();
+				int target = atoms.get(p.getSecond());
+				if (target < 0)
+					continue;
+				targets.add(target);
+				linkIds.add(links.add(p.getFirst()));
+			}
+		}
+		finally
+		{
+			rs.close();
+		}
+	}
+
+	/**
+	 * <p>Take a snapshot of the whole graph.</p>
+	 */
+	public static HGAdjacencySnapshot build(HyperGraph graph, HGALGenerator generator)
+	{
+		return build(graph, null, generator);
+	}
+
+	/**
+	 * <p>
+	 * Take a snapshot of the atoms of a graph or of a {@link HGSubgraph} satisfying a
+	 * condition.
+	 * </p>
+	 *
+	 * @param node The graph or subgraph.
+	 * @param condition The condition selecting the atoms of the snapshot or <code>null</code>
+	 * for all atoms of <code>node</code>. To be refreshed incrementally, the condition must
+	 * also be a <code>HGAtomPredicate</code>, otherwise a refresh takes a new snapshot.
+	 * @param generator The generator of the adjacency lists. Adjacent atoms that are not
+	 * part of the snapshot are ignored.
+	 */
+	public static HGAdjacencySnapshot build(HyperNode node, HGQueryCondition condition, HGALGenerator generator)
+	{
+		HyperGraph graph = graphOf(node);
+		HandleIdMap atoms = new HandleIdMap();
+		HGSearchResult<HGHandle> rs = node.find(condition == null ? hg.all() : condition);
+		try
+		{
+			while (rs.hasNext())
+				atoms.add(rs.next());
+		}
+		finally
+		{
+			rs.close();
+		}
+		HandleIdMap links = new HandleIdMap();
+		IntSink offsets = new IntSink(atoms.size() + 1), targets = new IntSink(atoms.size() * 2),
+				linkIds = new IntSink(atoms.size() * 2);
+		offsets.add(0);
+		for (int i = 0; i < atoms.size(); i++)
+		{
+			generate(generator, atoms.handle(i), atoms, links, targets, linkIds);
+			offsets.add(targets.buffer.position());
+		}
+		return new HGAdjacencySnapshot(graph, atoms, links, offsets.result(), targets.result(), linkIds.result(),
+									   generator, node, condition);
+	}
+
+	/**
+	 * <p>Return the number of atoms in the snapshot. Their ids go from 0 to
+	 * <code>size() - 1</code>.</p>
+	 */
+	public int size()
+	{
+		return atoms.size();
+	}
+
+	/**
+	 * <p>Return the total number of adjacency entries, i.e. of (atom, adjacent atom) pairs.</p>
+	 */
+	public int edgeCount()
+	{
+		return targets.limit();
+	}
+
+	/**
+	 * <p>Return the id of an atom or -1 if it is not part of the snapshot.</p>
+	 */
+	public int idOf(HGHandle atom)
+	{
+		return atoms.get(atom);
+	}
+
+	/**
+	 * <p>Return the handle of the atom with the given id.</p>
+	 */
+	public HGHandle atom(int id)
+	{
+		return atoms.handle(id);
+	}
+
+	/**
+	 * <p>Return the number of atoms adjacent to the atom with the given id.</p>
+	 */
+	public int degree(int id)
+	{
+		return offsets.get(id + 1) - offsets.get(id);
+	}
+
+	/**
+	 * <p>Return the index of the first adjacency entry of an atom. The entries of
+	 * atom <code>id</code> go from <code>edgesBegin(id)</code> to
+	 * <code>edgesEnd(id) - 1</code>.</p>
+	 */
+	public int edgesBegin(int id)
+	{
+		return offsets.get(id);
+	}
+
+	public int edgesEnd(int id)
+	{
+		return offsets.get(id + 1);
+	}
+
+	/**
+	 * <p>Return the id of the adjacent atom of an adjacency entry.</p>
+	 */
+	public int target(int edge)
+	{
+		return targets.get(edge);
+	}
+
+	/**
+	 * <p>Return the link id of an adjacency entry, see {@link #linkHandle(int)}.</p>
+	 */
+	public int link(int edge)
+	{
+		return linkIds.get(edge);
+	}
+
+	/**
+	 * <p>Return the handle of the link with the given id. Link ids are only
+	 * meaningful within a snapshot and the snapshots refreshed from it.</p>
+	 */
+	public HGHandle linkHandle(int linkId)
+	{
+		return links.handle(linkId);
+	}
+
+	/**
+	 * <p>Call <code>action</code> with the id of every atom adjacent to atom <code>id</code>.</p>
+	 */
+	public void forEachAdjacent(int id, IntConsumer action)
+	{
+		for (int e = offsets.get(id), end = offsets.get(id + 1); e < end; e++)
+			action.accept(targets.get(e));
+	}
+
+	/**
+	 * <p>
+	 * Return a generator producing the adjacency lists held in the snapshot. Atoms that
+	 * are not part of the snapshot have no adjacent atoms.
+	 * </p>
+	 */
+	public HGALGenerator asGenerator()
+	{
+		return new HGALGenerator()
+		{
+			public HGSearchResult<Pair<HGHandle, HGHandle>> generate(HGHandle h)
+			{
+				int id = atoms.get(h);
+				return id < 0 ? new EdgeResult(0, 0) : new EdgeResult(edgesBegin(id), edgesEnd(id));
+			}
+		};
+	}
+
+	private final class EdgeResult implements HGSearchResult<Pair<HGHandle, HGHandle>>
+	{
+		final int begin, end;
+		int edge;
+		Pair<HGHandle, HGHandle> current = null;
+
+		EdgeResult(int begin, int end)
+		{
+			this.begin = begin;
+			this.end = end;
+			this.edge = begin - 1;
+		}
+
+		private Pair<HGHandle, HGHandle> at(int e)
+		{
+			return current = new Pair<HGHandle, HGHandle>(links.handle(linkIds.get(e)), atoms.handle(targets.get(e)));
+		}
+
+		public boolean hasNext() { return edge + 1 < end; }
+		public Pair<HGHandle, HGHandle> next() { return at(++edge); }
+		public boolean hasPrev() { return edge > begin; }
+		public Pair<HGHandle, HGHandle> prev() { return at(--edge); }
+		public Pair<HGHandle, HGHandle> current() { return current; }
+		public boolean isOrdered() { return false; }
+		public void close() { }
+		public void remove() { throw new UnsupportedOperationException(); }
+	}
+
+	private static void writeHandles(ByteBuffer out, HandleIdMap handles, int handleSize)
+	{
+		for (int i = 0; i < handles.size(); i++)
+		{
+			byte [] B = handles.handle(i).getPersistent().toByteArray();
+			if (B.length != handleSize)
+				throw new HGException("Handles of different sizes in adjacency snapshot.");
+			out.put(B);
+		}
+	}
+
+	private static HandleIdMap readHandles(ByteBuffer in, int count, int handleSize, HGHandleFactory factory)
+	{
+		HandleIdMap handles = new HandleIdMap(count);
+		byte [] B = new byte[handleSize];
+		for (int i = 0; i < count; i++)
+		{
+			in.get(B);
+			handles.add(factory.makeHandle(B));
+		}
+		return handles;
+	}
+
+	private static void writeInts(ByteBuffer out, IntBuffer ints)
+	{
+		out.asIntBuffer().put(ints.duplicate());
+		out.position(out.position() + ints.limit() * 4);
+	}
+
+	private static IntBuffer mapInts(ByteBuffer in, int count)
+	{
+		ByteBuffer B = in.slice();
+		B.limit(count * 4);
+		in.position(in.position() + count * 4);
+		return B.asIntBuffer().asReadOnlyBuffer();
+	}
+
+	/**
+	 * <p>
+	 * Write the snapshot to a file that {@link #map(HyperGraph, File)} can later map into
+	 * memory. The file is limited to 2GB.
+	 * </p>
+	 */
+	public void save(File file) throws IOException
+	{
+		int handleSize = graph.getHandleFactory().nullHandle().toByteArray().length;
+		long length = 24L + (long)(atoms.size() + links.size()) * handleSize
+							+ 4L * (offsets.limit() + targets.limit() + linkIds.limit());
+		if (length > Integer.MAX_VALUE)
+			throw new HGException("Adjacency snapshot too large to be saved: " + length + " bytes.");
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+													StandardOpenOption.CREATE,
+													StandardOpenOption.TRUNCATE_EXISTING,
+													StandardOpenOption.READ,
+													StandardOpenOption.WRITE))
+		{
+			ByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+			out.putInt(MAGIC).putInt(VERSION).putInt(handleSize)
+			   .putInt(atoms.size()).putInt(links.size()).putInt(targets.limit());
+			writeHandles(out, atoms, handleSize);
+			writeHandles(out, links, handleSize);
+			writeInts(out, offsets);
+			writeInts(out, targets);
+			writeInts(out, linkIds);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Map a snapshot saved with {@link #save(File)} into memory. The adjacency lists are read
+	 * directly from the mapped file, only the handles are loaded in the heap. A mapped snapshot
+	 * doesn't know how it was taken and can't be {@link #track()}ed.
+	 * </p>
+	 */
+	public static HGAdjacencySnapshot map(HyperGraph graph, File file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.getInt() != MAGIC || in.getInt() != VERSION)
+				throw new HGException("File " + file + " is not an adjacency snapshot.");
+			int handleSize = in.getInt(), atomCount = in.getInt(), linkCount = in.getInt(), edgeCount = in.getInt();
+			HandleIdMap atoms = readHandles(in, atomCount, handleSize, graph.getHandleFactory());
+			HandleIdMap links = readHandles(in, linkCount, handleSize, graph.getHandleFactory());
+			IntBuffer offsets = mapInts(in, atomCount + 1);
+			IntBuffer targets = mapInts(in, edgeCount);
+			IntBuffer linkIds = mapInts(in, edgeCount);
+			return new HGAdjacencySnapshot(graph, atoms, links, offsets, targets, linkIds, null, null, null);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Start recording the changes made to the graph, so that the snapshot can be refreshed.
+	 * </p>
+	 */
+	public Tracker track()
+	{
+		if (generator == null)
+			throw new HGException("Snapshot mapped from a file can't be tracked.");
+		return new Tracker(this);
+	}
+
+	/**
+	 * <p>
+	 * Records the atoms added, removed or replaced in the graph after a snapshot was taken and
+	 * refreshes it. Changes are recorded through asynchronous event listeners when the event
+	 * manager supports them, in which case only committed changes are recorded, but a change is
+	 * picked up by a refresh only once its event has been delivered. Otherwise the events are
+	 * recorded as they happen, and the atoms of aborted transactions only cause some adjacency
+	 * lists to be needlessly regenerated. Call {@link #close()} to stop recording.
+	 * </p>
+	 */
+	public static final class Tracker implements HGListener
+	{
+		@SuppressWarnings("unchecked")
+		private static final Class<? extends HGAtomEvent> [] EVENTS = (Class<? extends HGAtomEvent> [])new Class<?>[] {
+			HGAtomAddedEvent.class, HGAtomDefinedEvent.class, HGAtomRemovedEvent.class, HGAtomReplacedEvent.class
+		};
+
+		private HGAdjacencySnapshot snapshot;
+		private Set<HGHandle> changed = ConcurrentHashMap.newKeySet();
+
+		private Tracker(HGAdjacencySnapshot snapshot)
+		{
+			this.snapshot = snapshot;
+			HGEventManager events = snapshot.graph.getEventManager();
+			for (Class<? extends HGAtomEvent> type : EVENTS)
+			{
+				try
+				{
+					events.addAsyncListener(type, this);
+				}
+				catch (UnsupportedOperationException ex)
+				{
+					events.addListener(type, this);
+				}
+			}
+		}
+
+		public Result handle(HyperGraph graph, HGEvent event)
+		{
+			changed.add(((HGAtomEvent)event).getAtomHandle());
+			return Result.ok;
+		}
+
+		public HGAdjacencySnapshot getSnapshot()
+		{
+			return snapshot;
+		}
+
+		/**
+		 * <p>Return a snapshot reflecting the changes recorded since the last refresh and
+		 * make it the current one.</p>
+		 */
+		public HGAdjacencySnapshot refresh()
+		{
+			if (changed.isEmpty())
+				return snapshot;
+			Set<HGHandle> batch = new HashSet<HGHandle>();
+			for (HGHandle h : changed)
+			{
+				batch.add(h);
+				changed.remove(h);
+			}
+			snapshot = snapshot.refresh(batch);
+			return snapshot;
+		}
+
+		/**
+		 * <p>Stop recording changes.</p>
+		 */
+		public void close()
+		{
+			HGEventManager events = snapshot.graph.getEventManager();
+			for (Class<? extends HGAtomEvent> type : EVENTS)
+				events.removeListener(type, this);
+		}
+	}
+
+	private boolean isMember(HGHandle h, HGAtomPredicate predicate)
+	{
+		if (node instanceof HGSubgraph && !((HGSubgraph)node).isMember(h))
+			return false;
+		return predicate == null || predicate.satisfies(graph, h);
+	}
+
+	/**
+	 * <p>Mark as dirty the atoms of the snapshot that are targets of <code>link</code>, if
+	 * it is a link, and those that are in the same links as <code>atom</code>.</p>
+	 */
+	private void markNeighbourhood(HGHandle atom, BitSet dirty)
+	{
+		HGPersistentHandle [] layout = graph.getStore().getLink(atom.getPersistent());
+		if (layout != null)
+			for (int i = 2; i < layout.length; i++)
+				if (atoms.get(layout[i]) >= 0)
+					dirty.set(atoms.get(layout[i]));
+		HGSearchResult<HGHandle> incident = graph.getIncidenceSet(atom).getSearchResult();
+		try
+		{
+			while (incident.hasNext())
+			{
+				layout = graph.getStore().getLink(incident.next().getPersistent());
+				if (layout != null)
+					for (int i = 2; i < layout.length; i++)
+						if (atoms.get(layout[i]) >= 0)
+							dirty.set(atoms.get(layout[i]));
+			}
+		}
+		finally
+		{
+			incident.close();
+		}
+	}
+
+	private HGAdjacencySnapshot refresh(Set<HGHandle> changed)
+	{
+		if (condition != null && !(condition instanceof HGAtomPredicate))
+			return build(node, condition, generator);
+		HGAtomPredicate predicate = (HGAtomPredicate)condition;
+		BitSet dirty = new BitSet(size()), dead = new BitSet(size()), deadLinks = new BitSet(links.size());
+		HandleIdMap newAtoms = new HandleIdMap();
+		for (HGHandle h : changed)
+		{
+			int id = atoms.get(h), linkId = links.get(h);
+			boolean exists = graph.getStore().containsLink(h.getPersistent());
+			boolean member = exists && isMember(h, predicate);
+			if (linkId >= 0)
+				deadLinks.set(linkId);
+			if (id >= 0)
+			{
+				dirty.set(id);
+				if (!member)
+					dead.set(id);
+			}
+			else if (member)
+				newAtoms.add(h);
+			if (exists)
+				markNeighbourhood(h, dirty);
+		}
+		// adjacency lists leading to removed atoms or through removed or replaced links
+		if (!dead.isEmpty() || !deadLinks.isEmpty())
+			for (int a = 0; a < size(); a++)
+				for (int e = offsets.get(a), end = offsets.get(a + 1); e < end && !dirty.get(a); e++)
+					if (dead.get(targets.get(e)) || deadLinks.get(linkIds.get(e)))
+						dirty.set(a);
+		HandleIdMap refreshedAtoms = new HandleIdMap(size() + newAtoms.size());
+		int [] remap = new int[size()];
+		for (int a = 0; a < size(); a++)
+			remap[a] = dead.get(a) ? -1 : refreshedAtoms.add(atoms.handle(a));
+		for (int i = 0; i < newAtoms.size(); i++)
+			refreshedAtoms.add(newAtoms.handle(i));
+		HandleIdMap refreshedLinks = links.copy();
+		IntSink newOffsets = new IntSink(refreshedAtoms.size() + 1), newTargets = new IntSink(edgeCount()),
+				newLinkIds = new IntSink(edgeCount());
+		newOffsets.add(0);
+		for (int a = 0; a < size(); a++)
+		{
+			if (remap[a] < 0)
+				continue;
+			if (dirty.get(a))
+				generate(generator, atoms.handle(a), refreshedAtoms, refreshedLinks, newTargets, newLinkIds);
+			else
+				for (int e = offsets.get(a), end = offsets.get(a + 1); e < end; e++)
+				{
+					newTargets.add(remap[targets.get(e)]);
+					newLinkIds.add(linkIds.get(e));
+				}
+			newOffsets.add(newTargets.buffer.position());
+		}
+		for (int i = 0; i < newAtoms.size(); i++)
+		{
+			generate(generator, newAtoms.handle(i), refreshedAtoms, refreshedLinks, newTargets, newLinkIds);
+			newOffsets.add(newTargets.buffer.position());
+		}
+		return new HGAdjacencySnapshot(graph, refreshedAtoms, refreshedLinks,
+									   newOffsets.result(), newTargets.result(), newLinkIds.result(),
+									   generator, node, condition);
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.algorithms;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGSearchResult;
+import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.HGQuery.hg;
+import org.hypergraphdb.transaction.HGTransactionConfig;
+import org.hypergraphdb.util.CloseMe;
+import org.hypergraphdb.util.Pair;
+import org.hypergraphdb.util.Ref;
+
+/**
+ * <p>
+ * A level-synchronous breadth-first traversal from one or more start atoms. Instead of
+ * expanding one atom at a time like {@link HGBreadthFirstTraversal}, a whole level
+ * (the frontier) is expanded at once when the previous one has been returned: the
+ * frontier is sorted by persistent handle, so that incidence sets are fetched in storage
+ * order, split into chunks and the chunks are expanded in parallel on a
+ * <code>ForkJoinPool</code>. Atoms are then deduplicated by persistent handle in
+ * frontier order, so the traversal order doesn't depend on the scheduling of the chunks.
+ * </p>
+ *
+ * <p>
+ * Adjacency list generators are generally not thread-safe, so the traversal is given a
+ * factory for them and each chunk uses its own generator. Worker threads don't see the
+ * transaction of the thread driving the traversal: when it is iterated within a transaction,
+ * the expansion is done sequentially in the calling thread. Otherwise each chunk runs in its
+ * own read-only transaction.
+ * </p>
+ *
+ * <p>
+ * As with <code>HGBreadthFirstTraversal</code>, the start atoms themselves are not returned
+ * and an optional maximum distance from the start atoms limits the depth of the traversal.
+ * </p>
+ */
+public class HGParallelBreadthFirstTraversal implements HGTraversal
+{
+	private static final Comparator<HGHandle> BY_PERSISTENT_HANDLE = new Comparator<HGHandle>()
+	{
+		public int compare(HGHandle left, HGHandle right)
+		{
+			return left.getPersistent().compareTo(right.getPersistent());
+		}
+	};
+
+	private HyperGraph graph;
+	private Ref<? extends Collection<HGHandle>> startAtoms;
+	private Supplier<HGALGenerator> generatorFactory;
+	private int maxDistance = Integer.MAX_VALUE;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private int chunkSize = 64;
+
+	// Reached atoms map to Boolean.TRUE once returned by 'next' and to Boolean.FALSE before.
+	private Map<HGPersistentHandle, Boolean> examined = new HashMap<HGPersistentHandle, Boolean>();
+	private List<Pair<HGHandle, HGHandle>> level = Collections.emptyList();
+	private int position = 0;
+	private int distance = 0;
+	private boolean initialized = false;
+
+	private final class ExpandTask extends RecursiveTask<List<Pair<HGHandle, HGHandle>>>
+	{
+		private static final long serialVersionUID = 1L;
+
+		final List<HGHandle> frontier;
+		final int from, to;
+
+		ExpandTask(List<HGHandle> frontier, int from, int to)
+		{
+			this.frontier = frontier;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected List<Pair<HGHandle, HGHandle>> compute()
+		{
+			if (to - from <= chunkSize)
+				return graph.getTransactionManager().ensureTransaction(new Callable<List<Pair<HGHandle, HGHandle>>>() {
+					public List<Pair<HGHandle, HGHandle>> call()
+					{
+						return expandChunk(frontier.subList(from, to));
+					}
+				}, HGTransactionConfig.READONLY);
+			int middle = (from + to) >>> 1;
+			ExpandTask left = new ExpandTask(frontier, from, middle);
+			left.fork();
+			List<Pair<HGHandle, HGHandle>> result = new ExpandTask(frontier, middle, to).compute();
+			List<Pair<HGHandle, HGHandle>> leftResult = left.join();
+			leftResult.addAll(result);
+			return leftResult;
+		}
+	}
+
+	private List<Pair<HGHandle, HGHandle>> expandChunk(List<HGHandle> chunk)
+	{
+		HGALGenerator generator = generatorFactory.get();
+		List<Pair<HGHandle, HGHandle>> result = new ArrayList<Pair<HGHandle, HGHandle>>();
+		try
+		{
+			for (HGHandle atom : chunk)
+			{
+				HGSearchResult<Pair<HGHandle, HGHandle>> i = generator.generate(atom);
+				try
+				{
+					while (i.hasNext())
+						result.add(i.next());
+				}
+				finally
+				{
+					i.close();
+				}
+			}
+		}
+		finally
+		{
+			if (generator instanceof CloseMe)
+				((CloseMe)generator).close();
+		}
+		return result;
+	}
+
+	private void expand(List<HGHandle> frontier)
+	{
+		level = Collections.emptyList();
+		position = 0;
+		if (frontier.isEmpty() || distance >= maxDistance)
+			return;
+		Collections.sort(frontier, BY_PERSISTENT_HANDLE);
+		List<Pair<HGHandle, HGHandle>> adjacent;
+		if (frontier.size() <= chunkSize || graph.getTransactionManager().getContext().getCurrent() != null)
+			adjacent = expandChunk(frontier);
+		else
+			adjacent = pool.invoke(new ExpandTask(frontier, 0, frontier.size()));
+		distance++;
+		List<Pair<HGHandle, HGHandle>> next = new ArrayList<Pair<HGHandle, HGHandle>>();
+		for (Pair<HGHandle, HGHandle> p : adjacent)
+			if (examined.putIfAbsent(p.getSecond().getPersistent(), Boolean.FALSE) == null)
+				next.add(p);
+		level = next;
+	}
+
+	private void init()
+	{
+		List<HGHandle> frontier = new ArrayList<HGHandle>();
+		for (HGHandle h : startAtoms.get())
+			if (examined.put(h.getPersistent(), Boolean.TRUE) == null)
+				frontier.add(h);
+		initialized = true;
+		expand(frontier);
+	}
+
+	private void ensureLevel()
+	{
+		if (!initialized)
+			init();
+		while (position == level.size() && !level.isEmpty())
+		{
+			List<HGHandle> frontier = new ArrayList<HGHandle>(level.size());
+			for (Pair<HGHandle, HGHandle> p : level)
+				frontier.add(p.getSecond());
+			expand(frontier);
+		}
+	}
+
+	public HGParallelBreadthFirstTraversal(HyperGraph graph,
+										   Collection<HGHandle> startAtoms,
+										   Supplier<HGALGenerator> generatorFactory)
+	{
+		this(graph, startAtoms, generatorFactory, Integer.MAX_VALUE);
+	}
+
+	public HGParallelBreadthFirstTraversal(HyperGraph graph,
+										   Collection<HGHandle> startAtoms,
+										   Supplier<HGALGenerator> generatorFactory,
+										   int maxDistance)
+	{
+		this(graph, hg.constant(startAtoms), generatorFactory, maxDistance);
+	}
+
+	public HGParallelBreadthFirstTraversal(HyperGraph graph,
+										   Ref<? extends Collection<HGHandle>> startAtoms,
+										   Supplier<HGALGenerator> generatorFactory,
+										   int maxDistance)
+	{
+		this.graph = graph;
+		this.startAtoms = startAtoms;
+		this.generatorFactory = generatorFactory;
+		this.maxDistance = maxDistance;
+	}
+
+	public ForkJoinPool getPool()
+	{
+		return pool;
+	}
+
+	/**
+	 * <p>Specify the pool on which frontier chunks are expanded. The default is the
+	 * common <code>ForkJoinPool</code>.</p>
+	 */
+	public void setPool(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	public int getChunkSize()
+	{
+		return chunkSize;
+	}
+
+	/**
+	 * <p>Specify the number of frontier atoms expanded by a single task. Frontiers
+	 * no larger than this are expanded in the calling thread.</p>
+	 */
+	public void setChunkSize(int chunkSize)
+	{
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	/**
+	 * <p>Return the distance from the start atoms of the atoms currently being returned.</p>
+	 */
+	public int getDistance()
+	{
+		return distance;
+	}
+
+	public boolean hasNext()
+	{
+		ensureLevel();
+		return position < level.size();
+	}
+
+	public Pair<HGHandle, HGHandle> next()
+	{
+		if (!hasNext())
+			return null;
+		Pair<HGHandle, HGHandle> rvalue = level.get(position++);
+		examined.put(rvalue.getSecond().getPersistent(), Boolean.TRUE);
+		return rvalue;
+	}
+
+	public boolean isVisited(HGHandle handle)
+	{
+		Boolean b = examined.get(handle.getPersistent());
+		return b != null && b;
+	}
+
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	public void reset()
+	{
+		examined.clear();
+		level = Collections.emptyList();
+		position = 0;
+		distance = 0;
+		initialized = false;
+	}
+}
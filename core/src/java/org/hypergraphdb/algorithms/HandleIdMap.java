@@ -0,0 +1,127 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.algorithms;
+
+import java.util.Arrays;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPersistentHandle;
+
+/**
+ * <p>
+ * Assigns dense <code>int</code> ids, in order of insertion starting at 0, to atom handles
+ * so that graph algorithms can keep their per-atom state in primitive arrays. Handles are
+ * identified by their persistent handle, so a live and a persistent handle to the same atom
+ * get the same id. The map is open-addressed, with linear probing, and doesn't box ids.
+ * </p>
+ */
+final class HandleIdMap
+{
+	private HGPersistentHandle [] keys;
+	private int [] ids;
+	private HGHandle [] handles;
+	private int size = 0;
+
+	HandleIdMap()
+	{
+		this(16);
+	}
+
+	HandleIdMap(int expected)
+	{
+		int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+		keys = new HGPersistentHandle[capacity];
+		ids = new int[capacity];
+		handles = new HGHandle[Math.max(16, expected)];
+	}
+
+	/**
+	 * <p>Return an independent map with the same ids.</p>
+	 */
+	HandleIdMap copy()
+	{
+		HandleIdMap m = new HandleIdMap(1);
+		m.keys = keys.clone();
+		m.ids = ids.clone();
+		m.handles = handles.clone();
+		m.size = size;
+		return m;
+	}
+
+	private static int hash(HGPersistentHandle h)
+	{
+		int x = h.hashCode() * 0x9E3779B9;
+		return x ^ (x >>> 16);
+	}
+
+	private int slot(HGPersistentHandle h)
+	{
+		int mask = keys.length - 1;
+		int i = hash(h) & mask;
+		while (keys[i] != null && !keys[i].equals(h))
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	private void rehash()
+	{
+		HGPersistentHandle [] oldKeys = keys;
+		int [] oldIds = ids;
+		keys = new HGPersistentHandle[oldKeys.length * 2];
+		ids = new int[keys.length];
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldKeys[i] != null)
+			{
+				int s = slot(oldKeys[i]);
+				keys[s] = oldKeys[i];
+				ids[s] = oldIds[i];
+			}
+	}
+
+	/**
+	 * <p>Return the id of the given atom or -1 if it doesn't have one.</p>
+	 */
+	int get(HGHandle h)
+	{
+		int s = slot(h.getPersistent());
+		return keys[s] == null ? -1 : ids[s];
+	}
+
+	/**
+	 * <p>Return the id of the given atom, assigning it the next id if it doesn't have
+	 * one yet.</p>
+	 */
+	int add(HGHandle h)
+	{
+		HGPersistentHandle p = h.getPersistent();
+		int s = slot(p);
+		if (keys[s] != null)
+			return ids[s];
+		if (size == handles.length)
+			handles = Arrays.copyOf(handles, size * 2);
+		handles[size] = h;
+		keys[s] = p;
+		ids[s] = size;
+		if (++size * 2 > keys.length)
+			rehash();
+		return size - 1;
+	}
+
+	/**
+	 * <p>Return the handle an id was assigned to, as it was first given to {@link #add(HGHandle)}.</p>
+	 */
+	HGHandle handle(int id)
+	{
+		return handles[id];
+	}
+
+	int size()
+	{
+		return size;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A binary min-heap of <code>int</code> ids with <code>double</code> priorities. The
+ * position of every id in the heap is tracked, so the priority of an id already in
+ * the heap can be changed in logarithmic time, which is what the relaxation step of
+ * shortest-path and spanning tree algorithms needs. Ids are expected to be dense, as
+ * the ones from a {@link HandleIdMap}.
+ * </p>
+ */
+final class IndexedDoubleHeap
+{
+	private int [] heap;
+	// position + 1 of each id in the heap, 0 if the id is not in the heap
+	private int [] position;
+	private double [] priority;
+	private int size = 0;
+
+	IndexedDoubleHeap()
+	{
+		this(16);
+	}
+
+	IndexedDoubleHeap(int capacity)
+	{
+		capacity = Math.max(1, capacity);
+		heap = new int[capacity];
+		position = new int[capacity];
+		priority = new double[capacity];
+	}
+
+	private void ensureId(int id)
+	{
+		if (id >= position.length)
+		{
+			int n = Math.max(id + 1, position.length * 2);
+			position = Arrays.copyOf(position, n);
+			priority = Arrays.copyOf(priority, n);
+		}
+	}
+
+	private void place(int at, int id)
+	{
+		heap[at] = id;
+		position[id] = at + 1;
+	}
+
+	private void siftUp(int at)
+	{
+		int id = heap[at];
+		double p = priority[id];
+		while (at > 0)
+		{
+			int parent = (at - 1) >>> 1;
+			if (priority[heap[parent]] <= p)
+				break;
+			place(at, heap[parent]);
+			at = parent;
+		}
+		place(at, id);
+	}
+
+	private void siftDown(int at)
+	{
+		int id = heap[at];
+		double p = priority[id];
+		while (true)
+		{
+			int child = 2 * at + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && priority[heap[child + 1]] < priority[heap[child]])
+				child++;
+			if (priority[heap[child]] >= p)
+				break;
+			place(at, heap[child]);
+			at = child;
+		}
+		place(at, id);
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	boolean contains(int id)
+	{
+		return id < position.length && position[id] != 0;
+	}
+
+	/**
+	 * <p>Insert an id with the given priority or, if it is already in the heap,
+	 * change its priority.</p>
+	 */
+	void offer(int id, double p)
+	{
+		ensureId(id);
+		if (position[id] != 0)
+		{
+			double old = priority[id];
+			priority[id] = p;
+			if (p < old)
+				siftUp(position[id] - 1);
+			else
+				siftDown(position[id] - 1);
+			return;
+		}
+		if (size == heap.length)
+			heap = Arrays.copyOf(heap, size * 2);
+		priority[id] = p;
+		place(size, id);
+		siftUp(size++);
+	}
+
+	/**
+	 * <p>Remove and return the id with the lowest priority.</p>
+	 */
+	int poll()
+	{
+		int id = heap[0];
+		position[id] = 0;
+		if (--size > 0)
+		{
+			place(0, heap[size]);
+			siftDown(0);
+		}
+		return id;
+	}
+
+	/**
+	 * <p>Return the priority an id was last given.</p>
+	 */
+	double priority(int id)
+	{
+		return priority[id];
+	}
+}
@@ -47,7 +47,7 @@ public class AtomSetType implements HGAtomType
 		int pos = 0;
 		for (HGHandle h:set)
 		{
-			System.arraycopy(graph.getPersistentHandle(h).toByteArray(), 0, A, pos, 16);
+			graph.getPersistentHandle(h).toByteArray(A, pos);
 			pos += 16;
 		}
 		graph.getStore().store(result, A);
@@ -0,0 +1,118 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.cache;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A count-min sketch of 4-bit counters estimating how often keys were seen recently.
+ * Each key is counted in 4 rows, at positions given by different hashes of it, and its
+ * estimated frequency is the smallest of its 4 counters. Counters saturate at 15. After
+ * a number of increments proportional to the width of the sketch, all counters are
+ * halved so that old accesses weigh less than recent ones.
+ * </p>
+ *
+ * <p>
+ * Not thread-safe, the caller must synchronize access.
+ * </p>
+ */
+class CountMinSketch
+{
+	private static final long [] SEEDS = { 0x97cb3127L, 0xc5ecf7d1L, 0x8bd9a5f1L, 0xa6c9d3b5L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private long [][] rows;
+	private int counterMask;
+	private int additions;
+	private int sampleSize;
+
+	CountMinSketch(int expectedKeys)
+	{
+		ensureCapacity(expectedKeys);
+	}
+
+	/**
+	 * Make the sketch wide enough for the given number of distinct keys. Resizing
+	 * loses all counts.
+	 */
+	void ensureCapacity(int expectedKeys)
+	{
+		int counters = Integer.highestOneBit(Math.max(16, Math.min(expectedKeys, 1 << 26)) - 1) << 1;
+		if (rows != null && counters <= counterMask + 1)
+			return;
+		rows = new long[SEEDS.length][counters >>> 4];
+		counterMask = counters - 1;
+		sampleSize = 10 * counters;
+		additions = 0;
+	}
+
+	private int indexOf(int hash, int row)
+	{
+		long h = (hash + SEEDS[row]) * SEEDS[row];
+		h += h >>> 32;
+		return (int)h & counterMask;
+	}
+
+	private static int spread(int x)
+	{
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	int frequency(Object key)
+	{
+		int hash = spread(key.hashCode());
+		int result = 15;
+		for (int row = 0; row < rows.length; row++)
+		{
+			int i = indexOf(hash, row);
+			int count = (int)(rows[row][i >>> 4] >>> ((i & 15) << 2)) & 0xf;
+			result = Math.min(result, count);
+		}
+		return result;
+	}
+
+	void increment(Object key)
+	{
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int row = 0; row < rows.length; row++)
+		{
+			int i = indexOf(hash, row);
+			int shift = (i & 15) << 2;
+			long word = rows[row][i >>> 4];
+			if (((word >>> shift) & 0xf) < 15)
+			{
+				rows[row][i >>> 4] = word + (1L << shift);
+				added = true;
+			}
+		}
+		if (added && ++additions >= sampleSize)
+			reset();
+	}
+
+	/**
+	 * Halve all counters.
+	 */
+	void reset()
+	{
+		for (long [] row : rows)
+			for (int i = 0; i < row.length; i++)
+				row[i] = (row[i] >>> 1) & RESET_MASK;
+		additions >>>= 1;
+	}
+
+	void clear()
+	{
+		for (long [] row : rows)
+			Arrays.fill(row, 0);
+		additions = 0;
+	}
+}
@@ -325,10 +325,11 @@ public final class DefaultAtomCache implements HGAtomCache
     //
     // Actions for queue maintenance
     //
-    private class AtomAccessedAction implements Runnable
+    private class AtomAccessedAction implements ActionQueueThread.CoalescingAction
     {
     	LiveHandle atom;
     	AtomAccessedAction(LiveHandle atom) { this.atom = atom; }
+    	public Object getCoalescingKey() { return atom; }
     	public void run()
     	{    		
     		importanceUp(atom);
@@ -78,13 +78,17 @@ public class LRUCache<Key, Value> implements HGCache<Key, Value>, CloseMe
 		}
 	}
 	
-	class PutOnTop implements Runnable
+	class PutOnTop implements ActionQueueThread.CoalescingAction
 	{
 		Entry<Key, Value> l;
 		PutOnTop(Entry<Key, Value> l) 
 		{
 			this.l = l;
 		}
+		public Object getCoalescingKey()
+		{
+			return l;
+		}
 		public void run()
 		{
 			lock.readLock().lock();
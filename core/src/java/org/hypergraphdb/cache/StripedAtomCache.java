@@ -0,0 +1,563 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.cache;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.hypergraphdb.HGAtomAttrib;
+import org.hypergraphdb.HGAtomCache;
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGSystemFlags;
+import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.IncidenceSet;
+import org.hypergraphdb.handle.DefaultManagedLiveHandle;
+import org.hypergraphdb.handle.HGLiveHandle;
+import org.hypergraphdb.handle.WeakHandle;
+import org.hypergraphdb.handle.WeakManagedHandle;
+import org.hypergraphdb.transaction.TxCacheMap;
+import org.hypergraphdb.transaction.VBox;
+import org.hypergraphdb.transaction.VBoxBody;
+import org.hypergraphdb.util.CloseMe;
+import org.hypergraphdb.util.WeakIdentityHashMap;
+
+/**
+ * <p>
+ * A variant of the {@link WeakRefAtomCache} for highly concurrent applications. The eviction
+ * policy is the same: an atom is removed from the cache when its runtime instance is garbage
+ * collected or when it is removed from the database. But instead of two global maps guarded by a
+ * single lock, the cache is split into a number of stripes, each with its own maps and lock:
+ * </p>
+ *
+ * <ul>
+ * <li>Live handles are striped by the hash code of their persistent handle and kept in concurrent
+ * maps, so that looking up the live handle of an atom never blocks.</li>
+ * <li>The runtime instance to handle maps are identity maps, striped by the identity hash code of
+ * the atoms, so concurrent lookups by atom contend only when they hit the same stripe.</li>
+ * <li>Loading an atom into the cache takes the read lock of the stripe of its persistent handle and
+ * the cleanup of garbage collected atoms takes its write lock, instead of a global lock.</li>
+ * <li>The cleanup thread drains the reference queue in batches, taking the lock of each stripe once
+ * per batch rather than once per reference.</li>
+ * </ul>
+ *
+ * <p>
+ * To use it, set it as the cache implementation of the {@link org.hypergraphdb.HGConfiguration}:
+ * <code>config.setCacheImplementation(new StripedAtomCache())</code>.
+ * </p>
+ */
+public class StripedAtomCache implements HGAtomCache
+{
+	public static final int DEFAULT_STRIPES = 16;
+	public static final int DEFAULT_DRAIN_BATCH_SIZE = 256;
+	public static final long DEFAULT_PHANTOM_QUEUE_POLL_INTERVAL = 500;
+
+	/**
+	 * A {@link CacheMap} backed by a regular <code>java.util.Map</code>, used when the
+	 * graph is not transactional.
+	 */
+	private static class MapCacheMap<K, V> implements CacheMap<K, V>
+	{
+		private final Map<K, V> m;
+		MapCacheMap(Map<K, V> m) { this.m = m; }
+		public V get(K key) { return m.get(key); }
+		public void put(K key, V value) { m.put(key, value); }
+		public void load(K key, V value) { m.put(key, value); }
+		public void remove(K key) { m.remove(key); }
+		public void drop(K key) { m.remove(key); }
+		public void clear() { m.clear(); }
+		public int size() { return m.size(); }
+	}
+
+	private static class TempLiveHandle extends DefaultManagedLiveHandle
+	{
+		public TempLiveHandle(Object ref, HGPersistentHandle persistentHandle, byte flags)
+		{
+			super(ref, persistentHandle, flags, 0, 0);
+		}
+
+		public void setRef(Object ref)
+		{
+			this.ref = ref;
+		}
+	}
+
+	private static class ClearHandleAction implements Runnable
+	{
+	    private WeakHandle h;
+	    public ClearHandleAction(WeakHandle h) { this.h = h;}
+	    public void run() { h.clear(); }
+	}
+
+	private final int stripeCount;
+	private final int drainBatchSize;
+	private long phantomQueuePollInterval = DEFAULT_PHANTOM_QUEUE_POLL_INTERVAL;
+
+	private HyperGraph graph = null;
+	private HGCache<HGPersistentHandle, IncidenceSet> incidenceCache = null; // to be configured by the HyperGraph instance
+	private CacheMap<HGPersistentHandle, WeakHandle> [] liveHandles;
+	private CacheMap<Object, HGLiveHandle> [] atoms;
+	private ReentrantReadWriteLock [] locks;
+	private ColdAtoms [] coldAtoms;
+	private CacheMap<HGLiveHandle, Object> frozenAtoms = null;
+	private ReferenceQueue<Object> refQueue = new ReferenceQueue<Object>();
+	private PhantomCleanup cleanupThread = null;
+	private volatile boolean closing = false;
+
+	public StripedAtomCache()
+	{
+		this(DEFAULT_STRIPES, DEFAULT_DRAIN_BATCH_SIZE);
+	}
+
+	/**
+	 * @param stripes The number of stripes, rounded up to a power of 2.
+	 * @param drainBatchSize The maximum number of garbage collected atoms removed from
+	 * the cache at once.
+	 */
+	public StripedAtomCache(int stripes, int drainBatchSize)
+	{
+		if (stripes < 1 || drainBatchSize < 1)
+			throw new IllegalArgumentException("The stripe count and drain batch size must be positive.");
+		int n = 1;
+		while (n < stripes)
+			n <<= 1;
+		this.stripeCount = n;
+		this.drainBatchSize = drainBatchSize;
+	}
+
+	private static int spread(int h)
+	{
+		return h ^ (h >>> 16);
+	}
+
+	private int stripeOf(HGPersistentHandle pHandle)
+	{
+		return spread(pHandle.hashCode()) & (stripeCount - 1);
+	}
+
+	private CacheMap<Object, HGLiveHandle> atomsOf(Object atom)
+	{
+		return atoms[spread(System.identityHashCode(atom)) & (stripeCount - 1)];
+	}
+
+	/**
+	 * Process the references dequeued from the same stripe under a single write lock.
+	 */
+	@SuppressWarnings("unchecked")
+	private void cleanup(int stripe, ArrayList<WeakHandle> refs)
+	{
+		boolean transactional = graph.getConfig().isTransactional();
+		locks[stripe].writeLock().lock(); // we won't allow modifications to the stripe during this
+		try
+		{
+			for (WeakHandle ref : refs)
+			{
+			    HGPersistentHandle h = ref.getPersistent();
+			    if (!transactional)
+			    {
+			    	liveHandles[stripe].drop(h);
+			    	continue;
+			    }
+		        TxCacheMap<HGPersistentHandle, WeakHandle>.Box theBox =
+		        	((TxCacheMap<HGPersistentHandle, WeakHandle>)liveHandles[stripe]).boxOf(h);
+		        if (theBox == null)
+		            continue;
+		        boolean keep = false;
+		        for (VBoxBody<WeakHandle> body = theBox.getBody(); body != null && !keep; body = body.next)
+		        {
+		            // body.value can be null here if the atom got garbage collected before
+		            // a transaction committed
+		        	if (body.value != null)
+		            {
+		        		Object x = body.value.getRef();
+		        		if (x != null)
+		        		{
+			                VBox<?> bb = ((TxCacheMap<Object, HGLiveHandle>)atomsOf(x)).boxOf(x);
+			                if (bb != null)
+			                    keep = true;
+		        		}
+		            }
+		        }
+		        if (!keep)
+		            liveHandles[stripe].drop(h);
+			}
+		}
+		finally
+		{
+			locks[stripe].writeLock().unlock();
+		}
+	}
+
+	private void processRefQueue() throws InterruptedException
+	{
+	    // need WeakHandle.geRef to return when ref is enqueued - deadlock otherwise!
+	    WeakHandle.returnEnqueued.set(Boolean.TRUE);
+	    ArrayList<WeakHandle> [] byStripe = null;
+	    try
+	    {
+			WeakHandle ref = (WeakHandle)refQueue.remove(phantomQueuePollInterval);
+			while (ref != null)
+			{
+				ArrayList<WeakHandle> batch = new ArrayList<WeakHandle>();
+				for (int i = 0; ref != null && i < drainBatchSize; i++)
+				{
+					batch.add(ref);
+					ref = (WeakHandle)refQueue.poll();
+				}
+				if (byStripe == null)
+				{
+					byStripe = newStripeArray();
+					for (int i = 0; i < stripeCount; i++)
+						byStripe[i] = new ArrayList<WeakHandle>();
+				}
+				for (WeakHandle r : batch)
+					byStripe[stripeOf(r.getPersistent())].add(r);
+				try
+				{
+					for (int i = 0; i < stripeCount; i++)
+						if (!byStripe[i].isEmpty())
+							cleanup(i, byStripe[i]);
+				}
+				finally
+				{
+					for (int i = 0; i < stripeCount; i++)
+						byStripe[i].clear();
+					for (WeakHandle r : batch)
+					{
+			            r.clear();
+			            synchronized (r) { r.notifyAll(); }
+					}
+				}
+			}
+	    }
+	    finally
+	    {
+	    	WeakHandle.returnEnqueued.set(Boolean.FALSE);
+	    }
+	}
+
+	@SuppressWarnings("unchecked")
+	private ArrayList<WeakHandle> [] newStripeArray()
+	{
+		return (ArrayList<WeakHandle> [])new ArrayList<?>[stripeCount];
+	}
+
+	private class PhantomCleanup extends Thread
+	{
+		private volatile boolean done;
+
+	    public void run()
+	    {
+	        for (done = false; !done; )
+	        {
+	        	try
+	            {
+	        	    processRefQueue();
+	            }
+	        	catch (InterruptedException exc)
+	        	{
+	        		done = true;
+	            }
+	        	catch (Throwable t)
+	        	{
+	        		System.err.println("PhantomCleanup thread caught an unexpected exception, stack trace follows:");
+	        		t.printStackTrace(System.err);
+	        	}
+	        }
+	    }
+
+	    public void end()
+	    {
+	    	this.done = true;
+	    }
+	}
+
+	public void setIncidenceCache(HGCache<HGPersistentHandle, IncidenceSet> cache)
+	{
+		this.incidenceCache= cache;
+	}
+
+	public HGCache<HGPersistentHandle, IncidenceSet> getIncidenceCache()
+	{
+		return incidenceCache;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void setHyperGraph(HyperGraph graph)
+	{
+        this.graph = graph;
+        this.closing = false;
+        liveHandles = (CacheMap<HGPersistentHandle, WeakHandle> [])new CacheMap<?, ?>[stripeCount];
+        atoms = (CacheMap<Object, HGLiveHandle> [])new CacheMap<?, ?>[stripeCount];
+        locks = new ReentrantReadWriteLock[stripeCount];
+        coldAtoms = new ColdAtoms[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+        {
+	        if (graph.getConfig().isTransactional())
+	        {
+	        	TxCacheMap<Object, HGLiveHandle> atomsTx = new TxCacheMap<Object, HGLiveHandle>(
+	                                        graph.getTransactionManager(),
+	                                        WeakIdentityHashMap.class,
+	                                        null);
+	            atomsTx.setReturnLatestAvailable(true);
+	            atoms[i] = atomsTx;
+	            liveHandles[i] = new TxCacheMap<HGPersistentHandle, WeakHandle>(
+	                                        graph.getTransactionManager(),
+	                                        null,
+	                                        null);
+	        }
+	        else
+	        {
+	            atoms[i] = new MapCacheMap<Object, HGLiveHandle>(
+	            		Collections.synchronizedMap(new WeakIdentityHashMap<Object, HGLiveHandle>()));
+	            liveHandles[i] = new MapCacheMap<HGPersistentHandle, WeakHandle>(
+	            		new ConcurrentHashMap<HGPersistentHandle, WeakHandle>());
+	        }
+	        locks[i] = new ReentrantReadWriteLock();
+	        coldAtoms[i] = new ColdAtoms();
+        }
+        if (graph.getConfig().isTransactional())
+            frozenAtoms = new TxCacheMap<HGLiveHandle, Object>(graph.getTransactionManager(), null, null);
+        else
+            frozenAtoms = new MapCacheMap<HGLiveHandle, Object>(new ConcurrentHashMap<HGLiveHandle, Object>());
+        refQueue = new ReferenceQueue<Object>();
+        cleanupThread = new PhantomCleanup();
+        cleanupThread.setPriority(Thread.MAX_PRIORITY);
+        cleanupThread.setDaemon(true);
+        cleanupThread.setName("HGCACHE Cleanup - " + graph.getLocation());
+        cleanupThread.start();
+	}
+
+	private WeakHandle makeHandle(HGPersistentHandle pHandle, Object atom, HGAtomAttrib attrib)
+	{
+		WeakHandle h;
+        if (attrib != null && (attrib.getFlags() & HGSystemFlags.MANAGED) != 0)
+            h = new WeakManagedHandle(atom,
+                                      pHandle,
+                                      attrib.getFlags(),
+                                      refQueue,
+                                      attrib.getRetrievalCount(),
+                                      attrib.getLastAccessTime());
+        else
+            h = new WeakHandle(atom, pHandle, attrib == null ? HGSystemFlags.DEFAULT : attrib.getFlags(), refQueue);
+        graph.getTransactionManager().getContext().getCurrent().addAbortAction(new ClearHandleAction(h));
+        return h;
+	}
+
+	private HGLiveHandle tempHandle(HGPersistentHandle pHandle, Object atom, HGAtomAttrib attrib)
+	{
+		HGLiveHandle result = new TempLiveHandle(atom, pHandle,
+				attrib == null ? HGSystemFlags.DEFAULT : attrib.getFlags());
+		atomsOf(atom).put(atom, result);
+		return result;
+	}
+
+    public HGLiveHandle atomAdded(HGPersistentHandle pHandle, Object atom, final HGAtomAttrib attrib)
+    {
+        if (closing)
+        	return tempHandle(pHandle, atom, attrib);
+        int stripe = stripeOf(pHandle);
+        WeakHandle h = liveHandles[stripe].get(pHandle);
+        if (h != null)
+            return h;
+        h = makeHandle(pHandle, atom, attrib);
+        locks[stripe].readLock().lock();
+        try
+        {
+            atomsOf(atom).put(atom, h);
+            liveHandles[stripe].put(pHandle, h);
+            coldAtoms[stripe].add(atom);
+            return h;
+        }
+        finally
+        {
+            locks[stripe].readLock().unlock();
+        }
+    }
+
+	public HGLiveHandle atomRead(HGPersistentHandle pHandle,
+								 Object atom,
+								 final HGAtomAttrib attrib)
+	{
+		if (closing)
+			return tempHandle(pHandle, atom, attrib);
+        int stripe = stripeOf(pHandle);
+		WeakHandle h = liveHandles[stripe].get(pHandle);
+		if (h != null)
+			return h;
+		h = makeHandle(pHandle, atom, attrib);
+		// Important to updates the atoms map first to prevent garbage collection
+		// of the liveHandles entry due to previously removed runtime instance of the
+		// same atom.
+        locks[stripe].readLock().lock();
+        try
+        {
+            atomsOf(atom).load(atom, h);
+            liveHandles[stripe].load(pHandle, h);
+            coldAtoms[stripe].add(atom);
+            return h;
+        }
+        finally
+        {
+            locks[stripe].readLock().unlock();
+        }
+	}
+
+	public HGLiveHandle atomRefresh(HGLiveHandle handle, Object atom, boolean replace)
+	{
+	    if (handle.getRef() == atom)
+	        return handle; // same atom, nothing to do
+		if (closing)
+		{
+			if (handle instanceof WeakHandle)
+				((WeakHandle)handle).clear();
+			else
+				((TempLiveHandle)handle).setRef(atom);
+			return handle;
+		}
+	    WeakHandle newLive = null;
+	    if (handle instanceof WeakManagedHandle)
+	        newLive = new WeakManagedHandle(atom,
+	                                        handle.getPersistent(),
+	                                        handle.getFlags(),
+	                                        refQueue,
+	                                        ((WeakManagedHandle)handle).getRetrievalCount(),
+	                                        ((WeakManagedHandle)handle).getRetrievalCount());
+	    else
+	        newLive = new WeakHandle(atom,
+	                                 handle.getPersistent(),
+	                                 handle.getFlags(),
+	                                 refQueue);
+
+        graph.getTransactionManager().getContext().getCurrent().addAbortAction(new ClearHandleAction(newLive));
+
+	    Object curr = handle.getRef();
+	    ((WeakHandle)handle).clear();
+
+	    // See WeakRefAtomCache.atomRefresh for the order of the updates.
+	    int stripe = stripeOf(handle.getPersistent());
+        locks[stripe].readLock().lock();
+        try
+        {
+    	    if (replace || curr != null)
+    	    {
+    	        if (curr != null)
+    	            atomsOf(curr).remove(curr);
+    	        atomsOf(atom).put(atom, newLive);
+    	        liveHandles[stripe].put(handle.getPersistent(), newLive);
+    	    }
+    	    else
+    	    {
+                atomsOf(atom).load(atom, newLive);
+    	        liveHandles[stripe].load(handle.getPersistent(), newLive);
+    	    }
+            coldAtoms[stripe].add(atom);
+            return newLive;
+	    }
+	    finally
+	    {
+	        locks[stripe].readLock().unlock();
+	    }
+	}
+
+	public void close()
+	{
+		closing = true;
+		cleanupThread.end();
+		while (cleanupThread.isAlive() )
+			try { cleanupThread.join(); } catch (InterruptedException ex) { }
+		frozenAtoms.clear();
+		incidenceCache.clear();
+		if (incidenceCache instanceof CloseMe)
+			((CloseMe)incidenceCache).close();
+		for (int i = 0; i < stripeCount; i++)
+		{
+			atoms[i].clear();
+			liveHandles[i].clear();
+		}
+	}
+
+	public HGLiveHandle get(HGPersistentHandle pHandle)
+	{
+	    WeakHandle h = liveHandles[stripeOf(pHandle)].get(pHandle);
+		if (h != null)
+			h.accessed();
+		return h;
+	}
+
+	public HGLiveHandle get(Object atom)
+	{
+        return atomsOf(atom).get(atom);
+	}
+
+	public void remove(HGHandle handle)
+	{
+		HGLiveHandle lhdl = null;
+
+		if (handle instanceof HGLiveHandle)
+			lhdl = (HGLiveHandle)handle;
+		else
+			lhdl = get(handle.getPersistent());
+
+		if (lhdl != null)
+		{
+			Object atom = lhdl.getRef();
+			if (atom != null)
+				atomsOf(atom).remove(atom);
+			liveHandles[stripeOf(lhdl.getPersistent())].remove(lhdl.getPersistent());
+			if (lhdl instanceof WeakReference)
+				((WeakReference<?>)lhdl).clear();
+		}
+	}
+
+	public boolean isFrozen(HGLiveHandle handle)
+	{
+		return frozenAtoms.get(handle) != null;
+	}
+
+	public void freeze(HGLiveHandle handle)
+	{
+		Object atom = handle.getRef();
+		if (atom != null)
+		{
+			if (graph.getTransactionManager().getContext().getCurrent().isReadOnly())
+				frozenAtoms.load(handle, atom);
+			else
+				frozenAtoms.put(handle, atom);
+		}
+	}
+
+	public void unfreeze(HGLiveHandle handle)
+	{
+		frozenAtoms.remove(handle);
+	}
+
+	public int getStripeCount()
+	{
+		return stripeCount;
+	}
+
+	public long getPhantomQueuePollInterval()
+	{
+		return phantomQueuePollInterval;
+	}
+
+	/**
+	 * Set the maximum time, in milliseconds, the cleanup thread waits for garbage collected
+	 * atoms before checking whether the cache is being closed.
+	 */
+	public void setPhantomQueuePollInterval(long phantomQueuePollInterval)
+	{
+		this.phantomQueuePollInterval = phantomQueuePollInterval;
+	}
+}
@@ -0,0 +1,494 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.cache;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.hypergraphdb.HGEnvironment;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.IncidenceSet;
+import org.hypergraphdb.util.CloseMe;
+import org.hypergraphdb.util.MemoryWarningSystem;
+import org.hypergraphdb.util.RefResolver;
+
+/**
+ * <p>
+ * A cache with a W-TinyLFU policy: frequently used elements are protected from being
+ * evicted by a burst of elements used only once, such as those read during a scan or a
+ * traversal of a cold region of the graph. New elements enter a small LRU window
+ * (1% of the capacity). Elements leaving the window are admitted into the main,
+ * segmented LRU region only if they have been used more often than the element they
+ * would replace, as estimated by a {@link CountMinSketch} of recent accesses. In the main
+ * region, elements used again move from a probation segment to a protected segment (80%
+ * of the main region), from which they are demoted back to probation as newer elements
+ * get protected.
+ * </p>
+ *
+ * <p>
+ * The capacity is expressed in units of weight as computed by a {@link Weigher}, e.g.
+ * estimated bytes of memory. By default, each element weighs 1 and the capacity is a
+ * maximum number of elements. Weights are computed when elements are loaded and when
+ * they are accessed through {@link #get(Object)} and {@link #getIfLoaded(Object)}, by
+ * the accessing thread. Like {@link LRUCache}, the cache also evicts a percentage of its
+ * content when the JVM is low on memory.
+ * </p>
+ *
+ * <p>
+ * Lookups don't block: an access is recorded right away if the policy lock is free and
+ * otherwise buffered, to be replayed by the next thread that acquires the lock. Accesses
+ * are dropped when the buffer is full, which only makes the policy less precise.
+ * </p>
+ *
+ * @param <Key>
+ * @param <Value>
+ */
+public class TinyLFUCache<Key, Value> implements HGCache<Key, Value>, CloseMe
+{
+	/**
+	 * <p>Computes the weight of a cache element.</p>
+	 */
+	public static interface Weigher<Key, Value>
+	{
+		long weigh(Key key, Value value);
+	}
+
+	/**
+	 * <p>Weighs incidence sets by their estimated memory footprint in bytes.</p>
+	 */
+	public static final Weigher<HGPersistentHandle, IncidenceSet> INCIDENCE_SET_WEIGHER =
+		new Weigher<HGPersistentHandle, IncidenceSet>()
+		{
+			public long weigh(HGPersistentHandle key, IncidenceSet value)
+			{
+				return value.estimateMemoryUsage();
+			}
+		};
+
+	private static final int NEW = 0, WINDOW = 1, PROBATION = 2, PROTECTED = 3, REMOVED = 4;
+	private static final int READ_BUFFER_SIZE = 128;
+
+	static class Node<Key, Value>
+	{
+		Key key;
+		Value value;
+		long weight;
+		int queue = NEW; // in the map, but not yet in any access order
+		Node<Key, Value> prev, next;
+		Node(Key key, Value value, long weight)
+		{
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * An access ordered list of nodes, least recently used first.
+	 */
+	static class AccessOrder<Key, Value>
+	{
+		Node<Key, Value> first, last;
+		long weight;
+
+		void add(Node<Key, Value> n)
+		{
+			n.prev = last;
+			n.next = null;
+			if (last == null)
+				first = n;
+			else
+				last.next = n;
+			last = n;
+			weight += n.weight;
+		}
+
+		void remove(Node<Key, Value> n)
+		{
+			if (n.prev == null)
+				first = n.next;
+			else
+				n.prev.next = n.next;
+			if (n.next == null)
+				last = n.prev;
+			else
+				n.next.prev = n.prev;
+			n.prev = n.next = null;
+			weight -= n.weight;
+		}
+
+		void clear()
+		{
+			first = last = null;
+			weight = 0;
+		}
+	}
+
+	private RefResolver<Key, Value> resolver;
+	private Weigher<? super Key, ? super Value> weigher;
+	private final long maxWeight;
+	private long windowMax, protectedMax;
+	private float evictPercent = 0.3f;
+	private ConcurrentHashMap<Key, Node<Key, Value>> map = new ConcurrentHashMap<Key, Node<Key, Value>>();
+	private ReentrantLock lock = new ReentrantLock();
+	private AccessOrder<Key, Value> window = new AccessOrder<Key, Value>();
+	private AccessOrder<Key, Value> probation = new AccessOrder<Key, Value>();
+	private AccessOrder<Key, Value> protect = new AccessOrder<Key, Value>();
+	private CountMinSketch sketch = new CountMinSketch(1024);
+	private Queue<Node<Key, Value>> readBuffer = new ConcurrentLinkedQueue<Node<Key, Value>>();
+	private AtomicInteger readBufferSize = new AtomicInteger(0);
+	private boolean listening = false;
+
+	private MemoryWarningSystem.Listener memListener = new MemoryWarningSystem.Listener()
+	{
+		public void memoryUsageLow(long usedMemory, long maxMemory)
+		{
+			lock.lock();
+			try
+			{
+				evict((long)((window.weight + probation.weight + protect.weight) * (1.0f - evictPercent)));
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	};
+
+	/**
+	 * @param maxWeight The maximum total weight of the elements in the cache.
+	 * @param weigher The <code>Weigher</code> of elements or <code>null</code> to count
+	 * each element as 1.
+	 */
+	public TinyLFUCache(long maxWeight, Weigher<? super Key, ? super Value> weigher)
+	{
+		if (maxWeight <= 0)
+			throw new IllegalArgumentException("maxWeight <= 0");
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		this.windowMax = Math.max(1, maxWeight / 100);
+		this.protectedMax = (long)((maxWeight - windowMax) * 0.8);
+	}
+
+	/**
+	 * @param maxSize The maximum number of elements in the cache.
+	 */
+	public TinyLFUCache(int maxSize)
+	{
+		this(maxSize, null);
+	}
+
+	/**
+	 * <p>Create a cache of incidence sets of at most <code>maxBytes</code> estimated bytes.</p>
+	 */
+	public static TinyLFUCache<HGPersistentHandle, IncidenceSet> forIncidenceSets(long maxBytes)
+	{
+		return new TinyLFUCache<HGPersistentHandle, IncidenceSet>(maxBytes, INCIDENCE_SET_WEIGHER);
+	}
+
+	private long weigh(Key key, Value value)
+	{
+		return weigher == null ? 1 : Math.max(1, weigher.weigh(key, value));
+	}
+
+	private void unlink(Node<Key, Value> n)
+	{
+		switch (n.queue)
+		{
+			case WINDOW: window.remove(n); break;
+			case PROBATION: probation.remove(n); break;
+			case PROTECTED: protect.remove(n); break;
+		}
+		n.queue = REMOVED;
+	}
+
+	private void reweigh(Node<Key, Value> n, long weight)
+	{
+		if (weight == n.weight)
+			return;
+		long delta = weight - n.weight;
+		n.weight = weight;
+		switch (n.queue)
+		{
+			case WINDOW: window.weight += delta; break;
+			case PROBATION: probation.weight += delta; break;
+			case PROTECTED: protect.weight += delta; break;
+		}
+	}
+
+	/**
+	 * Record an access to a node, with the lock held.
+	 */
+	private void onAccess(Node<Key, Value> n)
+	{
+		if (n.queue == REMOVED)
+			return;
+		sketch.increment(n.key);
+		switch (n.queue)
+		{
+			case WINDOW:
+				window.remove(n);
+				window.add(n);
+				break;
+			case PROBATION:
+				probation.remove(n);
+				n.queue = PROTECTED;
+				protect.add(n);
+				while (protect.weight > protectedMax && protect.first != n)
+				{
+					Node<Key, Value> demoted = protect.first;
+					protect.remove(demoted);
+					demoted.queue = PROBATION;
+					probation.add(demoted);
+				}
+				break;
+			case PROTECTED:
+				protect.remove(n);
+				protect.add(n);
+				break;
+		}
+	}
+
+	private void drainReadBuffer()
+	{
+		for (Node<Key, Value> n = readBuffer.poll(); n != null; n = readBuffer.poll())
+		{
+			readBufferSize.decrementAndGet();
+			onAccess(n);
+		}
+	}
+
+	private void accessed(Node<Key, Value> n)
+	{
+		if (lock.tryLock())
+		{
+			try
+			{
+				if (weigher != null && n.queue != REMOVED)
+					reweigh(n, weigh(n.key, n.value));
+				drainReadBuffer();
+				onAccess(n);
+				evict(maxWeight);
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+		else if (readBufferSize.incrementAndGet() <= READ_BUFFER_SIZE)
+			readBuffer.add(n);
+		else
+			readBufferSize.decrementAndGet();
+	}
+
+	private void evictNode(Node<Key, Value> n)
+	{
+		unlink(n);
+		map.remove(n.key, n);
+	}
+
+	/**
+	 * Move elements overflowing the window into probation, then evict until the total
+	 * weight is at most <code>limit</code>. With the lock held.
+	 */
+	private void evict(long limit)
+	{
+		int candidates = 0;
+		while (window.weight > windowMax && window.first != null)
+		{
+			Node<Key, Value> n = window.first;
+			window.remove(n);
+			n.queue = PROBATION;
+			probation.add(n);
+			candidates++;
+		}
+		while (window.weight + probation.weight + protect.weight > limit)
+		{
+			Node<Key, Value> victim = probation.first != null ? probation.first :
+									  protect.first != null ? protect.first : window.first;
+			if (victim == null)
+				break;
+			Node<Key, Value> candidate = candidates > 0 ? probation.last : null;
+			if (candidate == null || candidate == victim || victim.queue != PROBATION)
+			{
+				if (candidate == victim)
+					candidates--;
+				evictNode(victim);
+			}
+			else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key))
+				evictNode(victim);
+			else
+			{
+				evictNode(candidate);
+				candidates--;
+			}
+		}
+	}
+
+	public Value get(Key key)
+	{
+		Node<Key, Value> n = map.get(key);
+		if (n != null)
+		{
+			accessed(n);
+			return n.value;
+		}
+		// Resolve outside of the lock, see LRUCache.get
+		Value value = resolver.resolve(key);
+		Node<Key, Value> added = new Node<Key, Value>(key, value, weigh(key, value));
+		n = map.putIfAbsent(key, added);
+		if (n != null)
+		{
+			accessed(n);
+			return n.value;
+		}
+		lock.lock();
+		try
+		{
+			sketch.ensureCapacity(map.size());
+			drainReadBuffer();
+			sketch.increment(key);
+			if (map.get(key) == added) // could have been removed in the meantime
+			{
+				added.queue = WINDOW;
+				window.add(added);
+				evict(maxWeight);
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		return value;
+	}
+
+	public Value getIfLoaded(Key key)
+	{
+		Node<Key, Value> n = map.get(key);
+		if (n == null)
+			return null;
+		accessed(n);
+		return n.value;
+	}
+
+	public boolean isLoaded(Key key)
+	{
+		return map.containsKey(key);
+	}
+
+	public void remove(Key key)
+	{
+		Node<Key, Value> n = map.remove(key);
+		if (n == null)
+			return;
+		lock.lock();
+		try
+		{
+			unlink(n);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	public void clear()
+	{
+		lock.lock();
+		try
+		{
+			map.clear();
+			window.clear();
+			probation.clear();
+			protect.clear();
+			sketch.clear();
+			readBuffer.clear();
+			readBufferSize.set(0);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	public int size()
+	{
+		return map.size();
+	}
+
+	/**
+	 * <p>Return the total weight of the elements in the cache.</p>
+	 */
+	public long weight()
+	{
+		lock.lock();
+		try
+		{
+			return window.weight + probation.weight + protect.weight;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	public long getMaxWeight()
+	{
+		return maxWeight;
+	}
+
+	/**
+	 * <p>Return the percentage of the cache's content evicted when the JVM is low on memory.</p>
+	 */
+	public float getEvictPercent()
+	{
+		return evictPercent;
+	}
+
+	public void setEvictPercent(float evictPercent)
+	{
+		this.evictPercent = evictPercent;
+	}
+
+	public RefResolver<Key, Value> getResolver()
+	{
+		return resolver;
+	}
+
+	/**
+	 * <p>
+	 * Set the <code>RefResolver</code> used to load elements. Since this is done whenever
+	 * the cache is put in use, it also starts listening to low memory warnings, until the
+	 * cache is closed.
+	 * </p>
+	 */
+	public void setResolver(RefResolver<Key, Value> resolver)
+	{
+		this.resolver = resolver;
+		synchronized (memListener)
+		{
+			if (!listening)
+			{
+				HGEnvironment.getMemoryWarningSystem().addListener(memListener);
+				listening = true;
+			}
+		}
+	}
+
+	public void close()
+	{
+		synchronized (memListener)
+		{
+			HGEnvironment.getMemoryWarningSystem().removeListener(memListener);
+			listening = false;
+		}
+	}
+}
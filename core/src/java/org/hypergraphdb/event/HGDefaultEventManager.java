@@ -1,18 +1,64 @@
 package org.hypergraphdb.event;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.hypergraphdb.HGEnvironment;
 import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.transaction.HGTransaction;
 import org.hypergraphdb.transaction.TxList;
 import org.hypergraphdb.transaction.TxMap;
 import org.hypergraphdb.transaction.VBox;
 
+/**
+ * <p>
+ * The default event manager. Listeners registered with {@link #addListener(Class, HGListener)}
+ * are invoked synchronously by <code>dispatch</code>. Listeners registered with
+ * {@link #addAsyncListener(Class, HGListener)} are not invoked during dispatch: their events
+ * are queued with the current transaction and delivered in a batch, on the asynchronous
+ * executor, once the top-level transaction has committed. The events of aborted transactions
+ * are dropped. Batches are delivered one at a time, in commit order.
+ * </p>
+ */
 public class HGDefaultEventManager implements HGEventManager
 {
     private HyperGraph graph;
 	private Map<Class<?>, List<HGListener>> listenerMap = null;
+
+	// The event classes for which a listener was ever registered. Listener lists
+	// themselves are transactional, but an event class not in this set cannot have
+	// listeners in any transaction, so it doesn't need to be looked up.
+	private Set<Class<?>> registeredTypes = ConcurrentHashMap.newKeySet();
+	// Per event class, the classes of its hierarchy that are in registeredTypes.
+	private Map<Class<?>, Class<?>[]> resolved = new ConcurrentHashMap<Class<?>, Class<?>[]>();
+	private static final Class<?>[] NO_TYPES = new Class<?>[0];
+
+	private Executor asyncExecutor = HGEnvironment.executor();
+	private Queue<List<Pending>> batches = new ConcurrentLinkedQueue<List<Pending>>();
+	private AtomicBoolean delivering = new AtomicBoolean(false);
+	private final Object pendingKey = new Object();
+
+	static final class AsyncListener implements HGListener
+	{
+		final HGListener listener;
+		AsyncListener(HGListener listener) { this.listener = listener; }
+		public Result handle(HyperGraph graph, HGEvent event) { return listener.handle(graph, event); }
+	}
+
+	static final class Pending
+	{
+		final HGEvent event;
+		final HGListener listener;
+		Pending(HGEvent event, HGListener listener) { this.event = event; this.listener = listener; }
+	}
 	
 	private void initListenerMap()
 	{
@@ -40,43 +86,205 @@ public class HGDefaultEventManager implements HGEventManager
       return listeners;
 	}
 		
+	private Class<?>[] resolve(Class<?> eventClass)
+	{
+		Class<?>[] result = resolved.get(eventClass);
+		if (result == null)
+		{
+			ArrayList<Class<?>> L = new ArrayList<Class<?>>();
+		    for (Class<?> clazz = eventClass; clazz != null && HGEvent.class != clazz; clazz = clazz.getSuperclass())
+		    	if (registeredTypes.contains(clazz))
+		    		L.add(clazz);
+		    result = L.isEmpty() ? NO_TYPES : L.toArray(new Class<?>[L.size()]);
+		    resolved.put(eventClass, result);
+		}
+		return result;
+	}
+
+	private void registered(Class<?> eventType)
+	{
+		if (registeredTypes.add(eventType))
+			resolved.clear();
+	}
+
 	public <T extends HGEvent> void addListener(Class<T> eventType, HGListener listener)
 	{
+		registered(eventType);
 		getListeners(eventType, true).add(listener);
 	}
+
+	/**
+	 * <p>
+	 * Register a listener to be notified asynchronously, after commit, of events of the
+	 * given type. The result returned by the listener is ignored since the event has already
+	 * taken effect: asynchronous listeners cannot cancel an operation.
+	 * </p>
+	 */
+	public <T extends HGEvent> void addAsyncListener(Class<T> eventType, HGListener listener)
+	{
+		registered(eventType);
+		getListeners(eventType, true).add(new AsyncListener(listener));
+	}
 	
 	public <T extends HGEvent> void removeListener(Class<T> eventType, HGListener listener)
 	{
 		List<HGListener> listeners = getListeners(eventType, false);
 		if (listeners != null) {
-			listeners.remove(listener);
+			for (HGListener l : new ArrayList<HGListener>(listeners))
+				if (l == listener || l instanceof AsyncListener && ((AsyncListener)l).listener == listener)
+					listeners.remove(l);
 		}
 	}
 	
 	public HGListener.Result dispatch(HyperGraph hg, HGEvent event)
 	{
+		if (event instanceof HGTransactionEndEvent)
+			transactionEnded((HGTransactionEndEvent)event);
+
 		if (listenerMap == null)
 			return HGListener.Result.ok;
 		
-	    if (listenerMap.isEmpty()) // avoid looping through the class hierarchy cause it's expensive
-	        return HGListener.Result.ok;
-	
-	    for (Class<?> clazz = event.getClass(); clazz != null && HGEvent.class != clazz; clazz = clazz.getSuperclass())
+	    Class<?>[] types = resolve(event.getClass());
+	    for (Class<?> clazz : types)
 		{
 			List<HGListener> listeners = listenerMap.get(clazz);
 			if (listeners == null)
 				continue;
 			for (HGListener l : listeners)
+			{
+				if (l instanceof AsyncListener)
+				{
+					enqueue(event, ((AsyncListener)l).listener);
+					continue;
+				}
 				// type safety warning OK, we are explicitly passing a correctly typed event.
 				switch (l.handle(hg, event)) 
 				{
 					case ok: continue;
 					case cancel: return HGListener.Result.cancel;
 				}
+			}
 		}
 		// should we also invoke listener bound to HGEvent.class itself?
 		return HGListener.Result.ok;
 	}
+
+	private void enqueue(HGEvent event, HGListener listener)
+	{
+		HGTransaction tx = graph.getTransactionManager().getContext().getCurrent();
+		if (tx == null)
+		{
+			List<Pending> batch = new ArrayList<Pending>(1);
+			batch.add(new Pending(event, listener));
+			submit(batch);
+			return;
+		}
+		List<Pending> pending = tx.getAttribute(pendingKey);
+		if (pending == null)
+		{
+			pending = new ArrayList<Pending>();
+			tx.setAttribute(pendingKey, pending);
+		}
+		pending.add(new Pending(event, listener));
+	}
+
+	private void transactionEnded(HGTransactionEndEvent event)
+	{
+		HGTransaction tx = event.getTransaction();
+		List<Pending> pending = tx.getAttribute(pendingKey);
+		if (pending == null)
+			return;
+		tx.removeAttribute(pendingKey);
+		if (!event.isSuccessful())
+			return;
+		HGTransaction parent = tx.getParent();
+		if (parent == null)
+			submit(pending);
+		else
+		{
+			List<Pending> parentPending = parent.getAttribute(pendingKey);
+			if (parentPending == null)
+				parent.setAttribute(pendingKey, pending);
+			else
+				parentPending.addAll(pending);
+		}
+	}
+
+	private void submit(List<Pending> batch)
+	{
+		batches.add(batch);
+		if (delivering.compareAndSet(false, true))
+			asyncExecutor.execute(new Runnable() {
+				public void run() { deliver(); }
+			});
+	}
+
+	private void deliver()
+	{
+		while (true)
+		{
+			for (List<Pending> batch = batches.poll(); batch != null; batch = batches.poll())
+				for (Pending p : batch)
+				{
+					try
+					{
+						p.listener.handle(graph, p.event);
+					}
+					catch (Throwable t)
+					{
+						graph.getLogger().exception(t);
+					}
+				}
+			synchronized (batches)
+			{
+				delivering.set(false);
+				batches.notifyAll();
+			}
+			// a batch submitted after the last poll, but before the flag was reset,
+			// didn't schedule a delivery
+			if (batches.isEmpty() || !delivering.compareAndSet(false, true))
+				return;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Wait until all events queued for asynchronous listeners so far have been delivered, or
+	 * until the timeout expires. Return <code>true</code> if there are no more events to deliver.
+	 * </p>
+	 */
+	public boolean awaitAsyncDelivery(long timeoutMillis) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized (batches)
+		{
+			while (!batches.isEmpty() || delivering.get())
+			{
+				long left = deadline - System.currentTimeMillis();
+				if (left <= 0)
+					return false;
+				batches.wait(left);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * <p>Return the executor on which asynchronous listeners are invoked.</p>
+	 */
+	public Executor getAsyncExecutor()
+	{
+		return asyncExecutor;
+	}
+
+	/**
+	 * <p>Specify the executor on which asynchronous listeners are invoked. The default
+	 * is {@link HGEnvironment#executor()}.</p>
+	 */
+	public void setAsyncExecutor(Executor asyncExecutor)
+	{
+		this.asyncExecutor = asyncExecutor;
+	}
 	
 	public void clear()
 	{
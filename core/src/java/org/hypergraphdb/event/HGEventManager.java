@@ -35,6 +35,19 @@ public interface HGEventManager extends HGGraphHolder
 	 */
 	<T extends HGEvent> void addListener(Class<T> eventType, HGListener listener);
 	
+	/**
+	 * <p>
+	 * Register a listener to be invoked asynchronously for a given event type. The events
+	 * are delivered in batches, after the transaction in which they were dispatched has
+	 * committed. Asynchronous listeners cannot cancel the operation that triggered an event.
+	 * </p>
+	 * 
+	 * @param <T>
+	 * @param eventType
+	 * @param listener
+	 */
+	<T extends HGEvent> void addAsyncListener(Class<T> eventType, HGListener listener);
+	
 	/**
 	 * Remove a listener registered for the particular type.
 	 * @param <T>
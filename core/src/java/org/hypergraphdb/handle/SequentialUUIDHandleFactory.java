@@ -19,7 +19,6 @@ import org.hypergraphdb.HGPersistentHandle;
 public class SequentialUUIDHandleFactory extends UUIDHandleFactory
 {
     private AtomicLong seed = new AtomicLong(System.currentTimeMillis());
-    private byte [] data = new byte[16];
     private long base = 0;
     
     public SequentialUUIDHandleFactory()
@@ -41,14 +40,6 @@ public class SequentialUUIDHandleFactory extends UUIDHandleFactory
     public void setBase(long base)
     {
         this.base = base;
-        data[0] = (byte) ((base >>> 56)); 
-        data[1] = (byte) ((base >>> 48));
-        data[2] = (byte) ((base >>> 40)); 
-        data[3] = (byte) ((base >>> 32));
-        data[4] = (byte) ((base >>> 24)); 
-        data[5] = (byte) ((base >>> 16));
-        data[6] = (byte) ((base >>> 8)); 
-        data[7] = (byte) ((base >>> 0));        
     }
 
     public long getSeed()
@@ -63,15 +54,6 @@ public class SequentialUUIDHandleFactory extends UUIDHandleFactory
     
     public HGPersistentHandle makeHandle()
     {
-        long v = seed.incrementAndGet();
-        data[8] = (byte) ((v >>> 56)); 
-        data[9] = (byte) ((v >>> 48));
-        data[10] = (byte) ((v >>> 40)); 
-        data[11] = (byte) ((v >>> 32));
-        data[12] = (byte) ((v >>> 24)); 
-        data[13] = (byte) ((v >>> 16));
-        data[14] = (byte) ((v >>> 8)); 
-        data[15] = (byte) ((v >>> 0));
-        return UUIDPersistentHandle.makeHandle(data);        
+        return UUIDPersistentHandle.makeHandle(base, seed.incrementAndGet());
     }    
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package org.hypergraphdb.handle;
+
+import org.hypergraphdb.HGPersistentHandle;
+
+/**
+ *
+ * <p>
+ * A handle factory that generates time-ordered, version 7 UUID persistent handles. The
+ * first 48 bits of a UUID are the creation time in milliseconds since the epoch and the
+ * remaining bits, except for the version and variant, are random. Atoms created close
+ * in time get handles that are close in the order of the storage's B-trees, which keeps
+ * inserts and scans of recently created atoms local. The handles are as unique as the
+ * random ones produced by {@link UUIDHandleFactory}, except that they reveal their
+ * creation time.
+ * </p>
+ *
+ */
+public class TimeOrderedUUIDHandleFactory extends UUIDHandleFactory
+{
+    public HGPersistentHandle makeHandle()
+    {
+        long hi = (System.currentTimeMillis() << 16) | 0x7000L | (UUIDPersistentHandle.nextRandomLong() & 0x0FFFL);
+        long lo = (UUIDPersistentHandle.nextRandomLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return UUIDPersistentHandle.makeHandle(hi, lo);
+    }
+}
@@ -7,17 +7,59 @@
  */
 package org.hypergraphdb.handle;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.security.SecureRandom;
 
 import org.hypergraphdb.HGHandle;
 import org.hypergraphdb.HGPersistentHandle;
 
+/**
+ * <p>
+ * A 128-bit UUID based persistent handle. The UUID is held in two <code>long</code>s,
+ * the big-endian reading of its 16 bytes, so a handle is a single small object and
+ * comparing or hashing handles is done with long arithmetic. The order of handles is
+ * the unsigned lexicographic order of their <code>byte[]</code> representation.
+ * </p>
+ */
 public final class UUIDPersistentHandle implements HGPersistentHandle
 {
 	static final long serialVersionUID = -1;    
-	static final SecureRandom rndGenerator = new SecureRandom();
 
-	private UUID uuid;
+	// Keep the serialized form of the older UUID object based implementation.
+	private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("uuid", UUID.class) };
+
+	/**
+	 * Random bits are drawn in blocks from a <code>SecureRandom</code> per thread, so
+	 * generating handles doesn't contend on a shared generator.
+	 */
+	static final class RandomBits
+	{
+		final SecureRandom rnd = new SecureRandom();
+		final byte [] buffer = new byte[256];
+		int pos = buffer.length;
+
+		long next()
+		{
+			if (pos == buffer.length)
+			{
+				rnd.nextBytes(buffer);
+				pos = 0;
+			}
+			long x = readLong(buffer, pos);
+			pos += 8;
+			return x;
+		}
+	}
+
+	static final ThreadLocal<RandomBits> randomBits = new ThreadLocal<RandomBits>()
+	{
+		protected RandomBits initialValue() { return new RandomBits(); }
+	};
+
+	private long hi, lo;
 
 	/**
 	 * The number of bytes in the <code>byte []</code> representation
@@ -25,22 +67,47 @@ public final class UUIDPersistentHandle implements HGPersistentHandle
 	 */
 	public static final int SIZE = 16;
 
-	public static final UUIDPersistentHandle UUID_NULL_HANDLE = 
-		new UUIDPersistentHandle(new byte[] {0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0}, 0);
+	public static final UUIDPersistentHandle UUID_NULL_HANDLE = new UUIDPersistentHandle(0, 0);
+
+	static long readLong(final byte [] data, final int offset)
+	{
+		long x = 0;
+		for (int i = offset; i < offset + 8; i++)
+			x = (x << 8) | (data[i] & 0xFF);
+		return x;
+	}
+
+	static void writeLong(long x, final byte [] data, final int offset)
+	{
+		for (int i = offset + 7; i >= offset; i--)
+		{
+			data[i] = (byte)x;
+			x >>>= 8;
+		}
+	}
 
 	/**
-	 * <p>Default constructor create a new UUID.</p>
+	 * <p>Return the next 64 random bits of the current thread's generator.</p>
+	 */
+	static long nextRandomLong()
+	{
+		return randomBits.get().next();
+	}
+
+	/**
+	 * <p>Default constructor create a new, type 4 (random) UUID.</p>
 	 */
 	public UUIDPersistentHandle()
 	{
-		final byte[] rnd = new byte[SIZE];        
-		rndGenerator.nextBytes(rnd);        
-		uuid = new UUID(UUID.TYPE_RANDOM_BASED, rnd);    	    	
+		RandomBits bits = randomBits.get();
+		hi = (bits.next() & ~0xF000L) | ((long)UUID.TYPE_RANDOM_BASED << 12);
+		lo = (bits.next() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
 	}
 
-	private UUIDPersistentHandle(final UUID uuid)
+	private UUIDPersistentHandle(final long hi, final long lo)
 	{
-		this.uuid = uuid;
+		this.hi = hi;
+		this.lo = lo;
 	}
 
 	/**
@@ -62,7 +129,8 @@ public final class UUIDPersistentHandle implements HGPersistentHandle
 		else if (value.length - offset < SIZE) {
 			throw new IllegalArgumentException("Attempt to construct UUIDPersistentHandle with wrong size byte array.");
 		}
-		uuid = new UUID(value, offset);
+		hi = readLong(value, offset);
+		lo = readLong(value, offset + 8);
 	}
 
 	/**
@@ -109,6 +177,17 @@ public final class UUIDPersistentHandle implements HGPersistentHandle
 		return new UUIDPersistentHandle(value, offset);
 	}
 
+	/**
+	 * <p>Construct from the two halves of a UUID.</p>
+	 *
+	 * @param mostSignificantBits The first 8 bytes of the UUID, read as a big-endian <code>long</code>.
+	 * @param leastSignificantBits The last 8 bytes of the UUID, read as a big-endian <code>long</code>.
+	 */
+	public static UUIDPersistentHandle makeHandle(final long mostSignificantBits, final long leastSignificantBits)
+	{
+		return new UUIDPersistentHandle(mostSignificantBits, leastSignificantBits);
+	}
+
 	/**
 	 * <p>Construct from an existing UUID.</p>
 	 * 
@@ -116,7 +195,7 @@ public final class UUIDPersistentHandle implements HGPersistentHandle
 	 */
 	public static UUIDPersistentHandle makeHandle(final String value)
 	{
-		return new UUIDPersistentHandle(new UUID(value));
+		return new UUIDPersistentHandle(new UUID(value).mId, 0);
 	}
 
 	/**
@@ -125,18 +204,55 @@ public final class UUIDPersistentHandle implements HGPersistentHandle
 	@Override
 	public byte [] toByteArray()
 	{
-		return uuid.mId;
+		final byte [] result = new byte[SIZE];
+		toByteArray(result, 0);
+		return result;
+	}
+
+	@Override
+	public void toByteArray(final byte [] dest, final int offset)
+	{
+		writeLong(hi, dest, offset);
+		writeLong(lo, dest, offset + 8);
+	}
+
+	/**
+	 * <p>Return the first 8 bytes of the UUID as a big-endian <code>long</code>.</p>
+	 */
+	public long getMostSignificantBits()
+	{
+		return hi;
+	}
+
+	/**
+	 * <p>Return the last 8 bytes of the UUID as a big-endian <code>long</code>.</p>
+	 */
+	public long getLeastSignificantBits()
+	{
+		return lo;
 	}
 
 	public UUID getUuid()
 	{
-		return uuid;
+		return new UUID(toByteArray());
 	}
 
 
 	public void setUuid(final UUID uuid)
 	{
-		this.uuid = uuid;
+		hi = readLong(uuid.mId, 0);
+		lo = readLong(uuid.mId, 8);
+	}
+
+	private void writeObject(final ObjectOutputStream out) throws IOException
+	{
+		out.putFields().put("uuid", getUuid());
+		out.writeFields();
+	}
+
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		setUuid((UUID)in.readFields().get("uuid", null));
 	}
 
 	@Override
@@ -146,7 +262,8 @@ public final class UUIDPersistentHandle implements HGPersistentHandle
 			return true;
 		}
 		else if (other instanceof UUIDPersistentHandle) {
-			return uuid.equals(((UUIDPersistentHandle)other).uuid);
+			UUIDPersistentHandle h = (UUIDPersistentHandle)other;
+			return hi == h.hi && lo == h.lo;
 		}
 		else if (other instanceof HGLiveHandle) {
 			return ((HGLiveHandle)other).getPersistent().equals(this);
@@ -159,18 +276,28 @@ public final class UUIDPersistentHandle implements HGPersistentHandle
 	@Override
 	public int hashCode()
 	{
-		return uuid.hashCode();
+		long x = hi ^ lo;
+		return (int)(x ^ (x >>> 32));
 	}
 
 	@Override
   public String toString()
   {
-      return uuid.toString();
+      return toStringValue();
   }
 
   public String toStringValue()
   {
-      return uuid.toString();
+      final char [] c = new char[36];
+      int pos = 0;
+      for (int i = 0; i < 32; i++)
+      {
+          if (i == 8 || i == 12 || i == 16 || i == 20)
+              c[pos++] = '-';
+          long x = i < 16 ? hi >>> (60 - 4 * i) : lo >>> (60 - 4 * (i - 16));
+          c[pos++] = Character.forDigit((int)(x & 0xF), 16);
+      }
+      return new String(c);
   }
 
 	public int compareTo(HGHandle other)
@@ -178,13 +305,15 @@ public final class UUIDPersistentHandle implements HGPersistentHandle
 		if (other instanceof HGLiveHandle) {
 			other = ((HGLiveHandle)other).getPersistent();
 		}
-		return uuid.compareTo(((UUIDPersistentHandle)other).uuid);
+		return compareTo((HGPersistentHandle)other);
 	}
 
 	@Override
 	public int compareTo(final HGPersistentHandle other)
 	{
-		return uuid.compareTo(((UUIDPersistentHandle)other).uuid);    	
+		UUIDPersistentHandle h = (UUIDPersistentHandle)other;
+		int c = Long.compareUnsigned(hi, h.hi);
+		return c != 0 ? c : Long.compareUnsigned(lo, h.lo);
 	}
 
 
@@ -79,8 +79,7 @@ public class LinkIndexer extends HGKeyIndexer<byte[]>
     		
     		for (int i = 0; i < link.getArity(); i++)
     		{
-    			byte[] src = graph.getPersistentHandle(link.getTargetAt(i)).toByteArray();
-    			System.arraycopy(src, 0, result, i * handleSize, handleSize);
+    			graph.getPersistentHandle(link.getTargetAt(i)).toByteArray(result, i * handleSize);
     		}
     		return result;
     	}
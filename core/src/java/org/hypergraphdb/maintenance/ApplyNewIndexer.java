@@ -10,8 +10,13 @@ package org.hypergraphdb.maintenance;
 import java.util.ArrayList;
 
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
+import org.hypergraphdb.HGEnvironment;
 import org.hypergraphdb.HGHandle;
 import org.hypergraphdb.HGIndex;
 import org.hypergraphdb.HGPersistentHandle;
@@ -20,6 +25,10 @@ import org.hypergraphdb.HGRandomAccessResult.GotoResult;
 import org.hypergraphdb.HyperGraph;
 import org.hypergraphdb.HGQuery.hg;
 import org.hypergraphdb.indexing.HGIndexer;
+import org.hypergraphdb.storage.BAUtils;
+import org.hypergraphdb.storage.ByteArrayConverter;
+import org.hypergraphdb.storage.HGIndexStats;
+import org.hypergraphdb.transaction.HGTransactionConfig;
 import org.hypergraphdb.util.HGUtils;
 
 /**
@@ -28,6 +37,16 @@ import org.hypergraphdb.util.HGUtils;
  * The <code>MaintenanceOperation</code> will create index entries for a newly
  * added <code>HGIndexer</code>.
  * </p>
+ * 
+ * <p>
+ * With an {@link org.hypergraphdb.HGConfiguration#getIndexingParallelism() indexing parallelism}
+ * greater than 1, atoms are processed in chunks of 
+ * <code>batchSize * parallelism</code>: worker threads load the atoms of a chunk and
+ * compute their index entries, each in its own read-only transaction, then the entries
+ * are sorted by key and written to the index in a single transaction. The operation is
+ * resumable in both modes, the last atom of every committed batch or chunk being recorded
+ * with the operation.
+ * </p>
  *
  * @author Borislav Iordanov
  *
@@ -40,6 +59,58 @@ public class ApplyNewIndexer implements MaintenanceOperation
 	private HGPersistentHandle lastProcessed = null;
 	private int batchSize = 100;
 	
+	/**
+	 * An index entry computed by a worker, with its key in serialized form for sorting.
+	 */
+	private static class Entry
+	{
+		Object key;
+		Object value;
+		byte [] keyBytes;
+	}
+	
+	/**
+	 * Collects the entries an indexer adds to an index instead of storing them. 
+	 */
+	private static class EntryCollector<K, V> implements HGIndex<K, V>
+	{
+		String name;
+		ByteArrayConverter<K> converter;
+		List<Entry> entries = new ArrayList<Entry>();
+		
+		EntryCollector(String name, ByteArrayConverter<K> converter)
+		{
+			this.name = name;
+			this.converter = converter;
+		}
+		
+		public String getName() { return name; }
+		
+		public void addEntry(K key, V value)
+		{
+			Entry e = new Entry();
+			e.key = key;
+			e.value = value;
+			e.keyBytes = converter == null ? (byte[])key : converter.toByteArray(key);
+			entries.add(e);
+		}
+		
+		public void removeEntry(K key, V value) { throw new UnsupportedOperationException(); }
+		public void removeAllEntries(K key) { throw new UnsupportedOperationException(); }
+		public V findFirst(K key) { throw new UnsupportedOperationException(); }
+		public HGRandomAccessResult<V> find(K key) { throw new UnsupportedOperationException(); }
+		public void open() { }
+		public void close() { }
+		public boolean isOpen() { return true; }
+		public HGRandomAccessResult<K> scanKeys() { throw new UnsupportedOperationException(); }
+		public HGRandomAccessResult<V> scanValues() { throw new UnsupportedOperationException(); }
+		@Deprecated
+		public long count() { return entries.size(); }
+		@Deprecated
+		public long count(K key) { throw new UnsupportedOperationException(); }
+		public HGIndexStats<K, V> stats() { throw new UnsupportedOperationException(); }
+	}
+	
 	private void cleanupAfterFailure(HyperGraph graph, HGIndexer indexer, MaintenanceException ex)
 	{
 		try
@@ -53,6 +124,33 @@ public class ApplyNewIndexer implements MaintenanceOperation
 		}
 	}
 	
+	/**
+	 * Move to the first atom after <code>last</code>, or to the first atom if <code>last</code>
+	 * is <code>null</code>. Return <code>false</code> if there's no such atom.
+	 */
+	private static boolean positionAfter(HGRandomAccessResult<HGPersistentHandle> rs, HGPersistentHandle last)
+	{
+        if (last == null)
+        {
+            if (!rs.hasNext())
+                return false;
+            rs.next();
+        }
+        else
+        {
+            GotoResult gt = rs.goTo(last, false);
+            if (gt == GotoResult.nothing) // last processed was actually last element in result set
+                return false;
+            else if (gt == GotoResult.found)
+            {
+                if (!rs.hasNext())
+                    return false;
+                rs.next();
+            } // else we are already positioned after the last processed, which is not present for god know why?
+        }
+        return true;
+	}
+	
 	private void indexAtomsTypedWith(HyperGraph graph,
 	                                 HGIndex<?,?> idx,
 	                                 HGIndexer indexer, 
@@ -67,37 +165,12 @@ public class ApplyNewIndexer implements MaintenanceOperation
             {
                 rs = (HGRandomAccessResult<HGPersistentHandle>)(HGRandomAccessResult<?>)
                         graph.find(hg.type(typeHandle));
-                if (txLastProcessed == null)
+                if (!positionAfter(rs, txLastProcessed))
                 {
-                    if (!rs.hasNext()) 
-                    {
-                        rs.close();
-                        graph.getTransactionManager().endTransaction(false);
-                        return; 
-                    }
-                    else rs.next();
+                    rs.close();
+                    graph.getTransactionManager().endTransaction(false);
+                    return; 
                 }
-                else
-                {
-                    GotoResult gt = rs.goTo(txLastProcessed, false);
-                    if (gt == GotoResult.nothing) // last processed was actually last element in result set
-                    {
-                        rs.close();
-                        graph.getTransactionManager().endTransaction(false);                        
-                        return;
-                    }
-                    else if (gt == GotoResult.found)
-                    {
-                        if (!rs.hasNext())
-                        {
-                            rs.close();
-                            graph.getTransactionManager().endTransaction(false);                            
-                            return;
-                        }
-                        else
-                            rs.next();
-                    } // else we are already positioned after the last processed, which is not present for god know why?
-                }               
                 for (int i = 0; i < batchSize; i++)
                 {
                     Object atom = graph.get(rs.current());
@@ -135,6 +208,143 @@ public class ApplyNewIndexer implements MaintenanceOperation
         }	    
 	}
 	
+	/**
+	 * Return the handles of up to <code>max</code> atoms of the given type, following 
+	 * <code>last</code>.
+	 */
+	private List<HGPersistentHandle> nextChunk(final HyperGraph graph, 
+	                                           final HGHandle typeHandle, 
+	                                           final HGPersistentHandle last, 
+	                                           final int max)
+	{
+	    return graph.getTransactionManager().ensureTransaction(new Callable<List<HGPersistentHandle>>() {
+	        public List<HGPersistentHandle> call()
+	        {
+	            List<HGPersistentHandle> chunk = new ArrayList<HGPersistentHandle>(); 
+	            HGRandomAccessResult<HGPersistentHandle> rs = 
+	                (HGRandomAccessResult<HGPersistentHandle>)(HGRandomAccessResult<?>)graph.find(hg.type(typeHandle));
+	            try
+	            {
+	                if (positionAfter(rs, last))
+	                    while (true)
+	                    {
+	                        chunk.add(rs.current());
+	                        if (chunk.size() == max || !rs.hasNext())
+	                            break;
+	                        rs.next();
+	                    }
+	                return chunk;
+	            }
+	            finally
+	            {
+	                HGUtils.closeNoException(rs);
+	            }
+	        }
+	    }, HGTransactionConfig.READONLY);
+	}
+	
+	/**
+	 * Compute the index entries of a list of atoms in a read-only transaction.
+	 */
+	private <K, V> Callable<List<Entry>> extractEntries(final HyperGraph graph, 
+	                                                    final HGIndexer<K, V> indexer, 
+	                                                    final String indexName,
+	                                                    final List<HGPersistentHandle> atoms)
+	{
+	    return new Callable<List<Entry>>() {
+	        public List<Entry> call()
+	        {
+	            return graph.getTransactionManager().ensureTransaction(new Callable<List<Entry>>() {
+	                public List<Entry> call()
+	                {
+	                    EntryCollector<K, V> collector = new EntryCollector<K, V>(indexName, indexer.getConverter(graph));
+	                    for (HGPersistentHandle h : atoms)
+	                        indexer.index(graph, h, graph.get(h), collector);
+	                    return collector.entries;
+	                }
+	            }, HGTransactionConfig.READONLY);
+	        }
+	    };
+	}
+	
+	private void bulkIndexAtomsTypedWith(HyperGraph graph,
+	                                     HGIndex<?,?> idx,
+	                                     HGIndexer<?, ?> indexer, 
+	                                     HGHandle typeHandle,
+	                                     int workers) throws MaintenanceException
+	{
+	    final Comparator<byte[]> keyComparator = indexer.getComparator(graph);
+	    Comparator<Entry> entryComparator = new Comparator<Entry>() {
+	        public int compare(Entry left, Entry right)
+	        {
+	            if (keyComparator != null)
+	                return keyComparator.compare(left.keyBytes, right.keyBytes);
+	            int c = BAUtils.compare(left.keyBytes, 0, right.keyBytes, 0, 
+	                                    Math.min(left.keyBytes.length, right.keyBytes.length));
+	            return c != 0 ? c : left.keyBytes.length - right.keyBytes.length;
+	        }
+	    };
+	    while (true)
+	    {
+	        List<Entry> entries = new ArrayList<Entry>();
+	        HGPersistentHandle chunkLast = null;
+	        try
+	        {
+	            List<HGPersistentHandle> chunk = nextChunk(graph, typeHandle, lastProcessed, batchSize * workers);
+	            if (chunk.isEmpty())
+	                return;
+	            chunkLast = chunk.get(chunk.size() - 1);
+	            int sliceSize = (chunk.size() + workers - 1) / workers;
+	            List<Future<List<Entry>>> slices = new ArrayList<Future<List<Entry>>>();
+	            for (int i = 0; i < chunk.size(); i += sliceSize)
+	                slices.add(HGEnvironment.executor().submit(
+	                    extractEntries(graph, indexer, idx.getName(), 
+	                                   chunk.subList(i, Math.min(i + sliceSize, chunk.size())))));
+	            for (Future<List<Entry>> slice : slices)
+	                entries.addAll(slice.get());
+	            Collections.sort(entries, entryComparator);
+	        }
+	        catch (Throwable t)
+	        {
+	            MaintenanceException mex = new MaintenanceException(
+	                false, 
+	                "While creating populating index for indexer : " + indexer,
+	                t);
+	            cleanupAfterFailure(graph, indexer, mex);
+	            throw mex;
+	        }
+	        HGPersistentHandle previous = lastProcessed;
+	        while (true)
+	        {
+	            graph.getTransactionManager().beginTransaction();
+	            try
+	            {
+	                for (Entry e : entries)
+	                    ((HGIndex<Object, Object>)idx).addEntry(e.key, e.value);
+	                lastProcessed = chunkLast;
+	                graph.update(this);
+	                graph.getTransactionManager().endTransaction(true);
+	                break;
+	            }
+	            catch (Throwable t)
+	            {
+	                lastProcessed = previous;
+	                Throwable cause = HGUtils.getRootCause(t);
+	                if (graph.getStore().getTransactionFactory().canRetryAfter(cause))
+	                    continue;                
+	                try { graph.getTransactionManager().endTransaction(false); }
+	                catch (Throwable tt) { tt.printStackTrace(System.err); }
+	                MaintenanceException mex = new MaintenanceException(
+	                    false, 
+	                    "While creating populating index for indexer : " + indexer,
+	                    t);
+	                cleanupAfterFailure(graph, indexer, mex);
+	                throw mex;
+	            }
+	        }
+	    }
+	}
+	
 	public ApplyNewIndexer()
 	{		
 	}
@@ -153,6 +363,7 @@ public class ApplyNewIndexer implements MaintenanceOperation
 		if (idx == null)
 			throw new MaintenanceException(false,"Indexer " + indexer + " with handle " + hindexer + 
 												 " present in graph, but no actual index has been created.");
+		int workers = graph.getConfig().getIndexingParallelism();
 		for (HGHandle currentType : hg.typePlus(indexer.getType()).getSubTypes(graph))
 		{		    
 		    if (typesAdded.contains(currentType)) // are we resuming from a previous interruption?
@@ -169,7 +380,10 @@ public class ApplyNewIndexer implements MaintenanceOperation
 		        typesAdded.add(currentType);
 		        lastProcessed = null;
 		    }
-		    indexAtomsTypedWith(graph, idx, indexer, currentType);		    
+		    if (workers > 1)
+		        bulkIndexAtomsTypedWith(graph, idx, indexer, currentType, workers);
+		    else
+		        indexAtomsTypedWith(graph, idx, indexer, currentType);		    
 		}
 	}
 
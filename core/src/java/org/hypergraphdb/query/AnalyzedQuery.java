@@ -11,6 +11,7 @@ import org.hypergraphdb.HGSearchResult;
 import org.hypergraphdb.query.cond2qry.QueryMetaData;
 import org.hypergraphdb.query.impl.IntersectionQuery;
 import org.hypergraphdb.query.impl.PredicateBasedFilter;
+import org.hypergraphdb.query.impl.ProfiledQuery;
 import org.hypergraphdb.util.HGUtils;
 import org.hypergraphdb.util.Mapping;
 
@@ -30,6 +31,11 @@ public class AnalyzedQuery<SearchResult> extends HGQuery<SearchResult>
 {
     public static final String INTERSECTION_THRESHOLD = "intersection-threshold";
     public static final String SCAN_THRESHOLD = "scan-threshold";
+    /**
+     * Option to wrap every operator of the compiled query into a {@link ProfiledQuery}, 
+     * so that {@link #explain()} reports how it performed during execution. 
+     */
+    public static final String PROFILE = "profile";
     
     HGQueryCondition topLevel;
     Map<String, Object> options;
@@ -134,6 +140,18 @@ public class AnalyzedQuery<SearchResult> extends HGQuery<SearchResult>
         return query.execute();                
     }
     
+    /**
+     * <p>
+     * Return the plan of the compiled query with the estimated sizes of the result sets 
+     * of its operators and, if the query was compiled with the {@link #PROFILE} option, 
+     * their runtime statistics so far.
+     * </p>
+     */
+    public QueryPlan explain()
+    {
+        return QueryPlan.of(this);
+    }
+    
     
     public Map<String, Set<HGQueryCondition>> analyze()
     {
@@ -7,9 +7,12 @@
  */
 package org.hypergraphdb.query;
 
+import java.util.Collections;
+
 import org.hypergraphdb.HGHandle;
 import org.hypergraphdb.HyperGraph;
 import org.hypergraphdb.algorithms.HGBreadthFirstTraversal;
+import org.hypergraphdb.algorithms.HGParallelBreadthFirstTraversal;
 import org.hypergraphdb.algorithms.HGTraversal;
 import org.hypergraphdb.util.Ref;
 
@@ -24,6 +27,8 @@ import org.hypergraphdb.util.Ref;
  */
 public class BFSCondition extends TraversalCondition
 {
+	private boolean parallel = false;
+	
 	public BFSCondition()
 	{
 		
@@ -39,9 +44,28 @@ public class BFSCondition extends TraversalCondition
 		super(startAtom);
 	}
 	
+	/**
+	 * <p>Return <code>true</code> if the traversal expands a whole level of the graph at a
+	 * time, in parallel, with a {@link HGParallelBreadthFirstTraversal}.</p>
+	 */
+	public boolean isParallel()
+	{
+		return parallel;
+	}
+	
+	public void setParallel(boolean parallel)
+	{
+		this.parallel = parallel;
+	}
+	
 	@Override
-	public HGTraversal getTraversal(HyperGraph graph)
+	public HGTraversal getTraversal(final HyperGraph graph)
 	{
+		if (parallel)
+			return new HGParallelBreadthFirstTraversal(graph,
+					() -> Collections.singletonList(getStartAtomReference().get()),
+					() -> makeGenerator(graph),
+					Integer.MAX_VALUE);
 		return new HGBreadthFirstTraversal(getStartAtomReference(), makeGenerator(graph));
 	}
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import java.util.Map;
 
 import org.hypergraphdb.query.cond2qry.ConditionToQuery;
 import org.hypergraphdb.query.cond2qry.ContractConjunction;
+import org.hypergraphdb.query.cond2qry.QueryPlanCache;
 
 /**
  * <p>
@@ -25,6 +26,10 @@ import org.hypergraphdb.query.cond2qry.ContractConjunction;
 public class HGQueryConfiguration
 {
     private boolean parallelExecution = false;
+    private boolean costBasedPlanning = true;
+    private int predicateScanRatio = 64;
+    private int inMemoryIntersectionThreshold = 4096;
+    private QueryPlanCache planCache = new QueryPlanCache(512, 1000);
     private HashMap<Class<? extends HGQueryCondition>, List<QueryCompile.Expand>> expandTransforms = 
             new HashMap<Class<? extends HGQueryCondition>, List<QueryCompile.Expand>>();
     private HashMap<Class<? extends HGQueryCondition>, List<QueryCompile.Contract>> contractTransforms = 
@@ -98,4 +103,77 @@ public class HGQueryConfiguration
     {
         this.parallelExecution = parallelExecution;
     }    
+
+    /**
+     * <p>
+     * Return <code>true</code> if the conjuncts of an <code>And</code> are ordered and
+     * combined based on the estimated sizes of their result sets, or <code>false</code> if
+     * only their ordering and random access properties are taken into account. The default
+     * is <code>true</code>.
+     * </p>
+     */
+    public boolean isCostBasedPlanning()
+    {
+        return costBasedPlanning;
+    }
+
+    public void setCostBasedPlanning(boolean costBasedPlanning)
+    {
+        this.costBasedPlanning = costBasedPlanning;
+    }
+
+    /**
+     * <p>
+     * Return how many times larger than the smallest conjunct of an <code>And</code>
+     * a conjunct's result set must be for it to be evaluated as a predicate on the
+     * atoms of the smaller ones rather than scanned. The default is 64.
+     * </p>
+     */
+    public int getPredicateScanRatio()
+    {
+        return predicateScanRatio;
+    }
+
+    public void setPredicateScanRatio(int predicateScanRatio)
+    {
+        this.predicateScanRatio = predicateScanRatio;
+    }
+
+    /**
+     * <p>
+     * Return the estimated size under which an intersection of ordered random access
+     * result sets that is further intersected with other sets is computed in memory. The
+     * default is 4096.
+     * </p>
+     */
+    public int getInMemoryIntersectionThreshold()
+    {
+        return inMemoryIntersectionThreshold;
+    }
+
+    public void setInMemoryIntersectionThreshold(int inMemoryIntersectionThreshold)
+    {
+        this.inMemoryIntersectionThreshold = inMemoryIntersectionThreshold;
+    }
+
+    /**
+     * <p>
+     * Return the cache of conjunction plans or <code>null</code> if plans are not cached.
+     * </p>
+     */
+    public QueryPlanCache getPlanCache()
+    {
+        return planCache;
+    }
+
+    /**
+     * <p>
+     * Set the cache of conjunction plans, <code>null</code> to compute a new plan each time
+     * a query is compiled.
+     * </p>
+     */
+    public void setPlanCache(QueryPlanCache planCache)
+    {
+        this.planCache = planCache;
+    }
 }
\ No newline at end of file
@@ -65,7 +65,7 @@ public class IndexedPartCondition implements HGQueryCondition
 	
 	public Object getPartValue()
 	{
-		return partValue;
+		return partValue.get();
 	}
 
 	public void setType(HGHandle type)
@@ -13,6 +13,7 @@ import org.hypergraphdb.query.cond2qry.ExpressionBasedQuery;
 import org.hypergraphdb.query.cond2qry.OrToParellelQuery;
 import org.hypergraphdb.query.cond2qry.QueryMetaData;
 import org.hypergraphdb.query.cond2qry.ToQueryMap;
+import org.hypergraphdb.query.impl.ProfiledQuery;
 import org.hypergraphdb.util.CallContextRef;
 import org.hypergraphdb.util.DelegateMapResolver;
 //import org.hypergraphdb.util.Mapping;
@@ -151,11 +152,40 @@ public class QueryCompile
         AnalyzedQuery<SearchResult> aquery = new AnalyzedQuery<SearchResult>(condition, options);
         equery.var("$analyzed", aquery);
         equery.compile(condition);
+        aquery.setHyperGraph(graph);
         aquery.query = equery.getCompiledQuery();        
         aquery.analyze();
+        if (Boolean.TRUE.equals(options.get(AnalyzedQuery.PROFILE)))
+            aquery.query = ProfiledQuery.instrument(aquery.query);
         return aquery;
     }
 
+    /**
+     * <p>
+     * Compile a query condition and return the plan of the resulting query, with the 
+     * estimated size of the result set of each operator.
+     * </p>
+     */
+    public static QueryPlan explain(HyperGraph graph, HGQueryCondition condition)
+    {
+        return analyze(graph, condition, new HashMap<String, Object>()).explain();
+    }
+    
+    /**
+     * <p>
+     * Compile a query condition for profiling: every operator of the resulting query 
+     * counts the calls made to its result sets and the time spent in them. Execute the 
+     * query and call {@link AnalyzedQuery#explain()} to get the statistics.  
+     * </p>
+     */
+    public static <SearchResult> AnalyzedQuery<SearchResult> profile(HyperGraph graph, 
+                                                                     HGQueryCondition condition)
+    {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put(AnalyzedQuery.PROFILE, Boolean.TRUE);
+        return analyze(graph, condition, options);
+    }
+
     /**
      * An operation whereby a complex query expression (e.g. an "And") can be rewritten in a way
      * where some of its parts are replaced with a single, simpler and/or more efficient part.
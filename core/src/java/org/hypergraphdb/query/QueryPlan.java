@@ -0,0 +1,314 @@
+package org.hypergraphdb.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hypergraphdb.HGIndex;
+import org.hypergraphdb.HGQuery;
+import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.ResultSizeEstimation;
+import org.hypergraphdb.query.cond2qry.ExpressionBasedQuery;
+import org.hypergraphdb.query.cond2qry.QueryMetaData;
+import org.hypergraphdb.query.impl.DelayedSetLoadPredicate;
+import org.hypergraphdb.query.impl.IndexBasedQuery;
+import org.hypergraphdb.query.impl.IndexScanQuery;
+import org.hypergraphdb.query.impl.IntersectionQuery;
+import org.hypergraphdb.query.impl.PipeQuery;
+import org.hypergraphdb.query.impl.PredicateBasedFilter;
+import org.hypergraphdb.query.impl.PredicateBasedRAFilter;
+import org.hypergraphdb.query.impl.ProfiledQuery;
+import org.hypergraphdb.query.impl.RABasedPredicate;
+import org.hypergraphdb.query.impl.ResultMapQuery;
+import org.hypergraphdb.query.impl.SearchableBasedQuery;
+import org.hypergraphdb.query.impl.TraversalBasedQuery;
+import org.hypergraphdb.query.impl.UnionQuery;
+
+/**
+ * <p>
+ * The operator tree of a compiled query, as returned by {@link HGQuery#explain()}. Each
+ * node describes an operator (an index lookup, an intersection, a predicate filter etc.)
+ * together with the estimated size of its result set, when known. The plan of a query
+ * compiled for profiling with {@link QueryCompile#profile(HyperGraph, HGQueryCondition)}
+ * also holds the runtime statistics of each operator, collected while it was executed.
+ * </p>
+ *
+ * <p>
+ * Sizes are estimated from the {@link QueryMetaData} collected during compilation, so
+ * only the plans of {@link AnalyzedQuery} instances have them for the leaves of the tree.
+ * </p>
+ */
+public class QueryPlan
+{
+    // see AndToQuery
+    private static final long ESTIMATION_COST = 2;
+
+    /**
+     * <p>An operator of a query plan.</p>
+     */
+    public static class Node
+    {
+        private final String operator;
+        private final String detail;
+        private final long estimate;
+        private final ProfiledQuery.Stats stats;
+        private final List<Node> children;
+
+        Node(String operator, String detail, long estimate, ProfiledQuery.Stats stats, List<Node> children)
+        {
+            this.operator = operator;
+            this.detail = detail;
+            this.estimate = estimate;
+            this.stats = stats;
+            this.children = Collections.unmodifiableList(children);
+        }
+
+        /**
+         * <p>The name of the operator, usually the class of the query implementing it.</p>
+         */
+        public String getOperator()
+        {
+            return operator;
+        }
+
+        /**
+         * <p>What the operator works on: index, predicate, source condition etc. May be
+         * <code>null</code>.</p>
+         */
+        public String getDetail()
+        {
+            return detail;
+        }
+
+        /**
+         * <p>The estimated size of the result set or -1 if it is not known.</p>
+         */
+        public long getEstimate()
+        {
+            return estimate;
+        }
+
+        /**
+         * <p>The runtime statistics of the operator or <code>null</code> if the query
+         * was not profiled.</p>
+         */
+        public ProfiledQuery.Stats getStats()
+        {
+            return stats;
+        }
+
+        public List<Node> getChildren()
+        {
+            return children;
+        }
+
+        void print(StringBuilder out, String indent)
+        {
+            out.append(indent).append(operator);
+            if (detail != null)
+                out.append(" [").append(detail).append("]");
+            if (estimate > -1)
+                out.append(" est=").append(estimate);
+            if (stats != null)
+                out.append(" {").append(stats).append("}");
+            out.append('\n');
+            for (Node child : children)
+                child.print(out, indent + "  ");
+        }
+    }
+
+    private final Node root;
+    private final AnalyzedQuery<?> analysis;
+
+    private QueryPlan(HGQuery<?> query, AnalyzedQuery<?> analysis)
+    {
+        this.analysis = analysis;
+        this.root = node(query);
+    }
+
+    /**
+     * <p>Return the plan of the given query.</p>
+     */
+    public static QueryPlan of(HGQuery<?> query)
+    {
+        return new QueryPlan(query, null);
+    }
+
+    static QueryPlan of(AnalyzedQuery<?> query)
+    {
+        return new QueryPlan(query.query, query);
+    }
+
+    public Node getRoot()
+    {
+        return root;
+    }
+
+    private static String nameOf(Class<?> cl)
+    {
+        return cl.isAnonymousClass() ? nameOf(cl.getEnclosingClass()) : cl.getSimpleName();
+    }
+
+    private static String describe(HGAtomPredicate p)
+    {
+        return p instanceof HGQueryCondition ? p.toString() : nameOf(p.getClass());
+    }
+
+    private static String describe(Object searchable)
+    {
+        return searchable instanceof HGIndex ? ((HGIndex<?, ?>)searchable).getName() : nameOf(searchable.getClass());
+    }
+
+    @SuppressWarnings("rawtypes")
+    private String detailOf(HGQuery<?> q)
+    {
+        if (q instanceof IntersectionQuery)
+        {
+            Class<?> combiner = ((IntersectionQuery<?>)q).getCombiner().getClass();
+            return nameOf(combiner.getEnclosingClass() != null ? combiner.getEnclosingClass() : combiner);
+        }
+        else if (q instanceof PredicateBasedFilter)
+        {
+            PredicateBasedFilter<?> f = (PredicateBasedFilter<?>)q;
+            return f.getAtomPredicate() != null ? describe(f.getAtomPredicate()) : nameOf(f.getPredicate().getClass());
+        }
+        else if (q instanceof PredicateBasedRAFilter)
+        {
+            PredicateBasedRAFilter<?> f = (PredicateBasedRAFilter<?>)q;
+            return f.getAtomPredicate() != null ? describe(f.getAtomPredicate()) : nameOf(f.getPredicate().getClass());
+        }
+        else if (q instanceof IndexBasedQuery)
+        {
+            IndexBasedQuery<?> iq = (IndexBasedQuery<?>)q;
+            if (iq.getScanType() != IndexBasedQuery.ScanType.none)
+                return describe(iq.getIndex()) + " scan " + iq.getScanType();
+            else
+                return describe(iq.getIndex()) + " " + iq.getOperator() + " " + iq.getKeyReference().get();
+        }
+        else if (q instanceof SearchableBasedQuery)
+        {
+            SearchableBasedQuery sq = (SearchableBasedQuery)q;
+            return describe(sq.getSearchable()) + " " + sq.getOperator() + " " + sq.getKeyReference().get();
+        }
+        else if (q instanceof IndexScanQuery)
+        {
+            IndexScanQuery<?, ?> sq = (IndexScanQuery<?, ?>)q;
+            return describe(sq.getIndex()) + " scan " + (sq.isReturnKeys() ? "keys" : "values");
+        }
+        else if (q instanceof TraversalBasedQuery)
+        {
+            TraversalBasedQuery tq = (TraversalBasedQuery)q;
+            return nameOf(tq.getTraversal().getClass()) + " " + tq.getReturnType();
+        }
+        else if (q instanceof ResultMapQuery)
+        {
+            ResultMapQuery mq = (ResultMapQuery)q;
+            return mq.getMapping() == null ? null : nameOf(mq.getMapping().getClass());
+        }
+        else
+            return null;
+    }
+
+    private static long sizeOf(QueryMetaData x)
+    {
+        if (x.sizeExpected > -1)
+            return x.sizeExpected;
+        else if (x.sizeUB > -1 && x.sizeUB < Long.MAX_VALUE)
+            return x.sizeUB;
+        else
+            return -1;
+    }
+
+    private long estimateOf(HGQuery<?> q, HGQueryCondition source, List<Node> children)
+    {
+        QueryMetaData meta = analysis == null ? null : analysis.metadata.get(q);
+        if (meta != null && sizeOf(meta) > -1)
+            return sizeOf(meta);
+        HyperGraph graph = analysis == null ? null : analysis.getHyperGraph();
+        if (source != null && graph != null)
+        {
+            long n = ResultSizeEstimation.estimate(graph, source, ESTIMATION_COST);
+            if (n > -1)
+                return n;
+        }
+        if (children.isEmpty())
+            return -1;
+        if (q instanceof IntersectionQuery)
+        {
+            long result = -1;
+            for (Node child : children)
+                if (child.estimate > -1 && (result == -1 || child.estimate < result))
+                    result = child.estimate;
+            return result;
+        }
+        else if (q instanceof UnionQuery)
+        {
+            long result = 0;
+            for (Node child : children)
+                if (child.estimate == -1)
+                    return -1;
+                else
+                    result += child.estimate;
+            return result;
+        }
+        else if (q instanceof PredicateBasedFilter ||
+                 q instanceof PredicateBasedRAFilter ||
+                 q instanceof ResultMapQuery)
+            return children.get(0).estimate; // an upper bound
+        else
+            return -1;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Node node(HGQuery<?> q)
+    {
+        ProfiledQuery.Stats stats = null;
+        if (q instanceof ProfiledQuery)
+        {
+            stats = ((ProfiledQuery<?>)q).getStats();
+            q = ((ProfiledQuery<?>)q).getQuery();
+        }
+        if (q instanceof AnalyzedQuery)
+            return node(((AnalyzedQuery<?>)q).query);
+        List<Node> children = new ArrayList<Node>();
+        if (q instanceof ExpressionBasedQuery)
+        {
+            ExpressionBasedQuery<?> eq = (ExpressionBasedQuery<?>)q;
+            children.add(node(eq.getCompiledQuery()));
+            return new Node(nameOf(q.getClass()), String.valueOf(eq.getCondition()),
+                            children.get(0).estimate, stats, children);
+        }
+        if (q instanceof Iterable)
+            for (Object x : (Iterable<?>)q)
+                if (x instanceof HGQuery)
+                    children.add(node((HGQuery<?>)x));
+        HGQueryCondition source = analysis == null ? null : analysis.translated.get(q);
+        long estimate = estimateOf(q, source, children);
+        // the queries evaluated on the side
+        HGAtomPredicate p = null;
+        if (q instanceof PredicateBasedFilter)
+            p = ((PredicateBasedFilter<?>)q).getAtomPredicate();
+        else if (q instanceof PredicateBasedRAFilter)
+            p = ((PredicateBasedRAFilter<?>)q).getAtomPredicate();
+        if (p instanceof RABasedPredicate && ((RABasedPredicate)p).getQuery() != null)
+            children.add(node(((RABasedPredicate)p).getQuery()));
+        else if (p instanceof DelayedSetLoadPredicate)
+            children.add(node(((DelayedSetLoadPredicate)p).getQuery()));
+        if (q instanceof PipeQuery)
+            children.add(node(((PipeQuery<?, ?>)q).getOut()));
+        String detail = detailOf(q);
+        if (source != null)
+            detail = detail == null ? source.toString() : detail + " <- " + source;
+        return new Node(nameOf(q.getClass()), detail, estimate, stats, children);
+    }
+
+    /**
+     * <p>Render the plan as an indented tree, one operator per line.</p>
+     */
+    public String toString()
+    {
+        StringBuilder out = new StringBuilder();
+        root.print(out, "");
+        return out.toString();
+    }
+}
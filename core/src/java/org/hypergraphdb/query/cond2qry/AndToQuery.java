@@ -5,303 +5,426 @@
  * 
  * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved. 
  */
-package org.hypergraphdb.query.cond2qry;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.List;
-
-import org.hypergraphdb.HGException;
-import org.hypergraphdb.HGQuery;
-import org.hypergraphdb.HyperGraph;
-import org.hypergraphdb.query.And;
-import org.hypergraphdb.query.HGAtomPredicate;
-import org.hypergraphdb.query.HGQueryCondition;
+package org.hypergraphdb.query.cond2qry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.hypergraphdb.HGException;
+import org.hypergraphdb.HGQuery;
+import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.ResultSizeEstimation;
+import org.hypergraphdb.query.And;
+import org.hypergraphdb.query.HGAtomPredicate;
+import org.hypergraphdb.query.HGQueryCondition;
+import org.hypergraphdb.query.HGQueryConfiguration;
 import org.hypergraphdb.query.QueryCompile;
-import org.hypergraphdb.query.impl.DelayedSetLoadPredicate;
-import org.hypergraphdb.query.impl.IntersectionQuery;
-import org.hypergraphdb.query.impl.PredicateBasedFilter;
-import org.hypergraphdb.query.impl.RABasedPredicate;
+import org.hypergraphdb.query.impl.DelayedSetLoadPredicate;
+import org.hypergraphdb.query.impl.InMemoryIntersectionResult;
+import org.hypergraphdb.query.impl.IntersectionQuery;
+import org.hypergraphdb.query.impl.PredicateBasedFilter;
+import org.hypergraphdb.query.impl.RABasedPredicate;
+import org.hypergraphdb.query.impl.RSCombiner;
 import org.hypergraphdb.query.impl.SortedIntersectionResult;
-//import org.hypergraphdb.query.impl.SortedIntersectionResult;
-import org.hypergraphdb.query.impl.ZigZagIntersectionResult;
-
-@SuppressWarnings("unchecked")
-public class AndToQuery<ResultType> implements ConditionToQuery<ResultType>
-{
-	/**
-	 * 
-	 * <p>
-	 * Order QueryMetaData instance by the expected size of the result set. The logic
-	 * is a bit convoluted because there are 3 numbers in play: lower bound (LB) of
-	 * the result, upper bound (UB) and expected size (E). We use the expected size
-	 * if available, otherwise we use the upper bound if available or the lower bound
-	 * with a "lowest priority". The assumption here is the E when provided should be 
-	 * fairly accurate so there's no need to be overly conservative. In most cases, 
-	 * the size is actually either known completely (e.g. in an index) or nothing
-	 * is know about it. If no size (LB, UB or E) is known for at least one of the 
-	 * parameters of the compare method, then the two are deemed equal (i.e. 0 is
-	 * returned).
-	 * </p>
-	 *
-	 * @author Borislav Iordanov
-	 *
-	 */
-	private static class BySizeComparator implements Comparator<QueryMetaData>
-	{
-		public int compare(QueryMetaData o1, QueryMetaData o2)
-		{
-			long left = o1.sizeExpected > -1 ? o1.sizeExpected : 
-						o1.sizeUB > -1 ? o1.sizeUB : o1.sizeLB;
-			if (left == -1)
-				return 0;
-			long right = o2.sizeExpected > -1 ? o2.sizeExpected : 
-						 o2.sizeUB > -1 ? o2.sizeUB : o2.sizeLB;
-			if (right == -1 || left == right)
-				return 0;
-			else if (left > right)
-				return 1;
-			else
-				return -1;				
-		}		
-	}
-	
-	private static BySizeComparator bySizeComparator = new BySizeComparator();
-	
-	public QueryMetaData getMetaData(HyperGraph graph, HGQueryCondition condition)
-	{
-		QueryMetaData x = QueryMetaData.ORACCESS.clone(condition); // assume we have ORACCESS, but check below
-		boolean ispredicate = true;
-		x.predicateCost = 0;
-		for (HGQueryCondition sub : ((And)condition))
-		{
-			ConditionToQuery<?> transformer = QueryCompile.translator(graph, sub.getClass());
-			if (transformer == null)
-				if (! (sub instanceof HGAtomPredicate))
-					throw new HGException("Condition " + sub + " is not query translatable, nor a predicate.");
-				else 
-				{
-					x.ordered = false;
-					x.randomAccess = false;
-					continue;
-				}
-			QueryMetaData subx = transformer.getMetaData(graph, sub);
-			ispredicate = ispredicate && subx.predicateCost > -1;
-			x.predicateCost += subx.predicateCost;					
-			x.ordered = x.ordered && subx.ordered;
-			x.randomAccess = x.randomAccess && subx.randomAccess;
-		}
-		if (!ispredicate)
-			x.predicateCost = -1;
-		return x;
-	}
-
+//import org.hypergraphdb.query.impl.SortedIntersectionResult;
+import org.hypergraphdb.query.impl.ZigZagIntersectionResult;
+
+@SuppressWarnings("unchecked")
+public class AndToQuery<ResultType> implements ConditionToQuery<ResultType>
+{
+	/**
+	 * 
+	 * <p>
+	 * Order QueryMetaData instance by the expected size of the result set. The logic
+	 * is a bit convoluted because there are 3 numbers in play: lower bound (LB) of
+	 * the result, upper bound (UB) and expected size (E). We use the expected size
+	 * if available, otherwise we use the upper bound if available or the lower bound
+	 * with a "lowest priority". The assumption here is the E when provided should be 
+	 * fairly accurate so there's no need to be overly conservative. In most cases, 
+	 * the size is actually either known completely (e.g. in an index) or nothing
+	 * is know about it. If no size (LB, UB or E) is known for at least one of the 
+	 * parameters of the compare method, then the two are deemed equal (i.e. 0 is
+	 * returned).
+	 * </p>
+	 *
+	 * @author Borislav Iordanov
+	 *
+	 */
+	private static class BySizeComparator implements Comparator<QueryMetaData>
+	{
+		public int compare(QueryMetaData o1, QueryMetaData o2)
+		{
+			long left = o1.sizeExpected > -1 ? o1.sizeExpected : 
+						o1.sizeUB > -1 ? o1.sizeUB : o1.sizeLB;
+			if (left == -1)
+				return 0;
+			long right = o2.sizeExpected > -1 ? o2.sizeExpected : 
+						 o2.sizeUB > -1 ? o2.sizeUB : o2.sizeLB;
+			if (right == -1 || left == right)
+				return 0;
+			else if (left > right)
+				return 1;
+			else
+				return -1;				
+		}		
+	}
+	
+	private static BySizeComparator bySizeComparator = new BySizeComparator();
+	
+	// The counting cost up to which ResultSizeEstimation is used to fill in unknown sizes, 
+	// i.e. an index lookup, or a value lookup followed by index lookups.
+	private static final long ESTIMATION_COST = 2;
+	
+	/**
+	 * Return the estimated size of the result set of a conjunct or -1 if it's unknown.
+	 */
+	static long sizeOf(QueryMetaData x)
+	{
+		if (x.sizeExpected > -1)
+			return x.sizeExpected;
+		else if (x.sizeUB > -1 && x.sizeUB < Long.MAX_VALUE)
+			return x.sizeUB;
+		else
+			return -1;
+	}
+	
+	/**
+	 * Return the conjunct usable as a base set with the smallest known result set size, 
+	 * or <code>null</code> if none has a known size. 
+	 */
+	private static QueryMetaData smallest(List<QueryMetaData>...lists)
+	{
+		QueryMetaData result = null;
+		for (List<QueryMetaData> L : lists)
+			for (QueryMetaData x : L)
+				if (!x.predicateOnly && sizeOf(x) > -1 && (result == null || sizeOf(x) < sizeOf(result)))
+					result = x;
+		return result;
+	}
+	
+	/**
+	 * Move the conjuncts of <code>L</code> with a result set larger than <code>limit</code> 
+	 * to the predicates <code>P</code>, or to the random access sets <code>RA</code> when
+	 * they can't be used as predicates and <code>RA</code> is not <code>null</code>. 
+	 */
+	private static void demote(List<QueryMetaData> L, long limit, List<QueryMetaData> P, List<QueryMetaData> RA)
+	{
+		for (Iterator<QueryMetaData> i = L.iterator(); i.hasNext(); )
+		{
+			QueryMetaData curr = i.next();
+			if (sizeOf(curr) <= limit)
+				continue;
+			if (curr.predicateCost > -1 && curr.pred != null)
+				P.add(curr);
+			else if (RA != null && curr.randomAccess)
+				RA.add(curr);
+			else
+				continue;
+			i.remove();
+		}
+	}
+	
+	/**
+	 * Collect the metadata of the conjuncts of <code>and</code>, or take it from the plan
+	 * cache, and fill in the unknown result set sizes. 
+	 */
+	private List<QueryMetaData> plan(HyperGraph graph, And and, HGQueryConfiguration config)
+	{
+		QueryPlanCache cache = config.isCostBasedPlanning() ? config.getPlanCache() : null;
+		String [] shapes = null;
+		String key = null;
+		Map<String, QueryMetaData> cached = null;
+		if (cache != null)
+		{
+			shapes = new String[and.size()];
+			for (int i = 0; i < shapes.length; i++)
+				shapes[i] = QueryPlanCache.shapeOf(and.get(i));
+			key = QueryPlanCache.keyOf(graph, shapes);
+			if (key != null)
+				cached = cache.get(key);
+		}
+		List<QueryMetaData> result = new ArrayList<QueryMetaData>();
+		boolean cacheable = key != null && cached == null;
+		for (int i = 0; i < and.size(); i++)
+		{
+			HGQueryCondition sub = and.get(i);
+			if (cached != null)
+			{
+				// The cached plan only tells how the conjunct is accessed, its size
+				// depends on the constants of this query.
+				QueryMetaData qmd = cached.get(shapes[i]).clone(sub);
+				if (!qmd.predicateOnly)
+				{
+					qmd.sizeExpected = ResultSizeEstimation.estimate(graph, sub, ESTIMATION_COST);
+					if (qmd.sizeExpected == -1)
+					{
+						QueryMetaData sized = QueryCompile.translator(graph, sub.getClass()).getMetaData(graph, sub);
+						qmd.sizeLB = sized.sizeLB;
+						qmd.sizeUB = sized.sizeUB;
+						qmd.sizeExpected = sized.sizeExpected;
+					}
+				}
+				result.add(qmd);
+				continue;
+			}
+			QueryMetaData qmd;
+			ConditionToQuery<ResultType> transformer = QueryCompile.translator(graph, sub.getClass());
+			if (transformer == null)
+			{
+			    qmd = QueryMetaData.MISTERY.clone(sub);
+			    qmd.predicateOnly = true;
+			}
+			else
+			{
+				qmd = transformer.getMetaData(graph, sub);
+				if (config.isCostBasedPlanning() && !qmd.predicateOnly && sizeOf(qmd) == -1)
+					qmd.sizeExpected = ResultSizeEstimation.estimate(graph, sub, ESTIMATION_COST);
+			}
+			// metadata obtained from another condition only applies to this query 
+			cacheable = cacheable && qmd.cond == sub;
+			result.add(qmd);
+		}
+		if (cacheable)
+		{
+			Map<String, QueryMetaData> conjuncts = new HashMap<String, QueryMetaData>();
+			for (int i = 0; i < shapes.length; i++)
+				conjuncts.put(shapes[i], result.get(i));
+			cache.put(key, conjuncts);
+		}
+		return result;
+	}
+	
+	public QueryMetaData getMetaData(HyperGraph graph, HGQueryCondition condition)
+	{
+		QueryMetaData x = QueryMetaData.ORACCESS.clone(condition); // assume we have ORACCESS, but check below
+		boolean ispredicate = true;
+		x.predicateCost = 0;
+		for (HGQueryCondition sub : ((And)condition))
+		{
+			ConditionToQuery<?> transformer = QueryCompile.translator(graph, sub.getClass());
+			if (transformer == null)
+				if (! (sub instanceof HGAtomPredicate))
+					throw new HGException("Condition " + sub + " is not query translatable, nor a predicate.");
+				else 
+				{
+					x.ordered = false;
+					x.randomAccess = false;
+					continue;
+				}
+			QueryMetaData subx = transformer.getMetaData(graph, sub);
+			ispredicate = ispredicate && subx.predicateCost > -1;
+			x.predicateCost += subx.predicateCost;					
+			x.ordered = x.ordered && subx.ordered;
+			x.randomAccess = x.randomAccess && subx.randomAccess;
+		}
+		if (!ispredicate)
+			x.predicateCost = -1;
+		return x;
+	}
+
 	@SuppressWarnings("rawtypes")
-	public HGQuery<ResultType> getQuery(HyperGraph graph, HGQueryCondition condition)
-	{
-		And and = (And)condition;
-		
-		//
-		// Trivial limit cases.
-		//
-		if (and.size() == 0)
-			return HGQuery.NOP();
-		else if (and.size() == 1)
-			return QueryCompile.translate(graph, and.iterator().next());
-		
-		// query conditions are partitioned into the following categories:
-		// - ORA: ordered random access results
-		// - RA: random access (but unordered) results
-		// - O: ordered results
-		// - P: not translatable to one of the above categories, but usable as predicates
-		// - W: neither of the above (i.e. unordered, non-random-access, non-predicate yielding conditions
-		List<QueryMetaData> ORA = new ArrayList<QueryMetaData>();
-		List<QueryMetaData> RA = new ArrayList<QueryMetaData>();
-		List<QueryMetaData> O = new ArrayList<QueryMetaData>();
-		List<QueryMetaData> P = new ArrayList<QueryMetaData>();
-		List<QueryMetaData> W = new ArrayList<QueryMetaData>();
-		
-		for (HGQueryCondition sub : and)
-		{
-			ConditionToQuery<ResultType> transformer = QueryCompile.translator(graph, sub.getClass());
-			if (transformer == null)
+	public HGQuery<ResultType> getQuery(HyperGraph graph, HGQueryCondition condition)
+	{
+		And and = (And)condition;
+		
+		//
+		// Trivial limit cases.
+		//
+		if (and.size() == 0)
+			return HGQuery.NOP();
+		else if (and.size() == 1)
+			return QueryCompile.translate(graph, and.iterator().next());
+		
+		HGQueryConfiguration config = graph.getConfig().getQueryConfiguration();
+		boolean costBased = config.isCostBasedPlanning();
+		
+		// query conditions are partitioned into the following categories:
+		// - ORA: ordered random access results
+		// - RA: random access (but unordered) results
+		// - O: ordered results
+		// - P: not translatable to one of the above categories, but usable as predicates
+		// - W: neither of the above (i.e. unordered, non-random-access, non-predicate yielding conditions
+		List<QueryMetaData> ORA = new ArrayList<QueryMetaData>();
+		List<QueryMetaData> RA = new ArrayList<QueryMetaData>();
+		List<QueryMetaData> O = new ArrayList<QueryMetaData>();
+		List<QueryMetaData> P = new ArrayList<QueryMetaData>();
+		List<QueryMetaData> W = new ArrayList<QueryMetaData>();
+		
+		for (QueryMetaData qmd : plan(graph, and, config))
+		{
+			if (qmd.predicateOnly)
+				P.add(qmd);
+			else if (qmd.ordered && qmd.randomAccess)
+				ORA.add(qmd);
+			else if (qmd.ordered)
+				O.add(qmd);
+			else if (qmd.randomAccess)
+				RA.add(qmd);
+			else if (qmd.predicateCost > -1)
+				P.add(qmd);
+			else
+				W.add(qmd);
+		}
+		
+		// A conjunct whose result set is much larger than the smallest one is better used as
+		// a predicate on the atoms of the smaller sets than scanned (O) or loaded in memory (W).
+		// The same goes for ORA sets when the smallest set is not ordered: the ORA sets would
+		// otherwise become the base set to scan.
+		if (costBased)
+		{
+			QueryMetaData min = smallest(ORA, O, RA, P, W);
+			if (min != null)
 			{
-			    QueryMetaData qmd = QueryMetaData.MISTERY.clone(sub);
-			    qmd.predicateOnly = true;
-				P.add(qmd);
-				continue;
-			}
-			QueryMetaData qmd = transformer.getMetaData(graph, sub);
-			if (qmd.predicateOnly)
-				P.add(qmd);
-			else if (qmd.ordered && qmd.randomAccess)
-				ORA.add(qmd);
-			else if (qmd.ordered)
-				O.add(qmd);
-			else if (qmd.randomAccess)
-				RA.add(qmd);
-			else if (qmd.predicateCost > -1)
-				P.add(qmd);
-			else
-				W.add(qmd);
-		}
-
-		//
-		// Once the partition is done, the following query is constructed as follows:
-	    //	
-		// 1. First all ORA result sets are evaluated
-		// 2. Then O sets are appended
-		// 3. RA sets are used as predicates if there is some other base set that needs to be
-		//    scanned anyway
-		// 4. Results from the above construction are filter by the predicates in P
-		// 5. W sets are scanned and loaded in memory				
-		HGQuery result = null;
-		HGQueryCondition c1 = null, c2 = null;
-		
-		// First ORA sets - we just build up nested zig-zag intersections
-		if (ORA.size() > 1)
-		{
-			Collections.sort(ORA, bySizeComparator);
-			Iterator<QueryMetaData> i = ORA.iterator();
-			c1 = i.next().cond;
-			c2 = i.next().cond;
-			result = new IntersectionQuery(QueryCompile.translate(graph, c1),// toQueryMap.get(c1.getClass()).getQuery(graph, c1), 
-			        QueryCompile.translate(graph, c2), //toQueryMap.get(c2.getClass()).getQuery(graph, c2),
-										   new ZigZagIntersectionResult.Combiner());
-			while (i.hasNext())
-			{
-				c1 = i.next().cond;
-				result = new IntersectionQuery(result, 
-				                               QueryCompile.translate(graph, c1), //toQueryMap.get(c1.getClass()).getQuery(graph, c1),
-											   new ZigZagIntersectionResult.Combiner());
-			}
-		}
-		else if (ORA.size() == 1)
-		{
-			O.addAll(ORA);
-			ORA.clear();
-		}
-		
-		// Next O sets - we just build up nested sorted intersections
-		if (O.size() > 1)
-		{
-			Collections.sort(O, bySizeComparator);
-			Iterator<QueryMetaData> i = O.iterator();
-			if (result == null)
-			{
-				c1 = i.next().cond;
-				c2 = i.next().cond;
-				result = new IntersectionQuery(QueryCompile.translate(graph, c1), //toQueryMap.get(c1.getClass()).getQuery(graph, c1), 
-				                               QueryCompile.translate(graph, c2), //toQueryMap.get(c2.getClass()).getQuery(graph, c2), 
-											   new SortedIntersectionResult.Combiner()); 
-			}
-			while (i.hasNext())
-			{
-				c1 = i.next().cond;
-				result = new IntersectionQuery(result, 
-				                               QueryCompile.translate(graph, c1), // toQueryMap.get(c1.getClass()).getQuery(graph, c1), 
-											   new SortedIntersectionResult.Combiner());					
-			}						
-		}
-		else if (O.size() == 1)
-		{
-			c1 = O.iterator().next().cond;
-			if (result == null)
-				result = QueryCompile.translate(graph, c1); // toQueryMap.get(c1.getClass()).getQuery(graph, c1);
-			else
-				result = new IntersectionQuery(result, 
-				                               QueryCompile.translate(graph, c1), //toQueryMap.get(c1.getClass()).getQuery(graph, c1),
-											   new SortedIntersectionResult.Combiner());
-		}
-		
-		if (result == null)
-		{
-			if (W.size() > 0)
-			{
-				Iterator<QueryMetaData> i = W.iterator();
-				long n = 0;
-				while (i.hasNext())
-				{
-					QueryMetaData curr = i.next();
-					if (n < curr.getSizeExpected())
-						c1 = curr.cond;
-				}
-				result = QueryCompile.translate(graph, c1); //toQueryMap.get(c1.getClass()).getQuery(graph, c1);
-				W.remove(c1);
-			}
-			else if (RA.size() > 0)
-			{
-				Iterator<QueryMetaData> i = RA.iterator();
-				double cost = 0.0;
-				while (i.hasNext())
-				{
-					QueryMetaData curr = i.next();
-					if (cost < curr.predicateCost)
-						c1 = curr.cond;
-				}
-				result = QueryCompile.translate(graph, c1); // toQueryMap.get(c1.getClass()).getQuery(graph, c1);
-				RA.remove(c1);						
+				long limit = sizeOf(min) > Long.MAX_VALUE / config.getPredicateScanRatio() ? 
+						Long.MAX_VALUE : sizeOf(min) * config.getPredicateScanRatio();
+				demote(O, limit, P, null);
+				demote(W, limit, P, null);
+				if (RA.contains(min) || W.contains(min) || P.contains(min))
+					demote(ORA, limit, P, RA);
 			}
-			else if (P.size() > 0) // some predicates can also be used as bases for search...when !qmd.predicateOnly
+		}
+
+		//
+		// Once the partition is done, the following query is constructed as follows:
+	    //	
+		// 1. First all ORA result sets are evaluated
+		// 2. Then O sets are appended
+		// 3. RA sets are used as predicates if there is some other base set that needs to be
+		//    scanned anyway
+		// 4. Results from the above construction are filter by the predicates in P
+		// 5. W sets are scanned and loaded in memory				
+		HGQuery result = null;
+		HGQueryCondition c1 = null, c2 = null;
+		
+		// First ORA sets - we just build up nested zig-zag intersections, smallest first
+		if (ORA.size() > 1)
+		{
+			Collections.sort(ORA, bySizeComparator);
+			Iterator<QueryMetaData> i = ORA.iterator();
+			QueryMetaData first = i.next();
+			long size = sizeOf(first);
+			result = QueryCompile.translate(graph, first.cond);
+			while (i.hasNext())
 			{
-			    QueryMetaData found = null;
+				QueryMetaData curr = i.next();
+				if (size == -1 || sizeOf(curr) > -1 && sizeOf(curr) < size)
+					size = sizeOf(curr);
+				// a small intersection that is going to be intersected again is computed in memory
+				// so the zig-zag of the next one doesn't have to go back to the storage
+				RSCombiner combiner = costBased && i.hasNext() && 
+									  size > -1 && size <= config.getInMemoryIntersectionThreshold() ?
+								new InMemoryIntersectionResult.Combiner() : 
+								new ZigZagIntersectionResult.Combiner();
+				result = new IntersectionQuery(result, 
+				                               QueryCompile.translate(graph, curr.cond), //toQueryMap.get(c1.getClass()).getQuery(graph, c1),
+											   combiner);
+			}
+		}
+		else if (ORA.size() == 1)
+		{
+			O.addAll(ORA);
+			ORA.clear();
+		}
+		
+		// Next O sets - we just build up nested sorted intersections
+		if (O.size() > 1)
+		{
+			Collections.sort(O, bySizeComparator);
+			Iterator<QueryMetaData> i = O.iterator();
+			if (result == null)
+			{
+				c1 = i.next().cond;
+				c2 = i.next().cond;
+				result = new IntersectionQuery(QueryCompile.translate(graph, c1), //toQueryMap.get(c1.getClass()).getQuery(graph, c1), 
+				                               QueryCompile.translate(graph, c2), //toQueryMap.get(c2.getClass()).getQuery(graph, c2), 
+											   new SortedIntersectionResult.Combiner()); 
+			}
+			while (i.hasNext())
+			{
+				c1 = i.next().cond;
+				result = new IntersectionQuery(result, 
+				                               QueryCompile.translate(graph, c1), // toQueryMap.get(c1.getClass()).getQuery(graph, c1), 
+											   new SortedIntersectionResult.Combiner());					
+			}						
+		}
+		else if (O.size() == 1)
+		{
+			c1 = O.iterator().next().cond;
+			if (result == null)
+				result = QueryCompile.translate(graph, c1); // toQueryMap.get(c1.getClass()).getQuery(graph, c1);
+			else
+				result = new IntersectionQuery(result, 
+				                               QueryCompile.translate(graph, c1), //toQueryMap.get(c1.getClass()).getQuery(graph, c1),
+											   new SortedIntersectionResult.Combiner());
+		}
+		
+		if (result == null)
+		{
+			// Without ordered sets, the base set to scan is the smallest one. When sizes are not 
+			// known, W sets come first since they have to be scanned anyway, then RA sets and
+			// finally predicates that can also be used as bases for search (!qmd.predicateOnly)
+			QueryMetaData base = costBased ? smallest(W, RA, P) : null;
+			if (base == null)
+				base = !W.isEmpty() ? W.get(0) : !RA.isEmpty() ? RA.get(0) : null;
+			if (base == null)
 			    for (QueryMetaData qmd : P)
 			        if (!qmd.predicateOnly)
 			        {
-			            found = qmd;
+			            base = qmd;
 			            break;
 			        }
-			    if (found != null)
-			    {
-			        result = QueryCompile.translate(graph, found.cond);
-			        P.remove(found);
-			    }
-			}
-			if (result == null)
-				throw new HGException("No query condition translatable into a scannable result set.");
-		}
-		// Here, it remains to convert all remaining RA sets to predicates and all remaining W sets into
-		// in memory sets and again into predicates.				
-		
-		// Transform RAs into predicates
-		for (Iterator<QueryMetaData> i = RA.iterator(); i.hasNext(); )
-		{
-			QueryMetaData curr = i.next();
-			c1 = curr.cond;
-			QueryMetaData pqmd = QueryMetaData.MISTERY.clone(new RABasedPredicate(QueryCompile.translate(graph, c1)));
-			pqmd.predicateCost = curr.predicateCost;
-			P.add(pqmd);
-		}
-		
-		// Add predicates in order from the less costly to execute to the most costly...
-		while (!P.isEmpty())
-		{
-			double predicateCost = Double.MAX_VALUE;
-			QueryMetaData lessCostly = null;
-			for (Iterator<QueryMetaData> i = P.iterator(); i.hasNext(); )
-			{
-				QueryMetaData curr = i.next();
-				if (curr.predicateCost < predicateCost)
-				{
-					predicateCost = curr.predicateCost;
-					lessCostly = curr;
-				}
-			}
-			result = new PredicateBasedFilter(graph, result, lessCostly.pred);
-			P.remove(lessCostly);
-		}
-		
-		// add Ws as predicates that lazily load their entire result sets into memory
-		// this assumes that all result sets of Ws are UUID handles
-		for (Iterator<QueryMetaData> i = W.iterator(); i.hasNext(); )
-		{
-			QueryMetaData curr = i.next();
-			HGQuery q = QueryCompile.translate(graph, curr.cond);
-			result = new PredicateBasedFilter(graph, result, new DelayedSetLoadPredicate(q));
-		}
-		
-		return result;
-	}
-}
+			if (base == null)
+				throw new HGException("No query condition translatable into a scannable result set.");
+			result = QueryCompile.translate(graph, base.cond); //toQueryMap.get(c1.getClass()).getQuery(graph, c1);
+			W.remove(base);
+			RA.remove(base);
+			P.remove(base);
+		}
+		// Here, it remains to convert all remaining RA sets to predicates and all remaining W sets into
+		// in memory sets and again into predicates.				
+		
+		// Transform RAs into predicates
+		for (Iterator<QueryMetaData> i = RA.iterator(); i.hasNext(); )
+		{
+			QueryMetaData curr = i.next();
+			c1 = curr.cond;
+			QueryMetaData pqmd = QueryMetaData.MISTERY.clone(new RABasedPredicate(QueryCompile.translate(graph, c1)));
+			pqmd.predicateCost = curr.predicateCost;
+			P.add(pqmd);
+		}
+		
+		// Add predicates in order from the less costly to execute to the most costly...
+		while (!P.isEmpty())
+		{
+			double predicateCost = Double.MAX_VALUE;
+			QueryMetaData lessCostly = null;
+			for (Iterator<QueryMetaData> i = P.iterator(); i.hasNext(); )
+			{
+				QueryMetaData curr = i.next();
+				if (curr.predicateCost < predicateCost)
+				{
+					predicateCost = curr.predicateCost;
+					lessCostly = curr;
+				}
+			}
+			result = new PredicateBasedFilter(graph, result, lessCostly.pred);
+			P.remove(lessCostly);
+		}
+		
+		// add Ws as predicates that lazily load their entire result sets into memory
+		// this assumes that all result sets of Ws are UUID handles
+		for (Iterator<QueryMetaData> i = W.iterator(); i.hasNext(); )
+		{
+			QueryMetaData curr = i.next();
+			HGQuery q = QueryCompile.translate(graph, curr.cond);
+			result = new PredicateBasedFilter(graph, result, new DelayedSetLoadPredicate(q));
+		}
+		
+		return result;
+	}
+}
@@ -30,7 +30,10 @@ public class IncidentToQuery implements ConditionToQuery<HGHandle>
 		else
 		{
 			final HGPersistentHandle handle = graph.getPersistentHandle(((IncidentCondition)c).getTarget());		
-			x.sizeLB = x.sizeExpected = x.sizeUB = graph.getIncidenceSet(handle).size();
+			// don't load a whole incidence set just to know its size
+			x.sizeLB = x.sizeExpected = x.sizeUB = graph.isIncidenceSetLoaded(handle) ? 
+					graph.getIncidenceSet(handle).size() : 
+					graph.getStore().getIncidenceSetCardinality(handle);
 		}
 		return x;
 	}
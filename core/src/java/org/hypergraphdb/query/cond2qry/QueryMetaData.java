@@ -98,12 +98,14 @@ public class QueryMetaData implements Cloneable
 	
 	public QueryMetaData clone()
 	{
-		return new QueryMetaData(ordered, randomAccess, sizeLB, sizeUB, sizeExpected, predicateCost); 
+		QueryMetaData cl = new QueryMetaData(ordered, randomAccess, sizeLB, sizeUB, sizeExpected, predicateCost);
+		cl.predicateOnly = predicateOnly;
+		return cl;
 	}
 	
 	public QueryMetaData clone(HGQueryCondition condition)
 	{
-		QueryMetaData cl = new QueryMetaData(ordered, randomAccess, sizeLB, sizeUB, sizeExpected, predicateCost);
+		QueryMetaData cl = clone();
 		cl.cond = condition;
 		if (condition instanceof HGAtomPredicate)
 			cl.pred = (HGAtomPredicate)condition;		
@@ -112,7 +114,7 @@ public class QueryMetaData implements Cloneable
 	
 	public QueryMetaData clone(HGAtomPredicate predicate)
 	{
-		QueryMetaData cl = new QueryMetaData(ordered, randomAccess, sizeLB, sizeUB, sizeExpected, predicateCost);
+		QueryMetaData cl = clone();
 		cl.pred = predicate;
 		if (predicate instanceof HGQueryCondition)
 			cl.cond = (HGQueryCondition)predicate;
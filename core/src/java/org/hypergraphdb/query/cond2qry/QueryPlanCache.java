@@ -0,0 +1,185 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.query.cond2qry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hypergraphdb.HGIndex;
+import org.hypergraphdb.HGQuery.hg;
+import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.query.AtomPartCondition;
+import org.hypergraphdb.query.HGQueryCondition;
+import org.hypergraphdb.query.IndexCondition;
+import org.hypergraphdb.query.IndexedPartCondition;
+import org.hypergraphdb.query.SimpleValueCondition;
+import org.hypergraphdb.query.TypeCondition;
+import org.hypergraphdb.util.Ref;
+
+/**
+ * <p>
+ * A bounded cache of the planning information of conjunctions, keyed by their <em>shape</em>.
+ * The shape of a condition is its class together with the parts of it that determine how it is
+ * evaluated (its type, operator, the index or the projection it uses), but not the constants
+ * it is compared to. So queries repeated with different parameters, e.g. the incidence set of
+ * different atoms, share a plan: {@link AndToQuery} reuses how each conjunct can be accessed
+ * (whether its result is ordered, random access or only usable as a predicate, and its cost
+ * as a predicate) instead of asking its translator again.
+ * </p>
+ *
+ * <p>
+ * The sizes of the results of conjuncts are not cached, since they depend on the constants
+ * and on the data: the incidence set of one atom may be a thousand times larger than that of
+ * another. {@link AndToQuery} estimates them again for each query. In case what a translator
+ * reports depends on the state of the graph, a plan is still computed again after it has been
+ * used <code>refreshInterval</code> times.
+ * </p>
+ */
+public class QueryPlanCache
+{
+	private static class Plan
+	{
+		Map<String, QueryMetaData> conjuncts;
+		int uses = 0;
+
+		Plan(Map<String, QueryMetaData> conjuncts)
+		{
+			this.conjuncts = conjuncts;
+		}
+	}
+
+	private final int refreshInterval;
+	private final LinkedHashMap<String, Plan> plans;
+
+	/**
+	 * @param capacity The maximum number of plans kept, the least recently used ones being
+	 * evicted first.
+	 * @param refreshInterval The number of times a plan is used before it is computed again.
+	 */
+	public QueryPlanCache(final int capacity, int refreshInterval)
+	{
+		this.refreshInterval = refreshInterval;
+		this.plans = new LinkedHashMap<String, Plan>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<String, Plan> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	private static String refShape(Ref<?> ref)
+	{
+		if (ref == null)
+			return "";
+		else if (hg.isVar(ref))
+			return "?";
+		Object x = ref.get();
+		return x instanceof Class<?> ? ((Class<?>)x).getName() : String.valueOf(x);
+	}
+
+	/**
+	 * <p>Return the shape of a single condition.</p>
+	 */
+	@SuppressWarnings("rawtypes")
+	public static String shapeOf(HGQueryCondition cond)
+	{
+		StringBuilder result = new StringBuilder(cond.getClass().getName());
+		if (cond instanceof TypeCondition)
+			result.append(':').append(refShape(((TypeCondition)cond).getTypeReference()));
+		if (cond instanceof AtomPartCondition)
+			result.append(':').append(Arrays.toString(((AtomPartCondition)cond).getDimensionPath()));
+		if (cond instanceof SimpleValueCondition)
+			result.append(':').append(((SimpleValueCondition)cond).getOperator());
+		else if (cond instanceof IndexCondition)
+		{
+			HGIndex idx = ((IndexCondition)cond).getIndex();
+			result.append(':').append(idx == null ? "" : idx.getName())
+				  .append(':').append(((IndexCondition)cond).getOperator());
+		}
+		else if (cond instanceof IndexedPartCondition)
+		{
+			HGIndex idx = ((IndexedPartCondition)cond).getIndex();
+			result.append(':').append(idx == null ? "" : idx.getName())
+				  .append(':').append(((IndexedPartCondition)cond).getOperator());
+		}
+		return result.toString();
+	}
+
+	/**
+	 * <p>
+	 * Return the key of a conjunction with the given conjunct shapes, or <code>null</code> if
+	 * two conjuncts have the same shape and can't be told apart.
+	 * </p>
+	 */
+	public static String keyOf(HyperGraph graph, String [] shapes)
+	{
+		String [] sorted = shapes.clone();
+		Arrays.sort(sorted);
+		StringBuilder result = new StringBuilder(String.valueOf(graph.getLocation()));
+		for (int i = 0; i < sorted.length; i++)
+		{
+			if (i > 0 && sorted[i].equals(sorted[i - 1]))
+				return null;
+			result.append('&').append(sorted[i]);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * <p>
+	 * Return the metadata of the conjuncts of a cached plan by conjunct shape, or
+	 * <code>null</code> if there's no such plan or it must be computed again. The metadata
+	 * is not bound to any condition and must be cloned for use, and its result set sizes
+	 * are unknown.
+	 * </p>
+	 */
+	public synchronized Map<String, QueryMetaData> get(String key)
+	{
+		Plan plan = plans.get(key);
+		if (plan == null)
+			return null;
+		else if (++plan.uses > refreshInterval)
+		{
+			plans.remove(key);
+			return null;
+		}
+		else
+			return plan.conjuncts;
+	}
+
+	/**
+	 * <p>Cache the metadata of the conjuncts of a plan by conjunct shape, without their
+	 * result set sizes.</p>
+	 */
+	public synchronized void put(String key, Map<String, QueryMetaData> conjuncts)
+	{
+		HashMap<String, QueryMetaData> copy = new HashMap<String, QueryMetaData>();
+		for (Map.Entry<String, QueryMetaData> e : conjuncts.entrySet())
+		{
+			QueryMetaData shape = e.getValue().clone();
+			shape.sizeLB = 0;
+			shape.sizeUB = Long.MAX_VALUE;
+			shape.sizeExpected = -1;
+			copy.put(e.getKey(), shape);
+		}
+		plans.put(key, new Plan(copy));
+	}
+
+	public synchronized void clear()
+	{
+		plans.clear();
+	}
+
+	public synchronized int size()
+	{
+		return plans.size();
+	}
+}
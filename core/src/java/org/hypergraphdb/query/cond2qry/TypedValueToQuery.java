@@ -41,9 +41,10 @@ public class TypedValueToQuery<T> implements ConditionToQuery<T>
 				throw new HGException("Cannot search by value " + vc.getValue()
 						+ " of unknown HGAtomType with handle " + typeHandle);
 			Object value = vc.getValue();
-			if (type instanceof HGSearchable
+			if ((type instanceof HGSearchable
 					&& vc.getOperator() == ComparisonOperator.EQ
 					|| type instanceof HGOrderedSearchable)
+				&& graph.getIndexManager().isValueIndexed(typeHandle))
 				//
 				// Find value handle by value and pipe into 'indexByValue' search,
 				// then filter
@@ -96,7 +97,8 @@ public class TypedValueToQuery<T> implements ConditionToQuery<T>
 		QueryMetaData qmd;
 		if (!hg.isVar(vc.getTypeReference()) && 
 			(type instanceof HGSearchable && vc.getOperator() == ComparisonOperator.EQ
-			  || type instanceof HGOrderedSearchable))
+			  || type instanceof HGOrderedSearchable) &&
+			graph.getIndexManager().isValueIndexed(typeHandle))
 		{
 			qmd = QueryMetaData.ORDERED.clone(c);
 		}
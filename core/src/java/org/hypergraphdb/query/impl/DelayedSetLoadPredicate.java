@@ -52,6 +52,16 @@ public class DelayedSetLoadPredicate implements HGAtomPredicate
 		this.query = query;
 	}
 	
+	public HGQuery<HGHandle> getQuery()
+	{
+		return query;
+	}
+	
+	void setQuery(HGQuery<HGHandle> query)
+	{
+		this.query = query;
+	}
+	
 	public boolean satisfies(HyperGraph hg, HGHandle handle)
 	{
 		if (set == null)
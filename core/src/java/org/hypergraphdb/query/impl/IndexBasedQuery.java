@@ -74,6 +74,26 @@ public class IndexBasedQuery<T> extends HGQuery<T>
     	this(index, hg.constant(key), operator);
     }
     
+    public HGIndex<? extends Object, ? extends Object> getIndex()
+    {
+        return index;
+    }
+    
+    public Ref<Object> getKeyReference()
+    {
+        return key;
+    }
+    
+    public ComparisonOperator getOperator()
+    {
+        return operator;
+    }
+    
+    public ScanType getScanType()
+    {
+        return scanType;
+    }
+    
     public HGSearchResult<T> execute()
     {
     	switch (scanType)
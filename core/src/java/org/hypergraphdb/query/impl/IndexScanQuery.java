@@ -32,6 +32,16 @@ public class IndexScanQuery<Key, Value> extends HGQuery<Value>
 		this.returnKeys = returnKeys;
 	}
 	
+	public HGIndex<Key, Value> getIndex()
+	{
+		return idx;
+	}
+	
+	public boolean isReturnKeys()
+	{
+		return returnKeys;
+	}
+	
 	@SuppressWarnings("unchecked")
     @Override
 	public HGSearchResult execute() 
@@ -38,6 +38,21 @@ public class PipeQuery<Key, Value> extends HGQuery<Value> implements Iterable<HG
 		return new PipedResult<Key, Value>(in.execute(), out, true);
 	}
 	
+    public HGQuery<Key> getIn()
+    {
+        return in;
+    }
+
+    void setIn(HGQuery<Key> in)
+    {
+        this.in = in;
+    }
+
+    public KeyBasedQuery<Key, Value> getOut()
+    {
+        return out;
+    }
+    
     public Iterator<HGQuery<Key>> iterator()
     {
         return Arrays.asList(in).iterator();
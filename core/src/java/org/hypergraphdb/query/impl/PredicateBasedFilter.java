@@ -31,6 +31,7 @@ public final class PredicateBasedFilter<T> extends HGQuery<T> implements Iterabl
 {
 	private HGQuery<T> query;
 	private Mapping<T, Boolean> predicate;
+	private HGAtomPredicate atomPredicate = null;
 	
 	/**
 	 * <p>Construct a <code>PredicateBasedFilter</code>, filtering the result
@@ -46,6 +47,7 @@ public final class PredicateBasedFilter<T> extends HGQuery<T> implements Iterabl
 	{
 		this.graph = graph;
 		this.query = query;
+		this.atomPredicate = atomPredicate;
 		this.predicate = new Mapping<T, Boolean>() {
 		    public Boolean eval(T h)
 		    {
@@ -90,6 +92,28 @@ public final class PredicateBasedFilter<T> extends HGQuery<T> implements Iterabl
 	    return query;
 	}
 	
+	void setQuery(HGQuery<T> query)
+	{
+	    this.query = query;
+	}
+	
+	/**
+	 * <p>Return the filtering predicate.</p>
+	 */
+	public Mapping<T, Boolean> getPredicate()
+	{
+	    return predicate;
+	}
+	
+	/**
+	 * <p>Return the <code>HGAtomPredicate</code> this filter was constructed with or 
+	 * <code>null</code> if it was constructed with a <code>Mapping</code>.</p> 
+	 */
+	public HGAtomPredicate getAtomPredicate()
+	{
+	    return atomPredicate;
+	}
+	
 	public Iterator<HGQuery<T>> iterator()
 	{
 	    return Collections.singleton(this.query).iterator();
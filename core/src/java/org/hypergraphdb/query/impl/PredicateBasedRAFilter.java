@@ -33,6 +33,7 @@ public final class PredicateBasedRAFilter<T> extends HGQuery<T> implements Itera
 {
 	private HGQuery<T> query;
 	private Mapping<T, Boolean> predicate;
+	private HGAtomPredicate atomPredicate = null;
 	
 	/**
 	 * <p>Construct a <code>PredicateBasedFilter</code>, filtering the result
@@ -48,6 +49,7 @@ public final class PredicateBasedRAFilter<T> extends HGQuery<T> implements Itera
 	{
 		this.graph = graph;
 		this.query = query;
+		this.atomPredicate = atomPredicate;
 		this.predicate = new Mapping<T, Boolean>() {
 			public Boolean eval(T h)
 			{
@@ -87,6 +89,33 @@ public final class PredicateBasedRAFilter<T> extends HGQuery<T> implements Itera
 		return (HGSearchResult<T>)HGSearchResult.EMPTY;
 	}
 	
+	public HGQuery<T> getQuery()
+	{
+	    return query;
+	}
+	
+	void setQuery(HGQuery<T> query)
+	{
+	    this.query = query;
+	}
+	
+	/**
+	 * <p>Return the filtering predicate.</p>
+	 */
+	public Mapping<T, Boolean> getPredicate()
+	{
+	    return predicate;
+	}
+	
+	/**
+	 * <p>Return the <code>HGAtomPredicate</code> this filter was constructed with or 
+	 * <code>null</code> if it was constructed with a <code>Mapping</code>.</p> 
+	 */
+	public HGAtomPredicate getAtomPredicate()
+	{
+	    return atomPredicate;
+	}
+	
     public Iterator<HGQuery<T>> iterator()
     {
         return Collections.singleton(query).iterator();
@@ -0,0 +1,166 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.query.impl;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hypergraphdb.HGQuery;
+import org.hypergraphdb.HGRandomAccessResult;
+import org.hypergraphdb.HGSearchResult;
+import org.hypergraphdb.query.HGAtomPredicate;
+
+/**
+ * <p>
+ * Wraps a query to collect runtime statistics about the result sets it produces: how many
+ * times it was executed, the number of calls to <code>hasNext</code>, <code>next</code>,
+ * <code>prev</code> and <code>goTo</code>, the number of elements returned and the time
+ * spent in <code>execute</code> and in those calls. Times are inclusive, they contain the
+ * time spent in the operators the wrapped query draws its elements from.
+ * </p>
+ *
+ * <p>
+ * Use {@link #instrument(HGQuery)} to profile every operator of a compiled query.
+ * </p>
+ *
+ * @param <T>
+ */
+public class ProfiledQuery<T> extends HGQuery<T> implements Iterable<HGQuery<T>>
+{
+	/**
+	 * <p>The statistics of an operator, accumulated over all its executions.</p>
+	 */
+	public static class Stats
+	{
+		final LongAdder executions = new LongAdder();
+		final LongAdder hasNextCalls = new LongAdder();
+		final LongAdder nextCalls = new LongAdder();
+		final LongAdder prevCalls = new LongAdder();
+		final LongAdder goToCalls = new LongAdder();
+		final LongAdder rows = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+
+		public long getExecutions() { return executions.sum(); }
+		public long getHasNextCalls() { return hasNextCalls.sum(); }
+		public long getNextCalls() { return nextCalls.sum(); }
+		public long getPrevCalls() { return prevCalls.sum(); }
+		public long getGoToCalls() { return goToCalls.sum(); }
+		/** The number of elements obtained with <code>next</code>, <code>prev</code> or a successful <code>goTo</code>. */
+		public long getRows() { return rows.sum(); }
+		public long getNanos() { return nanos.sum(); }
+
+		public String toString()
+		{
+			return "executions=" + getExecutions() + " rows=" + getRows() + " hasNext=" + getHasNextCalls() +
+				   " next=" + getNextCalls() + " prev=" + getPrevCalls() + " goTo=" + getGoToCalls() +
+				   " time=" + String.format("%.3fms", getNanos() / 1e6);
+		}
+	}
+
+	private HGQuery<T> query;
+	private final Stats stats = new Stats();
+
+	public ProfiledQuery(HGQuery<T> query)
+	{
+		this.query = query;
+		this.graph = query.getHyperGraph();
+	}
+
+	@SuppressWarnings("unchecked")
+	public HGSearchResult<T> execute()
+	{
+		long start = System.nanoTime();
+		HGSearchResult<T> rs = query.execute();
+		stats.executions.increment();
+		stats.nanos.add(System.nanoTime() - start);
+		// asynchronous result sets are recognized by their type, so they are left alone
+		if (rs instanceof AsyncSearchResult)
+			return rs;
+		else if (rs instanceof HGRandomAccessResult)
+			return new ProfiledRAResult<T>((HGRandomAccessResult<T>)rs, stats);
+		else
+			return new ProfiledResult<T>(rs, stats);
+	}
+
+	public HGQuery<T> getQuery()
+	{
+		return query;
+	}
+
+	public Stats getStats()
+	{
+		return stats;
+	}
+
+	public Iterator<HGQuery<T>> iterator()
+	{
+		return Collections.singleton(query).iterator();
+	}
+
+	/**
+	 * <p>
+	 * Wrap a query and all the operators it is made of, including the queries behind
+	 * {@link RABasedPredicate}s and {@link DelayedSetLoadPredicate}s, into
+	 * <code>ProfiledQuery</code>s. The operators are modified in place, so a query
+	 * should not be used without the returned wrapper once instrumented.
+	 * </p>
+	 *
+	 * @return The <code>ProfiledQuery</code> wrapping <code>q</code>.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static <T> ProfiledQuery<T> instrument(HGQuery<T> q)
+	{
+		if (q instanceof ProfiledQuery)
+			return (ProfiledQuery<T>)q;
+		if (q instanceof IntersectionQuery)
+		{
+			IntersectionQuery iq = (IntersectionQuery)q;
+			iq.setLeft(instrument(iq.getLeft()));
+			iq.setRight(instrument(iq.getRight()));
+		}
+		else if (q instanceof UnionQuery)
+		{
+			UnionQuery uq = (UnionQuery)q;
+			uq.setLeft(instrument(uq.getLeft()));
+			uq.setRight(instrument(uq.getRight()));
+		}
+		else if (q instanceof PipeQuery)
+		{
+			PipeQuery pq = (PipeQuery)q;
+			pq.setIn(instrument(pq.getIn()));
+		}
+		else if (q instanceof ResultMapQuery)
+		{
+			ResultMapQuery mq = (ResultMapQuery)q;
+			mq.setQuery(instrument(mq.getQuery()));
+		}
+		else if (q instanceof PredicateBasedFilter)
+		{
+			PredicateBasedFilter f = (PredicateBasedFilter)q;
+			f.setQuery(instrument(f.getQuery()));
+			instrument(f.getAtomPredicate());
+		}
+		else if (q instanceof PredicateBasedRAFilter)
+		{
+			PredicateBasedRAFilter f = (PredicateBasedRAFilter)q;
+			f.setQuery(instrument(f.getQuery()));
+			instrument(f.getAtomPredicate());
+		}
+		return new ProfiledQuery<T>(q);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void instrument(HGAtomPredicate p)
+	{
+		if (p instanceof RABasedPredicate && ((RABasedPredicate)p).getQuery() != null)
+			((RABasedPredicate)p).setQuery(instrument(((RABasedPredicate)p).getQuery()));
+		else if (p instanceof DelayedSetLoadPredicate)
+			((DelayedSetLoadPredicate)p).setQuery(instrument(((DelayedSetLoadPredicate)p).getQuery()));
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.query.impl;
+
+import org.hypergraphdb.HGRandomAccessResult;
+
+/**
+ * <p>
+ * A {@link ProfiledResult} for random access result sets, also counting and timing
+ * <code>goTo</code> calls.
+ * </p>
+ *
+ * @param <T>
+ */
+public class ProfiledRAResult<T> extends ProfiledResult<T> implements HGRandomAccessResult<T>
+{
+	public ProfiledRAResult(HGRandomAccessResult<T> rs, ProfiledQuery.Stats stats)
+	{
+		super(rs, stats);
+	}
+
+	public GotoResult goTo(T value, boolean exactMatch)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			GotoResult result = ((HGRandomAccessResult<T>)rs).goTo(value, exactMatch);
+			if (result != GotoResult.nothing)
+				stats.rows.increment();
+			return result;
+		}
+		finally
+		{
+			stats.goToCalls.increment();
+			stats.nanos.add(System.nanoTime() - start);
+		}
+	}
+
+	public void goAfterLast()
+	{
+		((HGRandomAccessResult<T>)rs).goAfterLast();
+	}
+
+	public void goBeforeFirst()
+	{
+		((HGRandomAccessResult<T>)rs).goBeforeFirst();
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.query.impl;
+
+import org.hypergraphdb.HGSearchResult;
+
+/**
+ * <p>
+ * A result set counting and timing the calls made to an underlying result set, on behalf
+ * of a {@link ProfiledQuery}.
+ * </p>
+ *
+ * @param <T>
+ */
+public class ProfiledResult<T> implements HGSearchResult<T>
+{
+	protected final HGSearchResult<T> rs;
+	protected final ProfiledQuery.Stats stats;
+
+	public ProfiledResult(HGSearchResult<T> rs, ProfiledQuery.Stats stats)
+	{
+		this.rs = rs;
+		this.stats = stats;
+	}
+
+	public boolean hasPrev()
+	{
+		long start = System.nanoTime();
+		try { return rs.hasPrev(); }
+		finally { stats.nanos.add(System.nanoTime() - start); }
+	}
+
+	public T prev()
+	{
+		long start = System.nanoTime();
+		try
+		{
+			T x = rs.prev();
+			stats.rows.increment();
+			return x;
+		}
+		finally
+		{
+			stats.prevCalls.increment();
+			stats.nanos.add(System.nanoTime() - start);
+		}
+	}
+
+	public boolean hasNext()
+	{
+		long start = System.nanoTime();
+		try { return rs.hasNext(); }
+		finally
+		{
+			stats.hasNextCalls.increment();
+			stats.nanos.add(System.nanoTime() - start);
+		}
+	}
+
+	public T next()
+	{
+		long start = System.nanoTime();
+		try
+		{
+			T x = rs.next();
+			stats.rows.increment();
+			return x;
+		}
+		finally
+		{
+			stats.nextCalls.increment();
+			stats.nanos.add(System.nanoTime() - start);
+		}
+	}
+
+	public void remove()
+	{
+		rs.remove();
+	}
+
+	public T current()
+	{
+		return rs.current();
+	}
+
+	public void close()
+	{
+		long start = System.nanoTime();
+		try { rs.close(); }
+		finally { stats.nanos.add(System.nanoTime() - start); }
+	}
+
+	public boolean isOrdered()
+	{
+		return rs.isOrdered();
+	}
+}
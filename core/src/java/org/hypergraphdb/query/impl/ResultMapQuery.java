@@ -58,6 +58,16 @@ public class ResultMapQuery extends HGQuery implements Iterable<HGQuery>
 			return new MappedResult(query.execute(), mapping);
 	} 
 
+	public HGQuery<?> getQuery()
+	{
+		return query;
+	}
+	
+	void setQuery(HGQuery<?> query)
+	{
+		this.query = query;
+	}
+	
 	public Iterator<HGQuery> iterator()
     {
         return Collections.singleton(this.query).iterator();
@@ -64,6 +64,26 @@ public class UnionQuery<T> extends HGQuery<T> implements Iterable<HGQuery<T>>
 			return new UnionResult(leftResult, rightResult);
 	}
 	
+    public HGQuery<T> getLeft()
+    {
+        return left;
+    }
+
+    void setLeft(HGQuery<T> left)
+    {
+        this.left = left;
+    }
+
+    public HGQuery<T> getRight()
+    {
+        return right;
+    }
+
+    void setRight(HGQuery<T> right)
+    {
+        this.right = right;
+    }
+    
     @SuppressWarnings("unchecked")
     public Iterator<HGQuery<T>> iterator()
     {
@@ -7,6 +7,8 @@
  */
 package org.hypergraphdb.storage;
 
+import java.util.Arrays;
+
 /**
  * <p>
  * This class contains some utilities methods to read/write primitively typed values from/to
@@ -109,4 +111,24 @@ public class BAUtils
 		}
 		return comp;
 	}
+	
+	/**
+	 * <p>Return the positions of <code>keys</code> in ascending, unsigned byte-wise order.
+	 * Storage implementations use this to visit a batch of keys in the order of their
+	 * B-tree.</p>
+	 */
+	public static int [] sortedOrder(final byte [][] keys)
+	{
+		Integer [] order = new Integer[keys.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> {
+			int c = compare(keys[a], 0, keys[b], 0, Math.min(keys[a].length, keys[b].length));
+			return c != 0 ? c : keys[a].length - keys[b].length;
+		});
+		int [] result = new int[order.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = order[i];
+		return result;
+	}
 }
@@ -1,5 +1,6 @@
 package org.hypergraphdb.storage;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import org.hypergraphdb.HGConfiguration;
 import org.hypergraphdb.HGIndex;
@@ -83,6 +84,24 @@ public interface HGStoreImplementation
      */
     HGPersistentHandle [] getLink(HGPersistentHandle handle);
 
+    /**
+     * <p>
+     * Return the links corresponding to an array of handles, in the same order. An element
+     * of the result is <code>null</code> when the corresponding link is not found.
+     * </p>
+     * <p>
+     * The default implementation calls {@link #getLink(HGPersistentHandle)} for each handle.
+     * Implementations backed by a storage engine with native multi-key reads should override it.
+     * </p>
+     */
+    default HGPersistentHandle [][] getLinks(HGPersistentHandle [] handles)
+    {
+        HGPersistentHandle [][] result = new HGPersistentHandle[handles.length][];
+        for (int i = 0; i < handles.length; i++)
+            result[i] = getLink(handles[i]);
+        return result;
+    }
+
     /**
      * Remove the link corresponding to a given handle.
      */
@@ -107,6 +126,23 @@ public interface HGStoreImplementation
      */
     byte [] getData(HGPersistentHandle handle);
 
+    /**
+     * <p>
+     * Return the data corresponding to an array of handles, in the same order. An element
+     * of the result is <code>null</code> when the corresponding data is not found.
+     * </p>
+     * <p>
+     * The default implementation calls {@link #getData(HGPersistentHandle)} for each handle.
+     * </p>
+     */
+    default byte [][] getDataMulti(HGPersistentHandle [] handles)
+    {
+        byte [][] result = new byte[handles.length][];
+        for (int i = 0; i < handles.length; i++)
+            result[i] = getData(handles[i]);
+        return result;
+    }
+
     /**
      * Remove the data corresponding to a given handle.
      */
@@ -124,6 +160,37 @@ public interface HGStoreImplementation
      */
     HGRandomAccessResult<HGPersistentHandle> getIncidenceResultSet(HGPersistentHandle handle);
 
+    /**
+     * <p>
+     * Return the full incidence sets of an array of handles, in the same order. An atom
+     * without an incidence set gets an empty array.
+     * </p>
+     * <p>
+     * The default implementation reads each set through
+     * {@link #getIncidenceResultSet(HGPersistentHandle)}.
+     * </p>
+     */
+    default HGPersistentHandle [][] getIncidenceSets(HGPersistentHandle [] handles)
+    {
+        HGPersistentHandle [][] result = new HGPersistentHandle[handles.length][];
+        for (int i = 0; i < handles.length; i++)
+        {
+            HGRandomAccessResult<HGPersistentHandle> rs = getIncidenceResultSet(handles[i]);
+            try
+            {
+                ArrayList<HGPersistentHandle> L = new ArrayList<HGPersistentHandle>();
+                while (rs.hasNext())
+                    L.add(rs.next());
+                result[i] = L.toArray(new HGPersistentHandle[L.size()]);
+            }
+            finally
+            {
+                rs.close();
+            }
+        }
+        return result;
+    }
+
     /**
      * Remove the incidence set associated with the given handle. Do nothing if there is no
      * such set.
@@ -0,0 +1,204 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.transaction;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.hypergraphdb.HGException;
+import org.hypergraphdb.util.Cons;
+
+/**
+ * <p>
+ * Group commit support for top-level write transactions. A commit goes through
+ * three stages:
+ * </p>
+ *
+ * <ol>
+ * <li>Validation and installation of the new values into their <code>VBox</code>es.
+ * This is done while holding the <code>COMMIT_LOCK</code> and it is where the transaction
+ * gets its commit number (see {@link #reserve()}). It is a purely in-memory operation.
+ * The new bodies are tagged with a number greater than the number of the most
+ * recent {@link ActiveTransactionsRecord} so they are invisible to transactions
+ * that are currently running or that start before the commit is published. But they
+ * are visible to other committers doing validation, so conflicts are still detected.</li>
+ * <li>The storage level commit, done by the thread owning the transaction and without
+ * holding any lock. Storage commits of many transactions thus proceed concurrently and
+ * the storage layer can batch them into a single log write.</li>
+ * <li>Publication (see {@link #complete(Ticket)}). Commits are published strictly in
+ * commit number order: all transactions whose storage commit has completed and that
+ * are not preceded by a pending one are published together, as a single
+ * {@link ActiveTransactionsRecord} holding the largest number of the batch. A committing
+ * thread returns only after its own commit has been published, so the next transaction
+ * on that thread is guaranteed to see its writes.</li>
+ * </ol>
+ */
+final class CommitPipeline
+{
+    static final class Ticket
+    {
+        final long number;
+        Cons<VBoxBody<?>> bodies = Cons.empty();
+        boolean cancelled = false;
+        volatile boolean done = false;
+
+        Ticket(long number)
+        {
+            this.number = number;
+        }
+    }
+
+    private final HGTransactionManager manager;
+    private final ConcurrentLinkedQueue<Ticket> pending = new ConcurrentLinkedQueue<Ticket>();
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final Condition published = publishLock.newCondition();
+    private final AtomicLong commitCount = new AtomicLong(0);
+    private final AtomicLong batchCount = new AtomicLong(0);
+
+    // The number of the latest transaction that went through validation. Only
+    // modified while holding the COMMIT_LOCK.
+    private volatile long lastReserved = 0;
+
+    CommitPipeline(HGTransactionManager manager)
+    {
+        this.manager = manager;
+    }
+
+    /**
+     * Return the number of the latest transaction whose values have been installed in
+     * memory, published or not.
+     */
+    long lastReserved()
+    {
+        return lastReserved;
+    }
+
+    /**
+     * Assign the next commit number. Must be called while holding the <code>COMMIT_LOCK</code>.
+     */
+    Ticket reserve()
+    {
+        Ticket ticket = new Ticket(lastReserved + 1);
+        lastReserved = ticket.number;
+        pending.add(ticket);
+        return ticket;
+    }
+
+    /**
+     * Mark the ticket's storage commit as done, publish whatever can be published and
+     * wait until the ticket's own number becomes visible. Return the record that the
+     * transaction should be attached to from now on, with its running count already
+     * incremented.
+     */
+    ActiveTransactionsRecord complete(Ticket ticket)
+    {
+        ticket.done = true;
+        publishLock.lock();
+        try
+        {
+            publishReady();
+            while (true)
+            {
+                ActiveTransactionsRecord latest = manager.mostRecentRecord;
+                if (latest == null)
+                    throw new HGException("Transaction manager failed while waiting for commit " +
+                                          ticket.number + " to be published.");
+                if (latest.transactionNumber >= ticket.number)
+                    return latest.getRecordForNewTransaction();
+                published.awaitUninterruptibly();
+            }
+        }
+        finally
+        {
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * Withdraw a ticket whose transaction failed to commit at the storage level and whose
+     * values have already been removed from their boxes. The number is still published, 
+     * with no values attached, so that commits following it are not held back.
+     */
+    void cancel(Ticket ticket)
+    {
+        ticket.bodies = Cons.empty();
+        ticket.cancelled = true;
+        ticket.done = true;
+        publishLock.lock();
+        try
+        {
+            publishReady();
+        }
+        finally
+        {
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * Called after a fatal failure during a commit to wake up all threads waiting for
+     * publication.
+     */
+    void abandon(Ticket ticket)
+    {
+        ticket.done = true;
+        publishLock.lock();
+        try
+        {
+            published.signalAll();
+        }
+        finally
+        {
+            publishLock.unlock();
+        }
+    }
+
+    private void publishReady()
+    {
+        ActiveTransactionsRecord current = manager.mostRecentRecord;
+        if (current == null)
+            return;
+        Cons<VBoxBody<?>> bodies = Cons.empty();
+        long number = -1;
+        int count = 0, cancelled = 0;
+        for (Ticket head = pending.peek(); head != null && head.done; head = pending.peek())
+        {
+            pending.poll();
+            bodies = head.bodies.reverseInto(bodies);
+            number = head.number;
+            count++;
+            if (head.cancelled)
+                cancelled++;
+        }
+        if (count == 0)
+            return;
+        ActiveTransactionsRecord newRecord = new ActiveTransactionsRecord(number, bodies);
+        // Every transaction in the batch is still attached to some record not newer than
+        // 'current', so this is safe w.r.t. cleanup (see ActiveTransactionsRecord.setNext)
+        current.setNext(newRecord);
+        manager.mostRecentRecord = newRecord;
+        if (count > cancelled)
+        {
+            commitCount.addAndGet(count - cancelled);
+            batchCount.incrementAndGet();
+        }
+        published.signalAll();
+    }
+
+    long getCommitCount()
+    {
+        return commitCount.get();
+    }
+
+    long getBatchCount()
+    {
+        return batchCount.get();
+    }
+}
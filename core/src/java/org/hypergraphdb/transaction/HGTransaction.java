@@ -117,9 +117,9 @@ public final class HGTransaction implements HGStorageTransaction
         return true;
     }
 
-    protected Cons<VBoxBody<?>> performValidCommit()
+    protected Cons<VBoxBody<?>> performValidCommit(long commitNumber)
     {
-        number = context.getManager().mostRecentRecord.transactionNumber + 1;
+        number = commitNumber;
         return doCommit();
     }
 
@@ -145,6 +145,16 @@ public final class HGTransaction implements HGStorageTransaction
         return newBodies;
     }
 
+    /**
+     * Remove the bodies installed by {@link #doCommit()}. Must be called while holding 
+     * the <code>COMMIT_LOCK</code> and only before the commit is published. 
+     */
+    protected void undoCommit()
+    {
+        for (VBox<?> vbox : boxesWritten.keySet())
+            vbox.uncommit(number);
+    }
+
     void finish() 
     {
         if (!readonly) for (Map.Entry<VBox<?>, VBoxBody<?>> entry : bodiesRead.entrySet())
@@ -226,33 +236,15 @@ public final class HGTransaction implements HGStorageTransaction
         
         if (isWriteTransaction())
         {
-            context.getManager().COMMIT_LOCK.lock();
+            HGTransactionManager manager = context.getManager();
+            CommitPipeline.Ticket ticket = null;
+            manager.COMMIT_LOCK.lock();
             try
             {
                 if (validateCommit())
                 {
-                    if (stran != null)
-                        stran.commit();                    
-                    
-                    Cons<VBoxBody<?>> bodiesCommitted = performValidCommit();
-                    
-                    // The commit is already done, so create a new ActiveTransactionsRecord
-                    ActiveTransactionsRecord newRecord = new ActiveTransactionsRecord(number,
-                                                                                      bodiesCommitted);
-                    context.getManager().mostRecentRecord.setNext(newRecord);
-                    //newRecord.setPrev(context.getManager().mostRecentRecord);
-                    context.getManager().mostRecentRecord = newRecord;
-
-                    // as this transaction changed number, we must
-                    // update the activeRecords accordingly
-
-                    // the correct order is to increment first the
-                    // new, and only then decrement the old
-                    newRecord.incrementRunning();
-                    this.activeTxRecord.decrementRunning();
-                    
-                    // This assignment is need to decrementRunning in the finish method below.                    
-                    this.activeTxRecord = newRecord;
+                    ticket = manager.commitPipeline.reserve();
+                    ticket.bodies = performValidCommit(ticket.number);
                 }
                 else
                 {
@@ -270,12 +262,70 @@ public final class HGTransaction implements HGStorageTransaction
             catch (TransactionConflictException rethrowme) { throw rethrowme; }
             catch (Throwable t) // this should never happen, we're not expecting any exceptions here
             {
-                fatalFailure(t);
+                try { fatalFailure(t); }
+                finally { if (ticket != null) manager.commitPipeline.abandon(ticket); }
             }
             finally
             {                
-                context.getManager().COMMIT_LOCK.unlock();                
-            }                          
+                manager.COMMIT_LOCK.unlock();                
+            }
+            
+            // The new values are installed, but not visible to other transactions until
+            // published. The storage commit is done outside the COMMIT_LOCK so that
+            // concurrent commits can be grouped at the storage level as well.
+            try
+            {
+                if (stran != null)
+                    stran.commit();
+            }
+            catch (Throwable t)
+            {
+                // A storage level conflict detected at commit time (e.g. with optimistic
+                // storage transactions): withdraw the installed values and let the caller
+                // retry the transaction.
+                if (manager.canRetryAfter(t))
+                {
+                    manager.COMMIT_LOCK.lock();
+                    try
+                    {
+                        undoCommit();
+                    }
+                    finally
+                    {
+                        manager.COMMIT_LOCK.unlock();
+                    }
+                    manager.commitPipeline.cancel(ticket);
+                    for (Runnable r : abortActions)
+                        r.run();
+                    // Release the storage transaction and whatever locks it still holds.
+                    try
+                    {
+                        stran.abort();
+                    }
+                    catch (Throwable abortFailure)
+                    {
+                        abortFailure.printStackTrace(System.err);
+                    }
+                    finish();
+                    if (t instanceof RuntimeException)
+                        throw (RuntimeException)t;
+                    else if (t instanceof HGTransactionException)
+                        throw (HGTransactionException)t;
+                    else
+                        throw new HGTransactionException(t);
+                }
+                try { fatalFailure(t); }
+                finally { manager.commitPipeline.abandon(ticket); }
+            }
+            
+            // Wait for the commit to be published, possibly as part of a batch, and
+            // attach this transaction to the record of that batch. The correct order
+            // is to increment first the new, and only then decrement the old - the
+            // increment is done by the pipeline. The assignment is needed to 
+            // decrementRunning in the finish method below.
+            ActiveTransactionsRecord newRecord = manager.commitPipeline.complete(ticket);
+            this.activeTxRecord.decrementRunning();
+            this.activeTxRecord = newRecord;
         }                
         else
         {
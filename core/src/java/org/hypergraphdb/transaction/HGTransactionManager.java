@@ -45,7 +45,12 @@ public class HGTransactionManager
 	volatile ActiveTransactionsRecord mostRecentRecord = new ActiveTransactionsRecord(
 			0, null);
 
-	final ReentrantLock COMMIT_LOCK = new ReentrantLock(true);
+	// Held only while validating a commit and installing its values in memory, the
+	// storage commit and the publication of the new version are done outside of it
+	// (see CommitPipeline).
+	final ReentrantLock COMMIT_LOCK = new ReentrantLock();
+
+	final CommitPipeline commitPipeline = new CommitPipeline(this);
 
 	TxMonitor txMonitor = null;
 
@@ -346,20 +351,24 @@ public class HGTransactionManager
 			return transact(transaction, config);
 	}
 
+	/**
+	 * Return <code>true</code> if the exception, or any of its causes, is one after which
+	 * the storage layer allows the transaction to be retried.
+	 */
+	boolean canRetryAfter(Throwable t)
+	{
+		for (Throwable cause = t; cause != null; cause = cause.getCause())
+			if (factory.canRetryAfter(cause))
+				return true;
+		return false;
+	}
+
 	void handleTxException(Throwable t)
 	{
 		// If there is a DeadlockException at the root of this, we have to
 		// simply abort
 		// the transaction and try again.
-		boolean retry = false;
-		for (Throwable cause = t; cause != null; cause = cause.getCause())
-			if (factory.canRetryAfter(cause))
-			{
-				retry = true;
-				break;
-			}
-
-		if (!retry)
+		if (!canRetryAfter(t))
 		{
 			if (t instanceof RuntimeException)
 				throw (RuntimeException) t;
@@ -519,6 +528,39 @@ public class HGTransactionManager
 		return this.txMonitor;
 	}
 
+	/**
+	 * <p>
+	 * Return the total number of top-level write transactions that have been
+	 * committed and published since this transaction manager was created.
+	 * </p>
+	 */
+	public long getCommitCount()
+	{
+		return commitPipeline.getCommitCount();
+	}
+
+	/**
+	 * <p>
+	 * Return the number of batches in which committed write transactions were
+	 * published. Concurrent commits are grouped together, so the ratio
+	 * <code>getCommitCount()/getCommitBatchCount()</code> gives the average
+	 * group commit size.
+	 * </p>
+	 */
+	public long getCommitBatchCount()
+	{
+		return commitPipeline.getBatchCount();
+	}
+
+	/**
+	 * Return the number of the latest write transaction whose changes have been
+	 * installed in memory, whether already published or not.
+	 */
+	long lastCommitNumber()
+	{
+		return commitPipeline.lastReserved();
+	}
+
 	/**
 	 * Add a listener for transaction events.
 	 * @return <code>this</code>
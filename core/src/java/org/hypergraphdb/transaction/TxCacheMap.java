@@ -64,6 +64,13 @@ public class TxCacheMap<K, V>  implements CacheMap<K, V>
                 return super.commit(tx, newValue, tx.getNumber());            
         }        
         
+        @Override
+        protected VBoxBody<V> bodyAfterUncommit(VBoxBody<V> removed)
+        {
+            // we don't know if the previous body is the latest, so mark it for reloading
+            return makeNewBody(null, -1, removed.next);
+        }
+        
         @Override
         public void finish(HGTransaction tx)
         {
@@ -237,7 +244,7 @@ public class TxCacheMap<K, V>  implements CacheMap<K, V>
             {
                 // We don't have the latest version loaded currently, so if this transaction is
                 // a most recent one, set the passed in value as the latest 
-                if (tx.getNumber() >= txManager.mostRecentRecord.transactionNumber || tx == null)
+                if (tx.getNumber() >= txManager.lastCommitNumber() || tx == null)
                 {
                     box.body = box.makeNewBody(value, tx.getNumber(), box.body.next);
                     read = box.body;
@@ -18,7 +18,7 @@ public class TxCacheSet<Key, E> extends TxSet<E>
         txManager.COMMIT_LOCK.lock();
         try
         {
-            if (txNumber >= txManager.mostRecentRecord.transactionNumber) // is this the latest value
+            if (txNumber >= txManager.lastCommitNumber()) // is this the latest value
             {
                 // a marker that we have loaded some older values for older, but still running tx
                 if (S.body.version == -1)
@@ -153,7 +153,7 @@ public class TxCacheSet<Key, E> extends TxSet<E>
             S.body = S.makeNewBody(backingSet, tx.getNumber(), null); 
             // if this is an old transaction, we need to put null at the top of the body
             // list so the latest will get reloaded if needed
-            if (tx.getNumber() < txManager.mostRecentRecord.transactionNumber)
+            if (tx.getNumber() < txManager.lastCommitNumber())
                 S.body = S.makeNewBody(null, -1, S.body);
         }
         else
@@ -183,7 +183,7 @@ public class TxCacheSet<Key, E> extends TxSet<E>
                       final TxSet<E> thisSet)
         {
             super(txManager, backingSet, thisSet);
-            loadedAt = txManager.mostRecentRecord.transactionNumber;
+            loadedAt = txManager.lastCommitNumber();
         }
         
         @SuppressWarnings("unchecked")
@@ -205,6 +205,14 @@ public class TxCacheSet<Key, E> extends TxSet<E>
             return latest;
         }
         
+        @Override
+        protected VBoxBody<HGSortedSet<E>> bodyAfterUncommit(VBoxBody<HGSortedSet<E>> removed)
+        {
+            // restore the "old value" marker since we don't know whether the previous
+            // body is the latest
+            return makeNewBody(null, -1, removed.next);
+        }
+        
         @SuppressWarnings("unchecked")
         @Override
         public void finish(HGTransaction tx)
@@ -85,7 +85,7 @@ public class VBox<E>
             txManager.COMMIT_LOCK.lock();
 //            try
 //            {
-                commit(tx, newE, txManager.mostRecentRecord.transactionNumber);
+                commit(tx, newE, txManager.lastCommitNumber());
 //            }
 //            catch (Throwable t)
 //            {
@@ -110,6 +110,33 @@ public class VBox<E>
         return newBody;
     }
 
+    /**
+     * Remove the body committed with the given version number. This is called, while
+     * holding the <code>COMMIT_LOCK</code>, when the storage commit of a transaction 
+     * fails after its values were already installed, but before they were published.
+     */
+    void uncommit(long version)
+    {
+        VBoxBody<E> b = body;
+        if (b.version == version)
+            body = bodyAfterUncommit(b);
+        else for (; b.next != null; b = b.next)
+            if (b.next.version == version)
+            {
+                b.setNext(b.next.next);
+                break;
+            }
+    }
+    
+    /**
+     * Return the body that should become the latest one when the current latest
+     * is removed by {@link #uncommit(long)}.
+     */
+    protected VBoxBody<E> bodyAfterUncommit(VBoxBody<E> removed)
+    {
+        return removed.next;
+    }
+    
     public VBoxBody<E> makeNewBody(E value, long version, VBoxBody<E> next)
     {
 //        if (next != null && version > 0 && version == next.version)
@@ -168,7 +168,7 @@ public class AtomRefType implements HGAtomType,
 			// we store the mode followed by the handle of the referent followed by a reference count
 			byte [] data = new byte[5 + handleSize];
 			data[MODE_OFFSET] = ref.getMode().getCode();
-			System.arraycopy(refHandle.toByteArray(), 0, data, ATOM_HANDLE_OFFSET, handleSize);
+			refHandle.toByteArray(data, ATOM_HANDLE_OFFSET);
 			BAUtils.writeInt(1, data, REFCOUNT_OFFSET);
 			valueHandle = graph.getStore().store(data);
 			idx.addEntry(refHandle, valueHandle);
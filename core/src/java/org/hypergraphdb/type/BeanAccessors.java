@@ -0,0 +1,228 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.type;
+
+import java.beans.IndexedPropertyDescriptor;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hypergraphdb.HGException;
+import org.hypergraphdb.HGHandle;
+
+/**
+ * <p>
+ * Property getters and setters and the constructors of a Java bean class, resolved once
+ * to <code>MethodHandle</code>s. Going through an instance of this class instead of
+ * {@link BonesOfBeans} avoids the introspection and the argument arrays of reflective
+ * calls every time a bean property is read or written.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable and shared: use {@link #forClass(Class)} to get the one for
+ * a given class. Indexed properties are not covered, those are still accessed
+ * through <code>BonesOfBeans</code>.
+ * </p>
+ */
+public final class BeanAccessors
+{
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType DEFAULT_CONSTRUCTOR = MethodType.methodType(Object.class);
+    private static final MethodType LINK_CONSTRUCTOR = MethodType.methodType(Object.class, HGHandle[].class);
+
+    private static final ClassValue<BeanAccessors> accessors = new ClassValue<BeanAccessors>()
+    {
+        protected BeanAccessors computeValue(Class<?> type)
+        {
+            return new BeanAccessors(type);
+        }
+    };
+
+    private static final class Property
+    {
+        final MethodHandle getter;
+        final MethodHandle setter;
+
+        Property(MethodHandle getter, MethodHandle setter)
+        {
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    private final Class<?> beanClass;
+    private final Map<String, Property> properties = new HashMap<String, Property>();
+    private final MethodHandle defaultConstructor;
+    private final MethodHandle linkConstructor;
+
+    /**
+     * <p>Return the accessors of the given bean class, building them the first time.</p>
+     */
+    public static BeanAccessors forClass(Class<?> beanClass)
+    {
+        return accessors.get(beanClass);
+    }
+
+    private static <T extends AccessibleObject> T accessible(T member)
+    {
+        try
+        {
+            member.setAccessible(true);
+        }
+        catch (RuntimeException ex)
+        {
+            // not open to us, the lookup below succeeds only if the member is public
+        }
+        return member;
+    }
+
+    private static MethodHandle unreflect(Method method, MethodType type)
+    {
+        if (method == null)
+            return null;
+        try
+        {
+            return MethodHandles.lookup().unreflect(accessible(method)).asType(type);
+        }
+        catch (IllegalAccessException ex)
+        {
+            return null;
+        }
+    }
+
+    private static MethodHandle unreflect(Constructor<?> constructor, MethodType type)
+    {
+        if (constructor == null)
+            return null;
+        try
+        {
+            MethodHandle h = MethodHandles.lookup().unreflectConstructor(accessible(constructor));
+            if (type == LINK_CONSTRUCTOR && !constructor.getParameterTypes()[0].equals(HGHandle[].class))
+                h = h.asSpreader(HGHandle[].class, constructor.getParameterTypes().length);
+            return h.asType(type);
+        }
+        catch (IllegalAccessException ex)
+        {
+            return null;
+        }
+    }
+
+    private BeanAccessors(Class<?> beanClass)
+    {
+        this.beanClass = beanClass;
+        for (PropertyDescriptor desc : BonesOfBeans.getAllPropertyDescriptors(beanClass).values())
+        {
+            if (desc instanceof IndexedPropertyDescriptor)
+                continue;
+            properties.put(desc.getName(), new Property(unreflect(desc.getReadMethod(), GETTER),
+                                                        unreflect(desc.getWriteMethod(), SETTER)));
+        }
+        defaultConstructor = unreflect(JavaTypeFactory.findDefaultConstructor(beanClass), DEFAULT_CONSTRUCTOR);
+        Constructor<?> linkCons = null;
+        try
+        {
+            linkCons = beanClass.getDeclaredConstructor(HGHandle[].class);
+        }
+        catch (NoSuchMethodException ex)
+        {
+            linkCons = JavaTypeFactory.findHandleArgsConstructor(beanClass);
+        }
+        linkConstructor = unreflect(linkCons, LINK_CONSTRUCTOR);
+    }
+
+    public Class<?> getBeanClass()
+    {
+        return beanClass;
+    }
+
+    /**
+     * <p>Return <code>true</code> if the bean class has a constructor without arguments that
+     * {@link #newInstance()} can call.</p>
+     */
+    public boolean hasDefaultConstructor()
+    {
+        return defaultConstructor != null;
+    }
+
+    /**
+     * <p>Return <code>true</code> if the bean class has a constructor taking either a
+     * <code>HGHandle[]</code> or a fixed number of <code>HGHandle</code>s, that
+     * {@link #newLink(HGHandle[])} can call.</p>
+     */
+    public boolean hasLinkConstructor()
+    {
+        return linkConstructor != null;
+    }
+
+    public Object newInstance() throws Throwable
+    {
+        if (defaultConstructor == null)
+            throw new HGException("No accessible default constructor for " + beanClass.getName());
+        return (Object)defaultConstructor.invokeExact();
+    }
+
+    public Object newLink(HGHandle [] targetSet) throws Throwable
+    {
+        if (linkConstructor == null)
+            throw new HGException("Can't construct link with Java type " +
+                    beanClass.getName() + " please include a (HGHandle [] ) " +
+                    " or a (HGHandle, HGHandle, ..., HGHandle) constructor.");
+        return (Object)linkConstructor.invokeExact(targetSet);
+    }
+
+    /**
+     * <p>Return the value of a property of <code>bean</code>. Beans that are not
+     * instances of the class these accessors were built for, and properties that
+     * could not be resolved to a method handle, are handled by {@link BonesOfBeans}.</p>
+     */
+    public Object getProperty(Object bean, String name)
+    {
+        Property p = properties.get(name);
+        if (p == null || p.getter == null || !beanClass.isInstance(bean))
+            return BonesOfBeans.getProperty(bean, name);
+        try
+        {
+            return (Object)p.getter.invokeExact(bean);
+        }
+        catch (Throwable t)
+        {
+            throw new HGException("Exception while accessing property " + name +
+                                  " of bean " + bean.getClass().getName() + ": " + t.toString(), t);
+        }
+    }
+
+    /**
+     * <p>Assign a property of <code>bean</code>, with the same fallback to
+     * {@link BonesOfBeans} as {@link #getProperty(Object, String)}.</p>
+     */
+    public void setProperty(Object bean, String name, Object value)
+    {
+        Property p = properties.get(name);
+        if (p == null || p.setter == null || !beanClass.isInstance(bean))
+        {
+            BonesOfBeans.setProperty(bean, name, value);
+            return;
+        }
+        try
+        {
+            p.setter.invokeExact(bean, value);
+        }
+        catch (Throwable t)
+        {
+            throw new HGException("Exception while assigning property " + name +
+                                  " of bean " + bean.getClass().getName() + ": " + t.toString(), t);
+        }
+    }
+}
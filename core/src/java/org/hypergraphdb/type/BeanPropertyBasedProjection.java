@@ -15,10 +15,17 @@ import org.hypergraphdb.HGHandle;
 public class BeanPropertyBasedProjection implements HGProjection 
 {
 	private HGProjection wrapped;
+	private BeanAccessors accessors;
 	
 	public BeanPropertyBasedProjection(HGProjection wrapped)
+	{
+		this(wrapped, null);
+	}
+	
+	public BeanPropertyBasedProjection(HGProjection wrapped, BeanAccessors accessors)
 	{
 		this.wrapped = wrapped;
+		this.accessors = accessors;
 	}
 	
 	public String getName() 
@@ -38,11 +45,15 @@ public class BeanPropertyBasedProjection implements HGProjection
 
 	public Object project(Object value) 
 	{
-		return BonesOfBeans.getProperty(value, getName());
+		return accessors == null ? BonesOfBeans.getProperty(value, getName()) 
+								 : accessors.getProperty(value, getName());
 	}
 	
 	public void inject(Object bean, Object value)
 	{
-		BonesOfBeans.setProperty(bean, getName(), value);
+		if (accessors == null)
+			BonesOfBeans.setProperty(bean, getName(), value);
+		else
+			accessors.setProperty(bean, getName(), value);
 	}
 }
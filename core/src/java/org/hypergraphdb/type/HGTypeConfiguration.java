@@ -19,6 +19,8 @@ public class HGTypeConfiguration
 {
     private HGTypeSchema<?> defaultSchema = new JavaTypeSchema();
     private Map<String, HGTypeSchema<?>> schemas = new HashMap<String, HGTypeSchema<?>>();    
+    private boolean compactRecords = false;
+    private boolean shardedRefCounts = false;
 
     public HGTypeConfiguration()
     {
@@ -59,4 +61,58 @@ public class HGTypeConfiguration
     {
         return (T)schemas.get(name);
     }
+
+    /**
+     * <p>Return <code>true</code> if record values are written in the compact format
+     * where primitively typed slots are inlined. See {@link #setCompactRecords(boolean)}.</p>
+     */
+    public boolean isCompactRecords()
+    {
+        return compactRecords;
+    }
+
+    /**
+     * <p>
+     * Specify whether {@link RecordType} values (and therefore Java beans) should be
+     * stored in a single byte buffer with all primitively typed slot values inlined, instead
+     * of as a layout of handles to separately stored, shared values. Reading a compact record
+     * back takes a single storage lookup plus one for each non-primitive slot. Nested records,
+     * atom references and other complex slot values are still stored separately.
+     * The default is <code>false</code>.
+     * </p>
+     * 
+     * <p>
+     * Records already stored in either format remain readable when this flag is changed, it
+     * only affects newly stored values.
+     * </p>
+     */
+    public void setCompactRecords(boolean compactRecords)
+    {
+        this.compactRecords = compactRecords;
+    }
+
+    /**
+     * <p>Return <code>true</code> if reference counts of shared primitive values are
+     * kept in per-thread shards. See {@link #setShardedRefCounts(boolean)}.</p>
+     */
+    public boolean isShardedRefCounts()
+    {
+        return shardedRefCounts;
+    }
+
+    /**
+     * <p>
+     * Primitive values (numbers, strings etc.) are stored once and shared by all atoms
+     * and records referring to them, with a reference count stored along with the value. 
+     * Updating that count makes commonly used values a write hot spot under concurrent
+     * transactions. When this flag is set, references after the first one are counted in a
+     * separate index, in a different counter for each thread, so that concurrent transactions
+     * referring to the same value don't conflict. Releasing a value then needs to sum up all
+     * its counters. The default is <code>false</code>.
+     * </p>
+     */
+    public void setShardedRefCounts(boolean shardedRefCounts)
+    {
+        this.shardedRefCounts = shardedRefCounts;
+    }
 }
\ No newline at end of file
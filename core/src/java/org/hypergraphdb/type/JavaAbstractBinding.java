@@ -36,6 +36,7 @@ public class JavaAbstractBinding implements HGCompositeType
 	protected Class<?> javaClass;
     protected HGHandle typeHandle;
     protected HGCompositeType hgType;    
+    private BeanAccessors accessors = null;
     
     public JavaAbstractBinding(HGHandle typeHandle, HGCompositeType hgType, Class<?> clazz)
     {
@@ -65,6 +66,17 @@ public class JavaAbstractBinding implements HGCompositeType
     	return typeHandle;
     }
     
+    /**
+     * <p>Return the accessors of the bean properties of the Java class, created
+     * on first use.</p>
+     */
+    protected BeanAccessors getAccessors()
+    {
+    	if (accessors == null)
+    		accessors = BeanAccessors.forClass(javaClass);
+    	return accessors;
+    }
+    
 	public Iterator<String> getDimensionNames() 
 	{
 		return hgType.getDimensionNames();
@@ -77,7 +89,7 @@ public class JavaAbstractBinding implements HGCompositeType
 			throw new HGException("Could not find projection for '" + dimensionName + 
 					"' in HG type " + typeHandle + " for " + javaClass.getName());
 		else
-			return new BeanPropertyBasedProjection(p);
+			return new BeanPropertyBasedProjection(p, getAccessors());
 	}
     
 	public Object make(HGPersistentHandle handle, LazyRef<HGHandle[]> targetSet, IncidenceSetRef incidenceSet) 
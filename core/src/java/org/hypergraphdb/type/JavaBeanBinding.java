@@ -7,7 +7,6 @@
  */
 package org.hypergraphdb.type;
 
-import java.lang.reflect.Constructor;
 import java.util.Iterator;
 
 import org.hypergraphdb.HGHandle;
@@ -32,49 +31,18 @@ import org.hypergraphdb.indexing.HGKeyIndexer;
  */
 public class JavaBeanBinding extends JavaAbstractBinding
 {
-    private Constructor<?> defaultConstructor = null;
-    private Constructor<?> linkConstructor = null;
-    private Constructor<?> handleListConstructor = null;
     private boolean isLinkInstance; // save the value of HGLink.isAssignableFrom(javaClass) - expensive to compute.
     
     public JavaBeanBinding(HGHandle typeHandle, RecordType hgType, Class<?> clazz)
     {
     	super(typeHandle, hgType, clazz);
-    	defaultConstructor = JavaTypeFactory.findDefaultConstructor(javaClass);
-    	if (defaultConstructor != null)
-    	    defaultConstructor.setAccessible(true);
-        try
-        {
-        	linkConstructor = javaClass.getDeclaredConstructor(new Class[] {HGHandle[].class} );
-        	if (linkConstructor != null)
-        	    linkConstructor.setAccessible(true);
-        }
-        catch (NoSuchMethodException ex) 
-        { 
-            handleListConstructor = JavaTypeFactory.findHandleArgsConstructor(javaClass);
-            if (handleListConstructor != null)
-                handleListConstructor.setAccessible(true);
-        }        
         isLinkInstance = HGLink.class.isAssignableFrom(javaClass);
     }
 
-    private HGLink makeLink(HGHandle[] targetSet) throws Exception
-    {
-        if (linkConstructor != null)
-            return (HGLink)linkConstructor.newInstance(new Object[]{targetSet});
-        else if (handleListConstructor != null)
-        {
-            return (HGLink)handleListConstructor.newInstance((Object[])targetSet);
-        }
-        else
-            throw new RuntimeException("Can't construct link with Java type " +
-                    javaClass.getName() + " please include a (HGHandle [] ) " +
-                    " or a (HGHandle, HGHandle, ..., HGHandle) constructor.");            
-    }
-    
     public Object make(HGPersistentHandle handle, LazyRef<HGHandle[]> targetSet, IncidenceSetRef incidenceSet)
     {
         Object bean = null;
+        BeanAccessors accessors = getAccessors();
         try
         {
             // We construct a link of the class is a HGLink and the target set is not-empty
@@ -82,10 +50,10 @@ public class JavaBeanBinding extends JavaAbstractBinding
             if (isLinkInstance && 
             	targetSet != null && 
             	targetSet.deref().length > 0 ||
-            	defaultConstructor == null)
-        		bean = makeLink(targetSet.deref());
-            else if (defaultConstructor != null)
-           	   bean = defaultConstructor.newInstance();
+            	!accessors.hasDefaultConstructor())
+        		bean = accessors.newLink(targetSet.deref());
+            else if (accessors.hasDefaultConstructor())
+           	   bean = accessors.newInstance();
             else
                 throw new RuntimeException("Can't construct object of type " + javaClass.getName() +
                         " no default constructor and/or no HGHandle array-based constructor.");
@@ -100,7 +68,7 @@ public class JavaBeanBinding extends JavaAbstractBinding
 	        		value = graph.get(((HGAtomRef)value).getReferent());
 	        	try
 	        	{
-	        	    BonesOfBeans.setProperty(bean, slot.getLabel(), value);
+	        	    accessors.setProperty(bean, slot.getLabel(), value);
 	        	}
 	        	catch (Throwable t)
 	        	{	        		
@@ -134,10 +102,11 @@ public class JavaBeanBinding extends JavaAbstractBinding
 		{
 	        final Record record = new BeanRecord(typeHandle, instance);
 	        RecordType recordType = (RecordType)hgType;
+	        BeanAccessors accessors = getAccessors();
 	        for (HGHandle slotHandle : recordType.getSlots())
 	        {
 	        	Slot slot = (Slot)graph.get(slotHandle);
-	        	Object value = BonesOfBeans.getProperty(instance, slot.getLabel());
+	        	Object value = accessors.getProperty(instance, slot.getLabel());
 	        	HGAtomRef.Mode refMode = recordType.getReferenceMode(slotHandle);
 	        	if (refMode != null && value != null)
 	        	{
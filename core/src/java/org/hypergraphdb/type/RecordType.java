@@ -17,11 +17,14 @@ import org.hypergraphdb.LazyRef;
 import org.hypergraphdb.HGQuery.hg;
 import org.hypergraphdb.atom.AtomProjection;
 import org.hypergraphdb.atom.HGAtomRef;
+import org.hypergraphdb.storage.BAUtils;
 import org.hypergraphdb.util.HGUtils;
 import org.hypergraphdb.util.HashCodeUtil;
 
+import java.io.ByteArrayOutputStream;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 
@@ -41,6 +44,15 @@ import java.util.Iterator;
  * and empty record is represented with a newly created handle that doesn't point to anything. 
  * </p>
  * 
+ * <p>
+ * When {@link HGTypeConfiguration#isCompactRecords()} is set, records are stored in a single
+ * byte buffer instead: a format byte and a schema version derived from the slots of the record type,
+ * followed by one entry per slot. The value of a slot whose type is a {@link HGPrimitiveType} is
+ * inlined in its entry, other values (nested records, atom references etc.) are stored separately
+ * and referred to by handle as in the default layout. Both formats can be read regardless of 
+ * the configuration.
+ * </p>
+ * 
  * @author Borislav Iordanov
  */
 public class RecordType implements HGCompositeType
@@ -50,6 +62,13 @@ public class RecordType implements HGCompositeType
     protected HGHandle thisHandle;
     private HashMap<String, HGProjection> projections = null;
     private HashMap<HGHandle, HGAtomRef.Mode> refModes = null;
+    private volatile Integer schemaVersion = null;
+    private int handleSize = 0;
+    
+    private static final byte COMPACT_FORMAT = 1;
+    private static final byte SLOT_NULL = 0;
+    private static final byte SLOT_INLINE = 1;
+    private static final byte SLOT_HANDLE = 2;
             
     private synchronized void initProjections()
     {
@@ -129,16 +148,19 @@ public class RecordType implements HGCompositeType
     {
         if (!slots.contains(slot))
             slots.add(slot);
+        schemaVersion = null;
     }
     
     public void remove(HGHandle slot)
     {
         slots.remove(slot);
+        schemaVersion = null;
     }
     
     public void removeAt(int i)
     {
         slots.remove(i);
+        schemaVersion = null;
     }
     
     public HGHandle getAt(int i)
@@ -173,10 +195,28 @@ public class RecordType implements HGCompositeType
         else
             result = new Record(graph.getHandle(this));
         TypeUtils.setValueFor(graph, handle, result);
-        HGPersistentHandle [] layout = slots.isEmpty() ? 
-                                        HGUtils.EMPTY_HANDLE_ARRAY :
-                                        graph.getStore().getLink(handle);
-        if (layout.length != slots.size() * 2)
+        if (slots.isEmpty())
+            return result;
+        HGPersistentHandle [] layout = null;
+        byte [] data = null;
+        if (isCompact())
+        {
+            data = graph.getStore().getData(handle);
+            if (data == null)
+                layout = graph.getStore().getLink(handle);
+        }
+        else
+        {
+            layout = graph.getStore().getLink(handle);
+            if (layout == null)
+                data = graph.getStore().getData(handle);
+        }
+        if (data != null)
+        {
+            makeCompact(handle, data, result);
+            return result;
+        }
+        if (layout == null || layout.length != slots.size() * 2)
             throw new HGException("RecordType.make: Record value of handle " + 
                                   handle + 
                                   " does not match record type number of slots.");
@@ -187,18 +227,7 @@ public class RecordType implements HGCompositeType
 //            try
 //            {
             if (!layout[2*i + 1].equals(graph.getHandleFactory().nullHandle()))
-            {            	
-	        	HGAtomRef.Mode refMode = getReferenceMode(slotHandle);
-	        	if (refMode != null)
-	        	{
-	        		AtomRefType refType = graph.getTypeSystem().getAtomType(HGAtomRef.class);
-	        		value = refType.make(layout[2*i + 1], null, null);
-	        	}
-	        	else
-	        		value = TypeUtils.makeValue(graph, 
-	        									layout[2*i + 1], 
-	        									graph.getTypeSystem().getType(layout[2*i]));
-            }
+            	value = makeSlotValue(slotHandle, layout[2*i], layout[2*i + 1]);
 //            }
 //            catch (HGException ex)
 //            {
@@ -210,6 +239,51 @@ public class RecordType implements HGCompositeType
         }
         return result;
     }
+    
+    private Object makeSlotValue(HGHandle slotHandle, HGPersistentHandle typeHandle, HGPersistentHandle valueHandle)
+    {
+    	HGAtomRef.Mode refMode = getReferenceMode(slotHandle);
+    	if (refMode != null)
+    	{
+    		AtomRefType refType = graph.getTypeSystem().getAtomType(HGAtomRef.class);
+    		return refType.make(valueHandle, null, null);
+    	}
+    	else
+    		return TypeUtils.makeValue(graph, valueHandle, graph.getTypeSystem().getType(typeHandle));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void makeCompact(HGPersistentHandle handle, byte [] data, Record result)
+    {
+    	int pos = checkCompactHeader(handle, data, "make");
+        for (int i = 0; i < slots.size(); i++)
+        {
+        	HGHandle slotHandle = getAt(i);
+        	Object value = null;
+        	byte tag = data[pos++];
+        	if (tag != SLOT_NULL)
+        	{
+        		HGPersistentHandle typeHandle = graph.getHandleFactory().makeHandle(data, pos);
+        		pos += handleSize();
+        		if (tag == SLOT_INLINE)
+        		{
+        			int length = BAUtils.readInt(data, pos);
+        			pos += 4;
+        			HGPrimitiveType<Object> type = (HGPrimitiveType<Object>)graph.getTypeSystem().getType(typeHandle);
+        			// primitive types may read up to the end of the buffer they are given
+        			value = type.fromByteArray(Arrays.copyOfRange(data, pos, pos + length), 0, length);
+        			pos += length;
+        		}
+        		else
+        		{
+        			HGPersistentHandle valueHandle = graph.getHandleFactory().makeHandle(data, pos);
+        			pos += handleSize();
+        			value = makeSlotValue(slotHandle, typeHandle, valueHandle);
+        		}
+        	}
+            result.set((Slot)graph.get(slotHandle), value);
+        }
+    }
 
     public HGPersistentHandle store(Object instance)
     {
@@ -222,6 +296,7 @@ public class RecordType implements HGCompositeType
             throw new HGException("RecordType.store: object is not of type Record.");
         Record record = (Record)instance;
         HGPersistentHandle [] layout = new HGPersistentHandle[slots.size() * 2];
+        byte [][] inline = isCompact() ? new byte[slots.size()][] : null;
         for (int i = 0; i < slots.size(); i++)
         {     	
         	HGHandle slotHandle = getAt(i);
@@ -246,7 +321,10 @@ public class RecordType implements HGCompositeType
 	                layout[2*i] = graph.getPersistentHandle(actualTypeHandle);
 	                try
 	                {
-	                	layout[2*i + 1] = TypeUtils.storeValue(graph, value, type);
+	                	if (inline != null && type instanceof HGPrimitiveType)
+	                		inline[i] = toBytes((HGPrimitiveType<?>)type, value);
+	                	else
+	                		layout[2*i + 1] = TypeUtils.storeValue(graph, value, type);
 	                }
 	                catch (HGException ex)
 	                {
@@ -268,15 +346,110 @@ public class RecordType implements HGCompositeType
 	        	}
             }
         }
-        graph.getStore().store(handle, layout);
+        if (inline != null)
+        	graph.getStore().store(handle, toCompact(layout, inline));
+        else
+        	graph.getStore().store(handle, layout);
         return handle;
     }
     
+    @SuppressWarnings("unchecked")
+    private static byte [] toBytes(HGPrimitiveType<?> type, Object value)
+    {
+    	return ((HGPrimitiveType<Object>)type).toByteArray(value);
+    }
+    
+    private byte [] toCompact(HGPersistentHandle [] layout, byte [][] inline)
+    {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+    	byte [] buf = new byte[4];
+    	out.write(COMPACT_FORMAT);
+    	BAUtils.writeInt(getSchemaVersion(), buf, 0);
+    	out.write(buf, 0, 4);
+    	for (int i = 0; i < slots.size(); i++)
+    	{
+    		if (inline[i] != null)
+    		{
+    			out.write(SLOT_INLINE);
+    			writeHandle(out, layout[2*i]);
+    			BAUtils.writeInt(inline[i].length, buf, 0);
+    			out.write(buf, 0, 4);
+    			out.write(inline[i], 0, inline[i].length);
+    		}
+    		else if (layout[2*i + 1].equals(graph.getHandleFactory().nullHandle()))
+    			out.write(SLOT_NULL);
+    		else
+    		{
+    			out.write(SLOT_HANDLE);
+    			writeHandle(out, layout[2*i]);
+    			writeHandle(out, layout[2*i + 1]);
+    		}
+    	}
+    	return out.toByteArray();
+    }
+    
+    private static void writeHandle(ByteArrayOutputStream out, HGPersistentHandle h)
+    {
+    	byte [] B = h.toByteArray();
+    	out.write(B, 0, B.length);
+    }
+    
+    private int checkCompactHeader(HGPersistentHandle handle, byte [] data, String operation)
+    {
+    	if (data.length < 5 || data[0] != COMPACT_FORMAT)
+    		throw new HGException("RecordType." + operation + ": Record value of handle " + 
+    							  handle + " is not in a known compact record format.");
+    	if (BAUtils.readInt(data, 1) != getSchemaVersion())
+    		throw new HGException("RecordType." + operation + ": Record value of handle " + 
+    							  handle + " was stored with a different version of the record type.");
+    	return 5;
+    }
+    
+    private int handleSize()
+    {
+    	if (handleSize == 0)
+    		handleSize = graph.getHandleFactory().nullHandle().toByteArray().length;
+    	return handleSize;
+    }
+    
+    private boolean isCompact()
+    {
+    	return graph.getConfig().getTypeConfiguration().isCompactRecords();
+    }
+    
+    /**
+     * <p>
+     * Return the version of the storage layout defined by this record type, as stored in
+     * the header of compact records. It is computed from the persistent handles of the slots, in order.
+     * </p>
+     */
+    public int getSchemaVersion()
+    {
+    	Integer v = schemaVersion;
+    	if (v == null)
+    	{
+    		int hash = HashCodeUtil.SEED;
+    		for (HGHandle sh : slots)
+    			hash = HashCodeUtil.hash(hash, graph.getPersistentHandle(sh));
+    		schemaVersion = v = hash;
+    	}
+    	return v;
+    }
+    
     public void release(HGPersistentHandle handle)
     {    	
         if (slots.isEmpty() || graph.getHandleFactory().nullHandle().equals(handle))
             return;
         HGPersistentHandle [] layout = graph.getStore().getLink(handle);
+        if (layout == null)
+        {
+        	byte [] data = graph.getStore().getData(handle);
+        	if (data != null)
+        	{
+        		releaseCompact(handle, data);
+        		return;
+        	}
+        }
         if (layout == null)
             // this is fishy, a sys print out like this, next line will throw an NPE anyway
         	System.out.println("oops, no data for : " + handle); 
@@ -301,6 +474,34 @@ public class RecordType implements HGCompositeType
         }        
         graph.getStore().removeLink(handle);
     }
+    
+    private void releaseCompact(HGPersistentHandle handle, byte [] data)
+    {
+    	int pos = checkCompactHeader(handle, data, "remove");
+        for (int i = 0; i < slots.size(); i++)
+        {
+        	byte tag = data[pos++];
+        	if (tag == SLOT_NULL)
+        		continue;
+        	HGPersistentHandle typeHandle = graph.getHandleFactory().makeHandle(data, pos);
+        	pos += handleSize();
+        	if (tag == SLOT_INLINE)
+        	{
+        		pos += 4 + BAUtils.readInt(data, pos);
+        		continue;
+        	}
+        	HGPersistentHandle valueHandle = graph.getHandleFactory().makeHandle(data, pos);
+        	pos += handleSize();
+            HGAtomType type;
+            if (getReferenceMode(getAt(i)) == null)
+            	type = graph.getTypeSystem().getType(typeHandle);
+            else
+            	type = graph.getTypeSystem().getAtomType(HGAtomRef.class);
+        	if (!TypeUtils.isValueReleased(graph, valueHandle))
+        		TypeUtils.releaseValue(graph, type, valueHandle);
+        }
+        graph.getStore().removeData(handle);
+    }
 
     public boolean subsumes(Object general, Object specific)
     {
@@ -52,6 +52,17 @@ import org.hypergraphdb.type.HGRefCountedType;
  * 
  * </p>
  * 
+ * <p>
+ * Because of the embedded reference count, frequently used values (e.g. <code>0</code>
+ * or <code>true</code>) are rewritten by every transaction referencing them and become a
+ * point of contention. When {@link org.hypergraphdb.type.HGTypeConfiguration#isShardedRefCounts()}
+ * is set, the embedded count is only initialized when a value is first stored, and later
+ * references and releases are counted in per-thread shards kept in a separate index, so
+ * concurrent transactions sharing a value don't write the same records. The reference count
+ * of a value is then its embedded count plus the sum of its shards. Both modes read both 
+ * counts, so a graph can be switched from one to the other.
+ * </p>
+ * 
  * @author Borislav Iordanov
  */
 public abstract class PrimitiveTypeBase<JavaType> implements HGPrimitiveType<JavaType>, 
@@ -61,6 +72,7 @@ public abstract class PrimitiveTypeBase<JavaType> implements HGPrimitiveType<Jav
 {
     protected HyperGraph graph = null;
     protected HGSortIndex<byte[], HGPersistentHandle> valueIndex = null;
+    private RefCountShards refCountShards = null;
     
     /**
      * <p>Return the <code>Comparator</code> class used for the order relation
@@ -105,6 +117,18 @@ public abstract class PrimitiveTypeBase<JavaType> implements HGPrimitiveType<Jav
     	BAUtils.writeInt(c, buf, 0);
     }
 
+    private RefCountShards getRefCountShards()
+    {
+        if (refCountShards == null)
+            refCountShards = new RefCountShards(graph);
+        return refCountShards;
+    }
+    
+    private boolean isShardedRefCounts()
+    {
+        return graph.getConfig().getTypeConfiguration().isShardedRefCounts();
+    }
+
     protected final HGPersistentHandle storeImpl(byte [] data)
     {
         HGStore store = graph.getStore();
@@ -130,6 +154,10 @@ public abstract class PrimitiveTypeBase<JavaType> implements HGPrimitiveType<Jav
             store.store(handle, data);
             idx.addEntry(data, handle);
         }
+        else if (isShardedRefCounts())
+        {
+            getRefCountShards().add(handle, 1);
+        }
         else
         {
             byte [] ref_counted_data = store.getData(handle);
@@ -158,16 +186,21 @@ public abstract class PrimitiveTypeBase<JavaType> implements HGPrimitiveType<Jav
         HGStore store = graph.getStore();
         byte [] ref_counted_data = store.getData(handle);
         int refCnt = getRefCount(ref_counted_data);
-        if (--refCnt > 0)
+        if (isShardedRefCounts())
         {
-            putRefCount(refCnt, ref_counted_data);
-            store.store(handle, ref_counted_data);
+            getRefCountShards().add(handle, -1);
+            if (refCnt + getRefCountShards().total(handle) > 0)
+                return;
         }
-        else
+        else if (--refCnt > 0 || getRefCountShards().total(handle) + refCnt > 0)
         {
-            store.removeData(handle);
-            getIndex().removeEntry(ref_counted_data, handle);
+            putRefCount(refCnt, ref_counted_data);
+            store.store(handle, ref_counted_data);
+            return;
         }
+        store.removeData(handle);
+        getIndex().removeEntry(ref_counted_data, handle);
+        getRefCountShards().remove(handle);
     }
 
     public Object make(HGPersistentHandle handle, LazyRef<HGHandle[]> targetSet, IncidenceSetRef incidenceSet)
@@ -243,6 +276,6 @@ public abstract class PrimitiveTypeBase<JavaType> implements HGPrimitiveType<Jav
     	if (handle == null) return 0;
         byte [] ref_counted_data = graph.getStore().getData(handle);
         int refCnt = getRefCount(ref_counted_data);
-    	return refCnt;
+    	return refCnt + getRefCountShards().total(handle);
     }    
 }
@@ -0,0 +1,136 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.type.javaprimitive;
+
+import org.hypergraphdb.HGIndex;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.storage.BAUtils;
+import org.hypergraphdb.storage.BAtoBA;
+
+/**
+ * <p>
+ * Reference counts of shared primitive values kept outside of the values themselves,
+ * split into {@link #SHARDS} independent counters per value. A thread only ever updates
+ * the counter of its own shard, so concurrent transactions referencing the same value
+ * write different storage records and don't conflict. A shard may go negative when a
+ * value is released by another thread than the one that referenced it, only the sum
+ * over all shards is meaningful.
+ * </p>
+ *
+ * <p>
+ * All counters live in a single storage index, keyed by the value handle followed
+ * by the shard number.
+ * </p>
+ */
+class RefCountShards
+{
+    static final String INDEX_NAME = "hg_primitive_refcounts";
+    static final int SHARDS = 16;
+
+    private HyperGraph graph;
+    private HGIndex<byte[], byte[]> index = null;
+    private boolean storageChecked = false;
+
+    RefCountShards(HyperGraph graph)
+    {
+        this.graph = graph;
+    }
+
+    /**
+     * <p>Return the counters index, or <code>null</code> if it doesn't exist and
+     * <code>create</code> is false. Graphs that never used sharded counts don't
+     * have it, so we look in storage only once and otherwise just check whether
+     * it has been opened since.</p>
+     */
+    private HGIndex<byte[], byte[]> getIndex(boolean create)
+    {
+        if (index == null)
+        {
+            index = graph.getStore().getIndex(INDEX_NAME);
+            if (index == null && (create || !storageChecked))
+            {
+                index = graph.getStore().getIndex(INDEX_NAME,
+                                                  BAtoBA.getInstance(),
+                                                  BAtoBA.getInstance(),
+                                                  null,
+                                                  null,
+                                                  create);
+                storageChecked = true;
+            }
+        }
+        return index;
+    }
+
+    private static byte [] key(byte [] value, int shard)
+    {
+        byte [] key = new byte[value.length + 1];
+        System.arraycopy(value, 0, key, 0, value.length);
+        key[value.length] = (byte)shard;
+        return key;
+    }
+
+    private static int currentShard()
+    {
+        return (int)(Thread.currentThread().getId() % SHARDS);
+    }
+
+    /**
+     * <p>Add <code>delta</code> to the current thread's counter of the given value.</p>
+     */
+    void add(HGPersistentHandle valueHandle, int delta)
+    {
+        HGIndex<byte[], byte[]> idx = getIndex(true);
+        byte [] key = key(valueHandle.toByteArray(), currentShard());
+        byte [] old = idx.findFirst(key);
+        int count = delta;
+        if (old != null)
+        {
+            count += BAUtils.readInt(old, 0);
+            idx.removeEntry(key, old);
+        }
+        if (count != 0)
+        {
+            byte [] B = new byte[4];
+            BAUtils.writeInt(count, B, 0);
+            idx.addEntry(key, B);
+        }
+    }
+
+    /**
+     * <p>Return the sum of all counters of the given value.</p>
+     */
+    int total(HGPersistentHandle valueHandle)
+    {
+        HGIndex<byte[], byte[]> idx = getIndex(false);
+        if (idx == null)
+            return 0;
+        byte [] handleBytes = valueHandle.toByteArray();
+        int total = 0;
+        for (int shard = 0; shard < SHARDS; shard++)
+        {
+            byte [] count = idx.findFirst(key(handleBytes, shard));
+            if (count != null)
+                total += BAUtils.readInt(count, 0);
+        }
+        return total;
+    }
+
+    /**
+     * <p>Drop all counters of the given value.</p>
+     */
+    void remove(HGPersistentHandle valueHandle)
+    {
+        HGIndex<byte[], byte[]> idx = getIndex(false);
+        if (idx == null)
+            return;
+        byte [] handleBytes = valueHandle.toByteArray();
+        for (int shard = 0; shard < SHARDS; shard++)
+            idx.removeAllEntries(key(handleBytes, shard));
+    }
+}
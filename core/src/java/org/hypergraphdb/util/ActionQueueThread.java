@@ -7,8 +7,14 @@
  */
 package org.hypergraphdb.util;
 
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>
@@ -19,6 +25,15 @@ import java.util.concurrent.Semaphore;
  * until some percentage of the accumulated actions has been completed.
  * </p>
  * 
+ * <p>
+ * Actions are drained from the queue in batches of at most <code>PAUSE_GRANULARITY_ACTIONS</code>.
+ * Within a batch, actions implementing {@link CoalescingAction} that have the same key
+ * (compared by identity) are executed only once, at the position of the last of them.
+ * Adding an action doesn't take any lock unless the queue is full, in which case the
+ * calling thread waits until the queue thread signals that enough space has been freed,
+ * or unless the queue thread is idle and must be woken up.
+ * </p>
+ *
  * @author Borislav Iordanov
  */
 public class ActionQueueThread extends Thread 
@@ -27,20 +42,51 @@ public class ActionQueueThread extends Thread
 	public static final int DEFAULT_FREE_PERCENT_ON_BLOCK = 50;
 	
 	/**
-	 * Thread can be paused every n actions.
+	 * Thread can be paused every n actions. This is also the maximum size of a batch.
 	 */
 	public static final int PAUSE_GRANULARITY_ACTIONS = 100;
 	
+	/**
+	 * <p>
+	 * An action that has the same effect when executed several times in a row as when
+	 * executed once, at the time of its last occurrence, such as moving an element to
+	 * the top of an LRU list. When several actions with the same key are in the same batch,
+	 * only the last one is executed.
+	 * </p>
+	 */
+	public static interface CoalescingAction extends Runnable
+	{
+		Object getCoalescingKey();
+	}
 	
 	private HGLogger logger = new HGLogger();
 	
 	/**
 	 * The current list of actions to execute.
 	 */
-	private LinkedList<Runnable> actionList = new LinkedList<Runnable>();
+	private Queue<Runnable> actionList = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * Actions to execute before the ones in <code>actionList</code>.
+	 */
+	private Queue<Runnable> priorityList = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * The number of actions in both lists.
+	 */
+	private AtomicInteger size = new AtomicInteger(0);
+
+	/**
+	 * Signaled by producers when the thread is idle and by the thread when space
+	 * has been freed in a full queue.
+	 */
+	private Object signal = new Object();
+	private volatile boolean idle = false;
+	private volatile int blockedProducers = 0;
+	private volatile int completionWaiters = 0;
 	
 	/**
-	 * The max size of the action queue before it block a calling thread.
+	 * The max size of the action queue: a calling thread adding to a full queue blocks.
 	 */
 	private int nonBlockingSize = DEFAULT_NON_BLOCKING_SIZE;
 	
@@ -56,13 +102,25 @@ public class ActionQueueThread extends Thread
 	 * A flag indicating whether the thread is currently running. Set by clients
 	 * to cause the main loop to exit.
 	 */
-	private boolean running = false;
+	private volatile boolean running = false;
 	
 	/**
-	 * The total number of actions executed by this thread, whether or not
-	 * the actions have terminated with an exception.
+	 * The total number of actions added, executed by this thread (whether or not
+	 * the actions have terminated with an exception), skipped because of coalescing
+	 * and removed with <code>clearAll</code>.
+	 */
+	private AtomicLong addedCount = new AtomicLong(0);
+	private volatile long completedCount = 0;
+	private volatile long coalescedCount = 0;
+	private AtomicLong clearedCount = new AtomicLong(0);
+	private volatile long batchCount = 0;
+
+	/**
+	 * The number of actions removed from the queue per second, averaged over time.
 	 */
-	private long completedCount = 0;
+	private volatile double drainRate = 0;
+	private long rateSampleTime = System.nanoTime();
+	private long rateSampleCount = 0;
 	
 	/**
 	 * The thread can be paused and resumed at the granularity of PAUSE_GRANULARITY_ACTIONS
@@ -114,56 +172,140 @@ public class ActionQueueThread extends Thread
 		this.freeFactor = 1.0 - completePercentUponBlocking / 100.0;
 	}
 	
+	private Runnable poll()
+	{
+		Runnable action = priorityList.poll();
+		if (action == null)
+			action = actionList.poll();
+		if (action != null)
+			size.decrementAndGet();
+		return action;
+	}
+
+	/**
+	 * Remove the next batch of actions from the queue, nulling out the coalesced ones.
+	 * Return the number of actions removed.
+	 */
+	private int drain(Runnable [] batch, Set<Object> keys)
+	{
+		int n = 0;
+		for (Runnable action; n < batch.length && (action = poll()) != null; )
+			batch[n++] = action;
+		keys.clear();
+		int coalesced = 0;
+		for (int i = n - 1; i >= 0; i--)
+			if (batch[i] instanceof CoalescingAction &&
+				!keys.add(((CoalescingAction)batch[i]).getCoalescingKey()))
+			{
+				batch[i] = null;
+				coalesced++;
+			}
+		coalescedCount += coalesced;
+		return n;
+	}
+
+	private void batchCompleted(int n)
+	{
+		batchCount++;
+		rateSampleCount += n;
+		long now = System.nanoTime();
+		if (now - rateSampleTime >= 1000000000L)
+		{
+			double rate = rateSampleCount * 1e9 / (now - rateSampleTime);
+			drainRate = drainRate == 0 ? rate : 0.7 * drainRate + 0.3 * rate;
+			rateSampleTime = now;
+			rateSampleCount = 0;
+		}
+		if (blockedProducers > 0 && size.get() <= nonBlockingSize * freeFactor ||
+			completionWaiters > 0)
+			synchronized (signal)
+			{
+				signal.notifyAll();
+			}
+	}
+
+	/**
+	 * <p>Start the queue thread. The queue counts as running from this point on, so
+	 * that producers adding actions right away are already subject to the size limit.</p>
+	 */
+	public synchronized void start()
+	{
+		running = true;
+		super.start();
+	}
+
 	public void run()
 	{
-		int pauseActionCounter = 0;
+		Runnable [] batch = new Runnable[PAUSE_GRANULARITY_ACTIONS];
+		Set<Object> keys = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
 		for (running = true; running; )
 		{			
-			Runnable action = null;
-			synchronized (actionList)
+			if (size.get() == 0)
 			{
-				while (actionList.isEmpty() && running)
-					try { actionList.wait(1000); }
+				synchronized (signal)
+				{
+					idle = true;
+					try
+					{
+						while (size.get() == 0 && running)
+							signal.wait(1000);
+					}
 					catch (InterruptedException ex) { running = false; }
-			    if (actionList.isEmpty())
-			    	break;
-				action = (Runnable)actionList.removeFirst();
+					idle = false;
+				}
+				if (size.get() == 0)
+					break;
 			}
-			
 			try
 			{	
-				if (pauseActionCounter == 0) {
-					// acquiring mutex is slow
-					pauseMutex.acquire();
-				}
-				action.run();
-				pauseActionCounter ++;
+				// acquiring mutex is slow, so it is held for a whole batch
+				pauseMutex.acquire();
 			}
 			catch (InterruptedException ex)
 			{
 				break;
 			}
-			catch (Throwable t)
+			int n = 0;
+			try
 			{
-				logger.exception(t);
+				n = drain(batch, keys);
+				for (int i = 0; i < n; i++)
+				{
+					if (batch[i] == null)
+						continue;
+					try
+					{
+						batch[i].run();
+					}
+					catch (Throwable t)
+					{
+						logger.exception(t);
+					}
+					finally
+					{
+						batch[i] = null;
+						completedCount++;
+					}
+				}
 			}
 			finally
 			{
-				completedCount++;
-				if (pauseActionCounter == PAUSE_GRANULARITY_ACTIONS) {
-					pauseMutex.release();
-					pauseActionCounter = 0;
-				}
+				pauseMutex.release();
+				batchCompleted(n);
 			}
 		}
 		
 		//
 		// Complete pending actions after thread stopped.
 		//
-		while (!actionList.isEmpty())
+		for (Runnable action = poll(); action != null; action = poll())
 		{
-			Runnable action = (Runnable)actionList.removeFirst();
 			action.run();
+			completedCount++;
+		}
+		synchronized (signal)
+		{
+			signal.notifyAll();
 		}
 	}
 		
@@ -189,38 +331,57 @@ public class ActionQueueThread extends Thread
 		pauseMutex.release(); 
 	}
 
+	private void added()
+	{
+		addedCount.incrementAndGet();
+		if (idle)
+			synchronized (signal)
+			{
+				signal.notifyAll();
+			}
+	}
+
 	public void addAction(Runnable action)
 	{
 		//
 		// Make sure we don't store too many elements in the update list.
-		// Block while update list is larger than the allowed maximum
-		// non-blocking size.
+		// Block while update list is at the allowed maximum
+		// non-blocking size. The queue thread itself never blocks because
+		// it would wait for itself.
 		//
-		if (actionList.size() > nonBlockingSize)
+		// The size is reserved with a CAS so that concurrent producers can't
+		// together overshoot the limit.
+		//
+		boolean mayBlock = Thread.currentThread() != this;
+		while (true)
 		{
-//			this.setPriority(Thread.NORM_PRIORITY + 2);
-			
-			while (actionList.size() > nonBlockingSize * freeFactor)
+			int current = size.get();
+			if (current >= nonBlockingSize && running && mayBlock)
 			{
-				try
-				{
-					//2012.02.06 hilpold decreaesed sleep after profiling Thread.sleep(50);
-					//2012.02.06 11:30 Thread.sleep(SLEEP_TIME);
-					//2012.02.06 12:00 Thread.yield();
-					Thread.sleep(0, 100);
-				}
-				catch (InterruptedException ex)
+				synchronized (signal)
 				{
-					break;
+					blockedProducers++;
+					try
+					{
+						while (size.get() > nonBlockingSize * freeFactor && running)
+							signal.wait(100);
+					}
+					catch (InterruptedException ex)
+					{
+						Thread.currentThread().interrupt();
+						mayBlock = false;
+					}
+					finally
+					{
+						blockedProducers--;
+					}
 				}
 			}
+			else if (size.compareAndSet(current, current + 1))
+				break;
 		}
-		synchronized (actionList)
-		{
-			actionList.addLast(action);
-			//2012.02.06 actionList.notify();
-			actionList.notifyAll();
-		}
+		actionList.add(action);
+		added();
 	}
 	
 	/**
@@ -231,11 +392,14 @@ public class ActionQueueThread extends Thread
 	 */
 	public void prependAction(Runnable action)
 	{
-		synchronized (actionList)
-		{
-			actionList.addFirst(action);
-			actionList.notify();
-		}
+		size.incrementAndGet();
+		priorityList.add(action);
+		added();
+	}
+
+	private long processedCount()
+	{
+		return completedCount + coalescedCount + clearedCount.get();
 	}
 	
 	/**
@@ -247,17 +411,28 @@ public class ActionQueueThread extends Thread
 	 */
 	public void completeAll()
 	{
-		long currentCompleted = completedCount;		
-		// ActionList.size() may be 0, but we may still an action currently running so we
-		// wait for at least one action to complete.
-		int size = Math.max(1, actionList.size()); 
-		while (completedCount - currentCompleted < size)
+		// Actions are counted as added before they are visible in the queue, so
+		// this is at least the number of actions queued so far.
+		long target = addedCount.get();
+		if (Thread.currentThread() == this)
+			return;
+		synchronized (signal)
 		{
-			// if the thread is waiting or it's terminated, we have no business staying in here...
-			if (getState() != Thread.State.BLOCKED && getState() != Thread.State.RUNNABLE)
-				break;			
-			try { Thread.sleep(50); } 
-			catch (InterruptedException ex) { break; }
+			completionWaiters++;
+			try
+			{
+				// if the thread is terminated, we have no business staying in here...
+				while (processedCount() < target && isAlive())
+					signal.wait(50);
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				completionWaiters--;
+			}
 		}
 	}
 
@@ -267,9 +442,11 @@ public class ActionQueueThread extends Thread
 	 */
 	public void clearAll()
 	{
-		synchronized (actionList)
+		for (Runnable action = poll(); action != null; action = poll())
+			clearedCount.incrementAndGet();
+		synchronized (signal)
 		{
-			actionList.clear();
+			signal.notifyAll();
 		}
 	}
 	
@@ -281,6 +458,41 @@ public class ActionQueueThread extends Thread
 	{
 		return this.completedCount;
 	}
+
+	/**
+	 * <p>Return the total number of actions that were not executed because a later
+	 * {@link CoalescingAction} with the same key was in the same batch.</p>
+	 */
+	public long getCoalescedCount()
+	{
+		return this.coalescedCount;
+	}
+
+	/**
+	 * <p>Return the number of batches of actions processed so far.</p>
+	 */
+	public long getBatchCount()
+	{
+		return this.batchCount;
+	}
+
+	/**
+	 * <p>Return the number of actions currently waiting in the queue.</p>
+	 */
+	public int getQueueDepth()
+	{
+		return size.get();
+	}
+
+	/**
+	 * <p>Return the number of actions removed from the queue (executed or coalesced) per
+	 * second, as a moving average updated about once a second while the queue is busy.</p>
+	 */
+	public double getDrainRate()
+	{
+		return drainRate;
+	}
+
 	public boolean isRunning()
 	{
 		return running;
@@ -289,9 +501,9 @@ public class ActionQueueThread extends Thread
 	public void stopRunning()
 	{
 		running = false;
-		synchronized (actionList)
+		synchronized (signal)
 		{
-			actionList.notify();
+			signal.notifyAll();
 		}
 	}
 }
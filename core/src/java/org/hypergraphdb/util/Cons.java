@@ -10,6 +10,14 @@ public class Cons<E> extends Pair<E, Cons<E>> implements Iterable<E>
     @SuppressWarnings("rawtypes")
 	public static final Cons EMPTY = new Cons(null);
 
+    /**
+     * Return {@link #EMPTY} typed as a list of <code>E</code>.
+     */
+    public static <E> Cons<E> empty()
+    {
+        return (Cons<E>)EMPTY;
+    }
+
     public Cons(E e)
     {
         this(e, EMPTY);
@@ -0,0 +1,465 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2010 Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.util;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGRandomAccessResult;
+import org.hypergraphdb.handle.UUIDPersistentHandle;
+
+/**
+ * <p>
+ * A sorted set of UUID based handles stored as pairs of <code>long</code>s in a single
+ * primitive array. Compared to an {@link ArrayBasedSet} of <code>UUIDPersistentHandle</code>s,
+ * where each element is a handle object pointing to a UUID object pointing to a byte array,
+ * this takes 16 bytes per element instead of a handle object each. The price is that handles
+ * are created when elements are read. This makes it a good fit for the many small sets that are kept in
+ * memory for a long time and are read more often than modified, like cached incidence sets.
+ * </p>
+ *
+ * <p>
+ * The two <code>long</code>s of an element are the big-endian reading of the 16 bytes of
+ * the UUID, as returned by <code>UUIDPersistentHandle.getMostSignificantBits</code> and
+ * <code>getLeastSignificantBits</code>, so comparing them unsigned gives the same order as
+ * comparing handles. Only
+ * <code>UUIDPersistentHandle</code>s and live handles to them can be added to the set.
+ * Like <code>ArrayBasedSet</code>, the set is guarded by a read-write lock that can be
+ * replaced.
+ * </p>
+ */
+public class PackedUUIDHandleSet implements HGSortedSet<HGHandle>, CloneMe
+{
+	private long [] words;
+	private int size = 0;
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * <p>Return <code>true</code> if the given handle can be an element of this
+	 * kind of set.</p>
+	 */
+	public static boolean canPack(HGHandle h)
+	{
+		return h != null && h.getPersistent() instanceof UUIDPersistentHandle;
+	}
+
+	private static UUIDPersistentHandle uuidOf(Object o)
+	{
+		if (!(o instanceof HGHandle))
+			return null;
+		HGPersistentHandle h = ((HGHandle)o).getPersistent();
+		return h instanceof UUIDPersistentHandle ? (UUIDPersistentHandle)h : null;
+	}
+
+	private HGHandle handleAt(int i)
+	{
+		return UUIDPersistentHandle.makeHandle(words[2 * i], words[2 * i + 1]);
+	}
+
+	private int lookup(UUIDPersistentHandle h)
+	{
+		return lookup(h.getMostSignificantBits(), h.getLeastSignificantBits());
+	}
+
+	private int lookup(long hi, long lo)
+	{
+		int low = 0;
+		int high = size - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			int cmp = Long.compareUnsigned(words[2 * mid], hi);
+			if (cmp == 0)
+				cmp = Long.compareUnsigned(words[2 * mid + 1], lo);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	public PackedUUIDHandleSet()
+	{
+		this(4);
+	}
+
+	/**
+	 * <p>Initialize an empty set with room for the given number of elements.</p>
+	 */
+	public PackedUUIDHandleSet(int capacity)
+	{
+		words = new long[2 * Math.max(1, capacity)];
+	}
+
+	public ReadWriteLock getLock()
+	{
+		return lock;
+	}
+
+	public void setLock(ReadWriteLock lock)
+	{
+		if (lock == null)
+			throw new NullPointerException("PackedUUIDHandleSet.lock can't be null.");
+		this.lock = lock;
+	}
+
+	public Comparator<? super HGHandle> comparator()
+	{
+		return null;
+	}
+
+	public HGHandle first()
+	{
+		lock.readLock().lock();
+		try
+		{
+			if (size == 0)
+				throw new NoSuchElementException();
+			return handleAt(0);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	public HGHandle last()
+	{
+		lock.readLock().lock();
+		try
+		{
+			if (size == 0)
+				throw new NoSuchElementException();
+			return handleAt(size - 1);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	public SortedSet<HGHandle> headSet(HGHandle toElement)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	public SortedSet<HGHandle> subSet(HGHandle fromElement, HGHandle toElement)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	public SortedSet<HGHandle> tailSet(HGHandle fromElement)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	public boolean add(HGHandle o)
+	{
+		UUIDPersistentHandle h = uuidOf(o);
+		if (h == null)
+			throw new IllegalArgumentException("Only UUID handles can be added to a PackedUUIDHandleSet: " + o);
+		long hi = h.getMostSignificantBits(), lo = h.getLeastSignificantBits();
+		lock.writeLock().lock();
+		try
+		{
+			int idx = lookup(hi, lo);
+			if (idx >= 0)
+				return false;
+			idx = -(idx + 1);
+			if (2 * size == words.length)
+			{
+				long [] tmp = new long[2 * ((int)(1.5 * size) + 1)];
+				System.arraycopy(words, 0, tmp, 0, 2 * idx);
+				System.arraycopy(words, 2 * idx, tmp, 2 * idx + 2, 2 * (size - idx));
+				words = tmp;
+			}
+			else
+				System.arraycopy(words, 2 * idx, words, 2 * idx + 2, 2 * (size - idx));
+			words[2 * idx] = hi;
+			words[2 * idx + 1] = lo;
+			size++;
+			return true;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean addAll(Collection<? extends HGHandle> c)
+	{
+		boolean modified = false;
+		for (HGHandle x : c)
+			if (add(x))
+				modified = true;
+		return modified;
+	}
+
+	public void clear()
+	{
+		lock.writeLock().lock();
+		size = 0;
+		lock.writeLock().unlock();
+	}
+
+	public boolean contains(Object o)
+	{
+		UUIDPersistentHandle h = uuidOf(o);
+		if (h == null)
+			return false;
+		lock.readLock().lock();
+		try { return lookup(h) >= 0; }
+		finally { lock.readLock().unlock(); }
+	}
+
+	public boolean containsAll(Collection<?> c)
+	{
+		for (Object x : c)
+			if (!contains(x))
+				return false;
+		return true;
+	}
+
+	public boolean isEmpty()
+	{
+		lock.readLock().lock();
+		try { return size == 0; }
+		finally { lock.readLock().unlock(); }
+	}
+
+	public Iterator<HGHandle> iterator()
+	{
+		return new ResultSet(false);
+	}
+
+	public HGRandomAccessResult<HGHandle> getSearchResult()
+	{
+		return new ResultSet(true);
+	}
+
+	private void removeAt(int idx)
+	{
+		System.arraycopy(words, 2 * idx + 2, words, 2 * idx, 2 * (size - idx - 1));
+		size--;
+	}
+
+	public boolean remove(Object o)
+	{
+		UUIDPersistentHandle h = uuidOf(o);
+		if (h == null)
+			return false;
+		lock.writeLock().lock();
+		try
+		{
+			int idx = lookup(h);
+			if (idx < 0)
+				return false;
+			removeAt(idx);
+			return true;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean removeAll(Collection<?> c)
+	{
+		boolean modified = false;
+		for (Object x : c)
+			if (remove(x))
+				modified = true;
+		return modified;
+	}
+
+	public boolean retainAll(Collection<?> c)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			boolean modified = false;
+			for (int i = size - 1; i >= 0; i--)
+				if (!c.contains(handleAt(i)))
+				{
+					removeAt(i);
+					modified = true;
+				}
+			return modified;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size()
+	{
+		lock.readLock().lock();
+		try { return size; }
+		finally { lock.readLock().unlock(); }
+	}
+
+	public Object[] toArray()
+	{
+		return toArray(new HGHandle[0]);
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T[] toArray(T[] a)
+	{
+		lock.readLock().lock();
+		try
+		{
+			if (a.length < size)
+				a = (T[])java.lang.reflect.Array.newInstance(a.getClass().getComponentType(), size);
+			for (int i = 0; i < size; i++)
+				a[i] = (T)handleAt(i);
+			if (a.length > size)
+				a[size] = null;
+			return a;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	// CloneMe callers take the copy as the type of the set they duplicate.
+	@SuppressWarnings("unchecked")
+	public <T> T duplicate()
+	{
+		lock.readLock().lock();
+		try
+		{
+			PackedUUIDHandleSet S = (PackedUUIDHandleSet)super.clone();
+			S.words = new long[Math.max(2, 2 * size)];
+			System.arraycopy(words, 0, S.words, 0, 2 * size);
+			return (T)S;
+		}
+		catch (CloneNotSupportedException e)
+		{
+			// this shouldn't happen, since we are Cloneable
+			throw new InternalError();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	class ResultSet implements HGRandomAccessResult<HGHandle>
+	{
+		int pos = -1;
+		HGHandle current = null;
+		boolean locked;
+
+		ResultSet(boolean locked)
+		{
+			this.locked = locked;
+			if (locked)
+				lock.readLock().lock();
+		}
+
+		private HGHandle moveTo(int idx)
+		{
+			pos = idx;
+			return current = handleAt(idx);
+		}
+
+		public GotoResult goTo(HGHandle value, boolean exactMatch)
+		{
+			UUIDPersistentHandle h = uuidOf(value);
+			if (h == null)
+				return GotoResult.nothing;
+			int idx = lookup(h);
+			if (idx >= 0)
+			{
+				moveTo(idx);
+				return GotoResult.found;
+			}
+			else if (exactMatch)
+				return GotoResult.nothing;
+			else
+			{
+				idx = -(idx + 1);
+				if (idx >= size)
+					return GotoResult.nothing;
+				moveTo(idx);
+				return GotoResult.close;
+			}
+		}
+
+		public void goBeforeFirst()
+		{
+			pos = -1;
+			current = null;
+		}
+
+		public void goAfterLast()
+		{
+			pos = size;
+			current = null;
+		}
+
+		public boolean hasPrev()
+		{
+			return pos > 0;
+		}
+
+		public HGHandle prev()
+		{
+			return moveTo(pos - 1);
+		}
+
+		public boolean hasNext()
+		{
+			return pos + 1 < size;
+		}
+
+		public HGHandle next()
+		{
+			return moveTo(pos + 1);
+		}
+
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public void close()
+		{
+			if (locked)
+			{
+				lock.readLock().unlock();
+				locked = false;
+			}
+		}
+
+		public HGHandle current()
+		{
+			if (pos < 0 || pos >= size)
+				throw new NoSuchElementException();
+			return current;
+		}
+
+		public boolean isOrdered()
+		{
+			return true;
+		}
+	}
+}
@@ -14,6 +14,7 @@ import org.hypergraphdb.HGPersistentHandle;
 import org.hypergraphdb.HGRandomAccessResult;
 import org.hypergraphdb.HGSearchResult;
 import org.hypergraphdb.HGStore;
+import org.hypergraphdb.storage.BAUtils;
 import org.hypergraphdb.storage.BAtoHandle;
 import org.hypergraphdb.storage.ByteArrayConverter;
 import org.hypergraphdb.storage.HGStoreImplementation;
@@ -25,6 +26,7 @@ import org.hypergraphdb.transaction.HGTransactionFactory;
 import org.hypergraphdb.transaction.TransactionConflictException;
 import org.hypergraphdb.transaction.VanillaTransaction;
 import org.hypergraphdb.util.HGClassLoaderDelegate;
+import org.hypergraphdb.util.HGUtils;
 
 import com.sleepycat.je.CheckpointConfig;
 import com.sleepycat.je.Cursor;
@@ -405,6 +407,116 @@ public class BJEStorageImplementation implements HGStoreImplementation
 		}
 	}
 
+	/**
+	 * Look up all handles with a single cursor, in key order, so that consecutive
+	 * searches mostly hit B-tree nodes that are already latched and cached.
+	 */
+	public byte[][] getDataMulti(HGPersistentHandle[] handles)
+	{
+		ensureOpen();
+		byte[][] result = new byte[handles.length][];
+		Cursor cursor = null;
+		try
+		{
+			cursor = primitive_db.openCursor(txn().getBJETransaction(), cursorConfig);
+			DatabaseEntry value = new DatabaseEntry();
+			for (int i : sortedOrder(handles))
+				if (cursor.getSearchKey(new DatabaseEntry(handles[i].toByteArray()), value, LockMode.DEFAULT) == OperationStatus.SUCCESS)
+					result[i] = value.getData();
+			return result;
+		}
+		catch (Exception ex)
+		{
+			throw new HGException("Failed to retrieve data: " + ex.toString(), ex);
+		}
+		finally
+		{
+			closeNoException(cursor);
+		}
+	}
+
+	public HGPersistentHandle[][] getLinks(HGPersistentHandle[] handles)
+	{
+		ensureOpen();
+		HGPersistentHandle[][] result = new HGPersistentHandle[handles.length][];
+		Cursor cursor = null;
+		try
+		{
+			cursor = data_db.openCursor(txn().getBJETransaction(), cursorConfig);
+			DatabaseEntry value = new DatabaseEntry();
+			for (int i : sortedOrder(handles))
+				if (cursor.getSearchKey(new DatabaseEntry(handles[i].toByteArray()), value, LockMode.DEFAULT) == OperationStatus.SUCCESS)
+					result[i] = linkBinding.entryToObject(value);
+			return result;
+		}
+		catch (Exception ex)
+		{
+			throw new HGException("Failed to retrieve links: " + ex.toString(), ex);
+		}
+		finally
+		{
+			closeNoException(cursor);
+		}
+	}
+
+	public HGPersistentHandle[][] getIncidenceSets(HGPersistentHandle[] handles)
+	{
+		ensureOpen();
+		HGPersistentHandle[][] result = new HGPersistentHandle[handles.length][];
+		ByteArrayConverter<HGPersistentHandle> converter = BAtoHandle.getInstance(handleFactory);
+		Cursor cursor = null;
+		try
+		{
+			cursor = incidence_db.openCursor(txn().getBJETransaction(), cursorConfig);
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry value = new DatabaseEntry();
+			for (int i : sortedOrder(handles))
+			{
+				key.setData(handles[i].toByteArray());
+				if (cursor.getSearchKey(key, value, LockMode.DEFAULT) != OperationStatus.SUCCESS)
+				{
+					result[i] = HGUtils.EMPTY_HANDLE_ARRAY;
+					continue;
+				}
+				HGPersistentHandle[] members = new HGPersistentHandle[cursor.count()];
+				int n = 0;
+				do
+					members[n++] = converter.fromByteArray(value.getData(), value.getOffset(), value.getSize());
+				while (n < members.length && cursor.getNextDup(key, value, LockMode.DEFAULT) == OperationStatus.SUCCESS);
+				result[i] = members;
+			}
+			return result;
+		}
+		catch (Exception ex)
+		{
+			throw new HGException("Failed to retrieve incidence sets: " + ex.toString(), ex);
+		}
+		finally
+		{
+			closeNoException(cursor);
+		}
+	}
+
+	private int[] sortedOrder(HGPersistentHandle[] handles)
+	{
+		byte[][] keys = new byte[handles.length][];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = handles[i].toByteArray();
+		return BAUtils.sortedOrder(keys);
+	}
+
+	private static void closeNoException(Cursor cursor)
+	{
+		if (cursor != null)
+			try
+			{
+				cursor.close();
+			}
+			catch (Throwable t)
+			{
+			}
+	}
+
 	@SuppressWarnings("unchecked")
 	public HGRandomAccessResult<HGPersistentHandle> getIncidenceResultSet(HGPersistentHandle handle)
 	{
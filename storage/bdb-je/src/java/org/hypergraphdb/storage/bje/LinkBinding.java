@@ -65,7 +65,7 @@ public class LinkBinding extends TupleBinding<HGPersistentHandle[]> {
 		byte[] buffer = new byte[link.length * handleSize];
 		for (int i = 0; i < link.length; i++) {
 			HGPersistentHandle handle = (HGPersistentHandle)link[i];
-			System.arraycopy(handle.toByteArray(), 0, buffer, i * handleSize, handleSize);
+			handle.toByteArray(buffer, i * handleSize);
 		}
 		output.writeFast(buffer);
 	}
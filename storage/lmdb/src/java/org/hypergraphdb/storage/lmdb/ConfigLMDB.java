@@ -19,11 +19,27 @@ public class ConfigLMDB
 //	private EnvConfig envConfig;
 //	private DatabaseConfig dbConfig;
 
+	private long mapSize;
+	private long maxMapSize;
+	private int maxReaders;
+	private int maxDbs;
+	private boolean noSync;
+	private boolean noMetaSync;
+	private boolean mapAsync;
+	private boolean writeMap;
+	private boolean noReadAhead;
 	private int syncFrequency = 0;
 	private boolean syncForce = false;
 
 	/**
-	 * The static default properties of LMDB.
+	 * The static default properties of LMDB. They must agree with the shipped
+	 * <code>lmdb-config.properties</code>.
+	 * <p>
+	 * Commits are not flushed to disk (<code>MDB_NOSYNC</code>), as LMDB environments have
+	 * always been opened by HyperGraphDB, but a background thread forces a flush every 100ms.
+	 * A system crash can thus lose the last 100ms of commits, but not corrupt the database.
+	 * Set <code>no.sync</code> to false for fully durable commits.
+	 * </p>
 	 */
 	@SuppressWarnings("nls")
 	static Properties getDefaultLmdbProperties()
@@ -31,14 +47,17 @@ public class ConfigLMDB
 		Properties properties = new Properties();
 		properties.setProperty("map.size",
 				new Long(2000L * 1024 * 1024).toString()); // 2GB default
+		properties.setProperty("map.size.max", new Long(0).toString()); // no limit
 		properties.setProperty("max.readers", new Integer(-1).toString());
-		properties.setProperty("max.dbs", new Long(30).toString());
-		properties.setProperty("no.sync", new Boolean(false).toString());
+		// every index is a separate LMDB database
+		properties.setProperty("max.dbs", new Long(10000).toString());
+		properties.setProperty("no.sync", new Boolean(true).toString());
 		properties.setProperty("no.meta.sync", new Boolean(false).toString());
 		properties.setProperty("map.async", new Boolean(false).toString());
 		properties.setProperty("write.map", new Boolean(false).toString());
-		properties.setProperty("sync.frequency", new Integer(0).toString());
-		properties.setProperty("sync.force", new Boolean(false).toString());
+		properties.setProperty("no.read.ahead", new Boolean(false).toString());
+		properties.setProperty("sync.frequency", new Integer(100).toString());
+		properties.setProperty("sync.force", new Boolean(true).toString());
 
 		return properties;
 	}
@@ -57,10 +76,41 @@ public class ConfigLMDB
 //		envConfig.setWriteMap(Boolean.parseBoolean(lmdbProps.getProperty("write.map")));
 //		dbConfig.setCreate(true);
 
+		mapSize = Long.parseLong(lmdbProps.getProperty("map.size"));
+		maxMapSize = Long.parseLong(lmdbProps.getProperty("map.size.max"));
+		maxReaders = Integer.parseInt(lmdbProps.getProperty("max.readers"));
+		maxDbs = Integer.parseInt(lmdbProps.getProperty("max.dbs"));
+		noSync = Boolean.parseBoolean(lmdbProps.getProperty("no.sync"));
+		noMetaSync = Boolean.parseBoolean(lmdbProps.getProperty("no.meta.sync"));
+		mapAsync = Boolean.parseBoolean(lmdbProps.getProperty("map.async"));
+		writeMap = Boolean.parseBoolean(lmdbProps.getProperty("write.map"));
+		noReadAhead = Boolean.parseBoolean(lmdbProps.getProperty("no.read.ahead"));
 		syncFrequency = Integer.parseInt(lmdbProps.getProperty("sync.frequency"));
 		syncForce = Boolean.parseBoolean(lmdbProps.getProperty("sync.force"));
 	}
 
+	/**
+	 * Evaluate a product of integers such as <code>10 * 1024 * 1024</code>. This is
+	 * used for the size properties when no JavaScript engine is available. Return
+	 * <code>null</code> if the value is not such a product.
+	 */
+	static String evalProduct(String value)
+	{
+		long result = 1;
+		for (String factor : value.split("\\*"))
+		{
+			try
+			{
+				result *= Long.parseLong(factor.trim());
+			}
+			catch (NumberFormatException ex)
+			{
+				return null;
+			}
+		}
+		return Long.toString(result);
+	}
+
 	public ConfigLMDB()
 	{
 		lmdbProps = new Properties(getDefaultLmdbProperties())
@@ -74,6 +124,11 @@ public class ConfigLMDB
 				String val = (String) value;
 				Object newVal = val;
 
+				if (engine == null)
+				{
+					String product = evalProduct(val);
+					return super.put(key, product == null ? val : product);
+				}
 				try
 				{
 					newVal = engine.eval(val);
@@ -142,6 +197,146 @@ public class ConfigLMDB
 //		return dbConfig;
 //	}
 
+	/**
+	 * The initial size of the memory map, in bytes. It is also the minimum amount by which
+	 * the map grows when it becomes full.
+	 */
+	public long getMapSize()
+	{
+		return mapSize;
+	}
+
+	public void setMapSize(long mapSize)
+	{
+		this.mapSize = mapSize;
+	}
+
+	/**
+	 * The size, in bytes, beyond which the memory map will not be automatically
+	 * grown. 0 means no limit.
+	 */
+	public long getMaxMapSize()
+	{
+		return maxMapSize;
+	}
+
+	public void setMaxMapSize(long maxMapSize)
+	{
+		this.maxMapSize = maxMapSize;
+	}
+
+	/**
+	 * The size the memory map should grow to when it is full, or -1 if it cannot
+	 * grow anymore. The map size is doubled, by at least {@link #getMapSize()}
+	 * bytes, and up to {@link #getMaxMapSize()}.
+	 */
+	public long nextMapSize(long currentSize)
+	{
+		long next = currentSize + Math.max(currentSize, mapSize);
+		if (maxMapSize > 0)
+		{
+			if (currentSize >= maxMapSize)
+				return -1;
+			next = Math.min(next, maxMapSize);
+		}
+		return next;
+	}
+
+	/**
+	 * The maximum number of concurrent read transactions, -1 to use the LMDB default.
+	 */
+	public int getMaxReaders()
+	{
+		return maxReaders;
+	}
+
+	public void setMaxReaders(int maxReaders)
+	{
+		this.maxReaders = maxReaders;
+	}
+
+	public int getMaxDbs()
+	{
+		return maxDbs;
+	}
+
+	public void setMaxDbs(int maxDbs)
+	{
+		this.maxDbs = maxDbs;
+	}
+
+	/**
+	 * Whether to open the environment with <code>MDB_NOSYNC</code>, i.e. not flush to disk
+	 * on commit. Combine with a {@link #getSyncFrequency()} to bound the amount of
+	 * committed data that can be lost on a system crash.
+	 */
+	public boolean isNoSync()
+	{
+		return noSync;
+	}
+
+	public void setNoSync(boolean noSync)
+	{
+		this.noSync = noSync;
+	}
+
+	/**
+	 * Whether to open the environment with <code>MDB_NOMETASYNC</code>.
+	 */
+	public boolean isNoMetaSync()
+	{
+		return noMetaSync;
+	}
+
+	public void setNoMetaSync(boolean noMetaSync)
+	{
+		this.noMetaSync = noMetaSync;
+	}
+
+	/**
+	 * Whether to open the environment with <code>MDB_MAPASYNC</code>. Only relevant with
+	 * {@link #isWriteMap()}.
+	 */
+	public boolean isMapAsync()
+	{
+		return mapAsync;
+	}
+
+	public void setMapAsync(boolean mapAsync)
+	{
+		this.mapAsync = mapAsync;
+	}
+
+	/**
+	 * Whether to open the environment with <code>MDB_WRITEMAP</code>.
+	 */
+	public boolean isWriteMap()
+	{
+		return writeMap;
+	}
+
+	public void setWriteMap(boolean writeMap)
+	{
+		this.writeMap = writeMap;
+	}
+
+	/**
+	 * Whether to open the environment with <code>MDB_NORDAHEAD</code>.
+	 */
+	public boolean isNoReadAhead()
+	{
+		return noReadAhead;
+	}
+
+	public void setNoReadAhead(boolean noReadAhead)
+	{
+		this.noReadAhead = noReadAhead;
+	}
+
+	/**
+	 * The number of milliseconds between two flushes of the environment to disk by a
+	 * background thread, 0 for no periodic flushes.
+	 */
 	public int getSyncFrequency()
 	{
 		return syncFrequency;
@@ -152,6 +347,10 @@ public class ConfigLMDB
 		this.syncFrequency = syncFrequency;
 	}
 
+	/**
+	 * Whether periodic flushes are forced. This is necessary for them to do anything
+	 * when the environment is opened with {@link #isNoSync()}.
+	 */
 	public boolean isSyncForce()
 	{
 		return syncForce;
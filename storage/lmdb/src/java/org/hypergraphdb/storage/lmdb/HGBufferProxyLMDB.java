@@ -21,4 +21,17 @@ public interface HGBufferProxyLMDB<BufferType>
 	HGPersistentHandle [] toHandleArray(BufferType buffer);	
 	BufferType fromBytes(byte [] bytes);
 	byte [] toBytes(BufferType buffer);	
+	
+	/**
+	 * Called when an LMDB transaction starts on the current thread. Buffers obtained
+	 * from the proxy while a transaction is in effect need only remain valid until 
+	 * the (outermost) transaction finishes.
+	 */
+	default void transactionStarted() { }
+	
+	/**
+	 * Called when an LMDB transaction started on the current thread is committed
+	 * or aborted.
+	 */
+	default void transactionFinished() { }
 }
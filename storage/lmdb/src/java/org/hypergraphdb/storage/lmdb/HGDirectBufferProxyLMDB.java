@@ -0,0 +1,210 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) Kobrix Software, Inc.  All rights reserved.
+ */
+package org.hypergraphdb.storage.lmdb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hypergraphdb.HGHandleFactory;
+import org.hypergraphdb.HGPersistentHandle;
+
+/**
+ * <p>
+ * A buffer proxy for use with LMDB's direct <code>ByteBuffer</code> proxy
+ * (<code>ByteBufferProxy.PROXY_OPTIMAL</code>), where the buffers LMDB returns point
+ * straight into the memory mapped database.
+ * </p>
+ *
+ * <p>
+ * This proxy is not zero-copy: every read is copied out of the mapped buffer. Handles
+ * and handle arrays are decoded through a per thread scratch array, which saves an
+ * allocation per read but not the copy, and data is copied into a new
+ * <code>byte[]</code> by {@link #toBytes(ByteBuffer)} because the caller keeps it.
+ * </p>
+ *
+ * <p>
+ * The buffers passed to LMDB (keys, data to write) are carved out of direct memory slabs
+ * owned by the thread's current transaction. They remain valid until the transaction
+ * ends, at which point the slabs are recycled for later transactions. Outside of a
+ * transaction, each buffer is allocated separately.
+ * </p>
+ */
+public class HGDirectBufferProxyLMDB implements HGBufferProxyLMDB<ByteBuffer>
+{
+	/**
+	 * The size of the direct memory slabs. Bigger buffers are allocated separately.
+	 */
+	public static final int SLAB_SIZE = 64 * 1024;
+	/**
+	 * The maximum number of slabs kept for reuse once their transactions are over.
+	 */
+	public static final int MAX_POOLED_SLABS = 256;
+
+	/**
+	 * The direct memory used by the transactions of one thread.
+	 */
+	static final class Arena
+	{
+		int depth = 0;
+		ByteBuffer current = null;
+		ArrayList<ByteBuffer> used = new ArrayList<ByteBuffer>();
+		byte [] scratch = new byte[256];
+
+		byte [] scratch(int size)
+		{
+			if (scratch.length < size)
+				scratch = new byte[Math.max(size, scratch.length * 2)];
+			return scratch;
+		}
+	}
+
+	private final HGHandleFactory factory;
+	private final int handleSize;
+	private final ConcurrentLinkedQueue<ByteBuffer> freeSlabs = new ConcurrentLinkedQueue<ByteBuffer>();
+	// ConcurrentLinkedQueue.size() is a traversal, so the pool size is tracked separately
+	private final AtomicInteger freeSlabCount = new AtomicInteger(0);
+	private final ThreadLocal<Arena> arena = ThreadLocal.withInitial(Arena::new);
+
+	public HGDirectBufferProxyLMDB(HGHandleFactory factory)
+	{
+		this.factory = factory;
+		this.handleSize = factory.nullHandle().toByteArray().length;
+	}
+
+	/**
+	 * Return a direct buffer of the given size, positioned at 0, with a limit
+	 * and capacity equal to the size.
+	 */
+	ByteBuffer allocate(int size)
+	{
+		Arena a = arena.get();
+		if (a.depth == 0 || size > SLAB_SIZE)
+		{
+			// Nothing to tie the buffer's lifetime to, or too big to be pooled
+			return ByteBuffer.allocateDirect(size);
+		}
+		if (a.current == null || a.current.remaining() < size)
+		{
+			ByteBuffer slab = freeSlabs.poll();
+			if (slab == null)
+				slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+			else
+				freeSlabCount.decrementAndGet();
+			a.used.add(slab);
+			a.current = slab.duplicate();
+		}
+		int start = a.current.position();
+		a.current.limit(start + size);
+		ByteBuffer result = a.current.slice();
+		a.current.limit(a.current.capacity());
+		a.current.position(start + size);
+		return result;
+	}
+
+	/**
+	 * The number of slabs currently available for reuse.
+	 */
+	public int pooledSlabs()
+	{
+		return freeSlabCount.get();
+	}
+
+	@Override
+	public void transactionStarted()
+	{
+		arena.get().depth++;
+	}
+
+	@Override
+	public void transactionFinished()
+	{
+		Arena a = arena.get();
+		if (--a.depth > 0)
+			return;
+		a.depth = 0;
+		for (ByteBuffer slab : a.used)
+		{
+			if (freeSlabCount.incrementAndGet() <= MAX_POOLED_SLABS)
+			{
+				slab.clear();
+				freeSlabs.add(slab);
+			}
+			else
+			{
+				freeSlabCount.decrementAndGet();
+				break;
+			}
+		}
+		a.used.clear();
+		a.current = null;
+	}
+
+	@Override
+	public ByteBuffer fromHandle(HGPersistentHandle handle)
+	{
+		ByteBuffer result = allocate(handleSize);
+		result.put(handle.toByteArray());
+		result.flip();
+		return result;
+	}
+
+	@Override
+	public HGPersistentHandle toHandle(ByteBuffer buffer)
+	{
+		if (buffer == null)
+			return null;
+		byte [] scratch = arena.get().scratch(handleSize);
+		buffer.duplicate().get(scratch, 0, handleSize);
+		return factory.makeHandle(scratch, 0);
+	}
+
+	@Override
+	public ByteBuffer fromHandleArray(HGPersistentHandle[] handles)
+	{
+		ByteBuffer result = allocate(handles.length * handleSize);
+		for (HGPersistentHandle h : handles)
+			result.put(h.toByteArray());
+		result.flip();
+		return result;
+	}
+
+	@Override
+	public HGPersistentHandle[] toHandleArray(ByteBuffer buffer)
+	{
+		if (buffer == null)
+			return null;
+		int size = buffer.remaining();
+		byte [] scratch = arena.get().scratch(size);
+		buffer.duplicate().get(scratch, 0, size);
+		HGPersistentHandle [] handles = new HGPersistentHandle[size / handleSize];
+		for (int i = 0; i < handles.length; i++)
+			handles[i] = factory.makeHandle(scratch, i*handleSize);
+		return handles;
+	}
+
+	@Override
+	public ByteBuffer fromBytes(byte[] bytes)
+	{
+		ByteBuffer result = allocate(bytes.length);
+		result.put(bytes);
+		result.flip();
+		return result;
+	}
+
+	@Override
+	public byte[] toBytes(ByteBuffer buffer)
+	{
+		if (buffer == null)
+			return null;
+		byte [] result = new byte[buffer.remaining()];
+		buffer.duplicate().get(result);
+		return result;
+	}
+}
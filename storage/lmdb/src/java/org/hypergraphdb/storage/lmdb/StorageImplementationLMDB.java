@@ -8,8 +8,10 @@
 package org.hypergraphdb.storage.lmdb;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Random;
@@ -25,6 +27,7 @@ import org.hypergraphdb.HGRandomAccessResult;
 import org.hypergraphdb.HGSearchResult;
 import org.hypergraphdb.HGStore;
 import org.hypergraphdb.storage.BAtoBA;
+import org.hypergraphdb.storage.BAUtils;
 import org.hypergraphdb.storage.BAtoHandle;
 import org.hypergraphdb.storage.ByteArrayConverter;
 import org.hypergraphdb.storage.HGStoreImplementation;
@@ -38,13 +41,16 @@ import org.hypergraphdb.transaction.VanillaTransaction;
 import org.hypergraphdb.util.HGUtils;
 import org.lmdbjava.BufferProxy;
 import org.lmdbjava.ByteArrayProxy;
+import org.lmdbjava.ByteBufferProxy;
 import org.lmdbjava.Cursor;
 import org.lmdbjava.Dbi;
+import org.lmdbjava.Env.MapFullException;
 import org.lmdbjava.DbiFlags;
 import org.lmdbjava.Env;
 import org.lmdbjava.EnvFlags;
 import org.lmdbjava.GetOp;
 import org.lmdbjava.LmdbException;
+import org.lmdbjava.SeekOp;
 import org.lmdbjava.Txn;
 import org.lmdbjava.TxnFlags;
 
@@ -64,6 +70,14 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
 	private Dbi<BufferType> incidence_db = null;
     private HashMap<String, HGIndex<?, ?>> openIndices = new HashMap<String, HGIndex<?, ?>>();
     private ReentrantReadWriteLock indicesLock = new ReentrantReadWriteLock();
+    
+    // LMDB only allows the map to be resized when there are no transactions in progress. So
+    // we keep track of them and new top-level transactions wait while a resize is pending.
+    private final Object txnGate = new Object();
+    private int activeTxns = 0;
+    private boolean resizing = false;
+    private volatile boolean mapFull = false;
+    private SyncThread syncThread = null;
 	
 	@SuppressWarnings("unchecked")
 	private StorageTransactionLMDB<BufferType> txn()
@@ -123,10 +137,15 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
                "HGTransactionManager.ensureTransaction or turn off transaction enforceability.");
         else
         {
+            txnStarted(false);
             try (Txn<BufferType> tx = lmdbEnv().txnRead())
             {
                 return f.apply(tx);
             }
+            finally
+            {
+                txnFinished();
+            }
         }
     }
     
@@ -141,11 +160,112 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
         else if (this.store.getConfiguration().isEnforceTransactionsInStorageLayer())
             throw new HGException("No current transaction in effect - please use " +
                "HGTransactionManager.ensureTransaction or turn off transaction enforceability.");        
-        try (Txn<BufferType> tx = lmdbEnv().txnWrite())
+        // the thread may already have a read transaction in effect
+        boolean nested = current.lmdbTxn() != null;
+        while (true)
+        {
+            txnStarted(nested);
+            try (Txn<BufferType> tx = lmdbEnv().txnWrite())
+            {
+                T x = f.apply(tx);
+                tx.commit();
+                return x;
+            }
+            catch (MapFullException ex)
+            {
+                // the map can't be resized while our other transaction is open
+                if (nested || !requestMapGrowth())
+                    throw ex;
+            }
+            finally
+            {
+                txnFinished();
+            }
+        }
+    }
+    
+    /**
+     * Register a new LMDB transaction (or any other use of the environment that cannot
+     * overlap with a resize of the map). Unless the transaction is nested, wait for a
+     * pending resize first.
+     */
+    void txnStarted(boolean nested)
+    {
+        if (!nested && mapFull)
+            growMap();
+        synchronized (txnGate)
+        {
+            while (resizing && !nested)
+            {
+                try
+                {
+                    txnGate.wait();
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new HGException("Interrupted while waiting for the LMDB map to be resized.", ex);
+                }
+            }
+            activeTxns++;
+        }
+        hgBufferProxy.transactionStarted();
+    }
+    
+    void txnFinished()
+    {
+        hgBufferProxy.transactionFinished();
+        synchronized (txnGate)
         {
-            T x = f.apply(tx);
-            tx.commit();
-            return x;
+            if (--activeTxns == 0)
+                txnGate.notifyAll();
+        }
+    }
+    
+    /**
+     * Called when an LMDB write failed because the map is full. Schedule a resize, which
+     * will be performed before the next top-level transaction starts, and return true. 
+     * Return false if the map has already reached its configured maximum size.
+     */
+    boolean requestMapGrowth()
+    {
+        if (config.nextMapSize(lmdbenv.info().mapSize) < 0)
+            return false;
+        mapFull = true;
+        return true;
+    }
+    
+    /**
+     * Wait for all current transactions to finish and grow the map. New top-level
+     * transactions wait in the meantime.
+     */
+    private void growMap()
+    {
+        synchronized (txnGate)
+        {
+            if (!mapFull || resizing)
+                return;
+            resizing = true;
+            try
+            {
+                while (activeTxns > 0)
+                    txnGate.wait();
+                long currentSize = lmdbenv.info().mapSize;
+                long newSize = config.nextMapSize(currentSize);
+                if (newSize > currentSize)
+                    lmdbenv.setMapSize(newSize);
+                mapFull = false;
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new HGException("Interrupted while waiting to resize the LMDB map.", ex);
+            }
+            finally
+            {
+                resizing = false;
+                txnGate.notifyAll();
+            }
         }
     }
         
@@ -155,6 +275,20 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
         this.hgBufferProxy = null;
     }
     
+	/**
+	 * Create an LMDB storage working with direct <code>ByteBuffer</code>s pointing into
+	 * the memory mapped database, instead of copying all data into <code>byte[]</code>s.
+	 * See {@link HGDirectBufferProxyLMDB}.
+	 */
+	public static StorageImplementationLMDB<ByteBuffer> withDirectBuffers()
+	{
+		return new StorageImplementationLMDB<ByteBuffer>(ByteBufferProxy.PROXY_OPTIMAL, null);
+	}
+	
+	/**
+	 * @param hgBufferProxy the proxy to use, or <code>null</code> to create a default one
+	 * matching <code>byteBufferProxy</code> when the storage is started
+	 */
 	public StorageImplementationLMDB(BufferProxy<BufferType> byteBufferProxy,
 									HGBufferProxyLMDB<BufferType> hgBufferProxy)
 	{
@@ -178,17 +312,41 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
 	{	
 		this.store = store;
 		if (this.hgBufferProxy == null)
-		    this.hgBufferProxy = (HGBufferProxyLMDB<BufferType>)new HGByteArrayBufferProxyLMDB(hgconfig.getHandleFactory());
-		lmdbenv = Env.create(this.bufferProxy)
-			.setMaxDbs(10000)
-			.setMapSize(10485760*100)
-//			.setMapSize(0)
-			.open(new File(store.getDatabaseLocation()), 
-				  EnvFlags.MDB_NOSYNC);
+		{
+			if (this.bufferProxy == ByteArrayProxy.PROXY_BA)
+				this.hgBufferProxy = (HGBufferProxyLMDB<BufferType>)new HGByteArrayBufferProxyLMDB(hgconfig.getHandleFactory());
+			else
+				this.hgBufferProxy = (HGBufferProxyLMDB<BufferType>)new HGDirectBufferProxyLMDB(hgconfig.getHandleFactory());
+		}
+		EnumSet<EnvFlags> flags = EnumSet.noneOf(EnvFlags.class);
+		if (config.isNoSync())
+			flags.add(EnvFlags.MDB_NOSYNC);
+		if (config.isNoMetaSync())
+			flags.add(EnvFlags.MDB_NOMETASYNC);
+		if (config.isWriteMap())
+			flags.add(EnvFlags.MDB_WRITEMAP);
+		if (config.isMapAsync())
+			flags.add(EnvFlags.MDB_MAPASYNC);
+		if (config.isNoReadAhead())
+			flags.add(EnvFlags.MDB_NORDAHEAD);
+		Env.Builder<BufferType> builder = Env.create(this.bufferProxy)
+			.setMaxDbs(config.getMaxDbs())
+			.setMapSize(config.getMapSize());
+		if (config.getMaxReaders() > 0)
+			builder.setMaxReaders(config.getMaxReaders());
+		lmdbenv = builder.open(new File(store.getDatabaseLocation()), 
+							   flags.toArray(new EnvFlags[flags.size()]));
+		mapFull = false;
 		
 		primitive_db = lmdbenv.openDbi(PRIMITIVE_DB_NAME, DbiFlags.MDB_CREATE);
 		data_db = lmdbenv.openDbi(DATA_DB_NAME, DbiFlags.MDB_CREATE);
 		incidence_db = lmdbenv.openDbi(INCIDENCE_DB_NAME, DbiFlags.MDB_CREATE, DbiFlags.MDB_DUPSORT);
+		
+		if (config.getSyncFrequency() > 0)
+		{
+			syncThread = new SyncThread();
+			syncThread.start();
+		}
 	}
 
 	@Override
@@ -202,20 +360,24 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
 														  HGTransactionConfig config,
 														  HGTransaction parent)
 			{
+				if (config.isNoStorage())
+					return new VanillaTransaction();
+				txnStarted(parent != null);
 				try
 				{
 					Txn<BufferType> tx = null;
-					if (config.isNoStorage())
-						return new VanillaTransaction();
 					if (config.isReadonly())
 						tx = lmdbenv.txn(parent == null ? null : ((StorageTransactionLMDB<BufferType>)parent.getStorageTransaction()).lmdbTxn(), TxnFlags.MDB_RDONLY_TXN);
 					else
 						tx = lmdbenv.txn(parent == null ? null : ((StorageTransactionLMDB<BufferType>)parent.getStorageTransaction()).lmdbTxn());
 							
-					return new StorageTransactionLMDB<BufferType>(tx, StorageImplementationLMDB.this.lmdbenv);
+					return new StorageTransactionLMDB<BufferType>(tx, 
+							StorageImplementationLMDB.this.lmdbenv,
+							StorageImplementationLMDB.this::txnFinished);
 				}
 				catch (LmdbException ex)
 				{
+					txnFinished();
 					// System.err.println("Failed to create transaction, will
 					// exit - temporary behavior to be removed at some point.");
 					ex.printStackTrace(System.err);
@@ -227,6 +389,12 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
 			@Override
 			public boolean canRetryAfter(Throwable t)
 			{
+				// The map is grown only when a top-level transaction starts, so a nested
+				// transaction can't be retried: rethrow to its parent, which will be.
+				// The failed transaction has already been popped from the context.
+				if (t instanceof MapFullException)
+					return store.getTransactionManager().getContext().getCurrent() == null
+					        && requestMapGrowth();
 				return t instanceof TransactionConflictException;
 			}
 		};
@@ -252,6 +420,34 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
 		return hgBufferProxy.toBytes(primitive_db.get(txn().lmdbTxn(), this.hgBufferProxy.fromHandle(handle)));
 	}
 	
+	/**
+	 * Visit the keys in B-tree order with a single cursor, so that consecutive lookups
+	 * mostly hit pages that were just traversed.
+	 */
+	@Override
+	public byte[][] getDataMulti(HGPersistentHandle[] handles)
+	{
+	    ensureOpen();
+	    return this.inReadTxn(tx -> {
+	    	byte [][] result = new byte[handles.length][];
+	    	try (Cursor<BufferType> cursor = primitive_db.openCursor(tx))
+	    	{
+	    		for (int i : sortedOrder(handles))
+	    			if (cursor.get(this.hgBufferProxy.fromHandle(handles[i]), GetOp.MDB_SET_KEY))
+	    				result[i] = hgBufferProxy.toBytes(cursor.val());
+	    	}
+	    	return result;
+	    });
+	}
+	
+	private int [] sortedOrder(HGPersistentHandle[] handles)
+	{
+		byte [][] keys = new byte[handles.length][];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = handles[i].toByteArray();
+		return BAUtils.sortedOrder(keys);
+	}
+	
 	@Override
 	public boolean containsData(HGPersistentHandle handle)
 	{
@@ -298,6 +494,22 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
 	}
 
 
+	@Override
+	public HGPersistentHandle[][] getLinks(HGPersistentHandle[] handles)
+	{
+	    ensureOpen();
+	    return this.inReadTxn(tx -> {
+	    	HGPersistentHandle [][] result = new HGPersistentHandle[handles.length][];
+	    	try (Cursor<BufferType> cursor = data_db.openCursor(tx))
+	    	{
+	    		for (int i : sortedOrder(handles))
+	    			if (cursor.get(this.hgBufferProxy.fromHandle(handles[i]), GetOp.MDB_SET_KEY))
+	    				result[i] = hgBufferProxy.toHandleArray(cursor.val());
+	    	}
+	    	return result;
+	    });
+	}
+
 	@Override
 	public void removeLink(HGPersistentHandle handle)
 	{
@@ -355,6 +567,33 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
 		
 	}
 
+	@Override
+	public HGPersistentHandle[][] getIncidenceSets(HGPersistentHandle[] atoms)
+	{
+	    ensureOpen();
+	    return this.inReadTxn(tx -> {
+	    	HGPersistentHandle [][] result = new HGPersistentHandle[atoms.length][];
+	    	try (Cursor<BufferType> cursor = incidence_db.openCursor(tx))
+	    	{
+	    		for (int i : sortedOrder(atoms))
+	    		{
+	    			if (!cursor.get(this.hgBufferProxy.fromHandle(atoms[i]), GetOp.MDB_SET_KEY))
+	    			{
+	    				result[i] = HGUtils.EMPTY_HANDLE_ARRAY;
+	    				continue;
+	    			}
+	    			HGPersistentHandle [] members = new HGPersistentHandle[(int)cursor.count()];
+	    			int n = 0;
+	    			do
+	    				members[n++] = hgBufferProxy.toHandle(cursor.val());
+	    			while (n < members.length && cursor.seek(SeekOp.MDB_NEXT_DUP));
+	    			result[i] = members;
+	    		}
+	    	}
+	    	return result;
+	    });
+	}
+
 	@Override
 	public long getIncidenceSetCardinality(HGPersistentHandle atom)
 	{
@@ -472,6 +711,7 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
                 Dbi<BufferType> secondaryDb = (idx instanceof DefaultBiIndexImpl) ? 
                         ((DefaultBiIndexImpl)idx).secondaryDb : null;                
                 // droping will close, we don't need to call idx.close here
+                txnStarted(false);
                 try (Txn<BufferType> tx = lmdbenv.txnWrite())
                 {
                     db.drop(tx, true);
@@ -485,6 +725,10 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
                 {
                     throw new HGException(e);
                 }                
+                finally
+                {
+                    txnFinished();
+                }
                 openIndices.remove(name);
             }
 
@@ -498,12 +742,77 @@ public class StorageImplementationLMDB<BufferType> implements HGStoreImplementat
 	@Override
 	public void shutdown()
 	{
+		if (syncThread != null)
+		{
+			syncThread.stop = true;
+			syncThread.interrupt();
+			try
+			{
+				syncThread.join();
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+			}
+			syncThread = null;
+		}
 		try { this.lmdbenv.close(); }
 		catch (Throwable t) { t.printStackTrace(System.err); }
 		finally { this.lmdbenv = null; }
 	}
 
 	
+	/**
+	 * Periodically flushes the environment to disk, for use with <code>MDB_NOSYNC</code>.
+	 */
+	class SyncThread extends Thread
+	{
+		volatile boolean stop = false;
+
+		SyncThread()
+		{
+			this.setName("HGLMDBSYNC");
+			this.setDaemon(true);
+		}
+
+		private void sync()
+		{
+			txnStarted(false);
+			try
+			{
+				lmdbenv.sync(config.isSyncForce());
+			}
+			finally
+			{
+				txnFinished();
+			}
+		}
+
+		public void run()
+		{
+			try
+			{
+				while (!stop)
+				{
+					Thread.sleep(config.getSyncFrequency());
+					if (!stop)
+						sync();
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				// interrupted only when stopping, flush whatever was committed last
+				if (stop)
+					sync();
+			}
+			catch (Throwable t)
+			{
+				System.err.println("HGDB LMDB SYNC THREAD exiting with: " + t.toString() + ", stack trace follows...");
+				t.printStackTrace(System.err);
+			}
+		}
+	}
+	
 	static void checkIncidence(HGPersistentHandle atom, HashSet<HGPersistentHandle> incidenceSet, HGStore store)
 	{
 		store.getTransactionManager().ensureTransaction(() -> {
@@ -3,62 +3,80 @@ package org.hypergraphdb.storage.lmdb;
 import org.hypergraphdb.transaction.HGStorageTransaction;
 import org.hypergraphdb.transaction.HGTransactionException;
 import org.lmdbjava.Env;
+import org.lmdbjava.LmdbException;
 import org.lmdbjava.Txn;
 
 public class StorageTransactionLMDB<BufferType> implements HGStorageTransaction
 {
 	private Txn<BufferType> txn;
 	private Env<BufferType> env;
-	
+	private Runnable onFinish;
+
 	public static final <BufferType> StorageTransactionLMDB<BufferType> nullTransaction()
 	{
 		return new StorageTransactionLMDB<BufferType>(null, null);
 	}
-	
-	
+
+
 	public StorageTransactionLMDB(Txn<BufferType> txn, Env<BufferType> env)
+	{
+		this(txn, env, null);
+	}
+
+	/**
+	 * @param onFinish called exactly once, when the transaction is committed or aborted
+	 */
+	public StorageTransactionLMDB(Txn<BufferType> txn, Env<BufferType> env, Runnable onFinish)
 	{
 		this.txn = txn;
 		this.env = env;
+		this.onFinish = onFinish;
 	}
-	
+
 	public Txn<BufferType> lmdbTxn()
 	{
 		return this.txn;
 	}
-	
+
+	private void finish()
+	{
+		Runnable f = this.onFinish;
+		this.onFinish = null;
+		if (f != null)
+			f.run();
+	}
+
 	@Override
 	public void commit() throws HGTransactionException
 	{
-	    boolean retry = true;
-	    boolean resized = false;
-	    while (retry) 
-	    {
-	        retry = false;
-    	    try
-    	    {
-        		if (this.txn != null)
-        			txn.commit();
-        		if (resized)
-        		    System.out.println("SUCCESS AFTER RESIZE!!");
-            }
-            catch (Exception ex)
-            {
-                if (!resized && ex.toString().contains("Environment mapsize reached"))
-                {
-                    System.out.println("RETRY AFTER RESIZE");
-                    this.env.setMapSize(0);
-                    retry = true;
-                    resized = true;
-                }
-            }
-	    }
+		// A failed commit (e.g. because the map is full) must be reported so the transaction
+		// can be retried, see StorageImplementationLMDB.getTransactionFactory
+		try
+		{
+			if (this.txn != null)
+				txn.commit();
+		}
+		catch (LmdbException ex)
+		{
+			throw new HGTransactionException("Failed to commit LMDB transaction.", ex);
+		}
+		finally
+		{
+			finish();
+		}
 	}
 
 	@Override
 	public void abort() throws HGTransactionException
 	{
-		if (this.txn != null)
-			txn.abort();
+		try
+		{
+			if (this.txn != null)
+				txn.abort();
+		}
+		finally
+		{
+			finish();
+		}
 	}
 }
@@ -0,0 +1,124 @@
+package hgtest.lmdb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.handle.UUIDHandleFactory;
+import org.hypergraphdb.storage.lmdb.HGDirectBufferProxyLMDB;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Encoding through direct buffers and the recycling of the direct memory slabs
+ * owned by transactions.
+ */
+public class HGDirectBufferProxyLMDBTests
+{
+	UUIDHandleFactory factory = UUIDHandleFactory.I;
+	HGDirectBufferProxyLMDB proxy = new HGDirectBufferProxyLMDB(factory);
+
+	@Test
+	public void roundTrips()
+	{
+		HGPersistentHandle h = factory.makeHandle();
+		HGPersistentHandle [] handles = new HGPersistentHandle[] { factory.makeHandle(), factory.makeHandle(), h };
+		byte [] bytes = "direct bytes".getBytes();
+		for (int depth = 0; depth < 2; depth++)
+		{
+			if (depth == 1)
+				proxy.transactionStarted();
+			ByteBuffer buffer = proxy.fromHandle(h);
+			Assert.assertTrue(buffer.isDirect());
+			Assert.assertEquals(h, proxy.toHandle(buffer));
+			// decoding does not consume the buffer
+			Assert.assertEquals(h, proxy.toHandle(buffer));
+			Assert.assertArrayEquals(handles, proxy.toHandleArray(proxy.fromHandleArray(handles)));
+			Assert.assertArrayEquals(bytes, proxy.toBytes(proxy.fromBytes(bytes)));
+			Assert.assertArrayEquals(new HGPersistentHandle[0],
+									 proxy.toHandleArray(proxy.fromHandleArray(new HGPersistentHandle[0])));
+		}
+		proxy.transactionFinished();
+		Assert.assertNull(proxy.toHandle(null));
+		Assert.assertNull(proxy.toHandleArray(null));
+		Assert.assertNull(proxy.toBytes(null));
+	}
+
+	@Test
+	public void buffersLiveUntilOuterTransactionEnds()
+	{
+		proxy.transactionStarted();
+		List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+		List<byte[]> expected = new ArrayList<byte[]>();
+		for (int i = 0; i < 1000; i++)
+		{
+			byte [] bytes = ("value " + i).getBytes();
+			expected.add(bytes);
+			buffers.add(proxy.fromBytes(bytes));
+			// a nested transaction doesn't release the slabs
+			proxy.transactionStarted();
+			proxy.fromBytes(new byte[100]);
+			proxy.transactionFinished();
+		}
+		Assert.assertEquals(0, proxy.pooledSlabs());
+		for (int i = 0; i < buffers.size(); i++)
+			Assert.assertArrayEquals(expected.get(i), proxy.toBytes(buffers.get(i)));
+		proxy.transactionFinished();
+		Assert.assertTrue(proxy.pooledSlabs() > 1);
+	}
+
+	@Test
+	public void slabsAreReused()
+	{
+		proxy.transactionStarted();
+		proxy.fromBytes(new byte[1000]);
+		proxy.transactionFinished();
+		Assert.assertEquals(1, proxy.pooledSlabs());
+		proxy.transactionStarted();
+		proxy.fromBytes(new byte[1000]);
+		Assert.assertEquals(0, proxy.pooledSlabs());
+		proxy.transactionFinished();
+		Assert.assertEquals(1, proxy.pooledSlabs());
+	}
+
+	@Test
+	public void unpooledAllocations()
+	{
+		// outside of a transaction and above the slab size, buffers are allocated separately
+		proxy.fromBytes(new byte[100]);
+		proxy.transactionStarted();
+		ByteBuffer big = proxy.fromBytes(new byte[HGDirectBufferProxyLMDB.SLAB_SIZE + 1]);
+		Assert.assertEquals(HGDirectBufferProxyLMDB.SLAB_SIZE + 1, big.remaining());
+		proxy.transactionFinished();
+		Assert.assertEquals(0, proxy.pooledSlabs());
+	}
+
+	@Test
+	public void poolIsBounded() throws Exception
+	{
+		int slabsPerThread = HGDirectBufferProxyLMDB.MAX_POOLED_SLABS / 2 + 1;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++)
+		{
+			Thread thread = new Thread(() -> {
+				proxy.transactionStarted();
+				for (int i = 0; i < slabsPerThread; i++)
+					proxy.fromBytes(new byte[HGDirectBufferProxyLMDB.SLAB_SIZE]);
+				proxy.transactionFinished();
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		Assert.assertEquals(HGDirectBufferProxyLMDB.MAX_POOLED_SLABS, proxy.pooledSlabs());
+		// draining the pool takes exactly the pooled slabs
+		proxy.transactionStarted();
+		for (int i = 0; i < HGDirectBufferProxyLMDB.MAX_POOLED_SLABS; i++)
+			proxy.fromBytes(new byte[HGDirectBufferProxyLMDB.SLAB_SIZE]);
+		Assert.assertEquals(0, proxy.pooledSlabs());
+		proxy.transactionFinished();
+		Assert.assertEquals(HGDirectBufferProxyLMDB.MAX_POOLED_SLABS, proxy.pooledSlabs());
+	}
+}
@@ -0,0 +1,227 @@
+package hgtest.lmdb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hypergraphdb.HGConfiguration;
+import org.hypergraphdb.HGEnvironment;
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.storage.lmdb.ConfigLMDB;
+import org.hypergraphdb.storage.lmdb.HGByteArrayBufferProxyLMDB;
+import org.hypergraphdb.storage.lmdb.StorageImplementationLMDB;
+import org.hypergraphdb.util.HGUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.lmdbjava.ByteArrayProxy;
+import org.lmdbjava.Env.MapFullException;
+
+import hgtest.T;
+
+/**
+ * Growth of the LMDB memory map and the background sync thread.
+ */
+public class LmdbEnvironmentTests
+{
+	static final long MB = 1024 * 1024;
+	static String location = T.getTmpDirectory() + File.separator + "hglmdb_env_test";
+
+	HyperGraph graph;
+
+	HGConfiguration newConfig()
+	{
+		HGConfiguration config = new HGConfiguration();
+		config.setStoreImplementation(
+		        new StorageImplementationLMDB<byte[]>(ByteArrayProxy.PROXY_BA,
+		                new HGByteArrayBufferProxyLMDB(config.getHandleFactory())));
+		return config;
+	}
+
+	static ConfigLMDB lmdbConfig(HGConfiguration config)
+	{
+		return ((StorageImplementationLMDB<?>)config.getStoreImplementation()).getConfiguration();
+	}
+
+	HyperGraph open(HGConfiguration config)
+	{
+		new File(location).mkdirs();
+		graph = HGEnvironment.get(location, config);
+		return graph;
+	}
+
+	long mapSize()
+	{
+		return ((StorageImplementationLMDB<?>)graph.getConfig().getStoreImplementation()).lmdbEnv().info().mapSize;
+	}
+
+	static boolean syncThreadRunning()
+	{
+		for (Thread t : Thread.getAllStackTraces().keySet())
+			if ("HGLMDBSYNC".equals(t.getName()) && t.isAlive())
+				return true;
+		return false;
+	}
+
+	// strings are keys of the value index, which LMDB limits to 511 bytes
+	static String payload(int i)
+	{
+		char [] chars = new char[400];
+		Arrays.fill(chars, (char)('a' + i % 26));
+		return i + new String(chars);
+	}
+
+	@After
+	public void closeGraph()
+	{
+		if (graph != null && graph.isOpen())
+			graph.close();
+		graph = null;
+		HGUtils.dropHyperGraphInstance(location);
+	}
+
+	@Test
+	public void shippedSyncPolicyMatchesDefaults()
+	{
+		ConfigLMDB config = new ConfigLMDB();
+		Assert.assertTrue(config.isNoSync());
+		Assert.assertEquals(100, config.getSyncFrequency());
+		Assert.assertTrue(config.isSyncForce());
+	}
+
+	@Test
+	public void mapGrowsUnderLoad() throws Exception
+	{
+		HGUtils.dropHyperGraphInstance(location);
+		HGConfiguration config = newConfig();
+		lmdbConfig(config).setMapSize(MB);
+		lmdbConfig(config).setMaxMapSize(0);
+		open(config);
+		int threadCount = 4, perThread = 500;
+		Map<Integer, HGHandle> handles = new ConcurrentHashMap<Integer, HGHandle>();
+		List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < threadCount; t++)
+		{
+			final int offset = t * perThread;
+			Thread thread = new Thread(() -> {
+				try
+				{
+					for (int i = offset; i < offset + perThread; i++)
+					{
+						final int n = i;
+						handles.put(n, graph.getTransactionManager().transact(() -> graph.add(payload(n))));
+					}
+				}
+				catch (Throwable ex)
+				{
+					failures.add(ex);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		Assert.assertTrue(failures.toString(), failures.isEmpty());
+		Assert.assertTrue(mapSize() > MB);
+		Assert.assertEquals(threadCount * perThread, handles.size());
+		for (Map.Entry<Integer, HGHandle> e : handles.entrySet())
+			Assert.assertEquals(payload(e.getKey()), graph.get(e.getValue()));
+	}
+
+	@Test
+	public void nestedTransactionRetriedByParent()
+	{
+		HGUtils.dropHyperGraphInstance(location);
+		HGConfiguration config = newConfig();
+		lmdbConfig(config).setMapSize(MB);
+		lmdbConfig(config).setMaxMapSize(0);
+		open(config);
+		// the map fills up in the nested transaction, and can only grow once the
+		// top-level one is retried
+		List<HGHandle> handles = graph.getTransactionManager().transact(() -> {
+			List<HGHandle> added = new ArrayList<HGHandle>();
+			for (int i = 0; i < 2000; i++)
+			{
+				final int n = i;
+				added.add(graph.getTransactionManager().transact(() -> graph.add(payload(n))));
+			}
+			return added;
+		});
+		Assert.assertTrue(mapSize() > MB);
+		for (int i = 0; i < handles.size(); i++)
+			Assert.assertEquals(payload(i), graph.get(handles.get(i)));
+	}
+
+	@Test
+	public void growthStopsAtMaxSize()
+	{
+		HGUtils.dropHyperGraphInstance(location);
+		HGConfiguration config = newConfig();
+		lmdbConfig(config).setMapSize(MB);
+		lmdbConfig(config).setMaxMapSize(2 * MB);
+		open(config);
+		List<HGHandle> handles = new ArrayList<HGHandle>();
+		Throwable failure = null;
+		try
+		{
+			for (int i = 0; i < 10000; i++)
+			{
+				final int n = i;
+				handles.add(graph.getTransactionManager().transact(() -> graph.add(payload(n))));
+			}
+		}
+		catch (Throwable ex)
+		{
+			failure = ex;
+		}
+		Assert.assertNotNull(failure);
+		while (failure.getCause() != null && !(failure instanceof MapFullException))
+			failure = failure.getCause();
+		Assert.assertTrue(failure.toString(), failure instanceof MapFullException);
+		Assert.assertEquals(2 * MB, mapSize());
+		// what was committed before the map filled up is intact
+		for (int i = 0; i < handles.size(); i++)
+			Assert.assertEquals(payload(i), graph.get(handles.get(i)));
+	}
+
+	@Test
+	public void syncThreadFollowsGraph()
+	{
+		HGUtils.dropHyperGraphInstance(location);
+		HGConfiguration config = newConfig();
+		lmdbConfig(config).setNoSync(true);
+		lmdbConfig(config).setSyncFrequency(10);
+		lmdbConfig(config).setSyncForce(true);
+		open(config);
+		Assert.assertTrue(syncThreadRunning());
+		List<HGHandle> handles = new ArrayList<HGHandle>();
+		for (int i = 0; i < 100; i++)
+			handles.add(graph.add(payload(i)));
+		graph.close();
+		// the thread does a last flush and exits with the graph
+		Assert.assertFalse(syncThreadRunning());
+		open(newConfig());
+		for (int i = 0; i < handles.size(); i++)
+			Assert.assertEquals(payload(i), graph.get(handles.get(i)));
+	}
+
+	@Test
+	public void noSyncThreadWithoutFrequency()
+	{
+		HGUtils.dropHyperGraphInstance(location);
+		HGConfiguration config = newConfig();
+		lmdbConfig(config).setNoSync(false);
+		lmdbConfig(config).setSyncFrequency(0);
+		open(config);
+		Assert.assertFalse(syncThreadRunning());
+		HGHandle h = graph.add("durable");
+		Assert.assertEquals("durable", graph.get(h));
+	}
+}
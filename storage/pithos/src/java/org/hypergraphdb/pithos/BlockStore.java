@@ -0,0 +1,178 @@
+package org.hypergraphdb.pithos;
+
+import java.io.File;
+
+/**
+ * <p>
+ * A data file made of variable size blocks, one per record. Blocks are allocated
+ * through a {@link FreeSpace} so the blocks of removed records are reused.
+ * </p>
+ *
+ * <p>
+ * Each block starts with a 12 bytes header: the size of the block (which never changes
+ * once allocated), the length of the record's payload and a state byte telling whether the
+ * block is live or free. The blocks are laid out one after the other starting at the
+ * second page of the file, so the file can be scanned to rebuild the in memory
+ * directory of records.
+ * </p>
+ *
+ * <p>
+ * Blocks are written and killed only by the committing thread, during a commit or
+ * the replay of the write-ahead log. Reads can happen concurrently from any thread.
+ * </p>
+ */
+public class BlockStore extends FileStore
+{
+	public static final int HEADER_SIZE = 12;
+	static final byte FREE = 0;
+	static final byte LIVE = 1;
+
+	/**
+	 * Callback for {@link BlockStore#scan(Visitor)}.
+	 */
+	public interface Visitor
+	{
+		void visit(long position, int blockSize, boolean live);
+	}
+
+	private final byte id;
+	private FreeSpace freeSpace = null;
+
+	public BlockStore(byte id, File file, PithosConfig config)
+	{
+		super(file, config);
+		this.id = id;
+	}
+
+	/**
+	 * The identifier of the store in the write-ahead log.
+	 */
+	public byte getId()
+	{
+		return id;
+	}
+
+	public void startup()
+	{
+		super.startup();
+		freeSpace = new FreeSpace(new File(getFile().getAbsolutePath() + ".free"), config);
+		freeSpace.startup();
+		if (freeSpace.endOfSpace() == 0)
+			freeSpace.reset(config.getPageSize());
+	}
+
+	public void shutdown()
+	{
+		freeSpace.shutdown();
+		super.shutdown();
+	}
+
+	public void force()
+	{
+		super.force();
+		freeSpace.force();
+	}
+
+	/**
+	 * The size of the block holding a payload of the given length.
+	 */
+	public int blockSize(int length)
+	{
+		int size = HEADER_SIZE + length;
+		if (size <= config.getPageSize())
+			return (size + 15) & ~15;
+		else
+			return ((size + config.getPageSize() - 1) / config.getPageSize()) * config.getPageSize();
+	}
+
+	/**
+	 * Reserve a block for a payload of the given length.
+	 */
+	public long allocate(int length)
+	{
+		return freeSpace.reserve(blockSize(length));
+	}
+
+	/**
+	 * Return the content of a live block (header included) holding the given payload.
+	 */
+	public byte [] makeBlock(byte [] payload)
+	{
+		byte [] block = new byte[HEADER_SIZE + payload.length];
+		int blockSize = blockSize(payload.length);
+		block[0] = (byte)(blockSize >>> 24);
+		block[1] = (byte)(blockSize >>> 16);
+		block[2] = (byte)(blockSize >>> 8);
+		block[3] = (byte)blockSize;
+		block[4] = (byte)(payload.length >>> 24);
+		block[5] = (byte)(payload.length >>> 16);
+		block[6] = (byte)(payload.length >>> 8);
+		block[7] = (byte)payload.length;
+		block[8] = LIVE;
+		System.arraycopy(payload, 0, block, HEADER_SIZE, payload.length);
+		return block;
+	}
+
+	public void writeBlock(long position, byte [] block)
+	{
+		put(position, block, 0, block.length);
+	}
+
+	/**
+	 * Mark a block as free. It is not reused until {@link #release(long)} is called.
+	 */
+	public void kill(long position)
+	{
+		put(position + 8, FREE);
+	}
+
+	/**
+	 * Make a killed block available for reuse.
+	 */
+	public void release(long position)
+	{
+		freeSpace.free(position, getInt(position));
+	}
+
+	public int payloadLength(long position)
+	{
+		return getInt(position + 4);
+	}
+
+	public byte [] readPayload(long position)
+	{
+		byte [] result = new byte[payloadLength(position)];
+		get(position + HEADER_SIZE, result, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * Visit all blocks, live or free, in file order and return the offset past the
+	 * last block.
+	 */
+	public long scan(Visitor visitor)
+	{
+		long position = config.getPageSize();
+		while (true)
+		{
+			int blockSize = getInt(position);
+			if (blockSize <= 0)
+				return position;
+			visitor.visit(position, blockSize, get(position + 8) == LIVE);
+			position += blockSize;
+		}
+	}
+
+	/**
+	 * Rebuild the free space from a scan of the blocks, after a crash.
+	 */
+	public void rebuildFreeSpace()
+	{
+		long end = scan((position, blockSize, live) -> { });
+		freeSpace.reset(end);
+		scan((position, blockSize, live) -> {
+			if (!live)
+				freeSpace.free(position, blockSize);
+		});
+	}
+}
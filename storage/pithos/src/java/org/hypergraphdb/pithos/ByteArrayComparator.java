@@ -0,0 +1,34 @@
+package org.hypergraphdb.pithos;
+
+import java.util.Comparator;
+
+/**
+ * Unsigned lexicographical order of byte arrays, the default order of index keys and
+ * values and the order of incidence sets.
+ */
+public class ByteArrayComparator implements Comparator<byte[]>
+{
+	private static final ByteArrayComparator instance = new ByteArrayComparator();
+
+	public static ByteArrayComparator getInstance()
+	{
+		return instance;
+	}
+
+	public static int compare(byte [] left, int leftOffset, byte [] right, int rightOffset, int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			int c = (left[leftOffset + i] & 0xff) - (right[rightOffset + i] & 0xff);
+			if (c != 0)
+				return c;
+		}
+		return 0;
+	}
+
+	public int compare(byte[] left, byte[] right)
+	{
+		int c = compare(left, 0, right, 0, Math.min(left.length, right.length));
+		return c != 0 ? c : left.length - right.length;
+	}
+}
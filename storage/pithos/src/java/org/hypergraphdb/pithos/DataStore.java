@@ -0,0 +1,45 @@
+package org.hypergraphdb.pithos;
+
+import java.io.File;
+
+import org.hypergraphdb.HGHandleFactory;
+import org.hypergraphdb.HGPersistentHandle;
+
+/**
+ * A {@link BlockStore} of raw data: each record is the handle of the owner followed by
+ * the data.
+ */
+public class DataStore extends BlockStore
+{
+	private final HGHandleFactory handleFactory;
+	private final int handleSize;
+
+	public DataStore(byte id, File file, PithosConfig config, HGHandleFactory handleFactory)
+	{
+		super(id, file, config);
+		this.handleFactory = handleFactory;
+		this.handleSize = handleFactory.nullHandle().toByteArray().length;
+	}
+
+	public byte [] encode(HGPersistentHandle owner, byte [] data)
+	{
+		byte [] payload = new byte[handleSize + data.length];
+		System.arraycopy(owner.toByteArray(), 0, payload, 0, handleSize);
+		System.arraycopy(data, 0, payload, handleSize, data.length);
+		return payload;
+	}
+
+	public HGPersistentHandle owner(long position)
+	{
+		byte [] A = new byte[handleSize];
+		get(position + HEADER_SIZE, A, 0, handleSize);
+		return handleFactory.makeHandle(A);
+	}
+
+	public byte [] readData(long position)
+	{
+		byte [] result = new byte[payloadLength(position) - handleSize];
+		get(position + HEADER_SIZE + handleSize, result, 0, result.length);
+		return result;
+	}
+}
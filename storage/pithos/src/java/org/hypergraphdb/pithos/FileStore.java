@@ -4,39 +4,169 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 
 import org.hypergraphdb.HGException;
 
+/**
+ * <p>
+ * A file accessed through memory mapped segments of a fixed size. Segments are
+ * mapped on demand, mapping past the end of the file extends it.
+ * </p>
+ *
+ * <p>
+ * Only absolute <code>ByteBuffer</code> operations are used on the segments, so
+ * reads can proceed concurrently with a writer as long as they don't touch the same
+ * bytes.
+ * </p>
+ */
 public class FileStore
 {
 	protected PithosConfig config;
 	private File file = null;
 	private RandomAccessFile raf = null;
 	private FileChannel fch = null;
-	
+	private final int segmentSize;
+	private volatile MappedByteBuffer [] segments = new MappedByteBuffer[0];
+
 	protected FileStore(File file, PithosConfig config)
+	{
+		this(file, config, config.getSegmentSize());
+	}
+
+	protected FileStore(File file, PithosConfig config, int segmentSize)
 	{
 		this.file = file;
 		this.config = config;
+		this.segmentSize = segmentSize;
+	}
+
+	private MappedByteBuffer segment(long offset)
+	{
+		int idx = (int)(offset / segmentSize);
+		MappedByteBuffer [] S = segments;
+		if (idx < S.length && S[idx] != null)
+			return S[idx];
+		return mapSegment(idx);
+	}
+
+	private synchronized MappedByteBuffer mapSegment(int idx)
+	{
+		MappedByteBuffer [] S = segments;
+		if (idx < S.length && S[idx] != null)
+			return S[idx];
+		try
+		{
+			MappedByteBuffer [] newS = new MappedByteBuffer[Math.max(idx + 1, S.length)];
+			System.arraycopy(S, 0, newS, 0, S.length);
+			newS[idx] = fch.map(MapMode.READ_WRITE, (long)idx*segmentSize, segmentSize);
+			segments = newS;
+			return newS[idx];
+		}
+		catch (IOException ex)
+		{
+			throw new HGException("Could not map segment " + idx + " of " + file, ex);
+		}
+	}
+
+	/**
+	 * Return a buffer over the given region of the file, which may not cross a
+	 * segment boundary. Changes to the buffer are written to the file.
+	 */
+	protected ByteBuffer buffer(long offset, int size)
+	{
+		int start = (int)(offset % segmentSize);
+		if (start + size > segmentSize)
+			throw new IllegalArgumentException("Region " + offset + "+" + size +
+											   " crosses a segment boundary of " + file);
+		ByteBuffer buf = segment(offset).duplicate();
+		buf.position(start);
+		buf.limit(start + size);
+		return buf.slice();
+	}
+
+	public byte get(long offset)
+	{
+		return segment(offset).get((int)(offset % segmentSize));
+	}
+
+	public void put(long offset, byte b)
+	{
+		segment(offset).put((int)(offset % segmentSize), b);
+	}
+
+	public int getInt(long offset)
+	{
+		int start = (int)(offset % segmentSize);
+		if (start + 4 <= segmentSize)
+			return segment(offset).getInt(start);
+		byte [] A = new byte[4];
+		get(offset, A, 0, 4);
+		return ByteBuffer.wrap(A).getInt();
+	}
+
+	public void putInt(long offset, int value)
+	{
+		int start = (int)(offset % segmentSize);
+		if (start + 4 <= segmentSize)
+			segment(offset).putInt(start, value);
+		else
+			put(offset, ByteBuffer.allocate(4).putInt(value).array(), 0, 4);
+	}
+
+	/**
+	 * Read <code>length</code> bytes from the file starting at <code>offset</code>.
+	 */
+	public void get(long offset, byte [] dest, int destOffset, int length)
+	{
+		while (length > 0)
+		{
+			int start = (int)(offset % segmentSize);
+			int n = Math.min(length, segmentSize - start);
+			ByteBuffer buf = segment(offset).duplicate();
+			buf.position(start);
+			buf.get(dest, destOffset, n);
+			offset += n;
+			destOffset += n;
+			length -= n;
+		}
 	}
-	
-	protected ByteBuffer read(long offset, int size) throws IOException
+
+	/**
+	 * Write <code>length</code> bytes to the file starting at <code>offset</code>.
+	 */
+	public void put(long offset, byte [] src, int srcOffset, int length)
 	{
-		return fch.map(MapMode.READ_ONLY, offset, size);	
+		while (length > 0)
+		{
+			int start = (int)(offset % segmentSize);
+			int n = Math.min(length, segmentSize - start);
+			ByteBuffer buf = segment(offset).duplicate();
+			buf.position(start);
+			buf.put(src, srcOffset, n);
+			offset += n;
+			srcOffset += n;
+			length -= n;
+		}
 	}
-	
-	protected ByteBuffer write(long offset, int size) throws IOException
+
+	/**
+	 * Write all changes made through the mapped segments to disk.
+	 */
+	public void force()
 	{
-		return fch.map(MapMode.READ_WRITE, offset, size);
+		for (MappedByteBuffer segment : segments)
+			if (segment != null)
+				segment.force();
 	}
-	
+
 	public File getFile()
 	{
 		return file;
 	}
-	
+
 	public void startup()
 	{
 		try
@@ -52,15 +182,17 @@ public class FileStore
 
 	public void shutdown()
 	{
-		try 
-		{ 
+		try
+		{
+			force();
+			segments = new MappedByteBuffer[0];
 			fch.close();
-			raf.close(); 
+			raf.close();
 		}
 		catch (Throwable t)
 		{
 			t.printStackTrace();
 		}
 	}
-	
-}
\ No newline at end of file
+
+}
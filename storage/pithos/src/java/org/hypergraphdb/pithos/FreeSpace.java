@@ -3,33 +3,50 @@ package org.hypergraphdb.pithos;
 import java.io.File;
 
 import java.nio.ByteBuffer;
-import org.hypergraphdb.HGException;
 
+/**
+ * <p>
+ * Keeps track of the free blocks of a data file, by size, so they can be reused.
+ * Only blocks of the exact requested size are reused, which works well for the
+ * fixed width records of the link store.
+ * </p>
+ *
+ * <p>
+ * The file starts with a size map: the end of the allocated space in the data
+ * file, the end of the bucket area in this file, one entry per small size and a hash
+ * table for the bigger sizes. Each entry points to a list of page sized buckets holding
+ * the offsets of free blocks of a given size (sizes colliding in the hash table share
+ * the same list).
+ * </p>
+ *
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
 public class FreeSpace extends FileStore
 {
 	private int newSpaceOffset = 0;
 	private int newBucketOffset = 8;
 	private int smallEntriesOffset = 16;
-	private int smallEntriesCount = 1024;		
+	private int smallEntriesCount = 1024;
 	private int hashTableSize = 1024;
 	private int hashTableOffset = smallEntriesOffset + 8*smallEntriesCount;
+	private int sizeMapSize = hashTableOffset + 8*hashTableSize;
 	private ByteBuffer sizeMap = null;
-			
+
 	// We want each bucket to fit a page_size
 	private int bucketSize = config.getPageSize();
-			
+	// The buckets are page aligned so they never cross a segment boundary
+	private long bucketsStart = ((sizeMapSize + bucketSize - 1) / bucketSize) * bucketSize;
+
 	private class SizeBucket
 	{
 		long position;
 		ByteBuffer buf;
-		SizeBucket(long position)  
-		{ 
-			try
-			{
-				this.position = position;
-				buf = write(position, bucketSize);
-			}
-			catch (Throwable t) { throw new HGException(t); }
+		SizeBucket(long position)
+		{
+			this.position = position;
+			buf = buffer(position, bucketSize);
 		}
 		int count() { return buf.getInt(0); }
 		void count(int n) { buf.putInt(0, n); }
@@ -40,11 +57,6 @@ public class FreeSpace extends FileStore
 		{
 			buf.putLong(8, offset);
 		}
-		SizeBucket prev()
-		{
-			long prevOffset = buf.getLong(8);
-			return prevOffset == 0 ? null : new SizeBucket(prevOffset);
-		}
 		long prevOffset()
 		{
 			return buf.getLong(8);
@@ -53,7 +65,7 @@ public class FreeSpace extends FileStore
 		{
 			buf.putLong(16, offset);
 		}
-		SizeBucket next() 
+		SizeBucket next()
 		{
 			long nextOffset = buf.getLong(16);
 			return nextOffset == 0 ? null : new SizeBucket(nextOffset);
@@ -80,47 +92,28 @@ public class FreeSpace extends FileStore
 			buf.putInt(0, count() + 1);
 		}
 	}
-	
-	private void initializeFile()
-	{
-		try
-		{
-			int totalmapsize = 1 + smallEntriesCount + hashTableSize;
-			sizeMap = write(0, 8*totalmapsize);
-			// I have no idea if a new mapped file is 0-initialized, a test
-			// show that it is, but the API docs are silent about this.
-			// So, to be on the safe side, a quick put to 0...
-			for (int i = 0; i < totalmapsize; i++ )
-				sizeMap.putLong(0);
-			sizeMap.putLong(newBucketOffset, 8*totalmapsize);
-		}
-		catch (Throwable t)
-		{
-			throw new HGException(t);
-		}
-	}
-	
+
 	private int sizeIndex(int size)
 	{
-		return size <= smallEntriesCount ? smallEntriesOffset + size 
-										 : hashTableOffset + size % hashTableSize;
-				
+		return size <= smallEntriesCount ? smallEntriesOffset + 8*(size - 1)
+										 : hashTableOffset + 8*(size % hashTableSize);
 	}
+
 	private SizeBucket findSizeBucket(int desiredSize)
 	{
 		long position = sizeMap.getLong(sizeIndex(desiredSize));
 		return position == 0 ? null : new SizeBucket(position);
 	}
-	
+
 	private long reserveNew(int size)
 	{
 		// if no available block, we allocate at the end of the file
 		// as indicated by the offset at sizeMap[0];
 		long result = sizeMap.getLong(newSpaceOffset);
 		sizeMap.putLong(newSpaceOffset, result + size);
-		return result;		
+		return result;
 	}
-	
+
 	private SizeBucket newBucket(int size)
 	{
 		long offset = sizeMap.getLong(newBucketOffset);
@@ -132,65 +125,72 @@ public class FreeSpace extends FileStore
 		sizeMap.putLong(newBucketOffset, offset + bucketSize);
 		return bucket;
 	}
-	
+
 	private void freeBucket(SizeBucket bucket)
 	{
 		// First, we need to unlink from the list.
 		if (bucket.prevOffset() != 0)
-			bucket.prev().next(bucket.nextOffset());
+			new SizeBucket(bucket.prevOffset()).next(bucket.nextOffset());
 		else
 			sizeMap.putLong(sizeIndex(bucket.size()), bucket.nextOffset());
 		if (bucket.nextOffset() != 0)
 			bucket.next().prev(bucket.prevOffset());
 		// Next, if this is not the last bucket block in the file, we want to swap
-		// the last into it so as to reclaim that space
+		// the last into it so as to reclaim that space, and fix the pointers
+		// to the moved bucket.
 		long lastBucketPosition = sizeMap.getLong(newBucketOffset) - bucketSize;
 		if (lastBucketPosition != bucket.position)
 		{
 			byte [] data = new byte[bucketSize];
-			try
-			{
-				read(lastBucketPosition, bucketSize).get(data);
-				write(bucket.position, bucketSize).put(data);
-			}
-			catch (Throwable t)
-			{
-				throw new HGException(t);
-			}
+			buffer(lastBucketPosition, bucketSize).get(data);
+			bucket.buf.duplicate().put(data);
+			if (bucket.prevOffset() != 0)
+				new SizeBucket(bucket.prevOffset()).next(bucket.position);
+			else
+				sizeMap.putLong(sizeIndex(bucket.size()), bucket.position);
+			if (bucket.nextOffset() != 0)
+				bucket.next().prev(bucket.position);
 		}
-		sizeMap.putLong(newBucketOffset, lastBucketPosition); 
+		sizeMap.putLong(newBucketOffset, lastBucketPosition);
 	}
-	
+
 	public FreeSpace(File file, PithosConfig config)
 	{
-		super(file, config);
+		super(file, config, Math.max(1024*1024, config.getPageSize()));
 	}
-	
+
 	public void startup()
 	{
 		boolean isnew = !getFile().exists();
 		super.startup();
+		sizeMap = buffer(0, sizeMapSize);
 		if (isnew)
-			initializeFile();
-		else
-		{
-			int totalmapsize = 1 + smallEntriesCount + hashTableSize;
-			try
-			{
-				sizeMap = write(0, 8*totalmapsize);
-			}
-			catch (Throwable t)
-			{
-				throw new HGException(t);
-			}
-		}
+			reset(0);
 	}
-	
-	public void shutdown()
+
+	/**
+	 * Forget all free blocks and start allocating new space at
+	 * <code>endOfSpace</code>.
+	 */
+	public void reset(long endOfSpace)
+	{
+		// I have no idea if a new mapped file is 0-initialized, a test
+		// show that it is, but the API docs are silent about this.
+		// So, to be on the safe side, a quick put to 0...
+		for (int i = 0; i < sizeMapSize; i += 8)
+			sizeMap.putLong(i, 0);
+		sizeMap.putLong(newSpaceOffset, endOfSpace);
+		sizeMap.putLong(newBucketOffset, bucketsStart);
+	}
+
+	/**
+	 * The offset in the data file past all allocated blocks.
+	 */
+	public long endOfSpace()
 	{
-		super.shutdown();
+		return sizeMap.getLong(newSpaceOffset);
 	}
-	
+
 	public long findAvailable(int size)
 	{
 		for (SizeBucket bucket = findSizeBucket(size); bucket != null; bucket = bucket.next())
@@ -198,7 +198,7 @@ public class FreeSpace extends FileStore
 				return bucket.get();
 		return -1;
 	}
-	
+
 	public long reserve(int size)
 	{
 		long result = findAvailable(size);
@@ -207,57 +207,25 @@ public class FreeSpace extends FileStore
 		else
 			return reserveNew(size);
 	}
-	
+
 	public void free(long position, int size)
 	{
-		SizeBucket bucket = findSizeBucket(size);
-		if (bucket == null)
-		{
-			// create a new bucket with that size and put it as the first element of 
-			// bucket list for that size
-			bucket = newBucket(size);
-			sizeMap.putLong(sizeIndex(size), bucket.position);
-		}
-		else if (bucket.count() == bucket.max())
+		for (SizeBucket bucket = findSizeBucket(size); bucket != null; bucket = bucket.next())
+			if (bucket.size() == size && bucket.count() < bucket.max())
+			{
+				bucket.put(position);
+				return;
+			}
+		// create a new bucket with that size and put it as the first element of
+		// the bucket list for that size
+		SizeBucket bucket = newBucket(size);
+		long head = sizeMap.getLong(sizeIndex(size));
+		if (head != 0)
 		{
-			SizeBucket newb = newBucket(size);
-			newb.prev(bucket.position);
-			newb.next(bucket.nextOffset());
-			bucket.next(newb.position);
-			bucket = newb;
+			bucket.next(head);
+			new SizeBucket(head).prev(bucket.position);
 		}
+		sizeMap.putLong(sizeIndex(size), bucket.position);
 		bucket.put(position);
 	}
-
-	void test1() throws Exception
-	{
-		write(0, 100).putDouble(3.14);
-	}
-	
-	void test2() throws Exception
-	{
-		System.out.println(read(0, 100).getDouble());
-	}
-	
-	public static void main(String [] argv)
-	{
-		FreeSpace fs = new FreeSpace(new File("/home/borislav/tmp/freespacetest"), new PithosConfig());
-		fs.startup();
-		try
-		{
-			long p = fs.reserve(50);
-			long p2 = fs.reserve(1000);
-			long p3 = fs.reserve(1000);
-			System.out.println("" + p +"," + p2 + "," + p3);
-			fs.free(p, 50);
-		}
-		catch (Throwable t)
-		{
-			t.printStackTrace();
-		}
-		finally
-		{
-			fs.shutdown();
-		}
-	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,139 @@
+package org.hypergraphdb.pithos;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGRandomAccessResult;
+
+/**
+ * <p>
+ * An incidence set, ordered by {@link #ORDER}. It is read either directly from the sorted
+ * handle array of a {@link LinkStore} block, with <code>goTo</code> being a binary search
+ * in the file, or from an array when the current transaction has modified the set.
+ * </p>
+ *
+ * <p>
+ * A result set reading from the file is only valid during the transaction it was
+ * created in.
+ * </p>
+ */
+public class IncidenceResultSet implements HGRandomAccessResult<HGPersistentHandle>
+{
+	public static final Comparator<HGPersistentHandle> ORDER = new Comparator<HGPersistentHandle>()
+	{
+		public int compare(HGPersistentHandle left, HGPersistentHandle right)
+		{
+			return ByteArrayComparator.getInstance().compare(left.toByteArray(), right.toByteArray());
+		}
+	};
+
+	private final HGPersistentHandle [] array;
+	private final LinkStore store;
+	private final long position;
+	private final int size;
+	private int pos = -1;
+	private HGPersistentHandle current = null;
+
+	public IncidenceResultSet(HGPersistentHandle [] array)
+	{
+		this.array = array;
+		this.store = null;
+		this.position = -1;
+		this.size = array.length;
+	}
+
+	public IncidenceResultSet(LinkStore store, long position)
+	{
+		this.array = null;
+		this.store = store;
+		this.position = position;
+		this.size = store.count(position);
+	}
+
+	private HGPersistentHandle moveTo(int i)
+	{
+		pos = i;
+		current = array != null ? array[i] : store.readHandle(position, i);
+		return current;
+	}
+
+	public GotoResult goTo(HGPersistentHandle value, boolean exactMatch)
+	{
+		int idx = array != null ? Arrays.binarySearch(array, value, ORDER)
+								: store.search(position, value.toByteArray());
+		if (idx >= 0)
+		{
+			moveTo(idx);
+			return GotoResult.found;
+		}
+		else if (exactMatch)
+			return GotoResult.nothing;
+		else
+		{
+			idx = -(idx + 1);
+			if (idx >= size)
+				return GotoResult.nothing;
+			moveTo(idx);
+			return GotoResult.close;
+		}
+	}
+
+	public void goBeforeFirst()
+	{
+		pos = -1;
+		current = null;
+	}
+
+	public void goAfterLast()
+	{
+		pos = size;
+		current = null;
+	}
+
+	public boolean hasPrev()
+	{
+		return pos > 0;
+	}
+
+	public HGPersistentHandle prev()
+	{
+		if (!hasPrev())
+			throw new NoSuchElementException();
+		return moveTo(pos - 1);
+	}
+
+	public boolean hasNext()
+	{
+		return pos + 1 < size;
+	}
+
+	public HGPersistentHandle next()
+	{
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return moveTo(pos + 1);
+	}
+
+	public HGPersistentHandle current()
+	{
+		if (current == null)
+			throw new NoSuchElementException();
+		return current;
+	}
+
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	public void close()
+	{
+	}
+
+	public boolean isOrdered()
+	{
+		return true;
+	}
+}
@@ -0,0 +1,129 @@
+package org.hypergraphdb.pithos;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.hypergraphdb.HGRandomAccessResult;
+import org.hypergraphdb.storage.ByteArrayConverter;
+
+/**
+ * The result of an index query: a list of keys or values, in their byte array form, which
+ * are converted as they are returned. When the list is sorted by <code>comparator</code>,
+ * <code>goTo</code> is a binary search. Otherwise the result set is not ordered and
+ * <code>goTo</code> is not supported.
+ */
+public class IndexResultSet<T> implements HGRandomAccessResult<T>
+{
+	private final List<byte[]> elements;
+	private final ByteArrayConverter<T> converter;
+	private final Comparator<byte[]> comparator;
+	private int pos = -1;
+	private T current = null;
+
+	public IndexResultSet(List<byte[]> elements, ByteArrayConverter<T> converter, Comparator<byte[]> comparator)
+	{
+		this.elements = elements;
+		this.converter = converter;
+		this.comparator = comparator;
+	}
+
+	private T moveTo(int i)
+	{
+		pos = i;
+		byte [] data = elements.get(i);
+		current = converter.fromByteArray(data, 0, data.length);
+		return current;
+	}
+
+	public GotoResult goTo(T value, boolean exactMatch)
+	{
+		if (comparator == null)
+			throw new UnsupportedOperationException("Result set is not ordered.");
+		int idx = Collections.binarySearch(elements, converter.toByteArray(value), comparator);
+		if (idx >= 0)
+		{
+			// position on the first of equal elements
+			while (idx > 0 && comparator.compare(elements.get(idx - 1), elements.get(idx)) == 0)
+				idx--;
+			moveTo(idx);
+			return GotoResult.found;
+		}
+		else if (exactMatch)
+			return GotoResult.nothing;
+		else
+		{
+			idx = -(idx + 1);
+			if (idx >= elements.size())
+				return GotoResult.nothing;
+			moveTo(idx);
+			return GotoResult.close;
+		}
+	}
+
+	public void goBeforeFirst()
+	{
+		pos = -1;
+		current = null;
+	}
+
+	public void goAfterLast()
+	{
+		pos = elements.size();
+		current = null;
+	}
+
+	public boolean hasPrev()
+	{
+		return pos > 0;
+	}
+
+	public T prev()
+	{
+		if (!hasPrev())
+			throw new NoSuchElementException();
+		return moveTo(pos - 1);
+	}
+
+	public boolean hasNext()
+	{
+		return pos + 1 < elements.size();
+	}
+
+	public T next()
+	{
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return moveTo(pos + 1);
+	}
+
+	public T current()
+	{
+		if (pos < 0 || pos >= elements.size())
+			throw new NoSuchElementException();
+		return current;
+	}
+
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	public void close()
+	{
+	}
+
+	public boolean isOrdered()
+	{
+		return comparator != null;
+	}
+
+	/**
+	 * The number of elements in the result set.
+	 */
+	public int count()
+	{
+		return elements.size();
+	}
+}
@@ -0,0 +1,78 @@
+package org.hypergraphdb.pithos;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * The {@link BlockStore} of all indices. It holds two kinds of blocks:
+ * </p>
+ * <ul>
+ * <li>index entries: the id of the index (a positive number), the length of the
+ * key, the key and the value</li>
+ * <li>catalog entries: 0, the id of the index and its name</li>
+ * </ul>
+ */
+public class IndexStore extends BlockStore
+{
+	public static final int CATALOG = 0;
+
+	public IndexStore(byte id, File file, PithosConfig config)
+	{
+		super(id, file, config);
+	}
+
+	public static byte [] encodeEntry(int indexId, byte [] key, byte [] value)
+	{
+		return ByteBuffer.allocate(8 + key.length + value.length)
+				.putInt(indexId).putInt(key.length).put(key).put(value).array();
+	}
+
+	public static byte [] encodeCatalog(int indexId, String name)
+	{
+		byte [] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		return ByteBuffer.allocate(8 + nameBytes.length)
+				.putInt(CATALOG).putInt(indexId).put(nameBytes).array();
+	}
+
+	/**
+	 * The id of the index the block at <code>position</code> belongs to, or {@link #CATALOG}.
+	 */
+	public int indexOf(long position)
+	{
+		return getInt(position + HEADER_SIZE);
+	}
+
+	/**
+	 * Return the key and the value of the index entry at <code>position</code>.
+	 */
+	public PithosIndex.Entry readEntry(long position)
+	{
+		byte [] payload = readPayload(position);
+		ByteBuffer buf = ByteBuffer.wrap(payload);
+		buf.getInt();
+		byte [] key = new byte[buf.getInt()];
+		buf.get(key);
+		byte [] value = new byte[buf.remaining()];
+		buf.get(value);
+		return new PithosIndex.Entry(key, value);
+	}
+
+	/**
+	 * The id of the index described by the catalog entry at <code>position</code>.
+	 */
+	public int catalogId(long position)
+	{
+		return getInt(position + HEADER_SIZE + 4);
+	}
+
+	/**
+	 * The name of the index described by the catalog entry at <code>position</code>.
+	 */
+	public String catalogName(long position)
+	{
+		byte [] payload = readPayload(position);
+		return new String(payload, 8, payload.length - 8, StandardCharsets.UTF_8);
+	}
+}
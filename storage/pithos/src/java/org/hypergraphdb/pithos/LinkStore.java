@@ -1,118 +1,90 @@
 package org.hypergraphdb.pithos;
 
 import java.io.File;
-import java.nio.ByteBuffer;
 
-import org.hypergraphdb.HGException;
+import org.hypergraphdb.HGHandleFactory;
+import org.hypergraphdb.HGPersistentHandle;
 
-public class LinkStore extends FileStore
+/**
+ * <p>
+ * A {@link BlockStore} of handle arrays, stored as fixed width records: the handle
+ * of the owner followed by the handles of the array. This is used both for links and
+ * for incidence sets. The latter are kept sorted, in the unsigned order of the handles'
+ * bytes, so that an element can be looked up with a binary search directly in the file.
+ * </p>
+ */
+public class LinkStore extends BlockStore
 {
-	private FreeSpace freeSpace = null;
-	
-	public LinkStore(File file, PithosConfig config)
+	private final HGHandleFactory handleFactory;
+	private final int handleSize;
+
+	public LinkStore(byte id, File file, PithosConfig config, HGHandleFactory handleFactory)
 	{
-		super(file, config);
+		super(id, file, config);
+		this.handleFactory = handleFactory;
+		this.handleSize = handleFactory.nullHandle().toByteArray().length;
 	}
-	
-	public void startup()
+
+	public byte [] encode(HGPersistentHandle owner, HGPersistentHandle [] link)
 	{
-		super.startup();
-		freeSpace = new FreeSpace(new File(getFile().getAbsolutePath() + ".free"), config);
+		byte [] payload = new byte[(link.length + 1)*handleSize];
+		System.arraycopy(owner.toByteArray(), 0, payload, 0, handleSize);
+		for (int i = 0; i < link.length; i++)
+			System.arraycopy(link[i].toByteArray(), 0, payload, (i + 1)*handleSize, handleSize);
+		return payload;
 	}
-		
-	public void writeLink(UPHandle handle, UPHandle [] link)
-	{		
-		try
-		{
-			ByteBuffer buf = null;
-			long position = -1;
-			if (link.length > 2)
-			{
-				int minBlockSize = (link.length  - 2) * config.getHandleSize();
-				position = freeSpace.reserve(minBlockSize);				
-				buf = write(position, minBlockSize);
-				for (int i = 2; i < link.length; i++)
-				{
-					buf.putLong(link[i].getGlobal());
-					buf.putLong(link[i].getLocal());					
-				}
-			}
-			buf = write(handle.getLocal(),					   	  
-					   	  4 + config.getHandleSize()*2 + config.getPointerSize());
-			buf.putInt(link.length);
-			if (link.length > 0)
-			{
-				buf.putLong(link[0].getGlobal()).putLong(link[0].getLocal());
-				if (link.length > 1)
-					buf.putLong(link[1].getGlobal()).putLong(link[1].getLocal());
-			}
-			if (link.length > 0)
-			{
-				buf.putLong(position);
-			}
-		}
-		catch (Exception ex)
-		{
-			throw new HGException(ex);
-		}
+
+	public HGPersistentHandle owner(long position)
+	{
+		byte [] A = new byte[handleSize];
+		get(position + HEADER_SIZE, A, 0, handleSize);
+		return handleFactory.makeHandle(A);
 	}
-	
-	public void removeLink(UPHandle handle)
+
+	/**
+	 * The number of handles in the array stored at <code>position</code>.
+	 */
+	public int count(long position)
 	{
-		// TODO...
+		return payloadLength(position) / handleSize - 1;
 	}
-	
-	public UPHandle [] readLink(UPHandle handle)
+
+	public HGPersistentHandle readHandle(long position, int i)
 	{
-		try
-		{
-			ByteBuffer buf = null;
-			buf = read(4 + handle.getLocal(), config.getHandleSize()*2 + config.getPointerSize());
-			int size = buf.getInt();
-			UPHandle [] result = new UPHandle[size];
-			if (size > 0)
-			{
-				result[0] = new UPHandle(buf.getLong(), buf.getLong());
-				if (size > 1)
-					result[1] = new UPHandle(buf.getLong(), buf.getLong()); 
-			}
-			if (size > 2)
-			{
-				long position = buf.getLong();
-				buf = read(position, (size - 2) * config.getHandleSize());
-				for (int i = 2; i < size; i++)
-					result[i] = new UPHandle(buf.getLong(), buf.getLong());
-			}
-			return result;
-		}
-		catch (Exception ex)
-		{
-			throw new HGException(ex);
-		}
+		byte [] A = new byte[handleSize];
+		get(position + HEADER_SIZE + (i + 1)*handleSize, A, 0, handleSize);
+		return handleFactory.makeHandle(A);
 	}
-	
-	public void shutdown()
+
+	public HGPersistentHandle [] readLink(long position)
 	{
-		freeSpace.shutdown();		
-		super.shutdown();
+		byte [] payload = readPayload(position);
+		HGPersistentHandle [] result = new HGPersistentHandle[payload.length / handleSize - 1];
+		for (int i = 0; i < result.length; i++)
+			result[i] = handleFactory.makeHandle(payload, (i + 1)*handleSize);
+		return result;
 	}
-	
-	public static void main(String [] argv)
+
+	/**
+	 * Binary search of a handle, given as a byte array, in a sorted array stored at
+	 * <code>position</code>, with the same result as <code>java.util.Arrays.binarySearch</code>.
+	 */
+	public int search(long position, byte [] key)
 	{
-		PithosHandleFactory hfactory = new PithosHandleFactory();
-		LinkStore store = new LinkStore(new File("/tmp/linkstore"), new PithosConfig());
-		store.startup();
-		try
-		{
-			UPHandle [] A = new UPHandle[2];
-			A[0] = hfactory.makeHandle();
-			A[1] = hfactory.makeHandle();
-			store.writeLink(hfactory.makeHandle(), A);
-		}
-		catch (Throwable t)
+		byte [] A = new byte[handleSize];
+		int low = 0, high = count(position) - 1;
+		while (low <= high)
 		{
-			t.printStackTrace();
-			store.shutdown();
+			int mid = (low + high) >>> 1;
+			get(position + HEADER_SIZE + (mid + 1)*handleSize, A, 0, handleSize);
+			int c = ByteArrayComparator.compare(A, 0, key, 0, handleSize);
+			if (c < 0)
+				low = mid + 1;
+			else if (c > 0)
+				high = mid - 1;
+			else
+				return mid;
 		}
+		return -(low + 1);
 	}
-}
\ No newline at end of file
+}
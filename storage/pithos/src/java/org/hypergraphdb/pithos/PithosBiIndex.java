@@ -0,0 +1,72 @@
+package org.hypergraphdb.pithos;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.hypergraphdb.HGBidirectionalIndex;
+import org.hypergraphdb.HGRandomAccessResult;
+import org.hypergraphdb.storage.ByteArrayConverter;
+
+/**
+ * A bidirectional Pithos index. The entries are also kept sorted by value and then by key,
+ * sharing their versions with the forward entries.
+ */
+public class PithosBiIndex<KeyType, ValueType> extends PithosIndex<KeyType, ValueType>
+											   implements HGBidirectionalIndex<KeyType, ValueType>
+{
+	final ConcurrentSkipListMap<Entry, Version> inverse;
+
+	PithosBiIndex(String name,
+				  int id,
+				  PithosStore store,
+				  ByteArrayConverter<KeyType> keyConverter,
+				  ByteArrayConverter<ValueType> valueConverter,
+				  Comparator<byte[]> keyComparator,
+				  Comparator<byte[]> valueComparator)
+	{
+		super(name, id, store, keyConverter, valueConverter, keyComparator, valueComparator);
+		this.inverse = new ConcurrentSkipListMap<Entry, Version>(
+				entryOrder(this.valueComparator, this.keyComparator));
+	}
+
+	void publish(Entry entry, Version version)
+	{
+		super.publish(entry, version);
+		inverse.put(entry.inverse(), version);
+	}
+
+	void forget(Entry entry, Version version)
+	{
+		super.forget(entry, version);
+		inverse.remove(entry.inverse(), version);
+	}
+
+	NavigableMap<Entry, Boolean> viewValue(byte [] value)
+	{
+		return view(inverse, new Entry(value, LOW), new Entry(value, HIGH), true);
+	}
+
+	public HGRandomAccessResult<KeyType> findByValue(ValueType value)
+	{
+		ArrayList<byte[]> keys = new ArrayList<byte[]>();
+		for (Entry entry : viewValue(valueConverter.toByteArray(value)).keySet())
+			keys.add(entry.value);
+		return new IndexResultSet<KeyType>(keys, keyConverter, keyComparator);
+	}
+
+	public KeyType findFirstByValue(ValueType value)
+	{
+		NavigableMap<Entry, Boolean> keys = viewValue(valueConverter.toByteArray(value));
+		if (keys.isEmpty())
+			return null;
+		byte [] key = keys.firstKey().value;
+		return keyConverter.fromByteArray(key, 0, key.length);
+	}
+
+	public long countKeys(ValueType value)
+	{
+		return viewValue(valueConverter.toByteArray(value)).size();
+	}
+}
@@ -1,33 +1,108 @@
 package org.hypergraphdb.pithos;
 
+/**
+ * <p>
+ * The configuration of a {@link PithosStore}.
+ * </p>
+ *
+ * <p>
+ * Pithos keeps its directories and indices in memory, so the heap, and not only the
+ * disk, bounds the size of a database:
+ * </p>
+ * <ul>
+ * <li>The directory of links, data and incidence sets, one entry per handle, is rebuilt
+ * by a full scan of the files when the database is opened.</li>
+ * <li>The entries of an index are held in a <code>ConcurrentSkipListMap</code>
+ * ({@link PithosIndex}), and a bidirectional index holds a second one for the inverse
+ * entries ({@link PithosBiIndex}). The positions of the entries of all indices are
+ * collected by a full scan of the index file at startup, and an index is loaded entirely
+ * when it is first opened. Index pages are not stored on disk.</li>
+ * <li>An incidence set is stored as a single sorted block, rewritten as a whole by
+ * every commit that changes it, so atoms with very large incidence sets are expensive
+ * to link to.</li>
+ * </ul>
+ * <p>
+ * Pithos is thus meant for databases whose handles and index entries fit comfortably
+ * in the heap. Larger databases should use a storage engine with on-disk indices.
+ * </p>
+ */
 public class PithosConfig
 {
-	// Whether memory buffers should be written to disk as soon
-	// new data is written to them
-	private boolean forceWrite;
+	// Whether the write-ahead log should be forced to disk as soon
+	// as a transaction is committed
+	private boolean forceWrite = false;
+	private int pageSize = 4096;
+	private int segmentSize = 16*1024*1024;
+	private long checkpointSize = 32*1024*1024;
 
 	public int getHandleSize()
 	{
 		return 16;
 	}
-	
+
 	public int getPageSize()
 	{
-		return 4096;
+		return pageSize;
 	}
-	
+
+	/**
+	 * The unit of allocation of the data files. Records that fit in a page are
+	 * allocated in multiples of 16 bytes, bigger ones in multiples of the page size.
+	 */
+	public void setPageSize(int pageSize)
+	{
+		if (pageSize < 1024 || Integer.bitCount(pageSize) != 1)
+			throw new IllegalArgumentException("The page size must be a power of 2, at least 1024.");
+		this.pageSize = pageSize;
+	}
+
 	public int getPointerSize()
 	{
 		return 8;
 	}
-	
+
 	public boolean isForceWrite()
 	{
 		return forceWrite;
 	}
 
+	/**
+	 * When <code>true</code>, every commit waits for its log record to reach the disk.
+	 * Otherwise, a commit may be lost in a system crash (but not in a crash of the JVM),
+	 * though the database always recovers to a consistent state.
+	 */
 	public void setForceWrite(boolean forceWrite)
 	{
 		this.forceWrite = forceWrite;
-	}	
-}
\ No newline at end of file
+	}
+
+	public int getSegmentSize()
+	{
+		return segmentSize;
+	}
+
+	/**
+	 * The data files are memory mapped in segments of that size, a multiple of the
+	 * page size.
+	 */
+	public void setSegmentSize(int segmentSize)
+	{
+		if (segmentSize < pageSize || segmentSize % pageSize != 0)
+			throw new IllegalArgumentException("The segment size must be a multiple of the page size.");
+		this.segmentSize = segmentSize;
+	}
+
+	public long getCheckpointSize()
+	{
+		return checkpointSize;
+	}
+
+	/**
+	 * The size the write-ahead log can reach before a checkpoint, which flushes
+	 * the data files to disk and truncates the log.
+	 */
+	public void setCheckpointSize(long checkpointSize)
+	{
+		this.checkpointSize = checkpointSize;
+	}
+}
@@ -1,31 +1,39 @@
 package org.hypergraphdb.pithos;
 
-import java.util.UUID;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.hypergraphdb.HGException;
 import org.hypergraphdb.HGHandleFactory;
-import org.hypergraphdb.HGPersistentHandle;
-
 
+/**
+ * Creates {@link UPHandle}s. New handles share a random global part, drawn when the
+ * factory is created, and have a sequential local part.
+ */
 public class PithosHandleFactory implements HGHandleFactory
 {
-	private long global = 1;
-	private long local = 0;
+	private long global = new SecureRandom().nextLong() | 1;
+	private AtomicLong local = new AtomicLong(0);
 	
 	public UPHandle makeHandle()
 	{
-		return new UPHandle(global, local++);
+		return new UPHandle(global, local.getAndIncrement());
 	}
 
 	public UPHandle makeHandle(String handleAsString)
 	{
-		UUID uuid = UUID.fromString(handleAsString);
-		return new UPHandle(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+		int sep = handleAsString.indexOf(':');
+		if (sep < 0)
+			throw new IllegalArgumentException("Invalid handle " + handleAsString);
+		return new UPHandle(Long.parseLong(handleAsString.substring(0, sep)),
+							Long.parseLong(handleAsString.substring(sep + 1)));
 	}
 
 	public UPHandle makeHandle(byte[] buffer)
 	{
-		UUID uuid = UUID.nameUUIDFromBytes(buffer);
-		return new UPHandle(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+		return makeHandle(buffer, 0);
 	}
 
 	public UPHandle makeHandle(byte[] data, int offset)
@@ -33,12 +41,33 @@ public class PithosHandleFactory implements HGHandleFactory
         long msb = 0;
         long lsb = 0;
         for (int i=offset; i<8+offset; i++)
-            msb = (msb << 8) | (data[i+offset] & 0xff);
+            msb = (msb << 8) | (data[i] & 0xff);
         for (int i=8+offset; i<16+offset; i++)
-            lsb = (lsb << 8) | (data[i+offset] & 0xff);
+            lsb = (lsb << 8) | (data[i] & 0xff);
         return new UPHandle(msb, lsb);
 	}
 
+	public UPHandle makeHandle(InputStream in)
+	{
+		try
+		{
+			byte [] A = new byte[16];
+			int total = 0;
+			while (total < A.length)
+			{
+				int n = in.read(A, total, A.length - total);
+				if (n <= 0)
+					throw new HGException("Unexpected end of stream while reading a handle.");
+				total += n;
+			}
+			return makeHandle(A);
+		}
+		catch (IOException ex)
+		{
+			throw new HGException(ex);
+		}
+	}
+
 	public UPHandle nullHandle()
 	{
 		return new UPHandle(0,0);
@@ -68,4 +97,4 @@ public class PithosHandleFactory implements HGHandleFactory
 	{
 		return new UPHandle(0,5);		
 	}
-}
\ No newline at end of file
+}
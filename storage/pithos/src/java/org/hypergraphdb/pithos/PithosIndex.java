@@ -0,0 +1,367 @@
+package org.hypergraphdb.pithos;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.hypergraphdb.HGRandomAccessResult;
+import org.hypergraphdb.HGSearchResult;
+import org.hypergraphdb.HGSortIndex;
+import org.hypergraphdb.storage.ByteArrayConverter;
+import org.hypergraphdb.storage.HGIndexStats;
+
+/**
+ * <p>
+ * A Pithos index. The entries of an index are kept in memory, sorted by key and then by
+ * value, with their versions. Each entry is also stored as a block of the
+ * {@link IndexStore}, from which the index is loaded when it's first opened.
+ * </p>
+ *
+ * <p>
+ * The results of a query are computed when the query is issued, from the entries visible
+ * to the current transaction merged with the changes of the transaction.
+ * </p>
+ */
+public class PithosIndex<KeyType, ValueType> implements HGSortIndex<KeyType, ValueType>
+{
+	/**
+	 * Sentinels to look up the first and last entries of a key.
+	 */
+	static final byte [] LOW = new byte[0];
+	static final byte [] HIGH = new byte[0];
+
+	/**
+	 * An index entry, which is also used as an entry of the inverse map of a bidirectional
+	 * index with the key and the value swapped.
+	 */
+	static final class Entry
+	{
+		final byte [] key;
+		final byte [] value;
+
+		Entry(byte [] key, byte [] value)
+		{
+			this.key = key;
+			this.value = value;
+		}
+
+		Entry inverse()
+		{
+			return new Entry(value, key);
+		}
+	}
+
+	static Comparator<Entry> entryOrder(Comparator<byte[]> first, Comparator<byte[]> second)
+	{
+		return new Comparator<Entry>()
+		{
+			private int compare(byte [] x, byte [] y, Comparator<byte[]> comparator)
+			{
+				if (x == y)
+					return 0;
+				else if (x == LOW || y == HIGH)
+					return -1;
+				else if (x == HIGH || y == LOW)
+					return 1;
+				else
+					return comparator.compare(x, y);
+			}
+
+			public int compare(Entry left, Entry right)
+			{
+				int c = compare(left.key, right.key, first);
+				return c != 0 ? c : compare(left.value, right.value, second);
+			}
+		};
+	}
+
+	protected final String name;
+	protected final int id;
+	protected final PithosStore store;
+	protected final ByteArrayConverter<KeyType> keyConverter;
+	protected final ByteArrayConverter<ValueType> valueConverter;
+	protected final Comparator<byte[]> keyComparator;
+	protected final Comparator<byte[]> valueComparator;
+	private final Comparator<Entry> order;
+	final ConcurrentSkipListMap<Entry, Version> entries;
+	private volatile boolean open = false;
+
+	PithosIndex(String name,
+				int id,
+				PithosStore store,
+				ByteArrayConverter<KeyType> keyConverter,
+				ByteArrayConverter<ValueType> valueConverter,
+				Comparator<byte[]> keyComparator,
+				Comparator<byte[]> valueComparator)
+	{
+		this.name = name;
+		this.id = id;
+		this.store = store;
+		this.keyConverter = keyConverter;
+		this.valueConverter = valueConverter;
+		this.keyComparator = keyComparator == null ? ByteArrayComparator.getInstance() : keyComparator;
+		this.valueComparator = valueComparator == null ? ByteArrayComparator.getInstance() : valueComparator;
+		this.order = entryOrder(this.keyComparator, this.valueComparator);
+		this.entries = new ConcurrentSkipListMap<Entry, Version>(order);
+	}
+
+	Comparator<Entry> entryOrder()
+	{
+		return order;
+	}
+
+	int getId()
+	{
+		return id;
+	}
+
+	/**
+	 * Record a committed version of an entry.
+	 */
+	void publish(Entry entry, Version version)
+	{
+		entries.put(entry, version);
+	}
+
+	/**
+	 * Drop an entry whose last version is a removal no transaction can see anymore.
+	 */
+	void forget(Entry entry, Version version)
+	{
+		entries.remove(entry, version);
+	}
+
+	/**
+	 * The entries in the given range visible to the current transaction, in order. Each entry
+	 * is mapped to <code>true</code>.
+	 */
+	protected NavigableMap<Entry, Boolean> view(NavigableMap<Entry, Version> committed,
+												 Entry from,
+												 Entry to,
+												 boolean inverse)
+	{
+		checkOpen();
+		return store.read(snapshot -> {
+			TreeMap<Entry, Boolean> result = new TreeMap<Entry, Boolean>(committed.comparator());
+			for (Map.Entry<Entry, Version> e : committed.subMap(from, true, to, true).entrySet())
+			{
+				Version v = e.getValue().visible(snapshot);
+				if (v != null && !v.isRemoved())
+					result.put(e.getKey(), Boolean.TRUE);
+			}
+			ArrayList<TreeMap<Entry, Boolean>> changes = store.indexChangesOf(this);
+			if (changes == null)
+				return result;
+			for (TreeMap<Entry, Boolean> tx : changes)
+			{
+				// the changes are ordered as the forward index, the range is checked
+				// one entry at a time for the inverse one
+				NavigableMap<Entry, Boolean> range = inverse ? tx : tx.subMap(from, true, to, true);
+				for (Map.Entry<Entry, Boolean> e : range.entrySet())
+				{
+					Entry entry = inverse ? e.getKey().inverse() : e.getKey();
+					if (inverse && (result.comparator().compare(entry, from) < 0 ||
+									result.comparator().compare(entry, to) > 0))
+						continue;
+					if (e.getValue())
+						result.put(entry, Boolean.TRUE);
+					else
+						result.remove(entry);
+				}
+			}
+			return result;
+		});
+	}
+
+	NavigableMap<Entry, Boolean> view(Entry from, Entry to)
+	{
+		return view(entries, from, to, false);
+	}
+
+	NavigableMap<Entry, Boolean> viewKey(byte [] key)
+	{
+		return view(new Entry(key, LOW), new Entry(key, HIGH));
+	}
+
+	NavigableMap<Entry, Boolean> viewAll()
+	{
+		return view(new Entry(LOW, LOW), new Entry(HIGH, HIGH));
+	}
+
+	protected void checkOpen()
+	{
+		if (!isOpen())
+			throw new IllegalStateException("Index '" + name + "' is not open.");
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public void open()
+	{
+		open = true;
+	}
+
+	public void close()
+	{
+		open = false;
+	}
+
+	public boolean isOpen()
+	{
+		return open;
+	}
+
+	public void addEntry(KeyType key, ValueType value)
+	{
+		checkOpen();
+		Entry entry = new Entry(keyConverter.toByteArray(key), valueConverter.toByteArray(value));
+		store.write(tx -> tx.indexChanges(this).put(entry, Boolean.TRUE));
+	}
+
+	public void removeEntry(KeyType key, ValueType value)
+	{
+		checkOpen();
+		Entry entry = new Entry(keyConverter.toByteArray(key), valueConverter.toByteArray(value));
+		store.write(tx -> tx.indexChanges(this).put(entry, Boolean.FALSE));
+	}
+
+	public void removeAllEntries(KeyType key)
+	{
+		checkOpen();
+		byte [] keyBytes = keyConverter.toByteArray(key);
+		store.write(tx -> {
+			TreeMap<Entry, Boolean> changes = tx.indexChanges(this);
+			for (Entry entry : viewKey(keyBytes).keySet())
+				changes.put(entry, Boolean.FALSE);
+			return null;
+		});
+	}
+
+	public ValueType findFirst(KeyType key)
+	{
+		NavigableMap<Entry, Boolean> values = viewKey(keyConverter.toByteArray(key));
+		if (values.isEmpty())
+			return null;
+		byte [] value = values.firstKey().value;
+		return valueConverter.fromByteArray(value, 0, value.length);
+	}
+
+	public HGRandomAccessResult<ValueType> find(KeyType key)
+	{
+		ArrayList<byte[]> values = new ArrayList<byte[]>();
+		for (Entry entry : viewKey(keyConverter.toByteArray(key)).keySet())
+			values.add(entry.value);
+		return new IndexResultSet<ValueType>(values, valueConverter, valueComparator);
+	}
+
+	public HGRandomAccessResult<KeyType> scanKeys()
+	{
+		ArrayList<byte[]> keys = new ArrayList<byte[]>();
+		for (Entry entry : viewAll().keySet())
+			if (keys.isEmpty() || keyComparator.compare(keys.get(keys.size() - 1), entry.key) != 0)
+				keys.add(entry.key);
+		return new IndexResultSet<KeyType>(keys, keyConverter, keyComparator);
+	}
+
+	public HGRandomAccessResult<ValueType> scanValues()
+	{
+		ArrayList<byte[]> values = new ArrayList<byte[]>();
+		for (Entry entry : viewAll().keySet())
+			values.add(entry.value);
+		values.sort(valueComparator);
+		return new IndexResultSet<ValueType>(values, valueConverter, valueComparator);
+	}
+
+	private HGSearchResult<ValueType> findOrdered(KeyType key, boolean lower, boolean inclusive)
+	{
+		byte [] keyBytes = keyConverter.toByteArray(key);
+		NavigableMap<Entry, Boolean> range;
+		if (lower)
+			range = view(new Entry(LOW, LOW), new Entry(keyBytes, inclusive ? HIGH : LOW)).descendingMap();
+		else
+			range = view(new Entry(keyBytes, inclusive ? LOW : HIGH), new Entry(HIGH, HIGH));
+		ArrayList<byte[]> values = new ArrayList<byte[]>();
+		for (Entry entry : range.keySet())
+			values.add(entry.value);
+		return new IndexResultSet<ValueType>(values, valueConverter, null);
+	}
+
+	public HGSearchResult<ValueType> findLT(KeyType key)
+	{
+		return findOrdered(key, true, false);
+	}
+
+	public HGSearchResult<ValueType> findGT(KeyType key)
+	{
+		return findOrdered(key, false, false);
+	}
+
+	public HGSearchResult<ValueType> findLTE(KeyType key)
+	{
+		return findOrdered(key, true, true);
+	}
+
+	public HGSearchResult<ValueType> findGTE(KeyType key)
+	{
+		return findOrdered(key, false, true);
+	}
+
+	public long count()
+	{
+		return stats().entries(Long.MAX_VALUE, false).value();
+	}
+
+	public long count(KeyType key)
+	{
+		return stats().valuesOfKey(key, Long.MAX_VALUE, false).value();
+	}
+
+	long countEntries()
+	{
+		return viewAll().size();
+	}
+
+	long countValues(KeyType key)
+	{
+		return viewKey(keyConverter.toByteArray(key)).size();
+	}
+
+	long countKeys()
+	{
+		long result = 0;
+		byte [] last = null;
+		for (Iterator<Entry> i = viewAll().keySet().iterator(); i.hasNext(); )
+		{
+			byte [] key = i.next().key;
+			if (last == null || keyComparator.compare(last, key) != 0)
+				result++;
+			last = key;
+		}
+		return result;
+	}
+
+	long countValues()
+	{
+		ArrayList<byte[]> values = new ArrayList<byte[]>();
+		for (Entry entry : viewAll().keySet())
+			values.add(entry.value);
+		values.sort(valueComparator);
+		long result = 0;
+		for (int i = 0; i < values.size(); i++)
+			if (i == 0 || valueComparator.compare(values.get(i - 1), values.get(i)) != 0)
+				result++;
+		return result;
+	}
+
+	public HGIndexStats<KeyType, ValueType> stats()
+	{
+		return new PithosIndexStats<KeyType, ValueType>(this);
+	}
+}
@@ -0,0 +1,44 @@
+package org.hypergraphdb.pithos;
+
+import org.hypergraphdb.storage.HGIndexStats;
+
+/**
+ * Statistics of a {@link PithosIndex}. Since indices are kept in memory, all counts are
+ * exact and they are computed regardless of the cost asked for.
+ */
+public class PithosIndexStats<Key, Value> implements HGIndexStats<Key, Value>
+{
+	private final PithosIndex<Key, Value> index;
+
+	public PithosIndexStats(PithosIndex<Key, Value> index)
+	{
+		this.index = index;
+	}
+
+	public Count entries(long cost, boolean isEstimateOk)
+	{
+		return new Count(() -> index.countEntries(), false);
+	}
+
+	public Count keys(long cost, boolean isEstimateOk)
+	{
+		return new Count(() -> index.countKeys(), false);
+	}
+
+	public Count valuesOfKey(Key key, long cost, boolean isEstimateOk)
+	{
+		return new Count(() -> index.countValues(key), false);
+	}
+
+	public Count values(long cost, boolean isEstimateOk)
+	{
+		return new Count(() -> index.countValues(), false);
+	}
+
+	public Count keysWithValue(Value value, long cost, boolean isEstimateOk)
+	{
+		if (!(index instanceof PithosBiIndex))
+			return null;
+		return new Count(() -> ((PithosBiIndex<Key, Value>)index).countKeys(value), false);
+	}
+}
@@ -1,118 +1,903 @@
 package org.hypergraphdb.pithos;
 
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.LongFunction;
 
 import org.hypergraphdb.HGConfiguration;
+import org.hypergraphdb.HGException;
+import org.hypergraphdb.HGHandleFactory;
 import org.hypergraphdb.HGIndex;
 import org.hypergraphdb.HGPersistentHandle;
 import org.hypergraphdb.HGRandomAccessResult;
+import org.hypergraphdb.HGSearchResult;
 import org.hypergraphdb.HGStore;
+import org.hypergraphdb.storage.BAtoBA;
 import org.hypergraphdb.storage.ByteArrayConverter;
 import org.hypergraphdb.storage.HGStoreImplementation;
+import org.hypergraphdb.transaction.HGStorageTransaction;
+import org.hypergraphdb.transaction.HGTransaction;
+import org.hypergraphdb.transaction.HGTransactionConfig;
+import org.hypergraphdb.transaction.HGTransactionContext;
+import org.hypergraphdb.transaction.HGTransactionException;
 import org.hypergraphdb.transaction.HGTransactionFactory;
+import org.hypergraphdb.transaction.TransactionConflictException;
+import org.hypergraphdb.transaction.VanillaTransaction;
+import org.hypergraphdb.util.HGUtils;
 
+/**
+ * <p>
+ * The Pithos storage engine: a native HyperGraphDB store with no dependency beyond
+ * the JDK.
+ * </p>
+ *
+ * <p>
+ * Links, incidence sets, data and index entries are stored in four memory mapped
+ * {@link BlockStore}s. Links and incidence sets are fixed width handle arrays, the latter
+ * sorted so they can be searched in place. A directory of the records, mapping each handle
+ * to the versions of its block, is kept in memory and rebuilt by scanning the files when the
+ * database is opened.
+ * </p>
+ *
+ * <p>
+ * Transactions have snapshot isolation: they buffer their changes, which are written at
+ * commit time, serially, as new blocks. Blocks are never overwritten while a transaction
+ * may still read them, they are returned to the {@link FreeSpace} of their store when the
+ * last transaction that could see them is finished. Each commit is first appended to the
+ * {@link WriteAheadLog}, which is replayed when the database is opened after a crash.
+ * </p>
+ */
 public class PithosStore implements HGStoreImplementation
 {
+	private static final byte LINKS = 1;
+	private static final byte DATA = 2;
+	private static final byte INCIDENCE = 3;
+	private static final byte INDICES = 4;
+
+	/**
+	 * A block, or a version, that can be disposed of once all transactions started
+	 * before a given commit are finished.
+	 */
+	private static class Garbage
+	{
+		final long commit;
+		final BlockStore store;
+		final long position;
+		final Version newer;
+		final Runnable forget;
+
+		Garbage(long commit, BlockStore store, long position, Version newer, Runnable forget)
+		{
+			this.commit = commit;
+			this.store = store;
+			this.position = position;
+			this.newer = newer;
+			this.forget = forget;
+		}
+	}
+
+	/**
+	 * An index known to the catalog.
+	 */
+	private static class IndexDef
+	{
+		final int id;
+		final long position;
+		ArrayList<Long> entries = new ArrayList<Long>();
+
+		IndexDef(int id, long position)
+		{
+			this.id = id;
+			this.position = position;
+		}
+	}
+
+	/**
+	 * The changes of a commit being prepared.
+	 */
+	private class Commit
+	{
+		final long number = lastCommitted + 1;
+		final WriteAheadLog.Record record = new WriteAheadLog.Record();
+		final ArrayList<Runnable> apply = new ArrayList<Runnable>();
+		final ArrayList<Runnable> publish = new ArrayList<Runnable>();
+		final ArrayList<Garbage> garbage = new ArrayList<Garbage>();
+
+		void write(BlockStore store, long position, byte [] block)
+		{
+			record.write(store, position, block);
+			apply.add(() -> store.writeBlock(position, block));
+		}
+
+		void kill(BlockStore store, long position)
+		{
+			record.kill(store, position);
+			apply.add(() -> store.kill(position));
+		}
+
+		/**
+		 * Replace the record of a handle with a new payload, or remove it when the payload is
+		 * <code>null</code>.
+		 */
+		void replace(BlockStore store,
+					 ConcurrentHashMap<HGPersistentHandle, Version> versions,
+					 HGPersistentHandle handle,
+					 byte [] payload)
+		{
+			Version latest = versions.get(handle);
+			boolean live = latest != null && !latest.isRemoved();
+			if (payload == null && !live)
+				return;
+			long position = -1;
+			if (payload != null)
+			{
+				position = store.allocate(payload.length);
+				write(store, position, store.makeBlock(payload));
+			}
+			if (live)
+				kill(store, latest.position);
+			Version version = new Version(number, position, latest);
+			publish.add(() -> versions.put(handle, version));
+			if (latest != null)
+				garbage.add(new Garbage(number,
+										live ? store : null,
+										live ? latest.position : -1,
+										version,
+										payload == null ? () -> versions.remove(handle, version) : null));
+		}
+
+		boolean isEmpty()
+		{
+			return record.isEmpty();
+		}
+	}
+
 	private PithosConfig config = new PithosConfig();
-	
-	public Object getConfiguration()
+	private HGStore store;
+	private HGHandleFactory handleFactory;
+	private LinkStore links;
+	private DataStore data;
+	private LinkStore incidence;
+	private IndexStore indices;
+	private WriteAheadLog log;
+
+	private ConcurrentHashMap<HGPersistentHandle, Version> linkVersions;
+	private ConcurrentHashMap<HGPersistentHandle, Version> dataVersions;
+	private ConcurrentHashMap<HGPersistentHandle, Version> incidenceVersions;
+
+	private HashMap<String, IndexDef> catalog;
+	private HashMap<String, PithosIndex<?, ?>> openIndices;
+	private int maxIndexId;
+	private ReentrantReadWriteLock indicesLock = new ReentrantReadWriteLock();
+
+	// Commits are serialized, they are the only writers of the files.
+	private final Object commitLock = new Object();
+	private final ArrayDeque<Garbage> garbage = new ArrayDeque<Garbage>();
+	private HGException failure = null;
+
+	private final Object snapshotLock = new Object();
+	private volatile long lastCommitted = 0;
+	private final TreeMap<Long, Integer> activeSnapshots = new TreeMap<Long, Integer>();
+
+	public PithosConfig getConfiguration()
 	{
 	    return config;
 	}
 
+	private BlockStore blockStore(byte id)
+	{
+		switch (id)
+		{
+			case LINKS: return links;
+			case DATA: return data;
+			case INCIDENCE: return incidence;
+			case INDICES: return indices;
+			default: throw new HGException("Unknown Pithos store " + id);
+		}
+	}
+
+	private BlockStore [] blockStores()
+	{
+		return new BlockStore[] { links, data, incidence, indices };
+	}
+
 	public void startup(HGStore store, HGConfiguration configuration)
 	{
+		this.store = store;
+		this.handleFactory = configuration.getHandleFactory();
+		File dir = new File(store.getDatabaseLocation());
+		dir.mkdirs();
+		links = new LinkStore(LINKS, new File(dir, "pithos.links"), config, handleFactory);
+		data = new DataStore(DATA, new File(dir, "pithos.data"), config, handleFactory);
+		incidence = new LinkStore(INCIDENCE, new File(dir, "pithos.incidence"), config, handleFactory);
+		indices = new IndexStore(INDICES, new File(dir, "pithos.indices"), config);
+		log = new WriteAheadLog(new File(dir, "pithos.log"), config);
+		for (BlockStore s : blockStores())
+			s.startup();
+		log.startup();
+
+		// Bring the files up to date with the last logged commit
+		int replayed = log.replay(new WriteAheadLog.Replay()
+		{
+			public void write(byte storeId, long position, byte [] block)
+			{
+				blockStore(storeId).writeBlock(position, block);
+			}
+
+			public void kill(byte storeId, long position)
+			{
+				blockStore(storeId).kill(position);
+			}
+		});
+		if (replayed > 0)
+		{
+			for (BlockStore s : blockStores())
+				s.force();
+			log.truncate();
+		}
+		if (!log.wasClean())
+			for (BlockStore s : blockStores())
+				s.rebuildFreeSpace();
+		load();
+		log.markClean(false);
+		failure = null;
+	}
+
+	/**
+	 * Build the in memory directory of the records from the files.
+	 */
+	private void load()
+	{
+		lastCommitted = 0;
+		linkVersions = new ConcurrentHashMap<HGPersistentHandle, Version>();
+		dataVersions = new ConcurrentHashMap<HGPersistentHandle, Version>();
+		incidenceVersions = new ConcurrentHashMap<HGPersistentHandle, Version>();
+		links.scan((position, blockSize, live) -> {
+			if (live)
+				linkVersions.put(links.owner(position), new Version(0, position, null));
+		});
+		data.scan((position, blockSize, live) -> {
+			if (live)
+				dataVersions.put(data.owner(position), new Version(0, position, null));
+		});
+		incidence.scan((position, blockSize, live) -> {
+			if (live)
+				incidenceVersions.put(incidence.owner(position), new Version(0, position, null));
+		});
+		catalog = new HashMap<String, IndexDef>();
+		openIndices = new HashMap<String, PithosIndex<?, ?>>();
+		maxIndexId = 0;
+		HashMap<Integer, ArrayList<Long>> entries = new HashMap<Integer, ArrayList<Long>>();
+		indices.scan((position, blockSize, live) -> {
+			if (!live)
+				return;
+			int id = indices.indexOf(position);
+			if (id == IndexStore.CATALOG)
+			{
+				IndexDef def = new IndexDef(indices.catalogId(position), position);
+				catalog.put(indices.catalogName(position), def);
+				maxIndexId = Math.max(maxIndexId, def.id);
+			}
+			else
+				entries.computeIfAbsent(id, x -> new ArrayList<Long>()).add(position);
+		});
+		for (IndexDef def : catalog.values())
+		{
+			ArrayList<Long> L = entries.get(def.id);
+			if (L != null)
+				def.entries = L;
+		}
 	}
 
 	public void shutdown()
 	{
+		if (log == null)
+			return;
+		synchronized (commitLock)
+		{
+			try
+			{
+				if (failure == null)
+				{
+					collect(Long.MAX_VALUE);
+					checkpoint();
+					log.markClean(true);
+				}
+			}
+			finally
+			{
+				for (BlockStore s : blockStores())
+					s.shutdown();
+				log.shutdown();
+				log = null;
+			}
+		}
 	}
 
+	private void ensureOpen()
+	{
+		if (log == null)
+			throw new IllegalStateException("PithosStore is either closed or was never initialized.");
+	}
+
+	//
+	// Transactions and snapshots
+	//
+
 	public HGTransactionFactory getTransactionFactory()
 	{
-		return null;
+		return new HGTransactionFactory()
+		{
+			public HGStorageTransaction createTransaction(HGTransactionContext context,
+														  HGTransactionConfig config,
+														  HGTransaction parent)
+			{
+				if (config.isNoStorage())
+					return new VanillaTransaction();
+				ensureOpen();
+				PithosTransaction parentTx = parent != null && parent.getStorageTransaction() instanceof PithosTransaction
+						? (PithosTransaction)parent.getStorageTransaction() : null;
+				long snapshot = parentTx != null ? parentTx.getSnapshot() : beginSnapshot();
+				return new PithosTransaction(PithosStore.this, parentTx, snapshot,
+											 config.isReadonly() || (parentTx != null && parentTx.isReadonly()));
+			}
+
+			public boolean canRetryAfter(Throwable t)
+			{
+				return t instanceof TransactionConflictException;
+			}
+		};
+	}
+
+	/**
+	 * Start reading the database as of the last commit. The snapshot must be released with
+	 * {@link #endSnapshot(long)}.
+	 */
+	long beginSnapshot()
+	{
+		synchronized (snapshotLock)
+		{
+			long snapshot = lastCommitted;
+			activeSnapshots.merge(snapshot, 1, Integer::sum);
+			return snapshot;
+		}
+	}
+
+	void endSnapshot(long snapshot)
+	{
+		synchronized (snapshotLock)
+		{
+			activeSnapshots.computeIfPresent(snapshot, (s, n) -> n == 1 ? null : n - 1);
+		}
+	}
+
+	private long oldestSnapshot()
+	{
+		synchronized (snapshotLock)
+		{
+			return activeSnapshots.isEmpty() ? lastCommitted : activeSnapshots.firstKey();
+		}
+	}
+
+	private PithosTransaction txn()
+	{
+		HGTransaction tx = store.getTransactionManager().getContext().getCurrent();
+		if (tx == null)
+			return null;
+		HGStorageTransaction stx = tx.getStorageTransaction();
+		return stx instanceof PithosTransaction ? (PithosTransaction)stx : null;
+	}
+
+	private void checkNoTransaction()
+	{
+		if (store.getConfiguration().isEnforceTransactionsInStorageLayer())
+			throw new HGException("No current transaction in effect - please use " +
+				"HGTransactionManager.ensureTransaction or turn off transaction enforceability.");
 	}
 
+	/**
+	 * Read the database as of the snapshot of the current transaction or, if there is no
+	 * transaction, of the last commit.
+	 */
+	<T> T read(LongFunction<T> f)
+	{
+		ensureOpen();
+		PithosTransaction tx = txn();
+		if (tx != null)
+			return f.apply(tx.getSnapshot());
+		checkNoTransaction();
+		long snapshot = beginSnapshot();
+		try
+		{
+			return f.apply(snapshot);
+		}
+		finally
+		{
+			endSnapshot(snapshot);
+		}
+	}
+
+	/**
+	 * Make changes within the current transaction or, if there is none, within a
+	 * transaction committed right away.
+	 */
+	<T> T write(Function<PithosTransaction, T> f)
+	{
+		ensureOpen();
+		PithosTransaction tx = txn();
+		if (tx != null)
+			return f.apply(tx);
+		checkNoTransaction();
+		tx = new PithosTransaction(this, null, beginSnapshot(), false);
+		try
+		{
+			T result = f.apply(tx);
+			tx.commit();
+			return result;
+		}
+		catch (HGTransactionException ex)
+		{
+			throw new HGException(ex);
+		}
+		finally
+		{
+			// no-op if committed
+			tx.release();
+		}
+	}
+
+	ArrayList<TreeMap<PithosIndex.Entry, Boolean>> indexChangesOf(PithosIndex<?, ?> index)
+	{
+		PithosTransaction tx = txn();
+		return tx == null ? null : tx.indexChangesOf(index);
+	}
+
+	//
+	// Commits
+	//
+
+	private void checkFailure()
+	{
+		if (failure != null)
+			throw new HGException("A previous commit failed, the database must be reopened.", failure);
+	}
+
+	/**
+	 * Write the changes of a top-level transaction.
+	 */
+	void commit(PithosTransaction tx)
+	{
+		synchronized (commitLock)
+		{
+			ensureOpen();
+			checkFailure();
+			if (tx.links != null)
+				for (HGPersistentHandle h : tx.links.keySet())
+					checkConflict(linkVersions.get(h), tx);
+			if (tx.data != null)
+				for (HGPersistentHandle h : tx.data.keySet())
+					checkConflict(dataVersions.get(h), tx);
+			Commit commit = new Commit();
+			try
+			{
+				if (tx.links != null)
+					for (Map.Entry<HGPersistentHandle, HGPersistentHandle[]> e : tx.links.entrySet())
+						commit.replace(links, linkVersions, e.getKey(),
+									   e.getValue() == null ? null : links.encode(e.getKey(), e.getValue()));
+				if (tx.data != null)
+					for (Map.Entry<HGPersistentHandle, byte[]> e : tx.data.entrySet())
+						commit.replace(data, dataVersions, e.getKey(),
+									   e.getValue() == null ? null : data.encode(e.getKey(), e.getValue()));
+				if (tx.incidence != null)
+					for (Map.Entry<HGPersistentHandle, PithosTransaction.IncidenceChanges> e : tx.incidence.entrySet())
+						commitIncidence(commit, e.getKey(), e.getValue());
+				if (tx.indices != null)
+					for (Map.Entry<PithosIndex<?, ?>, TreeMap<PithosIndex.Entry, Boolean>> e : tx.indices.entrySet())
+						commitIndex(commit, e.getKey(), e.getValue());
+			}
+			catch (RuntimeException ex)
+			{
+				fail(ex);
+			}
+			finish(commit);
+		}
+	}
+
+	private void checkConflict(Version latest, PithosTransaction tx)
+	{
+		if (latest != null && latest.commit > tx.getSnapshot())
+			throw new TransactionConflictException();
+	}
+
+	private void commitIncidence(Commit commit, HGPersistentHandle atom, PithosTransaction.IncidenceChanges changes)
+	{
+		Version latest = incidenceVersions.get(atom);
+		HGPersistentHandle [] current = latest == null || latest.isRemoved()
+				? HGUtils.EMPTY_HANDLE_ARRAY : incidence.readLink(latest.position);
+		HGPersistentHandle [] updated = changes.applyTo(current);
+		if (Arrays.equals(current, updated))
+			return;
+		commit.replace(incidence, incidenceVersions, atom,
+					   updated.length == 0 ? null : incidence.encode(atom, updated));
+	}
+
+	private void commitIndex(Commit commit, PithosIndex<?, ?> index, TreeMap<PithosIndex.Entry, Boolean> changes)
+	{
+		if (!index.isOpen())
+			return;
+		for (Map.Entry<PithosIndex.Entry, Boolean> e : changes.entrySet())
+		{
+			PithosIndex.Entry entry = e.getKey();
+			Version latest = index.entries.get(entry);
+			boolean live = latest != null && !latest.isRemoved();
+			if (e.getValue() == live)
+				continue;
+			Version version;
+			if (live)
+			{
+				commit.kill(indices, latest.position);
+				version = new Version(commit.number, -1, latest);
+				commit.garbage.add(new Garbage(commit.number, indices, latest.position, version,
+											   () -> index.forget(entry, version)));
+			}
+			else
+			{
+				byte [] payload = IndexStore.encodeEntry(index.getId(), entry.key, entry.value);
+				long position = indices.allocate(payload.length);
+				commit.write(indices, position, indices.makeBlock(payload));
+				version = new Version(commit.number, position, latest);
+				if (latest != null)
+					commit.garbage.add(new Garbage(commit.number, null, -1, version, null));
+			}
+			commit.publish.add(() -> index.publish(entry, version));
+		}
+	}
+
+	private void fail(Throwable t)
+	{
+		// Blocks may have been reserved, or written, without being logged, so it's
+		// not safe to go on.
+		failure = new HGException("Pithos commit failed.", t);
+		throw failure;
+	}
+
+	/**
+	 * Log and apply the changes of a commit, then make them visible.
+	 */
+	private void finish(Commit commit)
+	{
+		if (commit.isEmpty())
+			return;
+		try
+		{
+			log.append(commit.record);
+			for (Runnable r : commit.apply)
+				r.run();
+		}
+		catch (Throwable t)
+		{
+			fail(t);
+		}
+		for (Runnable r : commit.publish)
+			r.run();
+		synchronized (snapshotLock)
+		{
+			lastCommitted = commit.number;
+		}
+		garbage.addAll(commit.garbage);
+		collect(oldestSnapshot());
+		if (log.size() > config.getCheckpointSize())
+			checkpoint();
+	}
+
+	/**
+	 * Dispose of the blocks and versions no transaction can see anymore.
+	 */
+	private void collect(long oldestSnapshot)
+	{
+		while (!garbage.isEmpty() && garbage.peek().commit <= oldestSnapshot)
+		{
+			Garbage g = garbage.poll();
+			if (g.newer != null)
+				g.newer.older = null;
+			if (g.store != null)
+				g.store.release(g.position);
+			if (g.forget != null)
+				g.forget.run();
+		}
+	}
+
+	/**
+	 * Flush the files to disk and truncate the log.
+	 */
+	private void checkpoint()
+	{
+		for (BlockStore s : blockStores())
+			s.force();
+		log.truncate();
+	}
+
+	//
+	// Links and data
+	//
+
 	public HGPersistentHandle store(HGPersistentHandle handle, HGPersistentHandle[] link)
 	{
-		return null;
+		HGPersistentHandle [] copy = link.clone();
+		write(tx -> { tx.putLink(handle, copy); return null; });
+		return handle;
 	}
 
 	public HGPersistentHandle[] getLink(HGPersistentHandle handle)
 	{
-		return null;
+		return read(snapshot -> {
+			PithosTransaction tx = txn();
+			Object changed = tx == null ? PithosTransaction.UNCHANGED : tx.getLink(handle);
+			if (changed != PithosTransaction.UNCHANGED)
+				return changed == null ? null : ((HGPersistentHandle[])changed).clone();
+			long position = Version.position(linkVersions.get(handle), snapshot);
+			return position < 0 ? null : links.readLink(position);
+		});
 	}
 
 	public void removeLink(HGPersistentHandle handle)
 	{
+		write(tx -> { tx.putLink(handle, null); return null; });
 	}
 
 	public boolean containsLink(HGPersistentHandle handle)
 	{
-		return false;
+		return read(snapshot -> {
+			PithosTransaction tx = txn();
+			Object changed = tx == null ? PithosTransaction.UNCHANGED : tx.getLink(handle);
+			if (changed != PithosTransaction.UNCHANGED)
+				return changed != null;
+			return Version.position(linkVersions.get(handle), snapshot) >= 0;
+		});
 	}
 
 	public boolean containsData(HGPersistentHandle handle)
 	{
-		return false;
+		return read(snapshot -> {
+			PithosTransaction tx = txn();
+			Object changed = tx == null ? PithosTransaction.UNCHANGED : tx.getData(handle);
+			if (changed != PithosTransaction.UNCHANGED)
+				return changed != null;
+			return Version.position(dataVersions.get(handle), snapshot) >= 0;
+		});
 	}
-	
-	public HGPersistentHandle store(HGPersistentHandle handle, byte[] data)
+
+	public HGPersistentHandle store(HGPersistentHandle handle, byte[] bytes)
 	{
-		return null;
+		byte [] copy = bytes.clone();
+		write(tx -> { tx.putData(handle, copy); return null; });
+		return handle;
 	}
 
 	public void removeData(HGPersistentHandle handle)
 	{
+		write(tx -> { tx.putData(handle, null); return null; });
 	}
 
 	public byte[] getData(HGPersistentHandle handle)
 	{
-		return null;
+		return read(snapshot -> {
+			PithosTransaction tx = txn();
+			Object changed = tx == null ? PithosTransaction.UNCHANGED : tx.getData(handle);
+			if (changed != PithosTransaction.UNCHANGED)
+				return changed == null ? null : ((byte[])changed).clone();
+			long position = Version.position(dataVersions.get(handle), snapshot);
+			return position < 0 ? null : data.readData(position);
+		});
 	}
 
-	public HGRandomAccessResult<HGPersistentHandle> getIncidenceResultSet(
-			HGPersistentHandle handle)
+	//
+	// Incidence sets
+	//
+
+	/**
+	 * The incidence set visible to the current transaction, as an array, or <code>null</code>
+	 * if it's not modified by the transaction and can be read from the file.
+	 */
+	private HGPersistentHandle [] incidenceSet(PithosTransaction tx, HGPersistentHandle atom, long position)
+	{
+		ArrayList<PithosTransaction.IncidenceChanges> changes = tx == null ? null : tx.incidenceChangesOf(atom);
+		if (changes == null)
+			return tx != null || position < 0 ? null : incidence.readLink(position);
+		HGPersistentHandle [] result = position < 0 ? HGUtils.EMPTY_HANDLE_ARRAY : incidence.readLink(position);
+		for (PithosTransaction.IncidenceChanges c : changes)
+			result = c.applyTo(result);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	public HGRandomAccessResult<HGPersistentHandle> getIncidenceResultSet(HGPersistentHandle handle)
 	{
-		return null;
+		return read(snapshot -> {
+			PithosTransaction tx = txn();
+			long position = Version.position(incidenceVersions.get(handle), snapshot);
+			HGPersistentHandle [] set = incidenceSet(tx, handle, position);
+			if (set == null && position >= 0)
+				return new IncidenceResultSet(incidence, position);
+			else if (set == null || set.length == 0)
+				return (HGRandomAccessResult<HGPersistentHandle>)HGSearchResult.EMPTY;
+			else
+				return new IncidenceResultSet(set);
+		});
 	}
 
 	public void removeIncidenceSet(HGPersistentHandle handle)
 	{
+		write(tx -> { tx.incidenceChanges(handle).clear(); return null; });
 	}
 
 	public long getIncidenceSetCardinality(HGPersistentHandle handle)
 	{
-		return 0;
+		return read(snapshot -> {
+			PithosTransaction tx = txn();
+			long position = Version.position(incidenceVersions.get(handle), snapshot);
+			HGPersistentHandle [] set = incidenceSet(tx, handle, position);
+			if (set != null)
+				return (long)set.length;
+			return position < 0 ? 0L : (long)incidence.count(position);
+		});
 	}
 
-	public void addIncidenceLink(HGPersistentHandle handle,
-			HGPersistentHandle newLink)
+	public void addIncidenceLink(HGPersistentHandle handle, HGPersistentHandle newLink)
 	{
-		// TODO Auto-generated method stub
-
+		write(tx -> { tx.incidenceChanges(handle).add(newLink); return null; });
 	}
 
-	public void removeIncidenceLink(HGPersistentHandle handle,
-			HGPersistentHandle oldLink)
+	public void removeIncidenceLink(HGPersistentHandle handle, HGPersistentHandle oldLink)
 	{
-		// TODO Auto-generated method stub
+		write(tx -> { tx.incidenceChanges(handle).remove(oldLink); return null; });
+	}
+
+	//
+	// Indices
+	//
 
+	@SuppressWarnings("unchecked")
+	public <KeyType, ValueType> HGIndex<KeyType, ValueType> getIndex(String name)
+	{
+		ensureOpen();
+		indicesLock.readLock().lock();
+		try
+		{
+			return (HGIndex<KeyType, ValueType>)openIndices.get(name);
+		}
+		finally
+		{
+			indicesLock.readLock().unlock();
+		}
 	}
 
+	@SuppressWarnings("unchecked")
 	public <KeyType, ValueType> HGIndex<KeyType, ValueType> getIndex(
 			String name, ByteArrayConverter<KeyType> keyConverter,
 			ByteArrayConverter<ValueType> valueConverter,
-			Comparator<?> comparator, boolean isBidirectional,
-			boolean createIfNecessary)
+			Comparator<byte[]> keyComparator, Comparator<byte[]> valueComparator,
+			boolean isBidirectional, boolean createIfNecessary)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		ensureOpen();
+		indicesLock.readLock().lock();
+		try
+		{
+			HGIndex<KeyType, ValueType> idx = (HGIndex<KeyType, ValueType>)openIndices.get(name);
+			if (idx != null)
+				return idx;
+			if (!catalog.containsKey(name) && !createIfNecessary)
+				return null;
+		}
+		finally
+		{
+			indicesLock.readLock().unlock();
+		}
+
+		indicesLock.writeLock().lock();
+		try
+		{
+			HGIndex<KeyType, ValueType> idx = (HGIndex<KeyType, ValueType>)openIndices.get(name);
+			if (idx != null)
+				return idx;
+			IndexDef def = catalog.get(name);
+			if (def == null)
+			{
+				if (!createIfNecessary)
+					return null;
+				def = createIndex(name);
+			}
+			if (keyConverter == null)
+				keyConverter = (ByteArrayConverter<KeyType>)BAtoBA.getInstance();
+			if (valueConverter == null)
+				valueConverter = (ByteArrayConverter<ValueType>)BAtoBA.getInstance();
+			PithosIndex<KeyType, ValueType> result = isBidirectional
+				? new PithosBiIndex<KeyType, ValueType>(name, def.id, this, keyConverter, valueConverter,
+														keyComparator, valueComparator)
+				: new PithosIndex<KeyType, ValueType>(name, def.id, this, keyConverter, valueConverter,
+													  keyComparator, valueComparator);
+			for (long position : def.entries)
+				result.publish(indices.readEntry(position), new Version(0, position, null));
+			def.entries = new ArrayList<Long>();
+			result.open();
+			openIndices.put(name, result);
+			return result;
+		}
+		finally
+		{
+			indicesLock.writeLock().unlock();
+		}
 	}
 
-	public void removeIndex(String name)
+	private IndexDef createIndex(String name)
 	{
-		// TODO Auto-generated method stub
+		synchronized (commitLock)
+		{
+			checkFailure();
+			Commit commit = new Commit();
+			IndexDef def = null;
+			try
+			{
+				byte [] payload = IndexStore.encodeCatalog(maxIndexId + 1, name);
+				long position = indices.allocate(payload.length);
+				commit.write(indices, position, indices.makeBlock(payload));
+				def = new IndexDef(maxIndexId + 1, position);
+			}
+			catch (RuntimeException ex)
+			{
+				fail(ex);
+			}
+			finish(commit);
+			maxIndexId = def.id;
+			catalog.put(name, def);
+			return def;
+		}
+	}
 
+	public void removeIndex(String name)
+	{
+		ensureOpen();
+		indicesLock.writeLock().lock();
+		try
+		{
+			IndexDef def = catalog.get(name);
+			if (def == null)
+				return;
+			PithosIndex<?, ?> idx = openIndices.remove(name);
+			if (idx != null)
+				idx.close();
+			synchronized (commitLock)
+			{
+				checkFailure();
+				Commit commit = new Commit();
+				commit.kill(indices, def.position);
+				commit.garbage.add(new Garbage(commit.number, indices, def.position, null, null));
+				ArrayList<Long> positions = new ArrayList<Long>(def.entries);
+				if (idx != null)
+					for (Version v : idx.entries.values())
+						if (!v.isRemoved())
+							positions.add(v.position);
+				for (long position : positions)
+				{
+					commit.kill(indices, position);
+					commit.garbage.add(new Garbage(commit.number, indices, position, null, null));
+				}
+				finish(commit);
+			}
+			catalog.remove(name);
+		}
+		finally
+		{
+			indicesLock.writeLock().unlock();
+		}
 	}
-}
\ No newline at end of file
+}
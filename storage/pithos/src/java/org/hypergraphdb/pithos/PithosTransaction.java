@@ -0,0 +1,293 @@
+package org.hypergraphdb.pithos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.transaction.HGStorageTransaction;
+import org.hypergraphdb.transaction.HGTransactionException;
+import org.hypergraphdb.transaction.TransactionIsReadonlyException;
+
+/**
+ * <p>
+ * A Pithos storage transaction. It reads the database as of the last commit preceding its
+ * start (its snapshot) and accumulates its own changes in memory. Upon commit, the changes
+ * of a nested transaction are merged into its parent while those of a top-level transaction
+ * are written to the database by {@link PithosStore#commit(PithosTransaction)}.
+ * </p>
+ *
+ * <p>
+ * Incidence sets and index entries are changed by adding or removing elements. Those
+ * changes are applied to the latest committed state at commit time, so they never conflict
+ * with the changes of concurrent transactions. Links and data are replaced as a whole: a
+ * transaction can't commit if one of the records it wrote was committed by another
+ * transaction after its snapshot.
+ * </p>
+ */
+public class PithosTransaction implements HGStorageTransaction
+{
+	/**
+	 * The changes to a single incidence set.
+	 */
+	static class IncidenceChanges
+	{
+		boolean cleared = false;
+		TreeSet<HGPersistentHandle> added = new TreeSet<HGPersistentHandle>(IncidenceResultSet.ORDER);
+		TreeSet<HGPersistentHandle> removed = new TreeSet<HGPersistentHandle>(IncidenceResultSet.ORDER);
+
+		void add(HGPersistentHandle h)
+		{
+			removed.remove(h);
+			added.add(h);
+		}
+
+		void remove(HGPersistentHandle h)
+		{
+			added.remove(h);
+			removed.add(h);
+		}
+
+		void clear()
+		{
+			cleared = true;
+			added.clear();
+			removed.clear();
+		}
+
+		void mergeInto(IncidenceChanges parent)
+		{
+			if (cleared)
+				parent.clear();
+			for (HGPersistentHandle h : removed)
+				parent.remove(h);
+			for (HGPersistentHandle h : added)
+				parent.add(h);
+		}
+
+		/**
+		 * Apply the changes to a sorted set.
+		 */
+		HGPersistentHandle [] applyTo(HGPersistentHandle [] base)
+		{
+			TreeSet<HGPersistentHandle> result = new TreeSet<HGPersistentHandle>(IncidenceResultSet.ORDER);
+			if (!cleared)
+				for (HGPersistentHandle h : base)
+					result.add(h);
+			result.removeAll(removed);
+			result.addAll(added);
+			return result.toArray(new HGPersistentHandle[result.size()]);
+		}
+	}
+
+	/**
+	 * Returned for records not changed by the transaction.
+	 */
+	static final Object UNCHANGED = new Object();
+
+	private final PithosStore store;
+	private final PithosTransaction parent;
+	private final long snapshot;
+	private final boolean readonly;
+	private boolean finished = false;
+
+	HashMap<HGPersistentHandle, HGPersistentHandle[]> links = null;
+	HashMap<HGPersistentHandle, byte[]> data = null;
+	HashMap<HGPersistentHandle, IncidenceChanges> incidence = null;
+	HashMap<PithosIndex<?, ?>, TreeMap<PithosIndex.Entry, Boolean>> indices = null;
+
+	PithosTransaction(PithosStore store, PithosTransaction parent, long snapshot, boolean readonly)
+	{
+		this.store = store;
+		this.parent = parent;
+		this.snapshot = snapshot;
+		this.readonly = readonly;
+	}
+
+	public long getSnapshot()
+	{
+		return snapshot;
+	}
+
+	public PithosTransaction getParent()
+	{
+		return parent;
+	}
+
+	public boolean isReadonly()
+	{
+		return readonly;
+	}
+
+	boolean isEmpty()
+	{
+		return links == null && data == null && incidence == null && indices == null;
+	}
+
+	private void checkWritable()
+	{
+		if (readonly)
+			throw new TransactionIsReadonlyException();
+		if (finished)
+			throw new IllegalStateException("Pithos transaction already committed or aborted.");
+	}
+
+	void putLink(HGPersistentHandle handle, HGPersistentHandle [] link)
+	{
+		checkWritable();
+		if (links == null)
+			links = new HashMap<HGPersistentHandle, HGPersistentHandle[]>();
+		links.put(handle, link);
+	}
+
+	/**
+	 * The link written by this transaction or one of its parents, <code>null</code> if it was
+	 * removed and {@link #UNCHANGED} if it wasn't changed.
+	 */
+	Object getLink(HGPersistentHandle handle)
+	{
+		for (PithosTransaction t = this; t != null; t = t.parent)
+			if (t.links != null && t.links.containsKey(handle))
+				return t.links.get(handle);
+		return UNCHANGED;
+	}
+
+	void putData(HGPersistentHandle handle, byte [] bytes)
+	{
+		checkWritable();
+		if (data == null)
+			data = new HashMap<HGPersistentHandle, byte[]>();
+		data.put(handle, bytes);
+	}
+
+	/**
+	 * Same as {@link #getLink(HGPersistentHandle)} for data.
+	 */
+	Object getData(HGPersistentHandle handle)
+	{
+		for (PithosTransaction t = this; t != null; t = t.parent)
+			if (t.data != null && t.data.containsKey(handle))
+				return t.data.get(handle);
+		return UNCHANGED;
+	}
+
+	IncidenceChanges incidenceChanges(HGPersistentHandle handle)
+	{
+		checkWritable();
+		if (incidence == null)
+			incidence = new HashMap<HGPersistentHandle, IncidenceChanges>();
+		return incidence.computeIfAbsent(handle, h -> new IncidenceChanges());
+	}
+
+	/**
+	 * The changes to an incidence set made by this transaction and its parents, outermost
+	 * first, or <code>null</code> if there are none.
+	 */
+	ArrayList<IncidenceChanges> incidenceChangesOf(HGPersistentHandle handle)
+	{
+		ArrayList<IncidenceChanges> result = null;
+		for (PithosTransaction t = this; t != null; t = t.parent)
+		{
+			IncidenceChanges changes = t.incidence == null ? null : t.incidence.get(handle);
+			if (changes != null)
+			{
+				if (result == null)
+					result = new ArrayList<IncidenceChanges>();
+				result.add(0, changes);
+			}
+		}
+		return result;
+	}
+
+	TreeMap<PithosIndex.Entry, Boolean> indexChanges(PithosIndex<?, ?> index)
+	{
+		checkWritable();
+		if (indices == null)
+			indices = new HashMap<PithosIndex<?, ?>, TreeMap<PithosIndex.Entry, Boolean>>();
+		return indices.computeIfAbsent(index, idx -> new TreeMap<PithosIndex.Entry, Boolean>(idx.entryOrder()));
+	}
+
+	/**
+	 * The changes to an index made by this transaction and its parents, outermost first,
+	 * or <code>null</code> if there are none.
+	 */
+	ArrayList<TreeMap<PithosIndex.Entry, Boolean>> indexChangesOf(PithosIndex<?, ?> index)
+	{
+		ArrayList<TreeMap<PithosIndex.Entry, Boolean>> result = null;
+		for (PithosTransaction t = this; t != null; t = t.parent)
+		{
+			TreeMap<PithosIndex.Entry, Boolean> changes = t.indices == null ? null : t.indices.get(index);
+			if (changes != null)
+			{
+				if (result == null)
+					result = new ArrayList<TreeMap<PithosIndex.Entry, Boolean>>();
+				result.add(0, changes);
+			}
+		}
+		return result;
+	}
+
+	private void mergeInto(PithosTransaction parent)
+	{
+		if (links != null)
+		{
+			if (parent.links == null)
+				parent.links = links;
+			else
+				parent.links.putAll(links);
+		}
+		if (data != null)
+		{
+			if (parent.data == null)
+				parent.data = data;
+			else
+				parent.data.putAll(data);
+		}
+		if (incidence != null)
+			for (Map.Entry<HGPersistentHandle, IncidenceChanges> e : incidence.entrySet())
+				e.getValue().mergeInto(parent.incidenceChanges(e.getKey()));
+		if (indices != null)
+			for (Map.Entry<PithosIndex<?, ?>, TreeMap<PithosIndex.Entry, Boolean>> e : indices.entrySet())
+				parent.indexChanges(e.getKey()).putAll(e.getValue());
+	}
+
+	public void commit() throws HGTransactionException
+	{
+		if (finished)
+			return;
+		finished = true;
+		try
+		{
+			if (isEmpty())
+				return;
+			if (parent != null)
+				mergeInto(parent);
+			else
+				store.commit(this);
+		}
+		finally
+		{
+			if (parent == null)
+				store.endSnapshot(snapshot);
+		}
+	}
+
+	public void abort() throws HGTransactionException
+	{
+		release();
+	}
+
+	/**
+	 * Discard the changes, if the transaction is not finished yet.
+	 */
+	void release()
+	{
+		if (finished)
+			return;
+		finished = true;
+		if (parent == null)
+			store.endSnapshot(snapshot);
+	}
+}
@@ -36,6 +36,11 @@ public class UPHandle implements HGPersistentHandle
 	public byte[] toByteArray()
 	{
 		byte [] A = new byte[16];
+		for (int i = 0; i < 8; i++)
+		{
+			A[i] = (byte)(global >>> (56 - 8*i));
+			A[i + 8] = (byte)(local >>> (56 - 8*i));
+		}
 		return A;
 	}
 
@@ -43,4 +48,22 @@ public class UPHandle implements HGPersistentHandle
 	{
 		return "" + global + ":" + local;
 	}
-}
\ No newline at end of file
+	
+	public boolean equals(Object other)
+	{
+		if (!(other instanceof UPHandle))
+			return false;
+		UPHandle x = (UPHandle)other;
+		return global == x.global && local == x.local;
+	}
+	
+	public int hashCode()
+	{
+		return Long.hashCode(global) * 31 + Long.hashCode(local);
+	}
+	
+	public String toString()
+	{
+		return "upHandle(" + toStringValue() + ")";
+	}
+}
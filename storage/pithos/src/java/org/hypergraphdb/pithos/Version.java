@@ -0,0 +1,50 @@
+package org.hypergraphdb.pithos;
+
+/**
+ * <p>
+ * A committed version of a record: the commit that created it and the position of its
+ * block, or -1 if the record was removed by that commit. Versions are chained from the
+ * most recent to the oldest, so a transaction reads the first version created by a commit
+ * that precedes its snapshot. Older versions are dropped when no transaction can see them
+ * anymore.
+ * </p>
+ */
+final class Version
+{
+	final long commit;
+	final long position;
+	volatile Version older;
+
+	Version(long commit, long position, Version older)
+	{
+		this.commit = commit;
+		this.position = position;
+		this.older = older;
+	}
+
+	boolean isRemoved()
+	{
+		return position < 0;
+	}
+
+	/**
+	 * The version seen by a transaction with the given snapshot or <code>null</code>
+	 * if the record didn't exist yet.
+	 */
+	Version visible(long snapshot)
+	{
+		for (Version v = this; v != null; v = v.older)
+			if (v.commit <= snapshot)
+				return v;
+		return null;
+	}
+
+	/**
+	 * The position of the block visible to a transaction with the given snapshot or -1.
+	 */
+	static long position(Version v, long snapshot)
+	{
+		v = v == null ? null : v.visible(snapshot);
+		return v == null ? -1 : v.position;
+	}
+}
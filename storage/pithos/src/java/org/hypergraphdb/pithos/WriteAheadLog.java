@@ -0,0 +1,289 @@
+package org.hypergraphdb.pithos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import org.hypergraphdb.HGException;
+
+/**
+ * <p>
+ * The redo log of the block stores. Each commit appends one record with the blocks it
+ * writes and the blocks it kills, before they are applied to the memory mapped files.
+ * Upon a checkpoint, the files are flushed to disk and the log is truncated. When the
+ * database is opened, the records still in the log are replayed, which restores the
+ * files to the state of the last logged commit.
+ * </p>
+ *
+ * <p>
+ * A record is made of its length, its content and a CRC32 of the content, so a
+ * record partially written during a crash is ignored. The content starts with the
+ * epoch of the log, incremented at each truncation, so stale records left past the
+ * end of the log are ignored as well.
+ * </p>
+ */
+public class WriteAheadLog
+{
+	private static final int MAGIC = 0x50495448; // PITH
+	private static final int HEADER_SIZE = 16;
+	private static final byte WRITE = 1;
+	private static final byte KILL = 2;
+
+	/**
+	 * The changes of a single commit.
+	 */
+	public static class Record
+	{
+		private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private DataOutputStream out = new DataOutputStream(bytes);
+		private int ops = 0;
+
+		public Record write(BlockStore store, long position, byte [] block)
+		{
+			try
+			{
+				out.writeByte(WRITE);
+				out.writeByte(store.getId());
+				out.writeLong(position);
+				out.writeInt(block.length);
+				out.write(block);
+				ops++;
+				return this;
+			}
+			catch (IOException ex)
+			{
+				throw new HGException(ex);
+			}
+		}
+
+		public Record kill(BlockStore store, long position)
+		{
+			try
+			{
+				out.writeByte(KILL);
+				out.writeByte(store.getId());
+				out.writeLong(position);
+				ops++;
+				return this;
+			}
+			catch (IOException ex)
+			{
+				throw new HGException(ex);
+			}
+		}
+
+		public boolean isEmpty()
+		{
+			return ops == 0;
+		}
+	}
+
+	/**
+	 * Receives the operations of the log records being replayed.
+	 */
+	public interface Replay
+	{
+		void write(byte storeId, long position, byte [] block);
+		void kill(byte storeId, long position);
+	}
+
+	private File file;
+	private PithosConfig config;
+	private RandomAccessFile raf = null;
+	private FileChannel fch = null;
+	private long size = HEADER_SIZE;
+	private boolean clean = true;
+	private long epoch = 0;
+
+	public WriteAheadLog(File file, PithosConfig config)
+	{
+		this.file = file;
+		this.config = config;
+	}
+
+	public void startup()
+	{
+		try
+		{
+			boolean isnew = !file.exists() || file.length() < HEADER_SIZE;
+			raf = new RandomAccessFile(file, "rw");
+			fch = raf.getChannel();
+			if (isnew)
+				writeHeader(true);
+			else
+			{
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				fch.read(header, 0);
+				if (header.getInt(0) != MAGIC)
+					throw new HGException("File " + file + " is not a Pithos log.");
+				clean = header.get(4) != 0;
+				epoch = header.getLong(8);
+			}
+			size = fch.size();
+		}
+		catch (IOException ex)
+		{
+			throw new HGException(ex);
+		}
+	}
+
+	public void shutdown()
+	{
+		try
+		{
+			fch.close();
+			raf.close();
+		}
+		catch (Throwable t)
+		{
+			t.printStackTrace();
+		}
+	}
+
+	private void writeHeader(boolean clean) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(0, MAGIC);
+		header.put(4, (byte)(clean ? 1 : 0));
+		header.putLong(8, epoch);
+		fch.write(header, 0);
+		fch.force(true);
+		this.clean = clean;
+	}
+
+	/**
+	 * Whether the database was properly shutdown the last time it was used.
+	 */
+	public boolean wasClean()
+	{
+		return clean;
+	}
+
+	/**
+	 * Record whether the database is properly shutdown.
+	 */
+	public void markClean(boolean clean)
+	{
+		try
+		{
+			writeHeader(clean);
+		}
+		catch (IOException ex)
+		{
+			throw new HGException(ex);
+		}
+	}
+
+	/**
+	 * The size of the records in the log.
+	 */
+	public long size()
+	{
+		return size - HEADER_SIZE;
+	}
+
+	public void append(Record record)
+	{
+		byte [] content = record.bytes.toByteArray();
+		ByteBuffer buf = ByteBuffer.allocate(content.length + 16);
+		buf.putInt(content.length + 8);
+		buf.putLong(epoch);
+		buf.put(content);
+		CRC32 crc = new CRC32();
+		crc.update(buf.array(), 4, content.length + 8);
+		buf.putInt((int)crc.getValue());
+		buf.flip();
+		try
+		{
+			long position = size;
+			while (buf.hasRemaining())
+				position += fch.write(buf, position);
+			if (config.isForceWrite())
+				fch.force(false);
+			size = position;
+		}
+		catch (IOException ex)
+		{
+			throw new HGException("Could not write to the log " + file, ex);
+		}
+	}
+
+	/**
+	 * Pass the operations of all complete records to <code>replay</code>, in order.
+	 * Return the number of records replayed.
+	 */
+	public int replay(Replay replay)
+	{
+		try
+		{
+			long position = HEADER_SIZE;
+			int count = 0;
+			ByteBuffer lengthBuf = ByteBuffer.allocate(4);
+			while (position + 8 <= size)
+			{
+				lengthBuf.clear();
+				fch.read(lengthBuf, position);
+				int length = lengthBuf.getInt(0);
+				if (length < 8 || position + 8 + length > size)
+					break;
+				ByteBuffer content = ByteBuffer.allocate(length + 4);
+				while (content.hasRemaining())
+					if (fch.read(content, position + 4 + content.position()) < 0)
+						break;
+				CRC32 crc = new CRC32();
+				crc.update(content.array(), 0, length);
+				if (content.getInt(length) != (int)crc.getValue() || content.getLong(0) != epoch)
+					break;
+				content.limit(length);
+				content.position(8);
+				while (content.hasRemaining())
+				{
+					byte op = content.get();
+					byte storeId = content.get();
+					long blockPosition = content.getLong();
+					if (op == WRITE)
+					{
+						byte [] block = new byte[content.getInt()];
+						content.get(block);
+						replay.write(storeId, blockPosition, block);
+					}
+					else if (op == KILL)
+						replay.kill(storeId, blockPosition);
+					else
+						throw new HGException("Corrupted record in log " + file);
+				}
+				position += 8 + length;
+				count++;
+			}
+			return count;
+		}
+		catch (IOException ex)
+		{
+			throw new HGException("Could not read the log " + file, ex);
+		}
+	}
+
+	/**
+	 * Remove all records from the log, once they have been applied and flushed to the
+	 * data files.
+	 */
+	public void truncate()
+	{
+		try
+		{
+			fch.truncate(HEADER_SIZE);
+			size = HEADER_SIZE;
+			epoch++;
+			writeHeader(clean);
+		}
+		catch (IOException ex)
+		{
+			throw new HGException(ex);
+		}
+	}
+}
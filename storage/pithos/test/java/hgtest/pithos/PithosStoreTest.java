@@ -0,0 +1,285 @@
+package hgtest.pithos;
+
+import org.hypergraphdb.HGBidirectionalIndex;
+import org.hypergraphdb.HGConfiguration;
+import org.hypergraphdb.HGEnvironment;
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGLink;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.HGRandomAccessResult;
+import org.hypergraphdb.HGStore;
+import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.pithos.PithosStore;
+import org.hypergraphdb.storage.BAtoString;
+import org.hypergraphdb.util.HGUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PithosStoreTest
+{
+	static HyperGraph graph;
+	static String location = "./hgdbpithos";
+
+	static HGConfiguration config()
+	{
+		HGConfiguration config = new HGConfiguration();
+		config.setStoreImplementation(new PithosStore());
+		return config;
+	}
+
+	static HyperGraph open(String location)
+	{
+		new File(location).mkdirs();
+		return HGEnvironment.get(location, config());
+	}
+
+	@BeforeClass
+	public static void openGraph()
+	{
+		HGUtils.dropHyperGraphInstance(location);
+		graph = open(location);
+	}
+
+	@AfterClass
+	public static void closeGraph()
+	{
+		graph.close();
+		HGUtils.dropHyperGraphInstance(location);
+	}
+
+	static void reopen()
+	{
+		graph.close();
+		graph.open(location);
+	}
+
+	static HGBidirectionalIndex<String, String> index(String name)
+	{
+		return graph.getStore().getBidirectionalIndex(name,
+				BAtoString.getInstance(),
+				BAtoString.getInstance(),
+				null,
+				null,
+				true);
+	}
+
+	static List<HGPersistentHandle> incidenceSet(HGHandle atom)
+	{
+		return graph.getTransactionManager().ensureTransaction(() -> {
+			List<HGPersistentHandle> result = new ArrayList<HGPersistentHandle>();
+			try (HGRandomAccessResult<HGPersistentHandle> rs =
+						 graph.getStore().getIncidenceResultSet(graph.getPersistentHandle(atom)))
+			{
+				while (rs.hasNext())
+					result.add(rs.next());
+			}
+			return result;
+		});
+	}
+
+	static List<String> values(HGRandomAccessResult<String> rs)
+	{
+		List<String> result = new ArrayList<String>();
+		try
+		{
+			while (rs.hasNext())
+				result.add(rs.next());
+		}
+		finally
+		{
+			rs.close();
+		}
+		return result;
+	}
+
+	@Test
+	public void addRetrieveAtom()
+	{
+		HGHandle h = graph.add("test");
+		Assert.assertEquals("test", graph.get(h.getPersistent()));
+		graph.replace(h, "replaced");
+		Assert.assertEquals("replaced", graph.get(h.getPersistent()));
+		graph.remove(h);
+		Assert.assertNull(graph.get(h.getPersistent()));
+	}
+
+	@Test
+	public void rawRecords()
+	{
+		HGStore store = graph.getStore();
+		HGPersistentHandle h = graph.getHandleFactory().makeHandle();
+		byte [] big = new byte[100000];
+		Arrays.fill(big, (byte)7);
+		store.store(h, big);
+		Assert.assertTrue(store.containsData(h));
+		Assert.assertArrayEquals(big, store.getData(h));
+		store.store(h, new byte[] { 1, 2, 3 });
+		Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, store.getData(h));
+		store.removeData(h);
+		Assert.assertFalse(store.containsData(h));
+
+		HGPersistentHandle [] targets = new HGPersistentHandle[] {
+				graph.getHandleFactory().makeHandle(), graph.getHandleFactory().makeHandle() };
+		HGPersistentHandle l = graph.getHandleFactory().makeHandle();
+		store.store(l, targets);
+		Assert.assertTrue(store.containsLink(l));
+		Assert.assertArrayEquals(targets, store.getLink(l));
+		store.removeLink(l);
+		Assert.assertFalse(store.containsLink(l));
+		Assert.assertNull(store.getLink(l));
+	}
+
+	@Test
+	public void incidenceSets()
+	{
+		HGHandle atom = graph.add("incidence target");
+		List<HGPersistentHandle> links = new ArrayList<HGPersistentHandle>();
+		for (int i = 0; i < 20; i++)
+			links.add(graph.getPersistentHandle(graph.add(new HGPlainLink(atom))));
+		HGPersistentHandle pAtom = graph.getPersistentHandle(atom);
+		Assert.assertEquals(20, graph.getStore().getIncidenceSetCardinality(pAtom));
+		List<HGPersistentHandle> sorted = new ArrayList<HGPersistentHandle>(links);
+		sorted.sort(null);
+		Assert.assertEquals(sorted, incidenceSet(atom));
+		graph.remove(links.get(3));
+		sorted.remove(links.get(3));
+		Assert.assertEquals(19, graph.getStore().getIncidenceSetCardinality(pAtom));
+		Assert.assertEquals(sorted, incidenceSet(atom));
+		graph.getTransactionManager().transact(() -> {
+			graph.getStore().removeIncidenceSet(pAtom);
+			// the transaction sees its own changes
+			Assert.assertEquals(0, graph.getStore().getIncidenceSetCardinality(pAtom));
+			return null;
+		});
+		Assert.assertTrue(incidenceSet(atom).isEmpty());
+	}
+
+	@Test
+	public void indexEntries()
+	{
+		HGBidirectionalIndex<String, String> index = index("pithos-test-index");
+		index.addEntry("b", "2");
+		index.addEntry("a", "1");
+		index.addEntry("a", "3");
+		index.addEntry("a", "2");
+		Assert.assertEquals(Arrays.asList("1", "2", "3"), values(index.find("a")));
+		Assert.assertEquals(Arrays.asList("a", "b"), values(index.findByValue("2")));
+		Assert.assertEquals(4, index.stats().countEntries());
+		Assert.assertEquals(2, index.stats().countKeys());
+		index.removeEntry("a", "2");
+		Assert.assertEquals(Arrays.asList("1", "3"), values(index.find("a")));
+		Assert.assertEquals(Arrays.asList("b"), values(index.findByValue("2")));
+		index.removeAllEntries("a");
+		Assert.assertTrue(values(index.find("a")).isEmpty());
+		Assert.assertEquals("b", index.findFirstByValue("2"));
+	}
+
+	@Test
+	public void abortedChangesNotVisible()
+	{
+		HGBidirectionalIndex<String, String> index = index("pithos-abort-index");
+		HGHandle kept = graph.add("kept");
+		graph.getTransactionManager().beginTransaction();
+		HGHandle aborted = graph.add("aborted");
+		HGPersistentHandle pAborted = graph.getPersistentHandle(aborted);
+		graph.add(new HGPlainLink(kept));
+		index.addEntry("aborted", "1");
+		graph.getTransactionManager().abort();
+		Assert.assertFalse(graph.getStore().containsLink(pAborted));
+		Assert.assertEquals(0, graph.getStore().getIncidenceSetCardinality(graph.getPersistentHandle(kept)));
+		Assert.assertNull(index.findFirst("aborted"));
+	}
+
+	@Test
+	public void reopenDb()
+	{
+		HGHandle atom = graph.add("survives reopen");
+		HGPersistentHandle pAtom = graph.getPersistentHandle(atom);
+		HGPersistentHandle link = graph.getPersistentHandle(graph.add(new HGPlainLink(atom)));
+		index("pithos-reopen-index").addEntry("key", "value");
+		reopen();
+		Assert.assertEquals("survives reopen", graph.get(pAtom));
+		Assert.assertEquals(pAtom, graph.getPersistentHandle(((HGLink)graph.get(link)).getTargetAt(0)));
+		Assert.assertEquals(Arrays.asList(link), incidenceSet(pAtom));
+		Assert.assertEquals("value", index("pithos-reopen-index").findFirst("key"));
+	}
+
+	static void copy(String from, String to) throws IOException
+	{
+		new File(to).mkdirs();
+		for (File f : new File(from).listFiles())
+			Files.copy(f.toPath(), new File(to, f.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	static byte [] log(String location) throws IOException
+	{
+		return Files.readAllBytes(new File(location, "pithos.log").toPath());
+	}
+
+	/**
+	 * Simulate a crash after some commits: the data files are in the state of the last
+	 * checkpoint, and the log holds the commits made since.
+	 */
+	@Test
+	public void recoverFromLog() throws Exception
+	{
+		String live = location + "-live", checkpoint = location + "-checkpoint", crashed = location + "-crashed";
+		for (String l : new String[] { live, checkpoint, crashed })
+			HGUtils.dropHyperGraphInstance(l);
+		HyperGraph g = open(live);
+		HGPersistentHandle before = g.getPersistentHandle(g.add("before the checkpoint"));
+		g.close();
+		copy(live, checkpoint);
+
+		g = open(live);
+		HGHandle target = g.add("logged");
+		HGPersistentHandle logged = g.getPersistentHandle(target);
+		HGPersistentHandle link = g.getPersistentHandle(g.add(new HGPlainLink(target)));
+		g.remove(before);
+		int firstCommits = log(live).length;
+		HGPersistentHandle lost = g.getPersistentHandle(g.add("torn"));
+		byte [] log = log(live);
+		g.close();
+
+		// the complete log is replayed
+		copy(checkpoint, crashed);
+		Files.write(new File(crashed, "pithos.log").toPath(), log);
+		HyperGraph recovered = open(crashed);
+		Assert.assertNull(recovered.get(before));
+		Assert.assertEquals("logged", recovered.get(logged));
+		Assert.assertEquals("torn", recovered.get(lost));
+		Assert.assertEquals(logged, recovered.getPersistentHandle(((HGLink)recovered.get(link)).getTargetAt(0)));
+		Assert.assertEquals(1, recovered.getStore().getIncidenceSetCardinality(logged));
+		recovered.close();
+		HGUtils.dropHyperGraphInstance(crashed);
+
+		// a partially written last record is ignored
+		copy(checkpoint, crashed);
+		Files.write(new File(crashed, "pithos.log").toPath(),
+					Arrays.copyOf(log, firstCommits + (log.length - firstCommits) / 2));
+		recovered = open(crashed);
+		Assert.assertEquals("logged", recovered.get(logged));
+		Assert.assertNull(recovered.get(lost));
+		// and the recovered database keeps working
+		HGHandle after = recovered.add("after recovery");
+		recovered.close();
+		recovered = open(crashed);
+		Assert.assertEquals("after recovery", recovered.get(recovered.getPersistentHandle(after)));
+		Assert.assertEquals("logged", recovered.get(logged));
+		recovered.close();
+
+		for (String l : new String[] { live, checkpoint, crashed })
+			HGUtils.dropHyperGraphInstance(l);
+	}
+}
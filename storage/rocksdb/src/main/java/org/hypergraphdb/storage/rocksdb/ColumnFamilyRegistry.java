@@ -13,6 +13,7 @@ import org.hypergraphdb.util.Pair;
 import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.ColumnFamilyOptions;
 
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -74,4 +75,9 @@ public class ColumnFamilyRegistry implements AutoCloseable
     {
         return this.store.containsKey(cfName);
     }
+
+    public Set<String> names()
+    {
+        return this.store.keySet();
+    }
 }
@@ -12,7 +12,9 @@ package org.hypergraphdb.storage.rocksdb;
 import org.hypergraphdb.*;
 import org.hypergraphdb.storage.ByteArrayConverter;
 import org.hypergraphdb.storage.HGStoreImplementation;
+import org.hypergraphdb.storage.rocksdb.dataformat.CounterDB;
 import org.hypergraphdb.storage.rocksdb.dataformat.FKFVMVDB;
+import org.hypergraphdb.storage.rocksdb.dataformat.FixedKeyFixedValueColumnFamilyMultivaluedDB;
 import org.hypergraphdb.storage.rocksdb.dataformat.LogicalDB;
 import org.hypergraphdb.storage.rocksdb.dataformat.SVDB;
 import org.hypergraphdb.storage.rocksdb.index.IndexManager;
@@ -37,6 +39,11 @@ public class StorageImplementationRocksDB implements HGStoreImplementation
 	}
 
 	public static final String CF_INCIDENCE = "INCIDENCE";
+	public static final String CF_INCIDENCE_COUNT = "INCIDENCE_COUNT";
+	/*
+	Not prefixed with INDEX so that it is not mistaken for an index column family
+	 */
+	public static final String CF_INDEX_COUNT = "COUNT_INDEX";
 	public static final String CF_DATA= "DATA";
 	public static final String CF_PRIMITIVE = "PRIMITIVE";
 	public static final String CF_DEFAULT = "default";
@@ -53,6 +60,19 @@ public class StorageImplementationRocksDB implements HGStoreImplementation
 	 */
 	private volatile boolean started = false;
 	private HashMap<String, LogicalDB> primaryDBs;
+	/*
+	The number of incident links for each atom, kept in sync with CF_INCIDENCE
+	so that the cardinality of an incidence set is a single point lookup.
+	 */
+	private CounterDB incidenceCounts;
+	/*
+	Set when opening a database created before the incidence counters existed.
+	 */
+	private boolean rebuildIncidenceCounts = false;
+	/*
+	The entry counters of all indices, see IndexCounters
+	 */
+	private CounterDB indexCounts;
 	private IndexManager indexManager;
 	private int handleSize;
 	private OptimisticTransactionDB db;
@@ -115,12 +135,26 @@ public class StorageImplementationRocksDB implements HGStoreImplementation
 
 		List<ColumnFamilyDescriptor> descriptors = new LinkedList<>();
 
+		this.rebuildIncidenceCounts = parsedColumnFamilyIDs.contains(CF_INCIDENCE) &&
+				!parsedColumnFamilyIDs.contains(CF_INCIDENCE_COUNT);
+
 		for (String primaryDB : List.of(CF_DEFAULT, CF_PRIMITIVE, CF_DATA, CF_INCIDENCE))
 		{
 			parsedColumnFamilyIDs.remove(primaryDB);
 			descriptors.add(new ColumnFamilyDescriptor(primaryDB.getBytes(StandardCharsets.UTF_8)));
 		}
 
+		/*
+		The counters need their merge operator configured from the very beginning
+		 */
+		for (String counterDB : List.of(CF_INCIDENCE_COUNT, CF_INDEX_COUNT))
+		{
+			parsedColumnFamilyIDs.remove(counterDB);
+			descriptors.add(new ColumnFamilyDescriptor(
+					counterDB.getBytes(StandardCharsets.UTF_8),
+					CounterDB.columnFamilyOptions()));
+		}
+
 		/*
 		Handle the rest of the cf ids which should be indices
 		 */
@@ -204,6 +238,16 @@ public class StorageImplementationRocksDB implements HGStoreImplementation
 							cfHandles.get(i), cfDescriptors.get(i).getOptions()));
 					break;
 				}
+				case CF_INCIDENCE_COUNT:{
+					this.incidenceCounts = new CounterDB(CF_INCIDENCE_COUNT,
+							cfHandles.get(i), cfDescriptors.get(i).getOptions());
+					break;
+				}
+				case CF_INDEX_COUNT:{
+					this.indexCounts = new CounterDB(CF_INDEX_COUNT,
+							cfHandles.get(i), cfDescriptors.get(i).getOptions());
+					break;
+				}
 				default:{
 					if (IndexManager.isIndexCF(cfName))
 					{
@@ -218,6 +262,11 @@ public class StorageImplementationRocksDB implements HGStoreImplementation
 				}
 				}
 			}
+			if (this.rebuildIncidenceCounts)
+			{
+				rebuildIncidenceCounts();
+			}
+			this.indexManager.initializeCounters();
 			this.started = true;
 		}
 		catch (RocksDBException e)
@@ -245,6 +294,8 @@ public class StorageImplementationRocksDB implements HGStoreImplementation
 		{
 			primary.close();
 		}
+		this.incidenceCounts.close();
+		this.indexCounts.close();
 		this.dbOptions.close();
 	}
 
@@ -387,6 +438,37 @@ public class StorageImplementationRocksDB implements HGStoreImplementation
 	}
 
 
+	@Override
+	public byte[][] getDataMulti(HGPersistentHandle[] handles)
+	{
+		checkStarted();
+		return ensureTransaction(tx -> {
+			var values = this.primaryDBs.get(CF_PRIMITIVE).multiGet(tx, handleKeys(handles));
+			return values.toArray(new byte[values.size()][]);
+		});
+	}
+
+	@Override
+	public HGPersistentHandle[][] getLinks(HGPersistentHandle[] handles)
+	{
+		checkStarted();
+		return ensureTransaction(tx -> {
+			var values = this.primaryDBs.get(CF_DATA).multiGet(tx, handleKeys(handles));
+			var result = new HGPersistentHandle[handles.length][];
+			for (int i = 0; i < result.length; i++)
+				result[i] = values.get(i) == null ? null : toHandleArray(values.get(i));
+			return result;
+		});
+	}
+
+	private List<byte[]> handleKeys(HGPersistentHandle[] handles)
+	{
+		var keys = new ArrayList<byte[]>(handles.length);
+		for (HGPersistentHandle h : handles)
+			keys.add(h.toByteArray());
+		return keys;
+	}
+
 	@Override
 	public void removeData(HGPersistentHandle handle)
 	{
@@ -479,6 +561,19 @@ public class StorageImplementationRocksDB implements HGStoreImplementation
 
 
 
+	/**
+	 * @return the counters maintained by the indices of this storage
+	 */
+	public CounterDB indexCounts()
+	{
+		return this.indexCounts;
+	}
+
+	private FKFVMVDB incidenceDB()
+	{
+		return (FKFVMVDB) this.primaryDBs.get(CF_INCIDENCE);
+	}
+
 	@Override
 	public void removeIncidenceSet(HGPersistentHandle handle)
 	{
@@ -488,8 +583,15 @@ public class StorageImplementationRocksDB implements HGStoreImplementation
 		 */
 		checkStarted();
 		ensureTransaction(tx -> {
-			this.primaryDBs.get(CF_INCIDENCE).delete(tx, handle.toByteArray());
-
+			var localKey = handle.toByteArray();
+			/*
+			Subtract what this transaction sees instead of deleting the counter,
+			so that links added concurrently by other transactions (and not deleted
+			here) are still counted once they commit.
+			 */
+			long count = this.incidenceCounts.get(tx, localKey);
+			incidenceDB().delete(tx, localKey);
+			this.incidenceCounts.add(tx, localKey, -count);
 		});
 	}
 
@@ -497,11 +599,9 @@ public class StorageImplementationRocksDB implements HGStoreImplementation
 	public long getIncidenceSetCardinality(HGPersistentHandle handle)
 	{
 		checkStarted();
-		try (var rs = ((IteratorResultSet<HGPersistentHandle>) this.getIncidenceResultSet(
-				handle)))
-		{
-			return rs.count();
-		}
+		return ensureTransaction(tx -> {
+			return this.incidenceCounts.get(tx, handle.toByteArray());
+		});
 	}
 
 	@Override
@@ -513,7 +613,16 @@ public class StorageImplementationRocksDB implements HGStoreImplementation
 			var localKey = atomHandle.toByteArray();
 			var value = incidentLink.toByteArray();
 
-			this.primaryDBs.get(CF_INCIDENCE).put(tx, localKey, value);
+			/*
+			The counter is only updated when the record is actually new. The
+			record put is conflict checked, so two transactions adding the
+			same link cannot both commit an increment.
+			 */
+			if (!incidenceDB().contains(tx, localKey, value))
+			{
+				incidenceDB().put(tx, localKey, value);
+				this.incidenceCounts.add(tx, localKey, 1);
+			}
 		});
 	}
 
@@ -526,11 +635,48 @@ public class StorageImplementationRocksDB implements HGStoreImplementation
 			var localKey = atomHandle.toByteArray();
 			var value = incidentLink.toByteArray();
 
-			this.primaryDBs.get(CF_INCIDENCE).delete(tx, localKey, value);
+			if (incidenceDB().contains(tx, localKey, value))
+			{
+				incidenceDB().delete(tx, localKey, value);
+				this.incidenceCounts.add(tx, localKey, -1);
+			}
 		});
 
 	}
 
+	/**
+	 * Populate the incidence counters from the incidence records. This is done once,
+	 * when opening a database which was created before the counters were maintained.
+	 */
+	private void rebuildIncidenceCounts()
+	{
+		try (RocksIterator it = db.newIterator(incidenceDB().cfHandle()))
+		{
+			byte[] currentAtom = null;
+			long count = 0;
+			for (it.seekToFirst(); it.isValid(); it.next())
+			{
+				byte[] atom = FixedKeyFixedValueColumnFamilyMultivaluedDB.extractKey(it.key());
+				if (currentAtom != null && !Arrays.equals(currentAtom, atom))
+				{
+					this.incidenceCounts.set(db, currentAtom, count);
+					count = 0;
+				}
+				currentAtom = atom;
+				count++;
+			}
+			if (currentAtom != null)
+			{
+				this.incidenceCounts.set(db, currentAtom, count);
+			}
+			it.status();
+		}
+		catch (RocksDBException e)
+		{
+			throw new HGException("Could not rebuild the incidence set counters", e);
+		}
+	}
+
 
 	@Override
 	public <KeyType, ValueType> HGIndex<KeyType, ValueType> getIndex(
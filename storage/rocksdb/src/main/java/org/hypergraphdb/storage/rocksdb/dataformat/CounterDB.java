@@ -0,0 +1,223 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2024 Kobrix Software, Inc.  All rights reserved.
+ *
+ */
+
+package org.hypergraphdb.storage.rocksdb.dataformat;
+
+import org.hypergraphdb.HGException;
+import org.rocksdb.*;
+
+/**
+ * A set of 64 bit counters, one per key, backed by a column family with a
+ * {@link UInt64AddOperator} merge operator.
+ * <br/>
+ * <br/>
+ * The counters are updated by merging deltas rather than by read-modify-write.
+ * The deltas are written untracked, so concurrent transactions that update the
+ * same counter do not conflict with each other. It is up to the caller to make
+ * sure each delta corresponds to a change that is itself conflict checked (e.g.
+ * the put or delete of the record being counted).
+ * <br/>
+ * <br/>
+ * Reads go through the transaction, so they see the transaction's own pending
+ * deltas on top of its snapshot.
+ * <br/>
+ * <br/>
+ * The counter values are stored as 8 byte little endian numbers which is the
+ * format expected by the uint64add merge operator. Negative deltas are simply
+ * added modulo 2^64.
+ */
+public class CounterDB implements AutoCloseable
+{
+	public static final int VALUE_SIZE = 8;
+
+	protected final String columnFamilyName;
+	protected final ColumnFamilyHandle columnFamilyHandle;
+	private final ColumnFamilyOptions cfOptions;
+
+	/**
+	 * The options a column family must be created with in order to back
+	 * a CounterDB. The caller owns the result and its merge operator.
+	 */
+	public static ColumnFamilyOptions columnFamilyOptions()
+	{
+		return new ColumnFamilyOptions().setMergeOperator(new UInt64AddOperator());
+	}
+
+	public CounterDB(String name, ColumnFamilyHandle columnFamilyHandle, ColumnFamilyOptions columnFamilyOptions)
+	{
+		this.columnFamilyName = name;
+		this.columnFamilyHandle = columnFamilyHandle;
+		this.cfOptions = columnFamilyOptions;
+	}
+
+	/**
+	 * @return the name of the column family backing this CounterDB
+	 */
+	public String cfName()
+	{
+		return this.columnFamilyName;
+	}
+
+	public ColumnFamilyHandle cfHandle()
+	{
+		return this.columnFamilyHandle;
+	}
+
+	@Override
+	public void close()
+	{
+		this.cfOptions.close();
+	}
+
+	/**
+	 * Get the current value of a counter. A counter which has never been
+	 * updated has a value of 0.
+	 */
+	public long get(Transaction tx, byte[] key)
+	{
+		try (var ro = new ReadOptions().setSnapshot(tx.getSnapshot()))
+		{
+			return decode(tx.get(this.columnFamilyHandle, ro, key));
+		}
+		catch (RocksDBException e)
+		{
+			throw new HGException(e);
+		}
+	}
+
+	/**
+	 * Add a (possibly negative) delta to a counter.
+	 */
+	public void add(Transaction tx, byte[] key, long delta)
+	{
+		if (delta == 0)
+			return;
+		try
+		{
+			tx.mergeUntracked(this.columnFamilyHandle, key, encode(delta));
+		}
+		catch (RocksDBException e)
+		{
+			throw new HGException(e);
+		}
+	}
+
+	/**
+	 * Set the value of a counter directly, outside of any transaction. This
+	 * is only meant for rebuilding the counters.
+	 */
+	public void set(RocksDB db, byte[] key, long value)
+	{
+		try
+		{
+			db.put(this.columnFamilyHandle, key, encode(value));
+		}
+		catch (RocksDBException e)
+		{
+			throw new HGException(e);
+		}
+	}
+
+	/**
+	 * Get the current value of a counter outside of any transaction.
+	 */
+	public long get(RocksDB db, byte[] key)
+	{
+		try
+		{
+			return decode(db.get(this.columnFamilyHandle, key));
+		}
+		catch (RocksDBException e)
+		{
+			throw new HGException(e);
+		}
+	}
+
+	/**
+	 * Get the current value of a counter and have the transaction fail at commit
+	 * time if the counter is changed by another transaction after its snapshot.
+	 */
+	public long getForUpdate(Transaction tx, byte[] key)
+	{
+		try (var ro = new ReadOptions().setSnapshot(tx.getSnapshot()))
+		{
+			return decode(tx.getForUpdate(ro, this.columnFamilyHandle, key, true));
+		}
+		catch (RocksDBException e)
+		{
+			throw new HGException(e);
+		}
+	}
+
+	/**
+	 * Set the value of a counter within a transaction. Unlike {@link #add(Transaction, byte[], long)}
+	 * the write is conflict checked.
+	 */
+	public void set(Transaction tx, byte[] key, long value)
+	{
+		try
+		{
+			tx.put(this.columnFamilyHandle, key, encode(value));
+		}
+		catch (RocksDBException e)
+		{
+			throw new HGException(e);
+		}
+	}
+
+	/**
+	 * Remove all counters in the range [first, last), outside of any transaction.
+	 * DeleteRange is not supported by transaction databases, so the counters are
+	 * deleted one by one, in a single batch.
+	 */
+	public void deleteRange(RocksDB db, byte[] first, byte[] last)
+	{
+		try (var lower = new Slice(first);
+			 var upper = new Slice(last);
+			 var ro = new ReadOptions().setIterateLowerBound(lower).setIterateUpperBound(upper);
+			 RocksIterator it = db.newIterator(this.columnFamilyHandle, ro);
+			 var batch = new WriteBatch();
+			 var wo = new WriteOptions())
+		{
+			for (it.seekToFirst(); it.isValid(); it.next())
+				batch.delete(this.columnFamilyHandle, it.key());
+			it.status();
+			db.write(wo, batch);
+		}
+		catch (RocksDBException e)
+		{
+			throw new HGException(e);
+		}
+	}
+
+	public static byte[] encode(long value)
+	{
+		byte[] result = new byte[VALUE_SIZE];
+		for (int i = 0; i < VALUE_SIZE; i++)
+		{
+			result[i] = (byte)(value >>> (8 * i));
+		}
+		return result;
+	}
+
+	public static long decode(byte[] bytes)
+	{
+		if (bytes == null)
+			return 0;
+		if (bytes.length != VALUE_SIZE)
+			throw new HGException(String.format(
+					"Invalid counter value of %s bytes, expecting %s", bytes.length, VALUE_SIZE));
+		long result = 0;
+		for (int i = VALUE_SIZE - 1; i >= 0; i--)
+		{
+			result = (result << 8) | (bytes[i] & 0xff);
+		}
+		return result;
+	}
+}
@@ -81,9 +81,9 @@ public class FKFVMVDB extends LogicalDB
 			 RocksIterator iterator = tx.getIterator(iteratorReadOptions,
 					 this.columnFamilyHandle))
 		{
+			iterator.seekToFirst();
 			while (iterator.isValid())
 			{
-				iterator.next();
 				byte[] next = iterator.key();
 				try
 				{
@@ -93,6 +93,7 @@ public class FKFVMVDB extends LogicalDB
 				{
 					throw new HGException(e);
 				}
+				iterator.next();
 			}
 			try
 			{
@@ -105,6 +106,23 @@ public class FKFVMVDB extends LogicalDB
 		}
 	}
 
+	/**
+	 * Check whether a specific key - value combination is present
+	 */
+	public boolean contains(Transaction tx, byte[] key, byte[] value)
+	{
+		try (var ro = new ReadOptions().setSnapshot(tx.getSnapshot()))
+		{
+			return tx.get(this.columnFamilyHandle, ro,
+					FixedKeyFixedValueColumnFamilyMultivaluedDB.makeRocksDBKey(
+							key, value)) != null;
+		}
+		catch (RocksDBException e)
+		{
+			throw new HGException(e);
+		}
+	}
+
 	@Override
 	public ValueIterator<byte[]> iterateValuesForKey(Transaction tx,
 			byte[] byteArray)
@@ -9,6 +9,9 @@
 
 package org.hypergraphdb.storage.rocksdb.dataformat;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.hypergraphdb.storage.rocksdb.iterate.ValueIterator;
 import org.rocksdb.*;
 
@@ -86,6 +89,19 @@ public abstract class LogicalDB implements AutoCloseable
 	 */
 	public abstract byte[] get(Transaction tx, byte[] key);
 
+	/**
+	 * Retrieve several records at once
+	 * @return a list with, at the position of each key, the first value stored
+	 * for that key or null if there is none
+	 */
+	public List<byte[]> multiGet(Transaction tx, List<byte[]> keys)
+	{
+		var result = new ArrayList<byte[]>(keys.size());
+		for (byte[] key : keys)
+			result.add(get(tx, key));
+		return result;
+	}
+
 	/**
 	 * Delete all values associated with a key in the LogicalDB
 	 */
@@ -9,6 +9,9 @@
 
 package org.hypergraphdb.storage.rocksdb.dataformat;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.hypergraphdb.HGException;
 import org.hypergraphdb.storage.rocksdb.iterate.ValueIterator;
 import org.rocksdb.*;
@@ -59,6 +62,23 @@ public class SVDB extends LogicalDB
 		}
 	}
 
+	/**
+	 * Use RocksDB's native batched point lookup, which probes the memtables and
+	 * SST files for all keys together
+	 */
+	@Override
+	public List<byte[]> multiGet(Transaction tx, List<byte[]> keys)
+	{
+		try (var ro = new ReadOptions().setSnapshot(tx.getSnapshot()))
+		{
+			return tx.multiGetAsList(ro, Collections.nCopies(keys.size(), this.columnFamilyHandle), keys);
+		}
+		catch (RocksDBException e)
+		{
+			throw new HGException(e);
+		}
+	}
+
 	@Override
 	public void delete(Transaction tx, byte[] key)
 	{
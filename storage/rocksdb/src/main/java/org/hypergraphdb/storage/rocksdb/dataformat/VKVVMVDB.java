@@ -154,6 +154,23 @@ public class VKVVMVDB extends LogicalDB
 
 	}
 
+	/**
+	 * Check whether a specific key - value combination is present
+	 */
+	public boolean contains(Transaction tx, byte[] key, byte[] value)
+	{
+		try (var ro = new ReadOptions().setSnapshot(tx.getSnapshot()))
+		{
+			return tx.get(this.columnFamilyHandle, ro,
+					VarKeyVarValueColumnFamilyMultivaluedDB.makeRocksDBKey(
+							key, value)) != null;
+		}
+		catch (RocksDBException e)
+		{
+			throw new HGException(e);
+		}
+	}
+
 	@Override
 	public ValueIterator<byte[]> iterateValuesForKey(Transaction tx,
 			byte[] keyBytes)
@@ -10,14 +10,16 @@
 package org.hypergraphdb.storage.rocksdb.index;
 
 import org.hypergraphdb.HGBidirectionalIndex;
+import org.hypergraphdb.HGException;
 import org.hypergraphdb.HGRandomAccessResult;
 import org.hypergraphdb.storage.ByteArrayConverter;
-import org.hypergraphdb.storage.rocksdb.dataformat.LogicalDB;
 import org.hypergraphdb.storage.rocksdb.dataformat.VKVVMVDB;
 import org.hypergraphdb.storage.rocksdb.resultset.IteratorResultSet;
 import org.hypergraphdb.storage.rocksdb.StorageImplementationRocksDB;
 import org.rocksdb.*;
 
+import java.util.ArrayList;
+
 public class BidirectionalRocksDBIndex<IndexKey, IndexValue>
 		extends RocksDBIndex<IndexKey, IndexValue>
 		implements HGBidirectionalIndex<IndexKey, IndexValue>
@@ -26,7 +28,11 @@ public class BidirectionalRocksDBIndex<IndexKey, IndexValue>
 	private final ColumnFamilyHandle inverseCFHandle;
 	private final String inverseCFName;
 	private final ColumnFamilyOptions inverseColumnFamilyOptions;
-	private final LogicalDB inverseIndexDB;
+	private final VKVVMVDB inverseIndexDB;
+	/*
+	The counters of the inverse index -- the number of keys for each value
+	 */
+	private final IndexCounters inverseCounters;
 
 	/**
 	 *
@@ -58,6 +64,7 @@ public class BidirectionalRocksDBIndex<IndexKey, IndexValue>
 		this.inverseCFName = inverseColumnFamilyName;
 		this.inverseColumnFamilyOptions = inverseColumnFamilyOptions;
 		this.inverseIndexDB = new VKVVMVDB(inverseColumnFamilyName, inverseCFHandle, inverseColumnFamilyOptions);
+		this.inverseCounters = new IndexCounters(store.indexCounts(), inverseColumnFamilyName);
 	}
 
 	public String getInverseCFName()
@@ -81,10 +88,80 @@ public class BidirectionalRocksDBIndex<IndexKey, IndexValue>
 		the key is the value, the value is the key
 		 */
 		this.store.ensureTransaction(tx -> {
+			if (!this.inverseIndexDB.contains(tx, valueBytes, keyBytes))
+			{
 				this.inverseIndexDB.put(tx, valueBytes, keyBytes);
+				this.inverseCounters.add(tx, valueBytes, 1);
+			}
+		});
+	}
+
+	@Override
+	public void removeEntry(IndexKey key, IndexValue value)
+	{
+		checkOpen();
+		super.removeEntry(key, value);
+		byte[] keyBytes = this.keyConverter.toByteArray(key);
+		byte[] valueBytes = this.valueConverter.toByteArray(value);
+		this.store.ensureTransaction(tx -> {
+			if (this.inverseIndexDB.contains(tx, valueBytes, keyBytes))
+			{
+				this.inverseIndexDB.delete(tx, valueBytes, keyBytes);
+				this.inverseCounters.add(tx, valueBytes, -1);
+			}
 		});
 	}
 
+	@Override
+	public void removeAllEntries(IndexKey key)
+	{
+		checkOpen();
+		byte[] keyBytes = this.keyConverter.toByteArray(key);
+		this.store.ensureTransaction(tx -> {
+			/*
+			The inverse entries of all the values of the key go away as well
+			 */
+			var values = new ArrayList<byte[]>();
+			var it = this.indexDB.iterateValuesForKey(tx, keyBytes);
+			try
+			{
+				for (it.seekToFirst(); it.isValid(); it.next())
+				{
+					values.add(it.current());
+				}
+				it.status();
+			}
+			catch (RocksDBException e)
+			{
+				throw new HGException(e);
+			}
+			finally
+			{
+				try
+				{
+					it.close();
+				}
+				catch (Exception e)
+				{
+					throw new HGException(e);
+				}
+			}
+			for (byte[] valueBytes : values)
+			{
+				this.inverseIndexDB.delete(tx, valueBytes, keyBytes);
+				this.inverseCounters.add(tx, valueBytes, -1);
+			}
+		});
+		super.removeAllEntries(key);
+	}
+
+	@Override
+	void dropCounters()
+	{
+		super.dropCounters();
+		this.inverseCounters.drop(db);
+	}
+
 	@Override
 	public HGRandomAccessResult<IndexKey> findByValue(IndexValue value)
 	{
@@ -111,10 +188,41 @@ public class BidirectionalRocksDBIndex<IndexKey, IndexValue>
 	public long countKeys(IndexValue value)
 	{
 		checkOpen();
-		try (var rs = (IteratorResultSet<IndexKey>)findByValue(value) )
-		{
-			return rs.count();
-		}
+		return countKeysWithValue(valueConverter.toByteArray(value));
+	}
+
+	/**
+	 * The exact number of keys having a given value, from the counters
+	 */
+	long countKeysWithValue(byte[] valueBytes)
+	{
+		checkOpen();
+		return this.store.ensureTransaction(tx -> {
+			return this.inverseCounters.valuesOfKey(tx, valueBytes);
+		});
+	}
+
+	/**
+	 * The exact number of distinct values in the index, from the counters
+	 */
+	long countDistinctValues()
+	{
+		checkOpen();
+		return this.store.ensureTransaction(tx -> {
+			return this.inverseCounters.keys(tx);
+		});
+	}
+
+	/**
+	 * Estimate the number of distinct values in the index from the approximate
+	 * size of the per value counters.
+	 */
+	long estimateValues()
+	{
+		checkOpen();
+		return estimateRange(this.inverseCounters.cfHandle(),
+				this.inverseCounters.firstKeyCounter(),
+				this.inverseCounters.lastKeyCounter());
 	}
 
 	@Override
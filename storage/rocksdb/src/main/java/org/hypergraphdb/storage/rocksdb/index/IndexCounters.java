@@ -0,0 +1,196 @@
+/*
+ * This file is part of the HyperGraphDB source distribution. This is copyrighted
+ * software. For permitted uses, licensing options and redistribution, please see
+ * the LicensingInformation file at the root level of the distribution.
+ *
+ * Copyright (c) 2005-2024 Kobrix Software, Inc.  All rights reserved.
+ *
+ */
+
+package org.hypergraphdb.storage.rocksdb.index;
+
+import org.hypergraphdb.HGException;
+import org.hypergraphdb.storage.rocksdb.dataformat.CounterDB;
+import org.hypergraphdb.storage.rocksdb.dataformat.VarKeyVarValueColumnFamilyMultivaluedDB;
+import org.rocksdb.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The counters maintained for a single column family of an index (the forward
+ * or the inverse one) -- the total number of entries and the number of values
+ * of each key.
+ * <br/>
+ * <br/>
+ * All index counters live in a shared {@link CounterDB}. The counters for a given column
+ * family are stored under a prefix made of the column family name followed by a 0 byte,
+ * and then a tag byte:
+ * <br/>
+ * - ENTRIES -- the total number of entries<br/>
+ * - KEYS -- the number of distinct keys<br/>
+ * - KEY followed by the key bytes -- the number of values for that key<br/>
+ * - PRESENT followed by the key bytes -- 1 while the key has values, 0 otherwise<br/>
+ * <br/>
+ * All counts are merged untracked, so transactions adding entries under the same key do
+ * not conflict. The KEYS count however changes only when a key gains its first value or
+ * loses its last one, and a merge cannot tell: whether a key is empty depends on what
+ * concurrent transactions do to it. So an update reads the key's state, and the reads
+ * are conflict tracked so that the decision is still valid at commit:
+ * <br/>
+ * - an addition reads the PRESENT flag only. If the key was absent, it sets the flag and
+ * counts a new key. Two first additions both write the flag and conflict, and an
+ * addition conflicts with a concurrent removal of the last value, which clears it.
+ * Additions to a present key don't conflict with each other, which matters for keys
+ * shared by many atoms (e.g. the type of an atom).<br/>
+ * - a removal also reads the KEY counter, to know whether the key becomes empty. It
+ * thus conflicts with any concurrent update of the key, so two removals cannot both
+ * miss that the key was emptied.
+ * <br/>
+ * Keeping the PRESENT flag apart from the KEY counter is what lets additions skip
+ * reading the counter, which every addition changes.
+ */
+class IndexCounters
+{
+	private static final byte ENTRIES = 'E';
+	private static final byte KEY = 'K';
+	private static final byte KEYS = 'N';
+	private static final byte PRESENT = 'P';
+
+	private final CounterDB counters;
+	private final byte[] prefix;
+
+	IndexCounters(CounterDB counters, String columnFamilyName)
+	{
+		this.counters = counters;
+		var name = columnFamilyName.getBytes(StandardCharsets.UTF_8);
+		this.prefix = Arrays.copyOf(name, name.length + 1);
+	}
+
+	private byte[] counterKey(byte tag, byte[] key)
+	{
+		byte[] result = new byte[prefix.length + 1 + key.length];
+		System.arraycopy(prefix, 0, result, 0, prefix.length);
+		result[prefix.length] = tag;
+		System.arraycopy(key, 0, result, prefix.length + 1, key.length);
+		return result;
+	}
+
+	/**
+	 * The first counter key of the per key counters
+	 */
+	byte[] firstKeyCounter()
+	{
+		return counterKey(KEY, new byte[0]);
+	}
+
+	/**
+	 * The first counter key after the per key counters
+	 */
+	byte[] lastKeyCounter()
+	{
+		return counterKey((byte)(KEY + 1), new byte[0]);
+	}
+
+	ColumnFamilyHandle cfHandle()
+	{
+		return this.counters.cfHandle();
+	}
+
+	long entries(Transaction tx)
+	{
+		return this.counters.get(tx, counterKey(ENTRIES, new byte[0]));
+	}
+
+	long valuesOfKey(Transaction tx, byte[] key)
+	{
+		return this.counters.get(tx, counterKey(KEY, key));
+	}
+
+	/**
+	 * The exact number of distinct keys
+	 */
+	long keys(Transaction tx)
+	{
+		return this.counters.get(tx, counterKey(KEYS, new byte[0]));
+	}
+
+	/**
+	 * Record that 'count' entries were added under the key (negative when
+	 * entries were removed).
+	 */
+	void add(Transaction tx, byte[] key, long count)
+	{
+		if (count == 0)
+			return;
+		byte[] keyCounter = counterKey(KEY, key);
+		byte[] present = counterKey(PRESENT, key);
+		boolean wasPresent = this.counters.getForUpdate(tx, present) != 0;
+		if (count > 0)
+		{
+			if (!wasPresent)
+			{
+				this.counters.set(tx, present, 1);
+				this.counters.add(tx, counterKey(KEYS, new byte[0]), 1);
+			}
+		}
+		else if (wasPresent && this.counters.getForUpdate(tx, keyCounter) + count <= 0)
+		{
+			this.counters.set(tx, present, 0);
+			this.counters.add(tx, counterKey(KEYS, new byte[0]), -1);
+		}
+		this.counters.add(tx, keyCounter, count);
+		this.counters.add(tx, counterKey(ENTRIES, new byte[0]), count);
+	}
+
+	/**
+	 * Compute the counters of a preexisting column family by scanning it.
+	 */
+	void initialize(RocksDB db, ColumnFamilyHandle indexCF)
+	{
+		drop(db);
+		try (RocksIterator it = db.newIterator(indexCF))
+		{
+			byte[] currentKey = null;
+			long count = 0, total = 0, keys = 0;
+			for (it.seekToFirst(); it.isValid(); it.next())
+			{
+				byte[] key = VarKeyVarValueColumnFamilyMultivaluedDB.extractKey(it.key());
+				if (currentKey != null && !Arrays.equals(currentKey, key))
+				{
+					this.counters.set(db, counterKey(KEY, currentKey), count);
+					this.counters.set(db, counterKey(PRESENT, currentKey), 1);
+					count = 0;
+				}
+				if (count == 0)
+					keys++;
+				currentKey = key;
+				count++;
+				total++;
+			}
+			if (currentKey != null)
+			{
+				this.counters.set(db, counterKey(KEY, currentKey), count);
+				this.counters.set(db, counterKey(PRESENT, currentKey), 1);
+			}
+			it.status();
+			this.counters.set(db, counterKey(ENTRIES, new byte[0]), total);
+			this.counters.set(db, counterKey(KEYS, new byte[0]), keys);
+		}
+		catch (RocksDBException e)
+		{
+			throw new HGException("Could not compute the counters of the column family " +
+					new String(prefix, 0, prefix.length - 1, StandardCharsets.UTF_8), e);
+		}
+	}
+
+	/**
+	 * Remove all the counters of the column family
+	 */
+	void drop(RocksDB db)
+	{
+		byte[] last = Arrays.copyOf(prefix, prefix.length);
+		last[last.length - 1] = 1;
+		this.counters.deleteRange(db, prefix, last);
+	}
+}
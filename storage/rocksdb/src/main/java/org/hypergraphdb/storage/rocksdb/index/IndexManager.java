@@ -33,6 +33,11 @@ public class IndexManager implements AutoCloseable
     private static final String CF_INDEX_PREFIX = "INDEX";
     private static final String CF_INVERSE_INDEX_PREFIX = "INV_INDEX";
     private static final String CF_NAME_SEPARATOR = ">>>";
+    /*
+    Set in the index counters once they reflect the content of all indices. The empty key
+    sorts before the counters of the column families, which start with their name.
+     */
+    private static final byte[] COUNTERS_READY = new byte[0];
 
 
     /*
@@ -263,6 +268,7 @@ public class IndexManager implements AutoCloseable
         synchronized (indexLock)
         {
             var index = indices.remove(name);
+            index.dropCounters();
             index.close();
 
             var indexCFHandle = index.getColumnFamilyHandle();
@@ -353,10 +359,12 @@ public class IndexManager implements AutoCloseable
                             ?null
                             :keyComparator.getClass().getName(), valueComparator==null?null:valueComparator.getClass().getName());
 
+            boolean isNew = !preexistingColumnFamilies.containsKey(cfName);
+
             /*
             we need the column family for the
              */
-            if (preexistingColumnFamilies.containsKey(cfName))
+            if (!isNew)
             {
                 /*
                 The preexisting column families together with their options are now responsibility of
@@ -477,4 +485,26 @@ public class IndexManager implements AutoCloseable
     {
         this.preexistingColumnFamilies.registerColumnFamily(cfName, columnFamilyHandle, options);
     }
+
+    /**
+     * Make sure the entry counters reflect the content of the preexisting indices, once
+     * all their column families are registered. The counters are computed by scanning the
+     * indices, once, if the database was created before they were maintained.
+     * <br/>
+     * Indices created later start empty, so their counters need no initialization. This
+     * matters because indices are created lazily, often within a transaction: a write to
+     * the counters outside of it would keep it from checking its own counter reads for
+     * conflicts at commit time.
+     */
+    public void initializeCounters()
+    {
+        var counts = store.indexCounts();
+        if (counts.get(db, COUNTERS_READY) != 0)
+            return;
+        for (String cfName : preexistingColumnFamilies.names())
+        {
+            new IndexCounters(counts, cfName).initialize(db, preexistingColumnFamilies.handle(cfName));
+        }
+        counts.set(db, COUNTERS_READY, 1);
+    }
 }
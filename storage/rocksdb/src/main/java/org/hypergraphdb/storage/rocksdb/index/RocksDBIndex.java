@@ -12,7 +12,6 @@ package org.hypergraphdb.storage.rocksdb.index;
 import org.hypergraphdb.*;
 import org.hypergraphdb.storage.ByteArrayConverter;
 import org.hypergraphdb.storage.HGIndexStats;
-import org.hypergraphdb.storage.rocksdb.dataformat.LogicalDB;
 import org.hypergraphdb.storage.rocksdb.dataformat.VKVVMVDB;
 import org.hypergraphdb.storage.rocksdb.resultset.IteratorResultSet;
 import org.hypergraphdb.storage.rocksdb.StorageImplementationRocksDB;
@@ -28,11 +27,12 @@ import java.util.List;
  */
 public class RocksDBIndex<IndexKey, IndexValue> implements HGSortIndex<IndexKey, IndexValue>
 {
-	private final LogicalDB indexDB;
+	protected final VKVVMVDB indexDB;
+	protected final IndexCounters counters;
 	private final String name;
 	protected final ByteArrayConverter<IndexKey> keyConverter;
 	protected final ByteArrayConverter<IndexValue> valueConverter;
-	private final OptimisticTransactionDB db;
+	protected final OptimisticTransactionDB db;
 	private volatile boolean open = true;
 	public final StorageImplementationRocksDB store;
 
@@ -53,6 +53,7 @@ public class RocksDBIndex<IndexKey, IndexValue> implements HGSortIndex<IndexKey,
 		this.db = db;
 		this.store = store;
 		this.indexDB = new VKVVMVDB(columnFamilyName, columnFamily, columnFamilyOptions);
+		this.counters = new IndexCounters(store.indexCounts(), columnFamilyName);
 		/*
 		we have multiple values for each key
 		we must combine the keys and value
@@ -75,6 +76,14 @@ public class RocksDBIndex<IndexKey, IndexValue> implements HGSortIndex<IndexKey,
 
 
 
+	/**
+	 * Remove the entry counters of the index, when the index itself is removed.
+	 */
+	void dropCounters()
+	{
+		this.counters.drop(db);
+	}
+
 	public String getColumnFamilyName()
 	{
 		return this.indexDB.cfName();
@@ -137,7 +146,15 @@ public class RocksDBIndex<IndexKey, IndexValue> implements HGSortIndex<IndexKey,
 		byte[] keyBytes = this.keyConverter.toByteArray(key);
 		byte[] valueBytes = this.valueConverter.toByteArray(value);
 		this.store.ensureTransaction(tx -> {
-			this.indexDB.put(tx, keyBytes, valueBytes);
+			/*
+			Only count entries which are actually new. The put itself is conflict
+			checked so two transactions cannot both count the same entry.
+			 */
+			if (!this.indexDB.contains(tx, keyBytes, valueBytes))
+			{
+				this.indexDB.put(tx, keyBytes, valueBytes);
+				this.counters.add(tx, keyBytes, 1);
+			}
 		});
 	}
 
@@ -148,7 +165,11 @@ public class RocksDBIndex<IndexKey, IndexValue> implements HGSortIndex<IndexKey,
 		byte[] keyBytes = this.keyConverter.toByteArray(key);
 		byte[] valueBytes = this.valueConverter.toByteArray(value);
 		this.store.ensureTransaction(tx -> {
-			this.indexDB.delete(tx, keyBytes, valueBytes);
+			if (this.indexDB.contains(tx, keyBytes, valueBytes))
+			{
+				this.indexDB.delete(tx, keyBytes, valueBytes);
+				this.counters.add(tx, keyBytes, -1);
+			}
 		});
 	}
 
@@ -156,9 +177,11 @@ public class RocksDBIndex<IndexKey, IndexValue> implements HGSortIndex<IndexKey,
 	public void removeAllEntries(IndexKey key)
 	{
 		checkOpen();
+		byte[] keyBytes = keyConverter.toByteArray(key);
 		this.store.ensureTransaction(tx -> {
-			this.indexDB.delete(tx, keyConverter.toByteArray(key));
-
+			long count = this.counters.valuesOfKey(tx, keyBytes);
+			this.indexDB.delete(tx, keyBytes);
+			this.counters.add(tx, keyBytes, -count);
 		});
 
 	}
@@ -226,22 +249,78 @@ public class RocksDBIndex<IndexKey, IndexValue> implements HGSortIndex<IndexKey,
 	public long count()
 	{
 		checkOpen();
-		try (var rs = (IteratorResultSet<IndexKey>)scanKeys())
-		{
-			return rs.count();
-		}
+		return countKeys();
 	}
 
 	@Override
 	public long count(IndexKey key)
 	{
 		checkOpen();
-		try (var rs = (IteratorResultSet<IndexValue>)find(key) )
+		return countValues(keyConverter.toByteArray(key));
+	}
+
+	/**
+	 * The exact number of entries in the index, from the counters
+	 */
+	long countEntries()
+	{
+		checkOpen();
+		return this.store.ensureTransaction(tx -> {
+			return this.counters.entries(tx);
+		});
+	}
+
+	/**
+	 * The exact number of distinct keys in the index, from the counters
+	 */
+	long countKeys()
+	{
+		checkOpen();
+		return this.store.ensureTransaction(tx -> {
+			return this.counters.keys(tx);
+		});
+	}
+
+	/**
+	 * The exact number of values for a key, from the counters
+	 */
+	long countValues(byte[] keyBytes)
+	{
+		checkOpen();
+		return this.store.ensureTransaction(tx -> {
+			return this.counters.valuesOfKey(tx, keyBytes);
+		});
+	}
+
+	/**
+	 * Estimate the number of entries in the index using the RocksDB estimate of
+	 * the number of keys in the column family. It does not access the storage.
+	 */
+	long estimateEntries()
+	{
+		checkOpen();
+		try
+		{
+			return db.getLongProperty(this.indexDB.cfHandle(), "rocksdb.estimate-num-keys");
+		}
+		catch (RocksDBException e)
 		{
-			return rs.count();
+			throw new HGException(e);
 		}
 	}
 
+	/**
+	 * Estimate the number of distinct keys in the index from the approximate
+	 * size of its per key counters.
+	 */
+	long estimateKeys()
+	{
+		checkOpen();
+		return estimateRange(this.counters.cfHandle(),
+				this.counters.firstKeyCounter(),
+				this.counters.lastKeyCounter());
+	}
+
 	/**
 	 * estimates the number of records in a given range
 	 * @param startKey
@@ -251,12 +330,20 @@ public class RocksDBIndex<IndexKey, IndexValue> implements HGSortIndex<IndexKey,
 	long estimateIndexRange(byte[] startKey, byte[] endKey)
 	{
 		checkOpen();
+		return estimateRange(this.indexDB.cfHandle(), startKey, endKey);
+	}
+
+	/**
+	 * estimates the number of records in a given range of a column family
+	 */
+	long estimateRange(ColumnFamilyHandle cfHandle, byte[] startKey, byte[] endKey)
+	{
 		try (Slice start = new Slice(startKey); Slice end = new Slice(endKey))
 		{
 			var range = new Range(start, end);
 
 
-			var memtableStats = db.getApproximateMemTableStats(this.indexDB.cfHandle(), range);
+			var memtableStats = db.getApproximateMemTableStats(cfHandle, range);
 			long avgRecordSize = 0;
 			if (memtableStats.count == 0)
 			{
@@ -268,7 +355,7 @@ public class RocksDBIndex<IndexKey, IndexValue> implements HGSortIndex<IndexKey,
 				avgRecordSize = memtableStats.size / memtableStats.count;
 			}
 
-			var sizeOnDisk = db.getApproximateSizes(this.indexDB.cfHandle(), List.of(range))[0];
+			var sizeOnDisk = db.getApproximateSizes(cfHandle, List.of(range))[0];
 			if (avgRecordSize == 0)
 			{
 			   if(sizeOnDisk == 0)
@@ -9,22 +9,21 @@
 
 package org.hypergraphdb.storage.rocksdb.index;
 
-import org.hypergraphdb.HGPersistentHandle;
 import org.hypergraphdb.storage.HGIndexStats;
 import org.hypergraphdb.storage.rocksdb.resultset.IteratorResultSet;
-import org.hypergraphdb.storage.rocksdb.dataformat.VarKeyVarValueColumnFamilyMultivaluedDB;
-
-/*
-TODO
-TODO
-TODO
-	All counters ignore the cost and isEstimateOK parameters because the
-	clients seem to set the isEstimateOK parameter but expect precise
-	answer regardless.
-	We need to either fix the clients or implement better (what does better mean? how close to the real
-	result should we be? Is it allowed to estimate to 0, when there are any (1,2..) results?)
-	estimations
 
+/**
+ * Index statistics backed by the counters maintained by the index (see {@link IndexCounters}).
+ * <br/>
+ * <br/>
+ * The cost of the different counts is:
+ * <br/>
+ * - entries, keys, values of a key, keys with a value -- a single counter lookup, cost 1.
+ * With a cost of 0, the number of entries can still be estimated from the RocksDB
+ * <code>rocksdb.estimate-num-keys</code> property which is kept in memory and the number
+ * of keys from the approximate size of the per key counters.<br/>
+ * - values -- a single counter lookup for bidirectional indexes, where the distinct values
+ * are the keys of the inverse index. Otherwise a full scan of the index.
  */
 public class RocksDBIndexStats<IndexKey, IndexValue> implements HGIndexStats<IndexKey, IndexValue>
 {
@@ -36,161 +35,86 @@ public class RocksDBIndexStats<IndexKey, IndexValue> implements HGIndexStats<Ind
 	}
 
 	@Override
-	public Count entries(long ignoredCost, boolean ignoredIsEstimate)
+	public Count entries(long cost, boolean isEstimateOk)
 	{
-		long cost = Long.MAX_VALUE;
-		boolean isEstimateOk = false;
-		if (cost < Long.MAX_VALUE)
-		{
-			if (!isEstimateOk)
-			{
-			/*
-			Estimate is not ok, but that
-			means we need a full scan which is above the
-			requested maximum cost.
-			 */
-				return null;
-			}
-			else
-			{
-				return new Count(() -> {
-					//all the values in the entire index
-					return rocksDBIndex.estimateIndexSize();
-				}, true);
-			}
-		}
+		rocksDBIndex.checkOpen();
+		if (cost > 0)
+			return new Count(rocksDBIndex::countEntries, false);
+		else if (isEstimateOk)
+			return new Count(rocksDBIndex::estimateEntries, true);
 		else
-		{
-			return new Count(() -> {
-				//all the values in the entire index
-				try (var keys = (IteratorResultSet<HGPersistentHandle>) rocksDBIndex.scanKeys())
-				{
-					return (long) keys.count();
-				}
-			}, false);
-		}
+			return null;
 	}
 
 	@Override
-	public Count keys(long ignoredCost, boolean ignoredIsEstimate)
+	public Count keys(long cost, boolean isEstimateOk)
 	{
-		boolean isEstimateOk = false;
-		long cost = Long.MAX_VALUE;
-		if (cost < Long.MAX_VALUE)
-		{
-			/*
-			we cannot do anything for less than full scan
-			 */
-			return null;
-		}
+		rocksDBIndex.checkOpen();
+		if (cost > 0)
+			return new Count(rocksDBIndex::countKeys, false);
+		else if (isEstimateOk)
+			return new Count(rocksDBIndex::estimateKeys, true);
 		else
-		{
-			/*
-			TODO count unique keys
-				rocksDBIndex.scanKeys() returns all keys
-			 */
-			return new Count(() -> {
-				//all the values in the entire index
-				try (var keys = (IteratorResultSet<HGPersistentHandle>) rocksDBIndex.scanKeys())
-				{
-					return (long) keys.count();
-				}
-			}, false);
-		}
+			return null;
 	}
 
 	@Override
-	public Count valuesOfKey(IndexKey key, long ignoredCost, boolean ignoredIsEstimate)
+	public Count valuesOfKey(IndexKey key, long cost, boolean isEstimateOk)
 	{
-		long cost = Long.MAX_VALUE;
-		boolean isEstimateOk = false;
+		rocksDBIndex.checkOpen();
+		if (cost == 0)
+			return null;
+		byte[] keyBytes = rocksDBIndex.keyConverter.toByteArray(key);
+		return new Count(() -> rocksDBIndex.countValues(keyBytes), false);
+	}
 
-		if (cost < Long.MAX_VALUE)
+	@Override
+	public Count values(long cost, boolean isEstimateOk)
+	{
+		rocksDBIndex.checkOpen();
+		if (rocksDBIndex instanceof BidirectionalRocksDBIndex)
 		{
-			if (!isEstimateOk)
-			{
-				/*
-				Estimate is not ok, but that
-				means we need a full scan which is above the
-				requested maximum cost.
-				 */
-				return null;
-			}
+			var biIndex = (BidirectionalRocksDBIndex<IndexKey, IndexValue>) rocksDBIndex;
+			if (cost > 0)
+				return new Count(biIndex::countDistinctValues, false);
+			else if (isEstimateOk)
+				return new Count(biIndex::estimateValues, true);
 			else
-			{
-				return new Count(() -> {
-					return rocksDBIndex.estimateIndexRange(
-							VarKeyVarValueColumnFamilyMultivaluedDB.firstRocksDBKey(
-									rocksDBIndex.keyConverter.toByteArray(key)),
-							VarKeyVarValueColumnFamilyMultivaluedDB.lastRocksDBKey(
-									rocksDBIndex.keyConverter.toByteArray(
-											key)));
-				}, true);
-			}
+				return null;
 		}
-		else
+		else if (cost == Long.MAX_VALUE)
 		{
 			return new Count(() -> {
 				//all the values in the entire index
-				try (var values = (IteratorResultSet<HGPersistentHandle>) rocksDBIndex.find(
-						key))
+				try (var values = (IteratorResultSet<IndexValue>) rocksDBIndex.scanValues())
 				{
 					return (long) values.count();
 				}
 			}, false);
 		}
-	}
-
-	@Override
-	public Count values(long ignoredcost, boolean ignoredisEstimateOk)
-	{
-		long cost = Long.MAX_VALUE;
-		boolean isEstimateOk = false;
-		if (cost < Long.MAX_VALUE)
-			return null;
-
-		/*
-		we do not have estimates for the
-		 */
-		return new Count(() -> {
-			//all the values in the entire index
-			try (var values = (IteratorResultSet<HGPersistentHandle>) rocksDBIndex.scanValues())
-			{
-				return (long) values.count();
-			}
-		}, false);
-
-	}
-
-	@Override
-	public Count keysWithValue(IndexValue o, long ignoredcost, boolean ignoredisEstimateOk)
-	{
-		/*
-		TODO we can perform estimations
-		 */
-		long cost = Long.MAX_VALUE;
-		boolean isEstimateOk = false;
-
-		if (cost < Long.MAX_VALUE)
-			return null;
-
-		if (rocksDBIndex instanceof BidirectionalRocksDBIndex)
+		else if (isEstimateOk)
 		{
-
-			return new Count(() -> {
-				//TODO get the estimate of the ra
-				try (var keys = ((BidirectionalRocksDBIndex<IndexKey, IndexValue>)rocksDBIndex).findByValue(o))
-				{
-					return (long) ((IteratorResultSet<IndexValue>)keys).count();
-				}
-
-			}, false);
-
+			/*
+			There are no more values than entries
+			 */
+			return cost > 0
+					? new Count(rocksDBIndex::countEntries, true)
+					: new Count(rocksDBIndex::estimateEntries, true);
 		}
 		else
 		{
 			return null;
 		}
+	}
 
+	@Override
+	public Count keysWithValue(IndexValue value, long cost, boolean isEstimateOk)
+	{
+		rocksDBIndex.checkOpen();
+		if (!(rocksDBIndex instanceof BidirectionalRocksDBIndex) || cost == 0)
+			return null;
+		var biIndex = (BidirectionalRocksDBIndex<IndexKey, IndexValue>) rocksDBIndex;
+		byte[] valueBytes = rocksDBIndex.valueConverter.toByteArray(value);
+		return new Count(() -> biIndex.countKeysWithValue(valueBytes), false);
 	}
 }
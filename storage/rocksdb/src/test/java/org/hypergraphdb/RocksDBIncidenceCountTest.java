@@ -0,0 +1,139 @@
+package org.hypergraphdb;
+
+import org.hypergraphdb.storage.rocksdb.StorageImplementationRocksDB;
+import org.hypergraphdb.util.HGUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The incidence set counters of the RocksDB storage, kept in the INCIDENCE_COUNT
+ * column family.
+ */
+public class RocksDBIncidenceCountTest
+{
+	static HyperGraph graph;
+	static String location = "./hgdbrocksdb-incidence";
+
+	static HyperGraph open()
+	{
+		HGConfiguration config = new HGConfiguration();
+		config.setStoreImplementation(new StorageImplementationRocksDB());
+		new File(location).mkdirs();
+		return HGEnvironment.get(location, config);
+	}
+
+	@BeforeClass
+	public static void openGraph()
+	{
+		HGUtils.dropHyperGraphInstance(location);
+		graph = open();
+	}
+
+	@AfterClass
+	public static void closeGraph()
+	{
+		graph.close();
+		HGUtils.dropHyperGraphInstance(location);
+	}
+
+	static long cardinality(HGHandle atom)
+	{
+		return graph.getStore().getIncidenceSetCardinality(graph.getPersistentHandle(atom));
+	}
+
+	static long scanned(HGHandle atom)
+	{
+		return graph.getTransactionManager().ensureTransaction(() -> {
+			try (var rs = graph.getStore().getIncidenceResultSet(graph.getPersistentHandle(atom)))
+			{
+				long count = 0;
+				while (rs.hasNext())
+				{
+					rs.next();
+					count++;
+				}
+				return count;
+			}
+		});
+	}
+
+	@Test
+	public void addRemoveLinks()
+	{
+		HGHandle atom = graph.add("incidence-target");
+		HGHandle other = graph.add("incidence-other");
+		Assert.assertEquals(0, cardinality(atom));
+		List<HGHandle> links = new ArrayList<>();
+		for (int i = 0; i < 5; i++)
+			links.add(graph.add(new HGPlainLink(atom, other)));
+		Assert.assertEquals(5, cardinality(atom));
+		Assert.assertEquals(5, cardinality(other));
+		graph.remove(links.get(0));
+		graph.remove(links.get(1));
+		Assert.assertEquals(3, cardinality(atom));
+		Assert.assertEquals(scanned(atom), cardinality(atom));
+		// adding a link which is already in the incidence set is not counted
+		graph.getStore().addIncidenceLink(graph.getPersistentHandle(atom),
+				graph.getPersistentHandle(links.get(2)));
+		Assert.assertEquals(3, cardinality(atom));
+		// and neither is removing one which isn't there
+		graph.getStore().removeIncidenceLink(graph.getPersistentHandle(atom),
+				graph.getPersistentHandle(links.get(0)));
+		Assert.assertEquals(3, cardinality(atom));
+	}
+
+	@Test
+	public void abortedLinksNotCounted()
+	{
+		HGHandle atom = graph.add("incidence-abort");
+		HGHandle kept = graph.add(new HGPlainLink(atom));
+		graph.getTransactionManager().beginTransaction();
+		graph.add(new HGPlainLink(atom));
+		graph.add(new HGPlainLink(atom));
+		graph.remove(kept);
+		// the transaction sees its own changes
+		Assert.assertEquals(2, cardinality(atom));
+		graph.getTransactionManager().abort();
+		Assert.assertEquals(1, cardinality(atom));
+		Assert.assertEquals(1, scanned(atom));
+	}
+
+	@Test
+	public void removeIncidenceSet()
+	{
+		HGHandle atom = graph.add("incidence-removed");
+		HGHandle neighbour = graph.add("incidence-neighbour");
+		for (int i = 0; i < 10; i++)
+		{
+			graph.add(new HGPlainLink(atom));
+			graph.add(new HGPlainLink(neighbour));
+		}
+		Assert.assertEquals(10, cardinality(atom));
+		graph.getStore().removeIncidenceSet(graph.getPersistentHandle(atom));
+		// all the records of the set are deleted, not just the first one
+		Assert.assertEquals(0, scanned(atom));
+		Assert.assertEquals(0, cardinality(atom));
+		// and the incidence sets of other atoms are left alone
+		Assert.assertEquals(10, scanned(neighbour));
+		Assert.assertEquals(10, cardinality(neighbour));
+	}
+
+	@Test
+	public void countsSurviveReopen()
+	{
+		HGHandle atom = graph.add("incidence-reopen");
+		for (int i = 0; i < 3; i++)
+			graph.add(new HGPlainLink(atom));
+		HGPersistentHandle persistent = graph.getPersistentHandle(atom);
+		graph.close();
+		// a store cannot be started again once shut down
+		graph = open();
+		Assert.assertEquals(3, graph.getStore().getIncidenceSetCardinality(persistent));
+	}
+}
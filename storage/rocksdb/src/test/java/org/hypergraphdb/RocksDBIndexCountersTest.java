@@ -0,0 +1,245 @@
+package org.hypergraphdb;
+
+import org.hypergraphdb.storage.BAtoString;
+import org.hypergraphdb.storage.HGIndexStats;
+import org.hypergraphdb.storage.rocksdb.StorageImplementationRocksDB;
+import org.hypergraphdb.util.HGUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * The entry, key and value counters maintained by the RocksDB indexes and the
+ * statistics computed from them.
+ */
+public class RocksDBIndexCountersTest
+{
+	static HyperGraph graph;
+	static String location = "./hgdbrocksdb-counters";
+
+	static HyperGraph open()
+	{
+		HGConfiguration config = new HGConfiguration();
+		config.setStoreImplementation(new StorageImplementationRocksDB());
+		new File(location).mkdirs();
+		return HGEnvironment.get(location, config);
+	}
+
+	@BeforeClass
+	public static void openGraph()
+	{
+		HGUtils.dropHyperGraphInstance(location);
+		graph = open();
+	}
+
+	@AfterClass
+	public static void closeGraph()
+	{
+		graph.close();
+		HGUtils.dropHyperGraphInstance(location);
+	}
+
+	static HGBidirectionalIndex<String, String> index(String name)
+	{
+		return graph.getStore().getBidirectionalIndex(name,
+				BAtoString.getInstance(),
+				BAtoString.getInstance(),
+				null,
+				null,
+				true);
+	}
+
+	@SuppressWarnings("deprecation")
+	static void assertCounts(HGBidirectionalIndex<String, String> index, long entries, long keys, long values)
+	{
+		HGIndexStats<String, String> stats = index.stats();
+		Assert.assertEquals(entries, stats.entries(1, false).value());
+		Assert.assertEquals(keys, stats.keys(1, false).value());
+		Assert.assertEquals(values, stats.values(1, false).value());
+		Assert.assertEquals(keys, index.count());
+	}
+
+	@Test
+	public void addRemoveEntries()
+	{
+		var index = index("counters-add-remove");
+		assertCounts(index, 0, 0, 0);
+		index.addEntry("a", "1");
+		index.addEntry("a", "2");
+		index.addEntry("a", "3");
+		index.addEntry("b", "1");
+		assertCounts(index, 4, 2, 3);
+		// adding an existing entry is not counted
+		index.addEntry("a", "2");
+		assertCounts(index, 4, 2, 3);
+		Assert.assertEquals(3, index.stats().valuesOfKey("a", 1, false).value());
+		Assert.assertEquals(2, index.stats().keysWithValue("1", 1, false).value());
+		index.removeEntry("a", "3");
+		// removing a missing entry is not counted
+		index.removeEntry("a", "3");
+		index.removeEntry("c", "1");
+		assertCounts(index, 3, 2, 2);
+		index.removeAllEntries("a");
+		assertCounts(index, 1, 1, 1);
+		Assert.assertEquals(0, index.stats().valuesOfKey("a", 1, false).value());
+		Assert.assertEquals(1, index.stats().keysWithValue("1", 1, false).value());
+		Assert.assertEquals(0, index.stats().keysWithValue("2", 1, false).value());
+		index.removeEntry("b", "1");
+		assertCounts(index, 0, 0, 0);
+		// a key can come back after it was emptied
+		index.addEntry("a", "1");
+		assertCounts(index, 1, 1, 1);
+	}
+
+	@Test
+	public void abortedChangesNotCounted()
+	{
+		var index = index("counters-abort");
+		index.addEntry("a", "1");
+		graph.getTransactionManager().beginTransaction();
+		index.addEntry("a", "2");
+		index.addEntry("b", "2");
+		index.removeEntry("a", "1");
+		// the transaction sees its own changes
+		assertCounts(index, 2, 2, 1);
+		graph.getTransactionManager().abort();
+		assertCounts(index, 1, 1, 1);
+		Assert.assertEquals(1, index.stats().valuesOfKey("a", 1, false).value());
+		Assert.assertEquals(0, index.stats().keysWithValue("2", 1, false).value());
+	}
+
+	@Test
+	public void statsCost()
+	{
+		var index = index("counters-cost");
+		for (int i = 0; i < 100; i++)
+			index.addEntry("key" + (i % 10), "value" + i);
+		HGIndexStats<String, String> stats = index.stats();
+		Assert.assertFalse(stats.entries(1, false).isEstimate());
+		Assert.assertFalse(stats.keys(1, false).isEstimate());
+		Assert.assertFalse(stats.values(1, false).isEstimate());
+		Assert.assertEquals(100, stats.countEntries());
+		Assert.assertEquals(10, stats.countKeys());
+		Assert.assertEquals(100, stats.countValues());
+		Assert.assertEquals(10, stats.countValues("key3"));
+		Assert.assertEquals(1, stats.countKeys("value42"));
+		// nothing can be read at cost 0, only estimated
+		Assert.assertNull(stats.entries(0, false));
+		Assert.assertNull(stats.keys(0, false));
+		Assert.assertNull(stats.valuesOfKey("key3", 0, false));
+		Assert.assertNull(stats.keysWithValue("value42", 0, false));
+		Assert.assertTrue(stats.entries(0, true).isEstimate());
+		Assert.assertTrue(stats.keys(0, true).isEstimate());
+		Assert.assertTrue(stats.values(0, true).isEstimate());
+	}
+
+	@Test
+	public void concurrentKeyTransitions() throws Exception
+	{
+		var index = index("counters-concurrent");
+		index.addEntry("stable", "0");
+		int threadCount = 4;
+		var barrier = new CyclicBarrier(threadCount);
+		List<Thread> threads = new ArrayList<>();
+		List<Throwable> failures = new ArrayList<>();
+		for (int t = 0; t < threadCount; t++)
+		{
+			String value = "v" + t;
+			Thread thread = new Thread(() -> {
+				try
+				{
+					barrier.await();
+					for (int i = 0; i < 50; i++)
+					{
+						// every thread makes the shared key appear and disappear
+						graph.getTransactionManager().transact(() -> {
+							index.addEntry("shared", value);
+							return null;
+						});
+						graph.getTransactionManager().transact(() -> {
+							index.removeEntry("shared", value);
+							return null;
+						});
+					}
+				}
+				catch (Throwable e)
+				{
+					synchronized (failures) { failures.add(e); }
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		Assert.assertTrue(failures.toString(), failures.isEmpty());
+		assertCounts(index, 1, 1, 1);
+		Assert.assertEquals(0, index.stats().countValues("shared"));
+	}
+
+	@Test
+	public void concurrentRemovalsEmptyKey() throws Exception
+	{
+		var index = index("counters-concurrent-remove");
+		index.addEntry("stable", "0");
+		int threadCount = 4;
+		var barrier = new CyclicBarrier(threadCount);
+		List<Throwable> failures = new ArrayList<>();
+		for (int round = 0; round < 20; round++)
+		{
+			graph.getTransactionManager().transact(() -> {
+				for (int t = 0; t < threadCount; t++)
+					index.addEntry("shared", "v" + t);
+				return null;
+			});
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < threadCount; t++)
+			{
+				String value = "v" + t;
+				Thread thread = new Thread(() -> {
+					try
+					{
+						barrier.await();
+						// the last removal to commit must see that the key is gone
+						graph.getTransactionManager().transact(() -> {
+							index.removeEntry("shared", value);
+							return null;
+						});
+					}
+					catch (Throwable e)
+					{
+						synchronized (failures) { failures.add(e); }
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+			for (Thread thread : threads)
+				thread.join();
+			Assert.assertTrue(failures.toString(), failures.isEmpty());
+			assertCounts(index, 1, 1, 1);
+		}
+	}
+
+	@Test
+	public void countersSurviveReopen()
+	{
+		var index = index("counters-reopen");
+		index.addEntry("a", "1");
+		index.addEntry("a", "2");
+		index.addEntry("b", "2");
+		graph.close();
+		// a store cannot be started again once shut down
+		graph = open();
+		index = index("counters-reopen");
+		assertCounts(index, 3, 2, 2);
+		index.removeAllEntries("a");
+		assertCounts(index, 1, 1, 1);
+	}
+}
@@ -0,0 +1,107 @@
+package hgtest;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hypergraphdb.HGBulkLoader;
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.HGQuery.hg;
+import org.hypergraphdb.indexing.ByPartIndexer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import hgtest.types.SimpleBean;
+
+public class BulkLoaderTests extends HGTestBase
+{
+	@Test
+	public void testLoad()
+	{
+		HGHandle typeH = graph.getTypeSystem().getTypeHandle(SimpleBean.class);
+		graph.getIndexManager().register(new ByPartIndexer<String>(typeH, "str"));
+		HGHandle existing = graph.add(new String("bulkExisting"));
+		Assert.assertEquals(0, graph.getIncidenceSet(existing).size());
+
+		final List<Long> progress = new ArrayList<Long>();
+		HGBulkLoader loader = new HGBulkLoader(graph);
+		loader.setBatchSize(7);
+		loader.setBufferSize(2048);
+		loader.setProgressListener(l -> progress.add(l.getAtomCount()));
+		List<HGHandle> beans = new ArrayList<HGHandle>();
+		for (int i = 0; i < 50; i++)
+			beans.add(loader.add(new SimpleBean(i, "bulk" + i, Color.red)));
+		for (int i = 0; i < 49; i++)
+			loader.add(new HGPlainLink(beans.get(i), beans.get(i + 1), existing));
+		loader.flush();
+		Assert.assertTrue(loader.getRunCount() > 0);
+		Assert.assertEquals(99, loader.getAtomCount());
+		Assert.assertEquals(49, loader.getLinkCount());
+		Assert.assertEquals(new SimpleBean(3, "bulk3", Color.red), graph.get(beans.get(3)));
+		Assert.assertEquals(0, hg.count(graph, hg.type(SimpleBean.class)));
+
+		loader.checkpoint();
+		Assert.assertEquals(0, loader.getPendingEntryCount());
+		Assert.assertEquals(0, loader.getRunCount());
+		Assert.assertEquals(50, hg.count(graph, hg.type(SimpleBean.class)));
+		Assert.assertEquals(49, hg.count(graph, hg.type(HGPlainLink.class)));
+		Assert.assertEquals(49, graph.getIncidenceSet(existing).size());
+		Assert.assertEquals(2, graph.getIncidenceSet(beans.get(1)).size());
+		Assert.assertEquals(beans.get(17), hg.findOne(graph, hg.and(hg.type(SimpleBean.class), hg.eq("str", "bulk17"))));
+		Assert.assertEquals(beans.get(18), hg.findOne(graph, hg.and(hg.type(SimpleBean.class),
+																	hg.eq(new SimpleBean(18, "bulk18", Color.red)))));
+
+		loader.add(new String("bulkLast"));
+		loader.close();
+		Assert.assertEquals(2, loader.getCheckpointCount());
+		Assert.assertEquals(1, hg.count(graph, hg.eq("bulkLast")));
+		Assert.assertFalse(progress.isEmpty());
+		Assert.assertEquals(Long.valueOf(100), progress.get(progress.size() - 1));
+
+		reopenDb();
+		Assert.assertEquals(49, graph.getIncidenceSet(existing).size());
+		Assert.assertEquals(50, hg.count(graph, hg.type(SimpleBean.class)));
+		Assert.assertEquals(1, hg.count(graph, hg.and(hg.type(SimpleBean.class), hg.eq("str", "bulk30"))));
+	}
+
+	@Test
+	public void testRecover() throws IOException
+	{
+		File journal = new File(T.getTmpDirectory(), "hgbulk.journal");
+		journal.delete();
+		HGHandle existing = graph.add(new String("recoverExisting"));
+		HGBulkLoader crashed = new HGBulkLoader(graph);
+		crashed.setBatchSize(4);
+		crashed.setJournal(journal);
+		List<HGHandle> atoms = new ArrayList<HGHandle>();
+		for (int i = 0; i < 10; i++)
+			atoms.add(crashed.add(new String("recover" + i)));
+		for (int i = 0; i < 9; i++)
+			crashed.add(new HGPlainLink(atoms.get(i), existing));
+		crashed.flush();
+		// the loader is abandoned without a checkpoint, in the middle of
+		// writing the handles of the next batch
+		try (FileOutputStream out = new FileOutputStream(journal, true))
+		{
+			out.write(new byte[] { 1, 2, 3 });
+		}
+		Assert.assertEquals("recover3", graph.get(atoms.get(3)));
+		Assert.assertEquals(0, hg.count(graph, hg.eq("recover3")));
+		Assert.assertEquals(0, graph.getIncidenceSet(existing).size());
+
+		HGBulkLoader loader = new HGBulkLoader(graph);
+		loader.setJournal(journal);
+		Assert.assertEquals(19, loader.recover());
+		Assert.assertFalse(journal.exists());
+		for (int i = 0; i < 10; i++)
+			Assert.assertEquals(atoms.get(i), hg.findOne(graph, hg.eq("recover" + i)));
+		Assert.assertEquals(9, graph.getIncidenceSet(existing).size());
+		Assert.assertEquals(1, graph.getIncidenceSet(atoms.get(0)).size());
+		Assert.assertEquals(0, loader.recover());
+		loader.close();
+	}
+}
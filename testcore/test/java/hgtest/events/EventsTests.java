@@ -9,13 +9,17 @@ package hgtest.events;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.hypergraphdb.HGHandle;
 import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.event.HGAtomAddedEvent;
 import org.hypergraphdb.event.HGAtomDefinedEvent;
 import org.hypergraphdb.event.HGAtomRefusedException;
+import org.hypergraphdb.event.HGDefaultEventManager;
 import org.hypergraphdb.event.HGDefineProposeEvent;
 import org.hypergraphdb.event.HGEvent;
 import org.hypergraphdb.event.HGListener;
@@ -104,4 +108,49 @@ public class EventsTests extends HGTestBase
         assertEventType(HGAtomDefinedEvent.class);
     }
     
+    @Test
+    public void asyncAfterCommit() throws Exception
+    {
+        HGDefaultEventManager manager = (HGDefaultEventManager)graph.getEventManager();
+        final List<HGHandle> added = Collections.synchronizedList(new ArrayList<HGHandle>());
+        HGListener asyncListener = new HGListener() {
+            @Override
+            public Result handle(HyperGraph graph, HGEvent event)
+            {
+                added.add(((HGAtomAddedEvent)event).getAtomHandle());
+                return Result.ok;
+            }
+        };
+        manager.addAsyncListener(HGAtomAddedEvent.class, asyncListener);
+        try
+        {
+            graph.getTransactionManager().beginTransaction();
+            HGHandle first = graph.add("AsyncFirst");
+            HGHandle second = graph.add("AsyncSecond");
+            // nothing is delivered before commit
+            Assert.assertTrue(manager.awaitAsyncDelivery(5000));
+            Assert.assertTrue(added.isEmpty());
+            graph.getTransactionManager().commit();
+            Assert.assertTrue(manager.awaitAsyncDelivery(5000));
+            Assert.assertEquals(2, added.size());
+            Assert.assertEquals(first, added.get(0));
+            Assert.assertEquals(second, added.get(1));
+
+            graph.getTransactionManager().beginTransaction();
+            graph.add("AsyncAborted");
+            graph.getTransactionManager().abort();
+            HGHandle third = graph.add("AsyncThird");
+            Assert.assertTrue(manager.awaitAsyncDelivery(5000));
+            Assert.assertEquals(3, added.size());
+            Assert.assertEquals(third, added.get(2));
+        }
+        finally
+        {
+            manager.removeListener(HGAtomAddedEvent.class, asyncListener);
+        }
+        graph.add("AsyncRemoved");
+        Assert.assertTrue(manager.awaitAsyncDelivery(5000));
+        Assert.assertEquals(3, added.size());
+    }
+    
 }
@@ -1,6 +1,8 @@
 package hgtest.indexing;
 
+import org.hypergraphdb.HGHandle;
 import org.hypergraphdb.HGIndex;
+import org.hypergraphdb.HGPersistentHandle;
 
 import org.hypergraphdb.indexing.ByPartIndexer;
 import org.hypergraphdb.indexing.HGIndexer;
@@ -71,4 +73,32 @@ public class IndexManagerTests extends HGTestBase
         // The index should contain exactly one element here:
         Assert.assertEquals(theIndex.count(), 1);	
     }
+    
+    @Test
+    public void testParallelIndexBackfill()
+    {
+    	cleanup();
+    	HGHandle [] atoms = new HGHandle[1000];
+    	for (int i = 0; i < atoms.length; i++)
+    	{
+            SimpleBean x = new SimpleBean();
+            x.setStrProp("bean" + i);
+            atoms[i] = graph.add(x);
+    	}
+    	graph.getConfig().setIndexingParallelism(4);
+    	try
+    	{
+    		HGIndexer indexer = new ByPartIndexer(graph.getTypeSystem().getTypeHandle(SimpleBean.class), "strProp");
+    		HGIndex<String, HGPersistentHandle> theIndex = graph.getIndexManager().register(indexer);
+            Assert.assertEquals(theIndex.count(), 0);
+    		graph.runMaintenance();
+            Assert.assertEquals(theIndex.count(), atoms.length);
+            for (int i = 0; i < atoms.length; i += 97)
+            	Assert.assertEquals(theIndex.findFirst("bean" + i), atoms[i].getPersistent());
+    	}
+    	finally
+    	{
+    		graph.getConfig().setIndexingParallelism(1);
+    	}
+    }
 }
\ No newline at end of file
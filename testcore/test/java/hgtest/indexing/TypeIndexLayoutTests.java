@@ -0,0 +1,149 @@
+package hgtest.indexing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.hypergraphdb.HGConfiguration;
+import org.hypergraphdb.HGEnvironment;
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGIndex;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.HGRandomAccessResult;
+import org.hypergraphdb.HGRandomAccessResult.GotoResult;
+import org.hypergraphdb.HyperGraph;
+import org.hypergraphdb.HGQuery.hg;
+import org.hypergraphdb.handle.TimeOrderedUUIDHandleFactory;
+import org.hypergraphdb.util.HGUtils;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import hgtest.HGTestBase;
+
+/**
+ * A graph with a partitioned by-type index and without a by-value index.
+ */
+public class TypeIndexLayoutTests extends HGTestBase
+{
+	@BeforeClass
+	public static void setUp()
+	{
+		HGUtils.dropHyperGraphInstance(getGraphLocation());
+		HGConfiguration config = new HGConfiguration();
+		config.setTypeIndexPartitions(16);
+		config.setMaintainValueIndex(false);
+		graph = HGEnvironment.get(getGraphLocation(), config);
+	}
+
+	private static void checkScan(HyperGraph graph, List<HGPersistentHandle> added)
+	{
+		HGIndex<HGPersistentHandle, HGPersistentHandle> idx = graph.getIndexManager().getIndexByType();
+		HGPersistentHandle type = graph.getPersistentHandle(graph.getTypeSystem().getTypeHandle(Long.class));
+		Assert.assertEquals(added.size(), idx.count(type));
+		Assert.assertEquals(added.size(), hg.count(graph, hg.type(Long.class)));
+		Assert.assertEquals(added.get(0), idx.findFirst(type));
+		graph.getTransactionManager().ensureTransaction(() -> {
+			HGRandomAccessResult<HGPersistentHandle> rs = idx.find(type);
+			try
+			{
+				List<HGPersistentHandle> scanned = new ArrayList<HGPersistentHandle>();
+				while (rs.hasNext())
+					scanned.add(rs.next());
+				Assert.assertEquals(added, scanned);
+				for (int i = added.size() - 2; i >= 0; i--)
+					Assert.assertEquals(added.get(i), rs.prev());
+				Assert.assertFalse(rs.hasPrev());
+				Assert.assertEquals(GotoResult.found, rs.goTo(added.get(150), true));
+				Assert.assertEquals(added.get(151), rs.next());
+				Assert.assertEquals(added.get(152), rs.next());
+				Assert.assertEquals(added.get(151), rs.prev());
+				Assert.assertEquals(added.get(152), rs.next());
+				// just above an atom handle, the closest is the next atom
+				int i = 40;
+				while (added.get(i).toByteArray()[15] == (byte)0xFF)
+					i++;
+				byte [] bytes = added.get(i).toByteArray();
+				bytes[15]++;
+				HGPersistentHandle between = graph.getHandleFactory().makeHandle(bytes);
+				Assert.assertEquals(GotoResult.close, rs.goTo(between, false));
+				Assert.assertEquals(added.get(i + 1), rs.current());
+				Assert.assertEquals(added.get(i + 2), rs.next());
+				Assert.assertEquals(GotoResult.nothing, rs.goTo(between, true));
+				rs.goAfterLast();
+				Assert.assertFalse(rs.hasNext());
+				Assert.assertEquals(added.get(added.size() - 1), rs.prev());
+				rs.goBeforeFirst();
+				Assert.assertEquals(added.get(0), rs.next());
+			}
+			finally
+			{
+				rs.close();
+			}
+			return null;
+		});
+	}
+
+	@Test
+	public void testPartitionedScan()
+	{
+		List<HGPersistentHandle> added = new ArrayList<HGPersistentHandle>();
+		for (int i = 0; i < 300; i++)
+			added.add(graph.getPersistentHandle(graph.add(new Long(i))));
+		Collections.sort(added);
+		checkScan(graph, added);
+		graph.remove(added.get(7));
+		Assert.assertEquals(299, hg.count(graph, hg.type(Long.class)));
+	}
+
+	@Test
+	public void testTimeOrderedHandles()
+	{
+		String location = getGraphLocation() + "_timeordered";
+		HGUtils.dropHyperGraphInstance(location);
+		HGConfiguration config = new HGConfiguration();
+		config.setTypeIndexPartitions(16);
+		config.setHandleFactory(new TimeOrderedUUIDHandleFactory());
+		HyperGraph graph = HGEnvironment.get(location, config);
+		try
+		{
+			List<HGPersistentHandle> added = new ArrayList<HGPersistentHandle>();
+			for (int i = 0; i < 300; i++)
+				added.add(graph.getPersistentHandle(graph.add(new Long(i))));
+			Collections.sort(added);
+			checkScan(graph, added);
+			// consecutive handles share their leading bytes but are spread among partitions
+			HGIndex<byte[], HGPersistentHandle> partitions = graph.getStore().getIndex(HyperGraph.PARTITIONED_TYPES_INDEX_NAME);
+			byte [] key = Arrays.copyOf(graph.getPersistentHandle(graph.getTypeSystem().getTypeHandle(Long.class)).toByteArray(), 17);
+			int used = 0;
+			for (int p = 0; p < 16; p++)
+			{
+				key[16] = (byte)p;
+				if (partitions.findFirst(key) != null)
+					used++;
+			}
+			Assert.assertEquals(16, used);
+		}
+		finally
+		{
+			graph.close();
+			HGUtils.dropHyperGraphInstance(location);
+		}
+	}
+
+	@Test
+	public void testValueQueriesWithoutValueIndex()
+	{
+		List<HGHandle> added = new ArrayList<HGHandle>();
+		for (int i = 0; i < 100; i++)
+			added.add(graph.add("noValueIndex" + i));
+		HGHandle link = graph.add(new HGPlainLink(added.get(3), added.get(4)));
+		Assert.assertFalse(graph.getIndexManager().isValueIndexed(graph.getTypeSystem().getTypeHandle(String.class)));
+		Assert.assertEquals(added.get(42), hg.findOne(graph, hg.and(hg.type(String.class), hg.eq("noValueIndex42"))));
+		Assert.assertEquals(2, hg.findAll(graph, hg.and(hg.type(String.class), hg.target(link))).size());
+		reopenDb();
+		Assert.assertEquals(added.get(17), hg.findOne(graph, hg.and(hg.type(String.class), hg.eq("noValueIndex17"))));
+	}
+}
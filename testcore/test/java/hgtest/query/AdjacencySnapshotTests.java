@@ -0,0 +1,96 @@
+package hgtest.query;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.HGQuery.hg;
+import org.hypergraphdb.algorithms.GraphClassics;
+import org.hypergraphdb.algorithms.HGAdjacencySnapshot;
+import org.hypergraphdb.algorithms.SimpleALGenerator;
+import org.hypergraphdb.event.HGDefaultEventManager;
+import org.junit.Assert;
+import org.junit.Test;
+
+import hgtest.HGTestBase;
+import hgtest.T;
+
+public class AdjacencySnapshotTests extends HGTestBase
+{
+	private static Set<HGHandle> adjacent(HGAdjacencySnapshot snapshot, HGHandle atom)
+	{
+		Set<HGHandle> result = new HashSet<HGHandle>();
+		int id = snapshot.idOf(atom);
+		for (int e = snapshot.edgesBegin(id); e < snapshot.edgesEnd(id); e++)
+			result.add(snapshot.atom(snapshot.target(e)));
+		return result;
+	}
+
+	private static Set<HGHandle> set(HGHandle... atoms)
+	{
+		Set<HGHandle> result = new HashSet<HGHandle>();
+		for (HGHandle h : atoms)
+			result.add(h);
+		return result;
+	}
+
+	@Test
+	public void testSnapshot() throws Exception
+	{
+		HGHandle A = graph.add("SnapshotA");
+		HGHandle B = graph.add("SnapshotB");
+		HGHandle C = graph.add("SnapshotC");
+		HGHandle D = graph.add("SnapshotD");
+		graph.add(new HGPlainLink(A, B));
+		HGHandle BC = graph.add(new HGPlainLink(B, C));
+		graph.add(new HGPlainLink(C, D));
+
+		HGAdjacencySnapshot snapshot = HGAdjacencySnapshot.build(graph, hg.type(String.class), new SimpleALGenerator(graph));
+		Assert.assertEquals(4, snapshot.size());
+		Assert.assertEquals(6, snapshot.edgeCount());
+		Assert.assertEquals(set(A, C), adjacent(snapshot, B));
+		Assert.assertEquals(1, snapshot.degree(snapshot.idOf(D)));
+		Assert.assertEquals(3.0, GraphClassics.dijkstra(A, D, snapshot.asGenerator()), 0.0);
+
+		File file = new File(T.getTmpDirectory(), "hgtest_snapshot");
+		try
+		{
+			snapshot.save(file);
+			HGAdjacencySnapshot mapped = HGAdjacencySnapshot.map(graph, file);
+			Assert.assertEquals(snapshot.size(), mapped.size());
+			Assert.assertEquals(snapshot.edgeCount(), mapped.edgeCount());
+			for (HGHandle h : new HGHandle[] { A, B, C, D })
+				Assert.assertEquals(adjacent(snapshot, h), adjacent(mapped, h));
+		}
+		finally
+		{
+			file.delete();
+		}
+
+		HGAdjacencySnapshot.Tracker tracker = snapshot.track();
+		try
+		{
+			HGHandle E = graph.add("SnapshotE");
+			graph.add(new HGPlainLink(D, E));
+			graph.remove(BC);
+			graph.add(42);
+			((HGDefaultEventManager)graph.getEventManager()).awaitAsyncDelivery(5000);
+			HGAdjacencySnapshot refreshed = tracker.refresh();
+			Assert.assertSame(refreshed, tracker.getSnapshot());
+			Assert.assertEquals(5, refreshed.size());
+			Assert.assertEquals(set(A), adjacent(refreshed, B));
+			Assert.assertEquals(set(D), adjacent(refreshed, C));
+			Assert.assertEquals(set(C, E), adjacent(refreshed, D));
+			Assert.assertEquals(set(D), adjacent(refreshed, E));
+			Assert.assertEquals(6, refreshed.edgeCount());
+			// the old snapshot is unchanged
+			Assert.assertEquals(set(A, C), adjacent(snapshot, B));
+		}
+		finally
+		{
+			tracker.close();
+		}
+	}
+}
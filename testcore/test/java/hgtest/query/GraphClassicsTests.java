@@ -0,0 +1,163 @@
+package hgtest.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.algorithms.AllPairsShortestPaths;
+import org.hypergraphdb.algorithms.DefaultALGenerator;
+import org.hypergraphdb.algorithms.GraphClassics;
+import org.hypergraphdb.algorithms.HGALGenerator;
+import org.hypergraphdb.algorithms.SimpleALGenerator;
+import org.hypergraphdb.util.Mapping;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import hgtest.HGTestBase;
+
+public class GraphClassicsTests extends HGTestBase
+{
+	public static class WeightedLink extends HGPlainLink
+	{
+		private double weight;
+
+		public WeightedLink(HGHandle... targets)
+		{
+			super(targets);
+		}
+
+		public WeightedLink(HGHandle from, HGHandle to, double weight)
+		{
+			super(from, to);
+			this.weight = weight;
+		}
+
+		public double getWeight() { return weight; }
+		public void setWeight(double weight) { this.weight = weight; }
+	}
+
+	private HGHandle A, B, C, D, E;
+	private List<HGHandle> links = new ArrayList<HGHandle>();
+	private Mapping<HGHandle, Double> weight = link -> graph.<WeightedLink>get(link).getWeight();
+
+	private HGHandle link(HGHandle from, HGHandle to, double w)
+	{
+		HGHandle h = graph.add(new WeightedLink(from, to, w));
+		links.add(h);
+		return h;
+	}
+
+	private HGALGenerator directed()
+	{
+		return new DefaultALGenerator(graph, null, null, false, true, false);
+	}
+
+	@Before
+	public void makeGraph()
+	{
+		A = graph.add("ClassicsA");
+		B = graph.add("ClassicsB");
+		C = graph.add("ClassicsC");
+		D = graph.add("ClassicsD");
+		E = graph.add("ClassicsE");
+		links.clear();
+		link(A, B, 4);
+		link(A, C, 1);
+		link(C, B, 2);
+		link(B, D, 1);
+		link(C, D, 5);
+		link(D, E, 3);
+	}
+
+	@Test
+	public void testDijkstraAndAStar()
+	{
+		Map<HGHandle, Double> distance = new HashMap<HGHandle, Double>();
+		Map<HGHandle, HGHandle> predecessor = new HashMap<HGHandle, HGHandle>();
+		Assert.assertEquals(7.0, GraphClassics.dijkstra(A, E, directed(), weight, distance, predecessor), 0.0);
+		Assert.assertEquals(3.0, distance.get(B), 0.0);
+		Assert.assertEquals(4.0, distance.get(D), 0.0);
+		Assert.assertEquals(C, predecessor.get(B));
+		Assert.assertEquals(B, predecessor.get(D));
+		Assert.assertNull(GraphClassics.dijkstra(E, A, directed(), weight, null, null));
+		Assert.assertEquals(3.0, GraphClassics.dijkstra(A, E, directed()), 0.0);
+
+		final Map<HGHandle, Double> remaining = new HashMap<HGHandle, Double>();
+		remaining.put(A, 7.0);
+		remaining.put(B, 4.0);
+		remaining.put(C, 6.0);
+		remaining.put(D, 3.0);
+		remaining.put(E, 0.0);
+		predecessor.clear();
+		Assert.assertEquals(7.0, GraphClassics.a_star(A, E, directed(), weight,
+				atom -> remaining.get(atom), null, predecessor), 0.0);
+		Assert.assertEquals(D, predecessor.get(E));
+		Assert.assertEquals(C, predecessor.get(B));
+	}
+
+	@Test
+	public void testNegativeWeights()
+	{
+		HGHandle X = graph.add("ClassicsX"), Y = graph.add("ClassicsY"), Z = graph.add("ClassicsZ");
+		link(X, Y, 2);
+		link(Y, Z, -1);
+		link(X, Z, 3);
+		Map<HGHandle, Double> distance = new HashMap<HGHandle, Double>();
+		Assert.assertTrue(GraphClassics.bellman_ford(X, directed(), weight, distance, null));
+		Assert.assertEquals(1.0, distance.get(Z), 0.0);
+		List<HGHandle> atoms = Arrays.asList(X, Y, Z);
+		AllPairsShortestPaths johnson = GraphClassics.johnson(atoms, directed(), weight);
+		AllPairsShortestPaths floyd = GraphClassics.floyd_warshall(atoms, directed(), weight);
+		for (AllPairsShortestPaths paths : Arrays.asList(johnson, floyd))
+		{
+			Assert.assertEquals(1.0, paths.getDistance(X, Z), 0.0);
+			Assert.assertEquals(Arrays.asList(X, Y, Z), paths.getPath(X, Z));
+			Assert.assertNull(paths.getDistance(Z, X));
+		}
+
+		link(Z, X, -2);
+		Assert.assertFalse(GraphClassics.bellman_ford(X, directed(), weight, null, null));
+		Assert.assertNull(GraphClassics.johnson(atoms, directed(), weight));
+		Assert.assertNull(GraphClassics.floyd_warshall(atoms, directed(), weight));
+	}
+
+	@Test
+	public void testAllPairs()
+	{
+		List<HGHandle> atoms = Arrays.asList(A, B, C, D, E);
+		AllPairsShortestPaths johnson = GraphClassics.johnson(atoms, directed(), weight);
+		AllPairsShortestPaths floyd = GraphClassics.floyd_warshall(atoms, directed(), weight);
+		for (HGHandle from : atoms)
+			for (HGHandle to : atoms)
+			{
+				Double expected = GraphClassics.dijkstra(from, to, directed(), weight, null, null);
+				Assert.assertEquals(expected, johnson.getDistance(from, to));
+				Assert.assertEquals(expected, floyd.getDistance(from, to));
+			}
+		Assert.assertEquals(Arrays.asList(A, C, B, D, E), johnson.getPath(A, E));
+		Assert.assertEquals(Arrays.asList(A, C, B, D, E), floyd.getPath(A, E));
+	}
+
+	@Test
+	public void testSpanningTrees()
+	{
+		Map<HGHandle, HGHandle> parent = new HashMap<HGHandle, HGHandle>();
+		Assert.assertEquals(7.0, GraphClassics.prim(A, new SimpleALGenerator(graph), weight, parent), 0.0);
+		Assert.assertEquals(4, parent.size());
+		Assert.assertEquals(A, parent.get(C));
+		Assert.assertEquals(C, parent.get(B));
+		Assert.assertEquals(B, parent.get(D));
+		Assert.assertEquals(D, parent.get(E));
+
+		List<HGHandle> forest = new ArrayList<HGHandle>();
+		Assert.assertEquals(7.0, GraphClassics.kruskall(graph, links.iterator(), weight, forest), 0.0);
+		Assert.assertEquals(new HashSet<HGHandle>(Arrays.asList(links.get(1), links.get(2), links.get(3), links.get(5))),
+							new HashSet<HGHandle>(forest));
+	}
+}
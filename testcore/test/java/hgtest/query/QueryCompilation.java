@@ -1,5 +1,6 @@
 package hgtest.query;
 
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -18,6 +19,13 @@ import org.hypergraphdb.HGQuery.hg;
 import org.hypergraphdb.HGValueLink;
 import org.hypergraphdb.HyperGraph;
 import org.hypergraphdb.atom.HGSubgraph;
+import org.hypergraphdb.query.cond2qry.ExpressionBasedQuery;
+import org.hypergraphdb.query.AnalyzedQuery;
+import org.hypergraphdb.query.QueryCompile;
+import org.hypergraphdb.query.QueryPlan;
+import org.hypergraphdb.query.cond2qry.QueryPlanCache;
+import org.hypergraphdb.query.impl.IntersectionQuery;
+import org.hypergraphdb.query.impl.SearchableBasedQuery;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -153,4 +161,96 @@ public class QueryCompilation extends HGTestBase
         HGHandle l = graph.add(new HGValueLink("L1", a, b));
         Assert.assertTrue(q.var("aNode", a).var("bNode", b).findInSet().contains(l));
     }
+
+    @Test
+    public void testSmallestConjunctFirst()
+    {
+        HyperGraph graph = getGraph();
+        HGHandle hub = graph.add("hub");
+        HGHandle leaf = graph.add("leaf");
+        for (int i = 0; i < 100; i++)
+            graph.add(new HGPlainLink(hub, graph.add("spoke" + i)));
+        HGHandle l = graph.add(new HGPlainLink(hub, leaf));
+        ExpressionBasedQuery<?> q = (ExpressionBasedQuery<?>)HGQuery.make(graph, 
+                hg.and(hg.type(HGPlainLink.class), hg.incident(hub), hg.incident(leaf)));
+        // the type is the largest set, it is intersected last
+        IntersectionQuery<?> join = (IntersectionQuery<?>)q.getCompiledQuery();
+        Assert.assertTrue(join.getRight() instanceof SearchableBasedQuery);
+        Assert.assertEquals(1, q.findAll().size());
+        Assert.assertTrue(q.findAll().contains(l));
+    }
+
+    @Test
+    public void testPlanCache()
+    {
+        HyperGraph graph = getGraph();
+        QueryPlanCache cache = graph.getConfig().getQueryConfiguration().getPlanCache();
+        cache.clear();
+        HGHandle a = graph.add("a");
+        HGHandle b = graph.add("b");
+        HGHandle la = graph.add(new HGPlainLink(a));
+        HGHandle lb = graph.add(new HGPlainLink(b));
+        HGHandle vb = graph.add(new HGValueLink("b", b));
+        Assert.assertEquals(la, hg.findOne(graph, hg.and(hg.type(HGPlainLink.class), hg.incident(a))));
+        Assert.assertEquals(1, cache.size());
+        // same shape, different target: the plan is reused
+        Assert.assertEquals(lb, hg.findOne(graph, hg.and(hg.type(HGPlainLink.class), hg.incident(b))));
+        Assert.assertEquals(1, cache.size());
+        // different type, different shape
+        Assert.assertEquals(vb, hg.findOne(graph, hg.and(hg.type(String.class), hg.incident(b))));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testPlanCacheSizesFollowConstants()
+    {
+        HyperGraph graph = getGraph();
+        QueryPlanCache cache = graph.getConfig().getQueryConfiguration().getPlanCache();
+        HGHandle small = graph.add("planSmall");
+        HGHandle big = graph.add("planBig");
+        graph.add(new HGPlainLink(small));
+        graph.add(new HGPlainLink(big));
+        for (int i = 0; i < 300; i++)
+            graph.add(new HGValueLink("planValue" + i, big));
+        long plainLinks = hg.count(graph, hg.type(HGPlainLink.class));
+        Assert.assertTrue(plainLinks < 300);
+        cache.clear();
+        QueryPlan smallPlan = hg.explain(graph, hg.and(hg.type(HGPlainLink.class), hg.incident(small)));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(1, smallPlan.getRoot().getChildren().get(0).getEstimate());
+        // the plan of the same shape is reused, but the incidence set of big is estimated
+        // again and is now the larger conjunct
+        QueryPlan bigPlan = hg.explain(graph, hg.and(hg.type(HGPlainLink.class), hg.incident(big)));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(plainLinks, bigPlan.getRoot().getChildren().get(0).getEstimate());
+        Assert.assertEquals(301, bigPlan.getRoot().getChildren().get(1).getEstimate());
+        cache.clear();
+        Assert.assertEquals(hg.explain(graph, hg.and(hg.type(HGPlainLink.class), hg.incident(big))).toString(),
+                            bigPlan.toString());
+    }
+
+    @Test
+    public void testExplainAndProfile()
+    {
+        HyperGraph graph = getGraph();
+        HGHandle a = graph.add("explained");
+        HGHandle l1 = graph.add(new HGPlainLink(a));
+        graph.add(new HGPlainLink(a, a));
+        QueryPlan plan = hg.explain(graph, hg.and(hg.type(HGPlainLink.class), hg.incident(a), hg.arity(1)));
+        Assert.assertNotNull(plan.getRoot());
+        Assert.assertFalse(plan.getRoot().getChildren().isEmpty());
+        Assert.assertTrue(plan.toString().contains("PredicateBasedFilter"));
+        Assert.assertNull(plan.getRoot().getStats());
+
+        AnalyzedQuery<HGHandle> q = QueryCompile.profile(graph,
+                hg.and(hg.type(HGPlainLink.class), hg.incident(a), hg.arity(1)));
+        List<HGHandle> result = hg.findAll(q);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(l1, result.get(0));
+        QueryPlan.Node root = q.explain().getRoot();
+        Assert.assertNotNull(root.getStats());
+        Assert.assertEquals(1, root.getStats().getExecutions());
+        Assert.assertEquals(1, root.getStats().getRows());
+        Assert.assertTrue(root.getChildren().get(0).getStats().getRows() >= 1);
+    }
 }
\ No newline at end of file
@@ -1,10 +1,17 @@
 package hgtest.query;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.hypergraphdb.HGHandle;
 import org.hypergraphdb.HGPlainLink;
 import org.hypergraphdb.HGQuery.hg;
+import org.hypergraphdb.algorithms.HGParallelBreadthFirstTraversal;
+import org.hypergraphdb.algorithms.SimpleALGenerator;
 import org.hypergraphdb.query.BFSCondition;
 import org.hypergraphdb.query.DFSCondition;
 import org.junit.Assert;
@@ -62,6 +69,70 @@ public class TraversalsTests extends HGTestBase
 		Assert.assertArrayEquals(new HGHandle[] {A, B, C, D, E}, result);
 	}
 	
+	@Test
+	public void testParallelBreadthFirstOnCircle()
+	{
+		HGHandle A = graph.add("A");
+		HGHandle B = graph.add("B");
+		HGHandle C = graph.add("C");
+		HGHandle D = graph.add("D");
+		HGHandle E = graph.add("E");
+		
+		graph.add(new HGPlainLink(A, B));
+		graph.add(new HGPlainLink(B, C));
+		graph.add(new HGPlainLink(C, D));
+		graph.add(new HGPlainLink(D, E));
+		
+		BFSCondition condition = hg.bfs(A);
+		condition.setReturnPreceeding(true);
+		condition.setParallel(true);
+		List<HGHandle> sequence = graph.findAll(condition);
+		sequence.add(0,  A);
+		HGHandle [] result = sequence.toArray(new HGHandle[0]); 
+		Assert.assertArrayEquals(new HGHandle[] {A, B, C, D, E}, result);
+	}
+	
+	@Test
+	public void testParallelBreadthFirstMultiSource()
+	{
+		// a complete binary tree, node i has children 2i+1 and 2i+2 
+		HGHandle [] nodes = new HGHandle[255];
+		Map<HGHandle, Integer> depth = new HashMap<HGHandle, Integer>();
+		for (int i = 0; i < nodes.length; i++)
+		{
+			nodes[i] = graph.add(i);
+			depth.put(nodes[i], 31 - Integer.numberOfLeadingZeros(i + 1));
+		}
+		for (int i = 1; i < nodes.length; i++)
+			graph.add(new HGPlainLink(nodes[(i - 1) / 2], nodes[i]));
+		
+		HGParallelBreadthFirstTraversal traversal = new HGParallelBreadthFirstTraversal(graph,
+				Arrays.asList(nodes[0]), () -> new SimpleALGenerator(graph));
+		traversal.setChunkSize(4);
+		HashSet<HGHandle> reached = new HashSet<HGHandle>();
+		int lastDepth = 0;
+		while (traversal.hasNext())
+		{
+			HGHandle h = traversal.next().getSecond();
+			Assert.assertTrue(reached.add(h));
+			Assert.assertTrue(traversal.isVisited(h));
+			Assert.assertTrue(depth.get(h) >= lastDepth);
+			Assert.assertEquals((int)depth.get(h), traversal.getDistance());
+			lastDepth = depth.get(h);
+		}
+		Assert.assertEquals(nodes.length - 1, reached.size());
+		Assert.assertFalse(reached.contains(nodes[0]));
+		
+		traversal = new HGParallelBreadthFirstTraversal(graph, 
+				Arrays.asList(nodes[3], nodes[4]), () -> new SimpleALGenerator(graph), 1);
+		List<HGHandle> neighbours = new ArrayList<HGHandle>();
+		while (traversal.hasNext())
+			neighbours.add(traversal.next().getSecond());
+		Assert.assertEquals(new HashSet<HGHandle>(Arrays.asList(nodes[1], nodes[7], nodes[8], nodes[9], nodes[10])),
+							new HashSet<HGHandle>(neighbours));
+		Assert.assertEquals(5, neighbours.size());
+	}
+	
     
     public static void main(String []argv)
     {
@@ -0,0 +1,92 @@
+package hgtest.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.handle.SequentialUUIDHandleFactory;
+import org.hypergraphdb.handle.TimeOrderedUUIDHandleFactory;
+import org.hypergraphdb.handle.UUID;
+import org.hypergraphdb.handle.UUIDPersistentHandle;
+import org.junit.Assert;
+import org.junit.Test;
+
+import hgtest.HGTestBase;
+
+public class HandleTests extends HGTestBase
+{
+	@Test
+	public void testUUIDEncoding() throws Exception
+	{
+		Random random = new Random(11);
+		List<UUIDPersistentHandle> handles = new ArrayList<UUIDPersistentHandle>();
+		for (int i = 0; i < 200; i++)
+		{
+			byte [] B = new byte[UUIDPersistentHandle.SIZE];
+			random.nextBytes(B);
+			handles.add(UUIDPersistentHandle.makeHandle(B));
+		}
+		handles.add(UUIDPersistentHandle.nullHandle());
+		for (UUIDPersistentHandle h : handles)
+		{
+			UUID uuid = new UUID(h.toByteArray());
+			Assert.assertEquals(uuid.toString(), h.toString());
+			Assert.assertEquals(h, UUIDPersistentHandle.makeHandle(h.toString()));
+			Assert.assertEquals(h, UUIDPersistentHandle.makeHandle(h.getMostSignificantBits(), h.getLeastSignificantBits()));
+			Assert.assertEquals(h.hashCode(), UUIDPersistentHandle.makeHandle(h.toByteArray()).hashCode());
+			byte [] B = new byte[UUIDPersistentHandle.SIZE + 3];
+			h.toByteArray(B, 3);
+			Assert.assertEquals(h, UUIDPersistentHandle.makeHandle(B, 3));
+			for (UUIDPersistentHandle other : handles)
+				Assert.assertEquals(Integer.signum(uuid.compareTo(new UUID(other.toByteArray()))),
+									Integer.signum(h.compareTo((HGPersistentHandle)other)));
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream oout = new ObjectOutputStream(out);
+		oout.writeObject(handles.get(0));
+		oout.close();
+		Object read = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())).readObject();
+		Assert.assertEquals(handles.get(0), read);
+	}
+
+	@Test
+	public void testGeneration()
+	{
+		UUIDPersistentHandle h = UUIDPersistentHandle.makeHandle();
+		Assert.assertEquals(UUID.TYPE_RANDOM_BASED, h.getUuid().getType());
+		Assert.assertFalse(h.equals(UUIDPersistentHandle.makeHandle()));
+
+		TimeOrderedUUIDHandleFactory timeOrdered = new TimeOrderedUUIDHandleFactory();
+		UUIDPersistentHandle first = (UUIDPersistentHandle)timeOrdered.makeHandle();
+		Assert.assertEquals(7, first.getUuid().getType());
+		Assert.assertTrue(Math.abs((first.getMostSignificantBits() >>> 16) - System.currentTimeMillis()) < 60000);
+
+		SequentialUUIDHandleFactory sequential = new SequentialUUIDHandleFactory(42, 0);
+		HGPersistentHandle s1 = sequential.makeHandle(), s2 = sequential.makeHandle();
+		Assert.assertTrue(s1.compareTo(s2) < 0);
+		Assert.assertEquals(42, ((UUIDPersistentHandle)s2).getMostSignificantBits());
+		Assert.assertEquals(2, ((UUIDPersistentHandle)s2).getLeastSignificantBits());
+	}
+
+	@Test
+	public void testStoredLinks()
+	{
+		HGHandle a = graph.add(new String("handleA")), b = graph.add(new String("handleB"));
+		HGHandle link = graph.add(new HGPlainLink(a, b));
+		HGPersistentHandle [] targets = graph.getStore().getLink(graph.getPersistentHandle(link));
+		Assert.assertEquals(graph.getPersistentHandle(a), targets[2]);
+		Assert.assertEquals(graph.getPersistentHandle(b), targets[3]);
+		reopenDb();
+		HGPlainLink l = graph.get(link.getPersistent());
+		Assert.assertEquals(a.getPersistent(), l.getTargetAt(0).getPersistent());
+		Assert.assertEquals(b.getPersistent(), l.getTargetAt(1).getPersistent());
+	}
+}
@@ -0,0 +1,81 @@
+package hgtest.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.IncidenceSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import hgtest.HGTestBase;
+
+public class MultiGetTests extends HGTestBase
+{
+	@Test
+	public void testGetAll()
+	{
+		List<HGHandle> handles = new ArrayList<HGHandle>();
+		for (int i = 0; i < 20; i++)
+			handles.add(graph.add("multiget" + i));
+		HGHandle link = graph.add(new HGPlainLink(handles.get(0), handles.get(1)));
+		HGPersistentHandle missing = graph.getHandleFactory().makeHandle();
+		reopenDb();
+		// Load a few atoms so that the batch mixes cache hits and misses.
+		graph.get(handles.get(3));
+		graph.get(handles.get(7));
+		List<HGHandle> request = new ArrayList<HGHandle>(handles);
+		request.add(missing);
+		request.add(link);
+		List<Object> atoms = graph.getAll(request);
+		Assert.assertEquals(request.size(), atoms.size());
+		for (int i = 0; i < 20; i++)
+			Assert.assertEquals("multiget" + i, atoms.get(i));
+		Assert.assertNull(atoms.get(20));
+		HGPlainLink loaded = (HGPlainLink)atoms.get(21);
+		Assert.assertEquals(graph.getPersistentHandle(handles.get(1)), 
+							graph.getPersistentHandle(loaded.getTargetAt(1)));
+		Assert.assertSame(atoms.get(5), graph.get(handles.get(5)));
+	}
+	
+	@Test
+	public void testStoreMultiGet()
+	{
+		HGHandle a = graph.add("multigetA"), b = graph.add("multigetB");
+		HGPersistentHandle [] keys = new HGPersistentHandle[] { 
+			graph.getPersistentHandle(b), 
+			graph.getHandleFactory().makeHandle(), 
+			graph.getPersistentHandle(a)
+		};
+		HGPersistentHandle [][] links = graph.getStore().getLinks(keys);
+		Assert.assertArrayEquals(graph.getStore().getLink(keys[0]), links[0]);
+		Assert.assertNull(links[1]);
+		Assert.assertArrayEquals(graph.getStore().getLink(keys[2]), links[2]);
+		HGPersistentHandle [] values = new HGPersistentHandle[] { links[0][1], links[2][1] };
+		byte [][] data = graph.getStore().getDataMulti(values);
+		Assert.assertArrayEquals(graph.getStore().getData(values[0]), data[0]);
+		Assert.assertArrayEquals(graph.getStore().getData(values[1]), data[1]);
+	}
+	
+	@Test
+	public void testGetIncidenceSets()
+	{
+		HGHandle x = graph.add("multigetX"), y = graph.add("multigetY"), z = graph.add("multigetZ");
+		HGHandle l1 = graph.add(new HGPlainLink(x, y));
+		HGHandle l2 = graph.add(new HGPlainLink(x, z));
+		reopenDb();
+		graph.getIncidenceSet(y);
+		List<IncidenceSet> sets = graph.getIncidenceSets(Arrays.asList(x, y, z, l1));
+		Assert.assertEquals(2, sets.get(0).size());
+		Assert.assertTrue(sets.get(0).contains(l1));
+		Assert.assertTrue(sets.get(0).contains(l2));
+		Assert.assertEquals(1, sets.get(1).size());
+		Assert.assertEquals(1, sets.get(2).size());
+		Assert.assertTrue(sets.get(2).contains(l2));
+		Assert.assertEquals(0, sets.get(3).size());
+		Assert.assertSame(sets.get(0), graph.getIncidenceSet(x));
+	}
+}
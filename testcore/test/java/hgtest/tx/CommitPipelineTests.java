@@ -0,0 +1,155 @@
+package hgtest.tx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hypergraphdb.transaction.HGStorageTransaction;
+import org.hypergraphdb.transaction.HGTransaction;
+import org.hypergraphdb.transaction.HGTransactionConfig;
+import org.hypergraphdb.transaction.HGTransactionContext;
+import org.hypergraphdb.transaction.HGTransactionException;
+import org.hypergraphdb.transaction.HGTransactionFactory;
+import org.hypergraphdb.transaction.HGTransactionManager;
+import org.hypergraphdb.transaction.VBox;
+import org.junit.Test;
+
+/**
+ * The commit pipeline of a transaction manager driven by a scripted storage layer:
+ * storage commits that fail with a retryable conflict, and storage commits held back
+ * so that several transactions are published as one batch.
+ */
+public class CommitPipelineTests
+{
+    static class StorageConflict extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Storage transactions whose commit fails with a conflict while <code>failures</code>
+     * is positive. In the thread named "held", the commit first waits for a permit of
+     * <code>gate</code>.
+     */
+    static class ScriptedFactory implements HGTransactionFactory
+    {
+        AtomicInteger failures = new AtomicInteger(0);
+        AtomicInteger commits = new AtomicInteger(0);
+        AtomicInteger aborts = new AtomicInteger(0);
+        Semaphore gate = new Semaphore(0);
+        CountDownLatch holding = new CountDownLatch(1);
+
+        public HGStorageTransaction createTransaction(HGTransactionContext context,
+                                                      HGTransactionConfig config,
+                                                      HGTransaction parent)
+        {
+            return new HGStorageTransaction()
+            {
+                public void commit() throws HGTransactionException
+                {
+                    if ("held".equals(Thread.currentThread().getName()))
+                    {
+                        holding.countDown();
+                        gate.acquireUninterruptibly();
+                    }
+                    if (failures.getAndDecrement() > 0)
+                        throw new StorageConflict();
+                    commits.incrementAndGet();
+                }
+
+                public void abort() throws HGTransactionException
+                {
+                    aborts.incrementAndGet();
+                }
+            };
+        }
+
+        public boolean canRetryAfter(Throwable t)
+        {
+            return t instanceof StorageConflict;
+        }
+    }
+
+    static void increment(HGTransactionManager txman, VBox<Integer> box)
+    {
+        txman.transact(() -> { box.put(box.get() + 1); return null; });
+    }
+
+    @Test
+    public void retryAfterStorageConflict()
+    {
+        ScriptedFactory factory = new ScriptedFactory();
+        HGTransactionManager txman = new HGTransactionManager(factory);
+        VBox<Integer> box = new VBox<Integer>(txman, 0);
+        factory.failures.set(2);
+        increment(txman, box);
+        assertEquals(1, factory.commits.get());
+        // Each conflicting attempt releases its storage transaction.
+        assertEquals(2, factory.aborts.get());
+        assertEquals(Integer.valueOf(1), txman.ensureTransaction(() -> box.get()));
+        // Withdrawn attempts are not counted as commits and don't hold back later ones.
+        assertEquals(1, txman.getCommitCount());
+        increment(txman, box);
+        assertEquals(Integer.valueOf(2), txman.ensureTransaction(() -> box.get()));
+        assertEquals(2, txman.getCommitCount());
+    }
+
+    @Test
+    public void laterCommitsPublishedTogether() throws Exception
+    {
+        ScriptedFactory factory = new ScriptedFactory();
+        HGTransactionManager txman = new HGTransactionManager(factory);
+        VBox<Integer> first = new VBox<Integer>(txman, 0);
+        VBox<Integer> second = new VBox<Integer>(txman, 0);
+        Thread held = new Thread(() -> increment(txman, first), "held");
+        held.start();
+        factory.holding.await();
+        // The second commit is done at the storage level, but must wait for the
+        // first one, which took the lower commit number, to be published.
+        Thread waiting = new Thread(() -> increment(txman, second), "waiting");
+        waiting.start();
+        while (waiting.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+        assertEquals(Integer.valueOf(0), txman.ensureTransaction(() -> second.get()));
+        assertEquals(0, txman.getCommitCount());
+        factory.gate.release();
+        held.join(10000);
+        waiting.join(10000);
+        assertFalse(held.isAlive() || waiting.isAlive());
+        assertEquals(2, txman.getCommitCount());
+        assertEquals(1, txman.getCommitBatchCount());
+        assertEquals(Integer.valueOf(1), txman.ensureTransaction(() -> first.get()));
+        assertEquals(Integer.valueOf(1), txman.ensureTransaction(() -> second.get()));
+    }
+
+    @Test
+    public void cancelledCommitReleasesLaterOnes() throws Exception
+    {
+        ScriptedFactory factory = new ScriptedFactory();
+        HGTransactionManager txman = new HGTransactionManager(factory);
+        VBox<Integer> first = new VBox<Integer>(txman, 0);
+        VBox<Integer> second = new VBox<Integer>(txman, 0);
+        Thread held = new Thread(() -> increment(txman, first), "held");
+        held.start();
+        factory.holding.await();
+        Thread waiting = new Thread(() -> increment(txman, second), "waiting");
+        waiting.start();
+        while (waiting.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+        // The held commit now fails at the storage level, is withdrawn and retried.
+        factory.failures.set(1);
+        factory.gate.release(2);
+        held.join(10000);
+        waiting.join(10000);
+        assertFalse(held.isAlive() || waiting.isAlive());
+        assertEquals(1, factory.aborts.get());
+        assertEquals(2, txman.getCommitCount());
+        assertTrue(txman.getCommitBatchCount() <= 2);
+        assertEquals(Integer.valueOf(1), txman.ensureTransaction(() -> first.get()));
+        assertEquals(Integer.valueOf(1), txman.ensureTransaction(() -> second.get()));
+    }
+}
@@ -0,0 +1,115 @@
+package hgtest.tx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import hgtest.HGTestBase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.hypergraphdb.HGConfiguration;
+import org.hypergraphdb.HGEnvironment;
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.HGQuery.hg;
+import org.hypergraphdb.cache.StripedAtomCache;
+import org.hypergraphdb.util.HGUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Basic cache behavior, under concurrent transactions, of a graph configured
+ * with the {@link StripedAtomCache}.
+ */
+public class StripedAtomCacheTests extends HGTestBase
+{
+    @BeforeClass
+    public static void setUp()
+    {
+        HGUtils.dropHyperGraphInstance(getGraphLocation());
+        HGConfiguration config = new HGConfiguration();
+        config.setCacheImplementation(new StripedAtomCache(4, 16));
+        graph = HGEnvironment.get(getGraphLocation(), config);
+    }
+
+    @Test
+    public void addGetRemove()
+    {
+        String x = "stripedAddGetRemove";
+        HGHandle h = graph.add(x);
+        HGPersistentHandle pHandle = graph.getPersistentHandle(h);
+        assertSame(h, graph.getCache().get(pHandle));
+        assertSame(h, graph.getCache().get(x));
+        assertSame(x, graph.get(h));
+        graph.remove(h);
+        assertNull(graph.getCache().get(pHandle));
+        assertNull(graph.getHandle(x));
+        assertEquals(0, hg.count(graph, hg.eq(x)));
+    }
+
+    @Test
+    public void abortedAdd()
+    {
+        String x = "stripedAbortedAdd";
+        graph.getTransactionManager().beginTransaction();
+        HGHandle h = graph.add(x);
+        graph.getTransactionManager().abort();
+        assertNull(graph.getHandle(x));
+        assertNull(graph.getCache().get(h.getPersistent()));
+    }
+
+    @Test
+    public void concurrentReadsAndWrites() throws Exception
+    {
+        final int threads = 8, perThread = 200;
+        final HGHandle hub = graph.add("stripedHub");
+        final List<HGHandle> added = Collections.synchronizedList(new ArrayList<HGHandle>());
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++)
+        {
+            final int thread = t;
+            pool.execute(new Runnable() {
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < perThread; i++)
+                        {
+                            final String value = "striped-" + thread + "-" + i;
+                            HGHandle h = graph.getTransactionManager().transact(() -> {
+                                HGHandle atom = graph.add(value);
+                                graph.add(new HGPlainLink(hub, atom));
+                                return atom;
+                            });
+                            added.add(h);
+                            // read back atoms added by all threads so far
+                            HGHandle other = added.get(i * threads % added.size());
+                            assertNotNull(graph.get(other));
+                            assertSame(other, graph.getHandle(graph.get(other)));
+                        }
+                    }
+                    catch (Throwable ex)
+                    {
+                        errors.add(ex);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.MINUTES));
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(threads * perThread, added.size());
+        assertEquals(threads * perThread, graph.getIncidenceSet(hub).size());
+        for (HGHandle h : added)
+            assertTrue(((String)graph.get(h)).startsWith("striped-"));
+    }
+}
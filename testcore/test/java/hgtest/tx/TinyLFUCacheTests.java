@@ -0,0 +1,111 @@
+package hgtest.tx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import hgtest.HGTestBase;
+
+import org.hypergraphdb.HGConfiguration;
+import org.hypergraphdb.HGEnvironment;
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.IncidenceSet;
+import org.hypergraphdb.cache.HGCache;
+import org.hypergraphdb.cache.TinyLFUCache;
+import org.hypergraphdb.util.HGUtils;
+import org.hypergraphdb.util.RefResolver;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * The {@link TinyLFUCache} policy, and a graph using it as incidence set cache.
+ */
+public class TinyLFUCacheTests extends HGTestBase
+{
+    static RefResolver<Integer, String> resolver = new RefResolver<Integer, String>()
+    {
+        public String resolve(Integer key)
+        {
+            return "value" + key;
+        }
+    };
+
+    @BeforeClass
+    public static void setUp()
+    {
+        HGUtils.dropHyperGraphInstance(getGraphLocation());
+        HGConfiguration config = new HGConfiguration();
+        config.setIncidenceCacheImplementation(TinyLFUCache.forIncidenceSets(16 * 1024 * 1024));
+        graph = HGEnvironment.get(getGraphLocation(), config);
+    }
+
+    @Test
+    public void scanResistance()
+    {
+        TinyLFUCache<Integer, String> cache = new TinyLFUCache<Integer, String>(100);
+        cache.setResolver(resolver);
+        try
+        {
+            for (int round = 0; round < 5; round++)
+                for (int i = 0; i < 50; i++)
+                    cache.get(i);
+            for (int i = 1000; i < 20000; i++)
+                assertEquals("value" + i, cache.get(i));
+            int hot = 0;
+            for (int i = 0; i < 50; i++)
+                if (cache.isLoaded(i))
+                    hot++;
+            assertTrue("hot elements left " + hot, hot >= 45);
+            assertTrue(cache.size() <= 100);
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void weightBound()
+    {
+        TinyLFUCache<Integer, String> cache = new TinyLFUCache<Integer, String>(1000,
+            new TinyLFUCache.Weigher<Integer, String>() {
+                public long weigh(Integer key, String value) { return value.length(); }
+            });
+        cache.setResolver(resolver);
+        try
+        {
+            for (int i = 0; i < 10000; i++)
+            {
+                cache.get(i % 3000);
+                assertTrue(cache.weight() <= 1000);
+            }
+            cache.remove(2999);
+            assertFalse(cache.isLoaded(2999));
+            cache.clear();
+            assertEquals(0, cache.size());
+            assertEquals(0, cache.weight());
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void incidenceSets()
+    {
+        HGCache<HGPersistentHandle, IncidenceSet> cache = graph.getCache().getIncidenceCache();
+        assertTrue(cache instanceof TinyLFUCache);
+        HGHandle a = graph.add("tinyLFUTarget");
+        HGHandle l1 = graph.add(new HGPlainLink(a));
+        assertEquals(1, graph.getIncidenceSet(a).size());
+        HGHandle l2 = graph.add(new HGPlainLink(a, l1));
+        IncidenceSet is = graph.getIncidenceSet(a);
+        assertEquals(2, is.size());
+        assertTrue(is.contains(l1) && is.contains(l2));
+        assertTrue(((TinyLFUCache<?, ?>)cache).weight() > 0);
+        graph.remove(l2);
+        assertEquals(1, graph.getIncidenceSet(a).size());
+    }
+}
@@ -0,0 +1,76 @@
+package hgtest.types;
+
+import java.awt.Color;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.type.BeanAccessors;
+import org.junit.Assert;
+import org.junit.Test;
+
+import hgtest.HGTestBase;
+
+public class BeanAccessorsTests extends HGTestBase
+{
+    public static class Pair extends HGPlainLink
+    {
+        private String label;
+
+        public Pair(HGHandle left, HGHandle right)
+        {
+            super(left, right);
+        }
+
+        public String getLabel() { return label; }
+        public void setLabel(String label) { this.label = label; }
+    }
+
+    static class Hidden
+    {
+        private long count;
+
+        public long getCount() { return count; }
+        public void setCount(long count) { this.count = count; }
+    }
+
+    @Test
+    public void testPropertiesAndConstructors() throws Throwable
+    {
+        BeanAccessors acc = BeanAccessors.forClass(SimpleBean.class);
+        Assert.assertSame(acc, BeanAccessors.forClass(SimpleBean.class));
+        Assert.assertTrue(acc.hasDefaultConstructor());
+        Assert.assertFalse(acc.hasLinkConstructor());
+        SimpleBean bean = (SimpleBean)acc.newInstance();
+        acc.setProperty(bean, "integer", 42);
+        acc.setProperty(bean, "str", null);
+        acc.setProperty(bean, "color", Color.red);
+        Assert.assertEquals(new SimpleBean(42, null, Color.red), bean);
+        Assert.assertEquals(42, acc.getProperty(bean, "integer"));
+
+        BeanAccessors hidden = BeanAccessors.forClass(Hidden.class);
+        Hidden h = (Hidden)hidden.newInstance();
+        hidden.setProperty(h, "count", 7L);
+        Assert.assertEquals(7L, hidden.getProperty(h, "count"));
+
+        BeanAccessors pair = BeanAccessors.forClass(Pair.class);
+        Assert.assertFalse(pair.hasDefaultConstructor());
+        HGHandle a = graph.add("left"), b = graph.add("right");
+        Pair p = (Pair)pair.newLink(new HGHandle[] { a, b });
+        Assert.assertEquals(2, p.getArity());
+        Assert.assertEquals(b, p.getTargetAt(1));
+    }
+
+    @Test
+    public void testBindingUsesAccessors()
+    {
+        HGHandle a = graph.add("from"), b = graph.add("to");
+        Pair p = new Pair(a, b);
+        p.setLabel("edge");
+        HGHandle h = graph.add(p);
+        reopenDb();
+        Pair loaded = graph.get(h);
+        Assert.assertEquals("edge", loaded.getLabel());
+        Assert.assertEquals(a, loaded.getTargetAt(0));
+        Assert.assertEquals(b, loaded.getTargetAt(1));
+    }
+}
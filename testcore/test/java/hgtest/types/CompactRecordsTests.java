@@ -0,0 +1,55 @@
+package hgtest.types;
+
+import java.awt.Color;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPersistentHandle;
+import org.hypergraphdb.HGQuery.hg;
+import org.hypergraphdb.type.HGTypeConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import hgtest.HGTestBase;
+
+public class CompactRecordsTests extends HGTestBase
+{
+    private HGPersistentHandle valueHandle(HGHandle atom)
+    {
+        return graph.getStore().getLink(graph.getPersistentHandle(atom))[1];
+    }
+
+    @Test
+    public void testCompactBeans()
+    {
+        HGTypeConfiguration typeConfig = graph.getConfig().getTypeConfiguration();
+        HGHandle plain = graph.add(new SimpleBean(1, "plain", Color.blue));
+        typeConfig.setCompactRecords(true);
+        try
+        {
+            HGHandle compact = graph.add(new SimpleBean(2, "compact", Color.red));
+            HGHandle withNull = graph.add(new SimpleBean(3, null, null));
+            Assert.assertNotNull(graph.getStore().getLink(valueHandle(plain)));
+            Assert.assertNull(graph.getStore().getLink(valueHandle(compact)));
+            Assert.assertNotNull(graph.getStore().getData(valueHandle(compact)));
+            HGHandle removed = graph.add(new SimpleBean(5, "removed", Color.white));
+            HGPersistentHandle value = valueHandle(removed);
+            Assert.assertTrue(graph.remove(removed));
+            Assert.assertNull(graph.getStore().getData(value));
+            reopenDb();
+            Assert.assertEquals(new SimpleBean(1, "plain", Color.blue), graph.get(plain));
+            Assert.assertEquals(new SimpleBean(2, "compact", Color.red), graph.get(compact));
+            Assert.assertEquals(new SimpleBean(3, null, null), graph.get(withNull));
+            Assert.assertEquals(compact, hg.findOne(graph, hg.and(hg.type(SimpleBean.class),
+                                                                 hg.eq("str", "compact"))));
+            graph.replace(plain, new SimpleBean(4, "replaced", Color.green));
+            typeConfig.setCompactRecords(false);
+            reopenDb();
+            Assert.assertEquals(new SimpleBean(4, "replaced", Color.green), graph.get(plain));
+            Assert.assertEquals(new SimpleBean(2, "compact", Color.red), graph.get(compact));
+        }
+        finally
+        {
+            typeConfig.setCompactRecords(false);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package hgtest.types;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.type.HGTypeConfiguration;
+import org.hypergraphdb.type.javaprimitive.PrimitiveTypeBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import hgtest.HGTestBase;
+
+public class ShardedRefCountTests extends HGTestBase
+{
+    @SuppressWarnings("unchecked")
+    private int refCount(String value)
+    {
+        PrimitiveTypeBase<String> type = (PrimitiveTypeBase<String>)graph.getTypeSystem().getAtomType(String.class);
+        return type.getRefCountFor(value);
+    }
+
+    @Test
+    public void testConcurrentReferences() throws Exception
+    {
+        final String value = "shardedRefCountValue";
+        HGTypeConfiguration typeConfig = graph.getConfig().getTypeConfiguration();
+        // a couple of references counted the usual way, they must add up with the sharded ones;
+        // each atom gets its own String instance since the atom cache is identity based
+        HGHandle first = graph.add(new String(value));
+        HGHandle second = graph.add(new String(value));
+        Assert.assertEquals(2, refCount(value));
+        typeConfig.setShardedRefCounts(true);
+        try
+        {
+            final List<HGHandle> added = Collections.synchronizedList(new ArrayList<HGHandle>());
+            Thread [] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++)
+            {
+                threads[i] = new Thread() {
+                    public void run()
+                    {
+                        for (int j = 0; j < 25; j++)
+                            added.add(graph.add(new String(value)));
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread t : threads)
+                t.join();
+            Assert.assertEquals(100, added.size());
+            Assert.assertEquals(102, refCount(value));
+            graph.remove(first);
+            for (int i = 0; i < 50; i++)
+                graph.remove(added.get(i));
+            Assert.assertEquals(51, refCount(value));
+            Assert.assertEquals(value, graph.get(second));
+            typeConfig.setShardedRefCounts(false);
+            for (int i = 50; i < 100; i++)
+                graph.remove(added.get(i));
+            Assert.assertEquals(1, refCount(value));
+            Assert.assertEquals(value, graph.get(second));
+            typeConfig.setShardedRefCounts(true);
+            graph.remove(second);
+            Assert.assertEquals(0, refCount(value));
+        }
+        finally
+        {
+            typeConfig.setShardedRefCounts(false);
+        }
+    }
+}
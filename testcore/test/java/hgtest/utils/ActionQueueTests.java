@@ -0,0 +1,126 @@
+package hgtest.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hypergraphdb.util.ActionQueueThread;
+import org.junit.Assert;
+import org.junit.Test;
+
+import hgtest.HGTestBase;
+
+public class ActionQueueTests extends HGTestBase
+{
+    static class Touch implements ActionQueueThread.CoalescingAction
+    {
+        Object key;
+        List<Object> log;
+        Touch(Object key, List<Object> log) { this.key = key; this.log = log; }
+        public Object getCoalescingKey() { return key; }
+        public void run() { log.add(key); }
+    }
+
+    @Test
+    public void testCoalescing() throws Exception
+    {
+        ActionQueueThread queue = new ActionQueueThread("test queue");
+        final List<Object> log = Collections.synchronizedList(new ArrayList<Object>());
+        Object a = new Object(), b = new Object();
+        queue.pauseActions();
+        queue.setDaemon(true);
+        queue.start();
+        try
+        {
+            queue.addAction(new Touch(a, log));
+            queue.addAction(new Touch(b, log));
+            queue.addAction(new Touch(a, log));
+            queue.addAction(new Runnable() { public void run() { log.add("plain"); } });
+            queue.addAction(new Touch(a, log));
+        }
+        finally
+        {
+            queue.resumeActions();
+        }
+        queue.completeAll();
+        Assert.assertEquals(5, queue.getCompletedCount() + queue.getCoalescedCount());
+        Assert.assertEquals(0, queue.getQueueDepth());
+        // the earlier touches of 'a' are dropped, the last one is executed in order
+        Assert.assertEquals(2, queue.getCoalescedCount());
+        Assert.assertEquals(3, log.size());
+        Assert.assertSame(b, log.get(0));
+        Assert.assertEquals("plain", log.get(1));
+        Assert.assertSame(a, log.get(2));
+        queue.stopRunning();
+        queue.join(5000);
+        Assert.assertFalse(queue.isAlive());
+    }
+
+    static void awaitBlocked(Thread t) throws InterruptedException
+    {
+        while (t.getState() != Thread.State.TIMED_WAITING)
+            Thread.sleep(1);
+    }
+
+    @Test
+    public void testBackPressure() throws Exception
+    {
+        final ActionQueueThread queue = new ActionQueueThread("test queue", 100, 50);
+        queue.setDaemon(true);
+        queue.pauseActions();
+        queue.start();
+        final AtomicInteger executed = new AtomicInteger(0);
+        final AtomicInteger submitted = new AtomicInteger(0);
+        final Runnable action = new Runnable() {
+            public void run() { executed.incrementAndGet(); }
+        };
+        Thread producer = new Thread() {
+            public void run()
+            {
+                for (int j = 0; j < 101; j++)
+                {
+                    queue.addAction(action);
+                    submitted.incrementAndGet();
+                }
+            }
+        };
+        producer.start();
+        // With the queue thread paused, the producer fills the queue and blocks
+        // on the first action over the limit.
+        awaitBlocked(producer);
+        Assert.assertEquals(100, submitted.get());
+        Assert.assertEquals(100, queue.getQueueDepth());
+        queue.resumeActions();
+        producer.join(10000);
+        Assert.assertFalse(producer.isAlive());
+        queue.completeAll();
+        Assert.assertEquals(101, executed.get());
+
+        // Concurrent producers can't overshoot the limit together.
+        queue.pauseActions();
+        Thread [] producers = new Thread[4];
+        for (int i = 0; i < producers.length; i++)
+        {
+            producers[i] = new Thread() {
+                public void run()
+                {
+                    for (int j = 0; j < 1000; j++)
+                        queue.addAction(action);
+                }
+            };
+            producers[i].start();
+        }
+        for (Thread t : producers)
+            awaitBlocked(t);
+        Assert.assertEquals(100, queue.getQueueDepth());
+        queue.resumeActions();
+        for (Thread t : producers)
+            t.join();
+        queue.completeAll();
+        Assert.assertEquals(4101, executed.get());
+        Assert.assertEquals(4101, queue.getCompletedCount());
+        Assert.assertTrue(queue.getBatchCount() > 0);
+        queue.stopRunning();
+    }
+}
@@ -0,0 +1,104 @@
+package hgtest.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.hypergraphdb.HGHandle;
+import org.hypergraphdb.HGPlainLink;
+import org.hypergraphdb.HGRandomAccessResult;
+import org.hypergraphdb.HGRandomAccessResult.GotoResult;
+import org.hypergraphdb.handle.UUIDPersistentHandle;
+import org.hypergraphdb.util.ArrayBasedSet;
+import org.hypergraphdb.util.HGUtils;
+import org.hypergraphdb.util.PackedUUIDHandleSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import hgtest.HGTestBase;
+
+public class PackedHandleSetTests extends HGTestBase
+{
+	private static List<HGHandle> list(Iterable<HGHandle> S)
+	{
+		List<HGHandle> result = new ArrayList<HGHandle>();
+		for (HGHandle h : S)
+			result.add(h);
+		return result;
+	}
+
+	@Test
+	public void testSameAsArrayBasedSet()
+	{
+		PackedUUIDHandleSet packed = new PackedUUIDHandleSet();
+		ArrayBasedSet<HGHandle> array = new ArrayBasedSet<HGHandle>(HGUtils.EMPTY_HANDLE_ARRAY);
+		Random random = new Random(7);
+		List<HGHandle> handles = new ArrayList<HGHandle>();
+		for (int i = 0; i < 500; i++)
+			handles.add(UUIDPersistentHandle.makeHandle());
+		for (int i = 0; i < 2000; i++)
+		{
+			HGHandle h = handles.get(random.nextInt(handles.size()));
+			if (random.nextInt(3) == 0)
+				Assert.assertEquals(array.remove(h), packed.remove(h));
+			else
+				Assert.assertEquals(array.add(h), packed.add(h));
+		}
+		Assert.assertEquals(array.size(), packed.size());
+		Assert.assertEquals(list(array), list(packed));
+		Assert.assertEquals(array.first(), packed.first());
+		Assert.assertEquals(array.last(), packed.last());
+		for (HGHandle h : handles)
+			Assert.assertEquals(array.contains(h), packed.contains(h));
+
+		HGRandomAccessResult<HGHandle> rsArray = array.getSearchResult();
+		HGRandomAccessResult<HGHandle> rsPacked = packed.getSearchResult();
+		try
+		{
+			for (int i = 0; i < 100; i++)
+			{
+				HGHandle h = i % 2 == 0 ? handles.get(i) : UUIDPersistentHandle.makeHandle();
+				for (boolean exact : new boolean[] { true, false })
+				{
+					GotoResult expected = rsArray.goTo(h, exact);
+					Assert.assertEquals(expected, rsPacked.goTo(h, exact));
+					if (expected != GotoResult.nothing)
+					{
+						Assert.assertEquals(rsArray.current(), rsPacked.current());
+						Assert.assertEquals(rsArray.hasNext(), rsPacked.hasNext());
+						Assert.assertEquals(rsArray.hasPrev(), rsPacked.hasPrev());
+					}
+				}
+			}
+		}
+		finally
+		{
+			rsArray.close();
+			rsPacked.close();
+		}
+
+		PackedUUIDHandleSet copy = packed.duplicate();
+		HGHandle first = packed.first();
+		copy.remove(first);
+		Assert.assertTrue(packed.contains(first));
+		Assert.assertEquals(packed.size() - 1, copy.size());
+	}
+
+	@Test
+	public void testIncidenceSet()
+	{
+		HGHandle a = graph.add(new String("packedA"));
+		List<HGHandle> links = new ArrayList<HGHandle>();
+		for (int i = 0; i < 10; i++)
+			links.add(graph.add(new HGPlainLink(a, graph.add(new String("packed" + i)))));
+		reopenDb();
+		Assert.assertEquals(links.size(), graph.getIncidenceSet(a).size());
+		for (HGHandle l : links)
+			Assert.assertTrue(graph.getIncidenceSet(a).contains(l));
+		HGHandle extra = graph.add(new HGPlainLink(a));
+		Assert.assertEquals(links.size() + 1, graph.getIncidenceSet(a).size());
+		Assert.assertTrue(graph.getIncidenceSet(a).contains(extra));
+		graph.remove(extra);
+		Assert.assertEquals(links.size(), graph.getIncidenceSet(a).size());
+	}
+}